@@ -0,0 +1,285 @@
+package execution;
+
+import objects.Event.ArrivalEvent;
+import objects.GlobalTime;
+import objects.QuantileTable;
+import org.apache.commons.math3.distribution.BetaDistribution;
+import org.apache.commons.math3.distribution.GammaDistribution;
+import org.apache.commons.math3.distribution.RealDistribution;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well19937c;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Generates the cars that arrive at a Station, a day at a time, ahead of the Station that handles them. Sampling a day's
+ * cars takes thousands of draws from the energy and time of day distributions, so rather than the Station stalling at
+ * the start of every day, the next few days are sampled on a pool of threads shared by every Station in the process
+ * while the Station works through the current one. The Station takes each day's cars as a single batch, and taking a
+ * day starts the sampling of a new one, so no Station is ever more than a fixed number of days ahead.
+ * A Station that reaches a day before the pool has started on it samples the day itself instead of waiting its turn.
+ * Every day is sampled from a random number generator of its own, seeded from the Station's seed, the Station and the
+ * day, so a seeded Simulation generates the same cars no matter which thread samples them or in what order.
+ * A day's arrival times and energies are drawn a buffer at a time from tables of the distributions' quantiles, which
+ * every Station shares, rather than car by car from the distributions themselves, which draw by rejection and so take
+ * several random numbers and a logarithm or two for every car.
+ * A Producer given an {@link ArrivalSpill} keeps only the days within a window of the day the Station is on in memory.
+ * Days sampled beyond it are written to disk as soon as they are sampled, and each is read back whole on the pool as it
+ * comes into the window, so a Station can sample its whole run ahead and still hold no more than the window's days.
+ */
+public class ArrivalProducer implements ArrivalSource {
+    private static final long DAY_SECONDS = 86400;
+    private static final double ENERGY_SHAPE = 2.3127598129490075, ENERGY_SCALE = 3.870663519530382;
+    private static final double TIME_ALPHA = 4.614972052581306, TIME_BETA = 3.805085312822052;
+    /** The number of segments in each quantile table. */
+    public static final int TABLE_SEGMENTS = 4096;
+    /** The furthest a quantile table may be from the exact quantile before its samples are solved for exactly. */
+    public static final double TABLE_TOLERANCE = 5e-4; //Far below the differences between any two days of cars, which are near 0.02 at 2500 cars a day
+    private static final ExecutorService pool = Executors.newFixedThreadPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2), r -> {
+                Thread t = new Thread(r, "Arrival generator");
+                t.setDaemon(true); //Days sampled for after the Simulation ends are simply never taken
+                return t;
+            });
+
+    private final long seed;
+    private final long firstCarId;
+    private final int carsPerDay;
+    private final double[] classShares;
+    private final Instant start;
+    private final long days;
+    private final boolean tabled;
+    private final ArrayDeque<FutureTask<ArrivalEvent[]>> ahead = new ArrayDeque<>();
+    private final ArrivalSpill spill;
+    private final ArrayDeque<FutureTask<ArrivalEvent[]>> spilled = new ArrayDeque<>(); //The last days in ahead, which are not being read back yet
+    private volatile int windowEnd; //The first day that is spilled once sampled
+    private int nextDay;
+
+    /**
+     * Constructor to create an Arrival Producer, which starts sampling the first days at once.
+     * @param seed the seed the Station's days are sampled from.
+     * @param firstCarId the id of the first car generated at the Station.
+     * @param carsPerDay the number of cars that arrive at the Station each day.
+     * @param classShares the running total of the Station's charger classes' shares of generated cars.
+     * @param gT the Global Time object, which gives the days the Simulation runs for.
+     * @param lookahead how many days are sampled ahead of the day the Station is on.
+     * @param tabled true to draw from the shared quantile tables, false to draw car by car from the distributions.
+     */
+    public ArrivalProducer(long seed, long firstCarId, int carsPerDay, double[] classShares, GlobalTime gT, int lookahead,
+                           boolean tabled){
+        this(seed, firstCarId, carsPerDay, classShares, gT, lookahead, tabled, null, 0);
+    }
+
+    /**
+     * Constructor to create an Arrival Producer that spills the days it samples beyond a window to disk, which starts
+     * sampling the first days at once.
+     * @param seed the seed the Station's days are sampled from.
+     * @param firstCarId the id of the first car generated at the Station.
+     * @param carsPerDay the number of cars that arrive at the Station each day.
+     * @param classShares the running total of the Station's charger classes' shares of generated cars.
+     * @param gT the Global Time object, which gives the days the Simulation runs for.
+     * @param lookahead how many days are sampled ahead of the day the Station is on.
+     * @param tabled true to draw from the shared quantile tables, false to draw car by car from the distributions.
+     * @param spill where the days beyond the window are kept, or null to keep every day in memory.
+     * @param window how many days ahead of the day the Station is on are kept in memory.
+     */
+    public ArrivalProducer(long seed, long firstCarId, int carsPerDay, double[] classShares, GlobalTime gT, int lookahead,
+                           boolean tabled, ArrivalSpill spill, int window){
+        this.seed = seed;
+        this.firstCarId = firstCarId;
+        this.carsPerDay = carsPerDay;
+        this.classShares = classShares;
+        this.start = gT.getOriginInstant(); //A run over a segment of the Simulation samples the same days as a run over all of it
+        this.days = (gT.getEndInstant().getEpochSecond() - start.getEpochSecond() + DAY_SECONDS - 1) / DAY_SECONDS;
+        this.nextDay = (int) ((gT.getStartInstant().getEpochSecond() - start.getEpochSecond()) / DAY_SECONDS);
+        this.tabled = tabled;
+        this.spill = spill;
+        this.windowEnd = nextDay + Math.max(1, window);
+        for (int i = 0; i < Math.max(1, lookahead); i++)
+            sampleNext();
+    }
+
+    /**
+     * Takes the cars of the next day, sampling them on this thread if the pool has not started on them yet, and starts
+     * the sampling of another day.
+     * @return the day's cars, in no particular order.
+     */
+    public ArrivalEvent[] takeDay(){
+        FutureTask<ArrivalEvent[]> day = ahead.poll();
+        if (day == null)
+            return new ArrivalEvent[0];
+        sampleNext();
+        if (spill != null) {
+            windowEnd++;
+            while (!spilled.isEmpty() && nextDay - spilled.size() < windowEnd) //The first day not being read back has come into the window
+                pool.execute(spilled.poll());
+        }
+        day.run(); //Does nothing if a thread of the pool has already started on the day
+        try {
+            return day.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ArrivalEvent[0];
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Arrivals could not be generated", e.getCause());
+        }
+    }
+
+    /**
+     * Hands the next day that has not been sampled yet to the pool, if the Simulation has not ended by then.
+     */
+    private void sampleNext(){
+        if (nextDay >= days)
+            return;
+        int day = nextDay++;
+        if (spill == null) {
+            FutureTask<ArrivalEvent[]> task = new FutureTask<>(() -> sample(day));
+            ahead.add(task);
+            pool.execute(task);
+            return;
+        }
+        FutureTask<ArrivalEvent[]> sampling = new FutureTask<>(() -> sampleOrSpill(day));
+        pool.execute(sampling);
+        if (day < windowEnd) {
+            ahead.add(sampling);
+            return;
+        }
+        FutureTask<ArrivalEvent[]> readBack = new FutureTask<>(() -> {
+            sampling.run(); //Samples the day on this thread if the pool has not started on it yet
+            ArrivalEvent[] cars = sampling.get();
+            return cars != null ? cars : spill.read(day); //The day was sampled after it came into the window, and never spilled
+        });
+        ahead.add(readBack);
+        spilled.add(readBack);
+    }
+
+    /**
+     * Samples a day, writing it to disk if it is beyond the window by the time it has been sampled.
+     * @param day the number of days since the Simulation began.
+     * @return the day's cars, or null if they were written to disk, or the Station is done.
+     */
+    private ArrivalEvent[] sampleOrSpill(int day){
+        if (spill.isClosed()) //The Station is done, so no one will take the day
+            return null;
+        ArrivalEvent[] cars = sample(day);
+        if (day < windowEnd)
+            return cars;
+        spill.write(day, start.plusSeconds(day * DAY_SECONDS), cars);
+        return null;
+    }
+
+    /**
+     * Stops sampling and reading back days, and deletes the days left on disk.
+     */
+    @Override
+    public void close(){
+        if (spill == null)
+            return;
+        for (FutureTask<ArrivalEvent[]> day : ahead)
+            day.cancel(false);
+        spill.close();
+    }
+
+    /**
+     * Samples the cars that arrive at the Station on a day. Each car is given an arrival time during the day, the amount
+     * of energy it wants, and the class of charger it wants.
+     * @param day the number of days since the Simulation began.
+     * @return the day's cars.
+     */
+    private ArrivalEvent[] sample(int day){
+        RandomGenerator rng = new Well19937c(mix(mix(seed ^ firstCarId) + day));
+        double[] timesOfDay = new double[carsPerDay];
+        double[] energies = new double[carsPerDay];
+        if (tabled) {
+            Tables.TIME_OF_DAY.fill(timesOfDay, rng);
+            Tables.ENERGY.fill(energies, rng);
+        } else {
+            BetaDistribution timeOfDayDistribution = timeOfDayDistribution(rng);
+            GammaDistribution energyDistribution = energyDistribution(rng);
+            for (int i = 0; i < carsPerDay; i++)
+                timesOfDay[i] = timeOfDayDistribution.sample();
+            for (int i = 0; i < carsPerDay; i++)
+                energies[i] = energyDistribution.sample();
+        }
+        Instant dayStart = start.plusSeconds(day * DAY_SECONDS);
+        long carId = firstCarId + (long) day * carsPerDay; //Every day has the same number of cars, so each day's ids are known in advance
+        ArrivalEvent[] cars = new ArrivalEvent[carsPerDay];
+        for (int i = 0; i < carsPerDay; i++) {
+            double arrivalTime = -0.042 + timesOfDay[i] * 1.110;
+            arrivalTime = Math.max(0.0, Math.min(1.0, arrivalTime));
+            long secondsIntoDay = (long) (arrivalTime * DAY_SECONDS);
+            double remaining = energies[i] * 1000.0;
+            cars[i] = new ArrivalEvent(carId++, dayStart.plusSeconds(secondsIntoDay), chooseChargerClass(rng.nextDouble()), remaining);
+        }
+        return cars;
+    }
+
+    /**
+     * Picks the class of charger a newly generated car wants, each class being picked in proportion to its share.
+     * @param uniform a number drawn uniformly between 0 and 1.
+     * @return the id of the charger class.
+     */
+    private int chooseChargerClass(double uniform){
+        double pick = uniform * classShares[classShares.length - 1];
+        int c = 0;
+        while (c < classShares.length - 1 && pick >= classShares[c])
+            c++;
+        return c;
+    }
+
+    /**
+     * @param rng the random number generator the distribution draws from.
+     * @return the distribution of the energy a car wants, in kilowatt-hours.
+     */
+    public static GammaDistribution energyDistribution(RandomGenerator rng){
+        return new GammaDistribution(rng, ENERGY_SHAPE, ENERGY_SCALE);
+    }
+
+    /**
+     * @param rng the random number generator the distribution draws from.
+     * @return the distribution of the time a car arrives, before it is stretched over the day.
+     */
+    public static BetaDistribution timeOfDayDistribution(RandomGenerator rng){
+        return new BetaDistribution(rng, TIME_ALPHA, TIME_BETA);
+    }
+
+    /**
+     * Builds a quantile table of a distribution in the same way as the tables every Producer draws from.
+     * @param distribution the distribution.
+     * @return the table.
+     */
+    public static QuantileTable table(RealDistribution distribution){
+        return new QuantileTable(distribution, TABLE_SEGMENTS, TABLE_TOLERANCE);
+    }
+
+    /**
+     * The quantile tables of the energy and time of day distributions, built the first time a Station draws from them.
+     */
+    private static class Tables {
+        static final QuantileTable ENERGY = build("energy", energyDistribution(new Well19937c()));
+        static final QuantileTable TIME_OF_DAY = build("time of day", timeOfDayDistribution(new Well19937c()));
+
+        private static QuantileTable build(String name, RealDistribution distribution){
+            QuantileTable table = table(distribution);
+            if (table.isExact())
+                System.out.println("The " + name + " quantile table is off by up to " + table.getMaxError() + ", so its samples are solved for exactly");
+            return table;
+        }
+    }
+
+    /**
+     * Scrambles the bits of a number, so that seeds that differ only slightly give unrelated streams of random numbers.
+     * @param z the number.
+     * @return the scrambled number.
+     */
+    private static long mix(long z){
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
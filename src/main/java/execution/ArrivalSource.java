@@ -0,0 +1,22 @@
+package execution;
+
+import objects.Event.ArrivalEvent;
+
+/**
+ * Gives a Station the cars that arrive at it, a day at a time, starting with the day the Simulation starts on. Cars are
+ * either sampled from the Simulation's demand model by an {@link ArrivalProducer}, or replayed from a log of real
+ * charging sessions by an {@link execution.Trace.ArrivalTrace}.
+ */
+public interface ArrivalSource {
+    /**
+     * Takes the cars that arrive during the next day of the Simulation.
+     * @return the day's cars, in no particular order.
+     */
+    ArrivalEvent[] takeDay();
+
+    /**
+     * Lets go of anything the source holds open, once the Simulation has ended.
+     */
+    default void close(){
+    }
+}
@@ -0,0 +1,157 @@
+package execution;
+
+import objects.Event.ArrivalEvent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Keeps the days of cars a Station's {@link ArrivalProducer} has sampled far ahead of the Station on disk rather than on
+ * the heap, so a Station can sample as many days ahead as it likes and still hold only the few nearest in memory. Each
+ * day is written once, as a run of cars sorted by arrival time, and read back whole, as the Station draws near to it.
+ * A run is buffered and deflated, and holds the number of cars, the epoch second the day starts at and the id of its
+ * first car, followed by a record for every car:
+ * <pre>
+ *   int    id          the car's id, less the id of the day's first car
+ *   int    arrival     seconds after the start of the day the car arrives
+ *   byte   chargeClass the id of the charger class the car wants
+ *   double energy      the energy the car wants, in watt-hours
+ * </pre>
+ * Every Station spills to a directory of its own, made afresh under the configured directory, so runs that share a
+ * directory never read each other's days. The directory is removed once the Station is done with it.
+ */
+public class ArrivalSpill {
+    private static final Comparator<ArrivalEvent> ORDER =
+            Comparator.comparing(ArrivalEvent::getTimestamp).thenComparingLong(ArrivalEvent::getId);
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path directory;
+    private volatile boolean closed;
+
+    /**
+     * Constructor to create an Arrival Spill, making the Station's directory.
+     * @param parent the directory the Station's own directory is made in, which is made too if it does not exist.
+     * @param station the name of the Station.
+     * @throws IOException if the directory cannot be made.
+     */
+    public ArrivalSpill(Path parent, String station) throws IOException {
+        Files.createDirectories(parent);
+        this.directory = Files.createTempDirectory(parent, station.replaceAll("[^A-Za-z0-9_-]", "_") + "-");
+    }
+
+    /**
+     * Writes a day's cars to disk, sorted by arrival time. Does nothing once the spill is closed.
+     * @param day the number of days since the Simulation began.
+     * @param dayStart the time the day starts.
+     * @param cars the day's cars, which are sorted in place. Their ids are within an int of the first car's.
+     */
+    public void write(int day, Instant dayStart, ArrivalEvent[] cars){
+        if (closed)
+            return;
+        Arrays.sort(cars, ORDER);
+        long firstId = Long.MAX_VALUE;
+        for (ArrivalEvent car : cars)
+            firstId = Math.min(firstId, car.getId());
+        Path run = runOf(day);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED); //The runs are read back within days, so speed beats size
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new DeflaterOutputStream(Files.newOutputStream(run), deflater, BUFFER_SIZE), BUFFER_SIZE))) {
+            out.writeInt(cars.length);
+            out.writeLong(dayStart.getEpochSecond());
+            out.writeLong(firstId);
+            for (ArrivalEvent car : cars) {
+                out.writeInt((int) (car.getId() - firstId));
+                out.writeInt((int) (car.getTimestamp().getEpochSecond() - dayStart.getEpochSecond()));
+                out.writeByte(car.getChargeClass());
+                out.writeDouble(car.getChargeDesired());
+            }
+        } catch (IOException e){
+            throw new UncheckedIOException("A day of arrivals could not be spilled to " + run, e);
+        } finally {
+            deflater.end();
+        }
+        if (closed) { //The Station finished while the day was being written, and has already cleared its directory
+            delete(run);
+            delete(directory);
+        }
+    }
+
+    /**
+     * Reads a day's cars back from disk, and deletes the day's run.
+     * @param day the number of days since the Simulation began.
+     * @return the day's cars, sorted by arrival time.
+     */
+    public ArrivalEvent[] read(int day){
+        Path run = runOf(day);
+        Inflater inflater = new Inflater();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new InflaterInputStream(Files.newInputStream(run), inflater, BUFFER_SIZE), BUFFER_SIZE))) {
+            ArrivalEvent[] cars = new ArrivalEvent[in.readInt()];
+            long dayStart = in.readLong();
+            long firstId = in.readLong();
+            for (int i = 0; i < cars.length; i++) {
+                long id = firstId + in.readInt();
+                Instant arrival = Instant.ofEpochSecond(dayStart + in.readInt());
+                int chargeClass = in.readByte();
+                cars[i] = new ArrivalEvent(id, arrival, chargeClass, in.readDouble());
+            }
+            return cars;
+        } catch (IOException e){
+            throw new UncheckedIOException("A day of arrivals could not be read back from " + run, e);
+        } finally {
+            inflater.end();
+            delete(run);
+        }
+    }
+
+    /**
+     * Deletes every run left over, along with the Station's directory. Days written after this are not kept.
+     */
+    public void close(){
+        closed = true;
+        try (DirectoryStream<Path> runs = Files.newDirectoryStream(directory)) {
+            for (Path run : runs)
+                delete(run);
+        } catch (IOException e){
+            System.out.println("Failed to clear spilled arrivals from " + directory);
+        }
+        try {
+            Files.deleteIfExists(directory);
+        } catch (IOException e){
+            //A day is still being written, and deletes the directory itself once it is
+        }
+    }
+
+    /**
+     * @return true once the Station is done with the spill.
+     */
+    public boolean isClosed(){
+        return closed;
+    }
+
+    private Path runOf(int day){
+        return directory.resolve(day + ".run");
+    }
+
+    private static void delete(Path path){
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e){
+            System.out.println("Failed to delete " + path);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package execution;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+
+/**
+ * A class of charger a Station offers, such as a 7 kW AC charger or a 150 kW DC charger. A class has a name, the number
+ * of chargers of its kind at the Station, the rate they charge at, how long a car waits for one before it balks, and the
+ * share of the cars generated at the Station that want one.
+ * Every Station in the Simulation shares one list of charger classes, the list in the default config, and a class is
+ * known everywhere by its position in that list, so that a car keeps wanting the same kind of charger as it balks from
+ * Station to Station. A Station that overrides its classes is matched to the list by name, and takes whatever an entry
+ * leaves out from the default class of that name; a class it leaves out has no chargers there, and a car that wants one
+ * leaves at once without a charge.
+ * Configs that predate charger classes describe a "fast" and a "slow" class through their own keys, which are still read,
+ * and which a Station may still use to override the default "fast" and "slow" classes.
+ */
+public class ChargerClass {
+    private static final String[] LEGACY_CLASSES = {"fast", "slow"};
+    private static final double[] LEGACY_SHARES = {0.67, 0.33};
+    private static final long[] LEGACY_PATIENCE = {600, 1800};
+    private static final String[][] LEGACY_KEYS = {{"Chargers", "chargers"}, {"ChargingRate", "rate"}, {"Patience", "patience"}}; //The suffix of each older key, and the field of a class it sets
+
+    private final String name;
+    private final int chargers;
+    private final double rate;
+    private final long patience;
+    private final double share;
+    private final long closingCutoff;
+
+    /**
+     * Constructor to create a Charger Class.
+     * @param name the name of the class.
+     * @param chargers the number of chargers of the class at the Station.
+     * @param rate the rate the chargers charge at, in watts.
+     * @param patience how long, in seconds, a car waits for a charger of the class before it balks.
+     * @param share the share of the cars generated at the Station that want a charger of the class, relative to the
+     *              shares of the other classes.
+     * @param closingCutoff how long, in seconds, before the Simulation closes a car must have arrived to be put on a
+     *                      charger of the class.
+     */
+    public ChargerClass(String name, int chargers, double rate, long patience, double share, long closingCutoff){
+        this.name = name;
+        this.chargers = chargers;
+        this.rate = rate;
+        this.patience = patience;
+        this.share = share;
+        this.closingCutoff = closingCutoff;
+    }
+
+    /**
+     * Constructor to create a Charger Class from an entry of the "chargerClasses" list of a Station's config.
+     * @param config the entry, holding the "name", "chargers", "rate" and "patience" of the class, its "share" of the
+     *               cars, 1 if left out, and its "closingCutoff", the same as its patience if left out.
+     * @throws IllegalArgumentException if the entry has no name, chargers or rate.
+     */
+    public ChargerClass(JsonNode config){
+        this(required(config, "name").asText(), required(config, "chargers").asInt(), required(config, "rate").asDouble(),
+                config.path("patience").asLong(600), config.path("share").asDouble(1),
+                config.path("closingCutoff").asLong(config.path("patience").asLong(600)));
+    }
+
+    /**
+     * Reads the charger classes described by a config, in the order it lists them.
+     * @param config a Station's config, or the default config.
+     * @return the charger classes.
+     * @throws IllegalArgumentException if a class has no name, chargers or rate.
+     */
+    public static ChargerClass[] read(JsonNode config){
+        ArrayList<ChargerClass> classes = new ArrayList<>();
+        for (JsonNode entry : entries(config))
+            classes.add(new ChargerClass(entry));
+        return classes.toArray(new ChargerClass[0]);
+    }
+
+    /**
+     * Merges the charger classes a Station overrides onto those of the default config. Each entry the Station lists
+     * takes the fields it leaves out from the default class of the same name, and the older "fast" and "slow" keys set
+     * the fields of the default classes of those names. A Station that overrides none keeps the default classes.
+     * @param defaults the default config.
+     * @param override the Station's own config, before it is merged with the default config.
+     * @return the Station's "chargerClasses" list.
+     * @throws IllegalArgumentException if the Station lists a class without a name, sets an older key along with its
+     *                                  own list, or sets an older key for a class the default config does not have.
+     */
+    public static ArrayNode merge(JsonNode defaults, JsonNode override){
+        String station = override.path("name").asText("A Station");
+        ArrayNode base = entries(defaults);
+        ArrayNode merged = base;
+        if (override.has("chargerClasses")) {
+            merged = JsonNodeFactory.instance.arrayNode();
+            for (JsonNode entry : override.get("chargerClasses")) {
+                if (!entry.has("name"))
+                    throw new IllegalArgumentException(station + " lists a charger class without a name");
+                ObjectNode defaultClass = find(base, entry.get("name").asText());
+                ObjectNode c = defaultClass == null ? JsonNodeFactory.instance.objectNode() : defaultClass.deepCopy();
+                c.setAll((ObjectNode) entry);
+                merged.add(c);
+            }
+        }
+        for (String legacyClass : LEGACY_CLASSES) {
+            for (String[] key : LEGACY_KEYS) {
+                String legacyKey = legacyClass + key[0];
+                if (!override.has(legacyKey))
+                    continue;
+                if (override.has("chargerClasses"))
+                    throw new IllegalArgumentException(station + " sets " + legacyKey + " as well as its own chargerClasses; set the "
+                            + key[1] + " of its \"" + legacyClass + "\" class in chargerClasses instead");
+                ObjectNode c = find(merged, legacyClass);
+                if (c == null)
+                    throw new IllegalArgumentException(station + " sets " + legacyKey + ", but the default config has no charger class named \""
+                            + legacyClass + "\"; override the Station's chargerClasses instead");
+                c.set(key[1], override.get(legacyKey));
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Reads a Station's charger classes, placing each at its position in the Simulation's list of classes, which the
+     * config holds under "chargerClassNames". Classes the Station leaves out have no chargers, and classes that are
+     * not in the Simulation's list are ignored.
+     * @param config the Station's full config.
+     * @return the Station's charger classes, indexed by class id.
+     */
+    public static ChargerClass[] forStation(JsonNode config){
+        ChargerClass[] own = read(config);
+        JsonNode names = config.get("chargerClassNames");
+        if (names == null)
+            return own;
+        ChargerClass[] classes = new ChargerClass[names.size()];
+        for (int i = 0; i < classes.length; i++)
+            classes[i] = new ChargerClass(names.get(i).asText(), 0, 0, 0, 0, 0);
+        for (ChargerClass c : own) {
+            int id = -1;
+            for (int i = 0; i < classes.length && id < 0; i++)
+                if (classes[i].getName().equals(c.getName()))
+                    id = i;
+            if (id < 0)
+                System.out.println(config.get("name").asText() + " has charger class " + c.getName() + ", which is not in the default config");
+            else
+                classes[id] = c;
+        }
+        return classes;
+    }
+
+    /**
+     * @param config a Station's config, or the default config.
+     * @return a copy of the config's "chargerClasses" list, or, for an older config, the entries its "fast" and "slow"
+     *         keys describe.
+     */
+    private static ArrayNode entries(JsonNode config){
+        if (config.has("chargerClasses"))
+            return ((ArrayNode) config.get("chargerClasses")).deepCopy();
+        ArrayNode entries = JsonNodeFactory.instance.arrayNode();
+        for (int i = 0; i < LEGACY_CLASSES.length; i++) {
+            ObjectNode c = entries.addObject();
+            c.put("name", LEGACY_CLASSES[i]);
+            for (String[] key : LEGACY_KEYS)
+                if (config.has(LEGACY_CLASSES[i] + key[0]))
+                    c.set(key[1], config.get(LEGACY_CLASSES[i] + key[0]));
+            if (!c.has("patience"))
+                c.put("patience", LEGACY_PATIENCE[i]);
+            c.put("share", LEGACY_SHARES[i]);
+            c.put("closingCutoff", LEGACY_PATIENCE[i]);
+        }
+        return entries;
+    }
+
+    /**
+     * @param entries a "chargerClasses" list.
+     * @param name the name of a class.
+     * @return the entry of the class, or null if the list does not have it.
+     */
+    private static ObjectNode find(ArrayNode entries, String name){
+        for (JsonNode entry : entries)
+            if (entry.path("name").asText().equals(name))
+                return (ObjectNode) entry;
+        return null;
+    }
+
+    /**
+     * @param config an entry of a "chargerClasses" list.
+     * @param field a field every class must have.
+     * @return the field.
+     * @throws IllegalArgumentException if the entry does not have it.
+     */
+    private static JsonNode required(JsonNode config, String field){
+        if (!config.has(field))
+            throw new IllegalArgumentException("Charger class " + config.path("name").asText("without a name") + " has no \"" + field + "\"");
+        return config.get(field);
+    }
+
+    public String getName(){
+        return name;
+    }
+
+    public int getChargers(){
+        return chargers;
+    }
+
+    public double getRate(){
+        return rate;
+    }
+
+    public long getPatience(){
+        return patience;
+    }
+
+    public double getShare(){
+        return share;
+    }
+
+    public long getClosingCutoff(){
+        return closingCutoff;
+    }
+}
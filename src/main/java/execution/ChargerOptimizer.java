@@ -0,0 +1,458 @@
+package execution;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import execution.StationSimulator.Checkpoint;
+import objects.GlobalTime;
+import objects.StationStats;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Searches for the number of chargers of each class at each Station that meets the targets set in the "optimizer" block
+ * of the config file: at most "maxBalkRate" of the cars that want a class may balk, and the chargers of a class should
+ * be in use at least "minUtilization" of the time. Among the configurations that miss the targets by as little as
+ * possible, the one with the fewest chargers is preferred.
+ * The search moves one number of chargers at a time. Every round, each number is tried "initialStep" chargers higher if
+ * too many of its cars balk, and as many lower if not. The candidates of a round are Simulations of their own, run
+ * "parallelCandidates" at a time in this process, and the best of them is kept if it beats the configuration found so
+ * far. A number whose candidate did not beat it is tried with half the step the next round, and the search ends once
+ * every step is down to 0, or after "maxRounds" rounds.
+ * Each Station publishes a copy of its statistics as it stood at the Global Minimum Time, which no rollback can change.
+ * Once a candidate is "abortAfterDays" days in, and its committed statistics miss the targets by "abortMargin" more
+ * than those of the configuration found so far did at the same point of its own run, it is cut short, since it is very
+ * unlikely to catch up. Stations without a seed are given one shared by every candidate, so that candidates differ by their
+ * chargers, and not by their cars.
+ * The best configuration is written to "out/optimizedStationConfig.json", as a copy of the station config with each
+ * Station's chargers set, and how it fares to "out/optimizerReport.txt".
+ */
+public class ChargerOptimizer {
+    private static final long POLL_MILLIS = 50;
+    private static final double EPSILON = 1e-9;
+    private final JsonNode rootNode;
+    private final GlobalTime gT;
+    private final List<ObjectNode> fullConfigs;
+    private final double maxBalkRate;
+    private final double minUtilization;
+    private final int parallelCandidates;
+    private final int maxRounds;
+    private final long abortAfterSeconds;
+    private final double abortMargin;
+    private final ArrayList<Coordinate> coordinates = new ArrayList<>();
+    private int rounds;
+    private int candidatesRun;
+    private int candidatesAborted;
+
+    /**
+     * The number of chargers of one class at one Station, which the search moves.
+     */
+    private static final class Coordinate {
+        private final int station;
+        private final String className;
+        private final int classId; //The class's position in the Simulation's list of classes, which its statistics are indexed by
+        private final int initial;
+        private int step;
+
+        private Coordinate(int station, String className, int classId, int initial, int step){
+            this.station = station;
+            this.className = className;
+            this.classId = classId;
+            this.initial = initial;
+            this.step = step;
+        }
+    }
+
+    /**
+     * A configuration the search has tried, or is trying.
+     */
+    private static final class Candidate {
+        private final int[] chargers; //Indexed by coordinate
+        private final int moved; //The coordinate that differs from the configuration it was made from, or -1 for the first
+        private volatile Simulation simulation;
+        private volatile boolean aborted;
+        private StationStats[] stats;
+        private double violation = Double.POSITIVE_INFINITY;
+        private final TreeMap<Long, Double> progress = new TreeMap<>(); //How far its committed statistics missed the targets, by seconds committed
+
+        private Candidate(int[] chargers, int moved){
+            this.chargers = chargers;
+            this.moved = moved;
+        }
+
+        /**
+         * @return the number of chargers of every class at every Station.
+         */
+        private int total(){
+            int total = 0;
+            for (int n : chargers)
+                total += n;
+            return total;
+        }
+    }
+
+    /**
+     * Reads the same config files as the Main class and searches for the best number of chargers at every Station.
+     * @param args the arguments from command line. Not currently relevant.
+     */
+    public static void main(String[] args) {
+        try {
+            ObjectMapper mapper = new ObjectMapper();
+            InputStream inputStream = ChargerOptimizer.class.getClassLoader().getResourceAsStream("config/config.json");
+            if(inputStream == null){
+                throw new IOException("Config file not found in resources");
+            }
+            JsonNode rootNode = mapper.readTree(inputStream);
+            GlobalTime gT = new GlobalTime(rootNode.get("startTimeHr").asInt(), rootNode.get("startTimeMin").asInt(), rootNode.get("startTimeSec").asInt(), rootNode.get("runtime").asInt());
+            inputStream = ChargerOptimizer.class.getClassLoader().getResourceAsStream("config/" + rootNode.get("configFile").asText());
+            if(inputStream == null){
+                throw new IOException("Station config file not found in resources");
+            }
+            JsonNode stationRoot = mapper.readTree(inputStream);
+            ChargerOptimizer optimizer = new ChargerOptimizer(rootNode, gT, Main.readStationConfigs(stationRoot));
+            long startTime = System.nanoTime();
+            Candidate best = optimizer.search();
+            if (best == null)
+                return;
+            mapper.writerWithDefaultPrettyPrinter().writeValue(Path.of("out", "optimizedStationConfig.json").toFile(),
+                    optimizer.optimizedConfig(stationRoot, best));
+            optimizer.writeReport(best, System.nanoTime() - startTime);
+        }catch (IOException e){
+            System.out.println("The config file cannot be found");
+        }catch (NullPointerException e){
+            System.out.println("A parameter could not be found: " + e);
+        }
+    }
+
+    /**
+     * Constructor to create a Charger Optimizer, starting from the chargers each Station has in the station config.
+     * @param rootNode the root of the master config file, holding the "optimizer" block.
+     * @param gT the Global Time object of the Simulation each candidate runs.
+     * @param fullConfigs the full config of each Station.
+     */
+    public ChargerOptimizer(JsonNode rootNode, GlobalTime gT, List<ObjectNode> fullConfigs){
+        JsonNode config = rootNode.path("optimizer");
+        this.rootNode = rootNode;
+        this.gT = gT;
+        this.fullConfigs = fullConfigs;
+        this.maxBalkRate = config.path("maxBalkRate").asDouble(0.05);
+        this.minUtilization = config.path("minUtilization").asDouble(0);
+        int parallel = config.path("parallelCandidates").asInt(0);
+        this.parallelCandidates = parallel > 0 ? parallel : Math.max(1, Runtime.getRuntime().availableProcessors() / (fullConfigs.size() + 1));
+        this.maxRounds = config.path("maxRounds").asInt(20);
+        this.abortAfterSeconds = Duration.ofDays(config.path("abortAfterDays").asLong(3)).getSeconds();
+        this.abortMargin = config.path("abortMargin").asDouble(0.5);
+        int step = Math.max(1, config.path("initialStep").asInt(8));
+        for (int s = 0; s < fullConfigs.size(); s++) {
+            ObjectNode fullConfig = fullConfigs.get(s);
+            if (!fullConfig.has("seed"))
+                fullConfig.put("seed", ThreadLocalRandom.current().nextLong());
+            JsonNode names = fullConfig.get("chargerClassNames");
+            for (ChargerClass c : ChargerClass.read(fullConfig)) {
+                int id = -1;
+                for (int i = 0; i < names.size() && id < 0; i++)
+                    if (names.get(i).asText().equals(c.getName()))
+                        id = i;
+                if (id >= 0) //A class that is not in the Simulation's list is ignored by the Station, so there is nothing to move
+                    coordinates.add(new Coordinate(s, c.getName(), id, c.getChargers(), step));
+            }
+        }
+    }
+
+    /**
+     * Runs the search.
+     * @return the best configuration found, or null if a candidate failed.
+     */
+    private Candidate search(){
+        int[] initial = new int[coordinates.size()];
+        for (int i = 0; i < initial.length; i++)
+            initial[i] = coordinates.get(i).initial;
+        Candidate incumbent = new Candidate(initial, -1);
+        ExecutorService runs = Executors.newFixedThreadPool(parallelCandidates);
+        try {
+            if (!evaluate(List.of(incumbent), null, runs))
+                return null;
+            while (rounds < maxRounds) {
+                ArrayList<Candidate> candidates = new ArrayList<>();
+                for (int i = 0; i < coordinates.size(); i++) {
+                    Coordinate coordinate = coordinates.get(i);
+                    if (coordinate.step == 0)
+                        continue;
+                    int direction = balkRate(incumbent.stats[coordinate.station], coordinate.classId) > maxBalkRate ? 1 : -1;
+                    int[] chargers = incumbent.chargers.clone();
+                    chargers[i] = Math.max(0, chargers[i] + direction * coordinate.step);
+                    if (chargers[i] == incumbent.chargers[i])
+                        coordinate.step = 0; //No Station can have fewer than no chargers
+                    else
+                        candidates.add(new Candidate(chargers, i));
+                }
+                if (candidates.isEmpty())
+                    break;
+                rounds++;
+                if (!evaluate(candidates, incumbent, runs))
+                    return null;
+                Candidate best = incumbent;
+                for (Candidate candidate : candidates) {
+                    if (!isBetter(candidate, incumbent))
+                        coordinates.get(candidate.moved).step /= 2;
+                    if (isBetter(candidate, best))
+                        best = candidate;
+                }
+                incumbent = best;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            System.out.println("A candidate configuration failed: " + e.getCause());
+            return null;
+        } finally {
+            runs.shutdown();
+        }
+        return incumbent;
+    }
+
+    /**
+     * Runs a set of candidates at once, cutting short those whose committed statistics show they will not beat the
+     * configuration found so far.
+     * @param candidates the candidates.
+     * @param incumbent the best configuration found so far, or null to let every candidate run to the end.
+     * @param runs the Executor Service the candidates are run on.
+     * @return true if every candidate finished or was cut short.
+     * @throws InterruptedException if the thread is interrupted while waiting for the candidates.
+     * @throws ExecutionException if a candidate threw an exception.
+     */
+    private boolean evaluate(List<Candidate> candidates, Candidate incumbent, ExecutorService runs) throws InterruptedException, ExecutionException {
+        ArrayList<Future<Boolean>> finished = new ArrayList<>();
+        for (Candidate candidate : candidates)
+            finished.add(runs.submit(() -> runCandidate(candidate)));
+        boolean running = true;
+        while (running) {
+            running = false;
+            for (Future<Boolean> f : finished)
+                running |= !f.isDone();
+            if (!running)
+                break;
+            Thread.sleep(POLL_MILLIS);
+            for (Candidate candidate : candidates)
+                if (!candidate.aborted && observe(candidate) && incumbent != null && isHopeless(candidate, incumbent)) {
+                    candidate.aborted = true;
+                    candidate.simulation.cancel();
+                }
+        }
+        boolean all = true;
+        for (int i = 0; i < candidates.size(); i++) {
+            Candidate candidate = candidates.get(i);
+            candidatesRun++;
+            if (candidate.aborted) {
+                candidatesAborted++;
+                continue;
+            }
+            all &= finished.get(i).get();
+            List<StationSimulator> stations = candidate.simulation.getStations();
+            candidate.stats = new StationStats[stations.size()];
+            for (int s = 0; s < stations.size(); s++)
+                candidate.stats[s] = stations.get(s).getStats();
+            candidate.violation = violation(candidate, candidate.stats, gT.getEndInstant());
+        }
+        return all;
+    }
+
+    /**
+     * Runs the Monitor and every Station of a candidate on threads of their own, over the whole Simulation.
+     * @param candidate the candidate.
+     * @return true if every process finished.
+     */
+    private boolean runCandidate(Candidate candidate){
+        ArrayList<ObjectNode> configs = new ArrayList<>();
+        for (int s = 0; s < fullConfigs.size(); s++) {
+            ObjectNode config = configFor(s, candidate);
+            config.put("writeResults", false);
+            config.put("trace", false);
+            config.put("checkpointStats", true);
+            configs.add(config);
+        }
+        Simulation simulation = new Simulation(rootNode, gT.segment(gT.getStartInstant(), gT.getEndInstant()), configs);
+        candidate.simulation = simulation;
+        return simulation.run(Executors.newCachedThreadPool());
+    }
+
+    /**
+     * Records how far the committed statistics of a running candidate miss the targets so far.
+     * @param candidate the candidate.
+     * @return true if something new was recorded.
+     */
+    private boolean observe(Candidate candidate){
+        Simulation simulation = candidate.simulation;
+        if (simulation == null)
+            return false;
+        List<StationSimulator> stations = simulation.getStations();
+        StationStats[] stats = new StationStats[stations.size()];
+        Instant committed = Instant.MAX;
+        for (int s = 0; s < stations.size(); s++) {
+            Checkpoint checkpoint = stations.get(s).getCommittedStats();
+            if (checkpoint == null)
+                return false;
+            stats[s] = checkpoint.getStats();
+            if (checkpoint.getTime().isBefore(committed))
+                committed = checkpoint.getTime();
+        }
+        long seconds = Duration.between(gT.getStartInstant(), committed).getSeconds();
+        if (seconds <= 0 || candidate.progress.containsKey(seconds))
+            return false;
+        candidate.progress.put(seconds, violation(candidate, stats, committed));
+        return true;
+    }
+
+    /**
+     * Early statistics look worse than those of a whole run, as the chargers start out empty and a car is only counted
+     * once it leaves, so a candidate is held up against how far the incumbent had missed the targets by the same time.
+     * @param candidate a candidate that is running.
+     * @param incumbent the best configuration found so far.
+     * @return true if the candidate has committed "abortAfterDays" days, and already misses the targets by more than the
+     * incumbent did at that time, or earlier, plus the margin.
+     */
+    private boolean isHopeless(Candidate candidate, Candidate incumbent){
+        Map.Entry<Long, Double> latest = candidate.progress.lastEntry();
+        if (latest.getKey() < abortAfterSeconds)
+            return false;
+        Map.Entry<Long, Double> then = incumbent.progress.floorEntry(latest.getKey());
+        return then != null && latest.getValue() > then.getValue() + abortMargin;
+    }
+
+    /**
+     * Adds up how far each number of chargers misses the targets, as a share of the target, so that missing the balk
+     * rate target by half of itself costs as much as missing the utilization target by half of itself.
+     * @param candidate the configuration the statistics are of.
+     * @param stats the statistics of each Station.
+     * @param until the time the statistics run until.
+     * @return how far the configuration misses the targets, 0 if it meets them.
+     */
+    private double violation(Candidate candidate, StationStats[] stats, Instant until){
+        long seconds = Math.max(1, Duration.between(gT.getStartInstant(), until).getSeconds());
+        double violation = 0;
+        for (int i = 0; i < coordinates.size(); i++) {
+            Coordinate coordinate = coordinates.get(i);
+            StationStats s = stats[coordinate.station];
+            violation += Math.max(0, balkRate(s, coordinate.classId) - maxBalkRate) / (maxBalkRate > 0 ? maxBalkRate : 1);
+            if (minUtilization > 0 && candidate.chargers[i] > 0) { //No chargers stand idle at a Station that has none
+                double utilization = s.getChargerSeconds(coordinate.classId) / ((double) candidate.chargers[i] * seconds);
+                violation += Math.max(0, minUtilization - utilization) / minUtilization;
+            }
+        }
+        return violation;
+    }
+
+    /**
+     * @param s the statistics of a Station.
+     * @param c the id of a charger class.
+     * @return the share of the cars that wanted a charger of the class at the Station that balked, 0 if none did.
+     */
+    private static double balkRate(StationStats s, int c){
+        double cars = s.getNumBalks(c);
+        for (int status = 0; status < 3; status++)
+            cars += s.getNumCharges(c, status);
+        return cars == 0 ? 0 : s.getNumBalks(c) / cars;
+    }
+
+    /**
+     * @param candidate a candidate.
+     * @param other another candidate.
+     * @return true if the first candidate misses the targets by less, or by as much with fewer chargers. A candidate that
+     * was cut short is never better.
+     */
+    private static boolean isBetter(Candidate candidate, Candidate other){
+        if (candidate.aborted || candidate.stats == null)
+            return false;
+        if (Math.abs(candidate.violation - other.violation) > EPSILON)
+            return candidate.violation < other.violation;
+        return candidate.total() < other.total();
+    }
+
+    /**
+     * @param s the position of a Station in the station config.
+     * @param candidate a configuration.
+     * @return a copy of the Station's full config with its chargers set to those of the configuration.
+     */
+    private ObjectNode configFor(int s, Candidate candidate){
+        ObjectNode config = fullConfigs.get(s).deepCopy();
+        for (int i = 0; i < coordinates.size(); i++) {
+            Coordinate coordinate = coordinates.get(i);
+            if (coordinate.station != s)
+                continue;
+            if (config.has("chargerClasses")) {
+                for (JsonNode entry : config.get("chargerClasses"))
+                    if (entry.get("name").asText().equals(coordinate.className))
+                        ((ObjectNode) entry).put("chargers", candidate.chargers[i]);
+            } else
+                config.put(coordinate.className + "Chargers", candidate.chargers[i]); //Older configs only have the "fast" and "slow" classes
+        }
+        return config;
+    }
+
+    /**
+     * @param stationRoot the root of the station config file.
+     * @param best the best configuration found.
+     * @return a copy of the station config in which every Station overrides its chargers with those of the configuration.
+     */
+    private ObjectNode optimizedConfig(JsonNode stationRoot, Candidate best){
+        ObjectNode root = stationRoot.deepCopy();
+        ArrayNode stations = (ArrayNode) root.get("stations");
+        for (int s = 0; s < fullConfigs.size(); s++) {
+            ObjectNode config = configFor(s, best);
+            ObjectNode override = (ObjectNode) stations.get(s);
+            if (config.has("chargerClasses"))
+                override.set("chargerClasses", config.get("chargerClasses"));
+            else {
+                override.put("fastChargers", config.get("fastChargers").asInt());
+                override.put("slowChargers", config.get("slowChargers").asInt());
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Writes how the search went and how the best configuration fares against the targets to "out/optimizerReport.txt".
+     * @param best the best configuration found.
+     * @param nanos how long the search took, in nanoseconds.
+     */
+    private void writeReport(Candidate best, long nanos){
+        long seconds = Math.max(1, Duration.between(gT.getStartInstant(), gT.getEndInstant()).getSeconds());
+        try {
+            FileWriter writer = new FileWriter("out/optimizerReport.txt");
+            writer.write("The search took " + rounds + " rounds and " + (float) nanos / 1000000000 + " seconds, and ran "
+                    + candidatesRun + " configurations, of which " + candidatesAborted + " were cut short\n");
+            if (best.violation <= EPSILON)
+                writer.write("The best configuration meets the targets, with " + best.total() + " chargers\n\n");
+            else
+                writer.write("The best configuration misses the targets by " + best.violation + ", with " + best.total() + " chargers\n\n");
+            for (int i = 0; i < coordinates.size(); i++) {
+                Coordinate coordinate = coordinates.get(i);
+                StationStats s = best.stats[coordinate.station];
+                double utilization = best.chargers[i] == 0 ? 0
+                        : s.getChargerSeconds(coordinate.classId) / ((double) best.chargers[i] * seconds);
+                writer.write(fullConfigs.get(coordinate.station).get("name").asText() + " " + coordinate.className + ": "
+                        + best.chargers[i] + " chargers (was " + coordinate.initial + "), "
+                        + balkRate(s, coordinate.classId) + " balk rate, " + utilization + " utilization\n");
+            }
+            writer.close();
+        } catch (IOException e){
+            System.out.println("Failed to write optimizer report.");
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package execution;
+
+import objects.Event.ArrivalEvent;
+import objects.Event.DepartureEvent;
+import objects.Event.Event;
+import objects.Event.GenEvent;
+import objects.Event.PatienceEvent;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+/**
+ * The events a Station has yet to handle. Rather than one priority queue holding every kind of event, each kind is kept
+ * the way that suits it, and the earliest of their fronts is handled next:
+ * <ul>
+ *   <li>the cars sampled at the Station, which arrive a day at a time, in an array sorted by time that is read through
+ *   with a cursor;</li>
+ *   <li>the cars that come from other Stations, which are few, in a heap of their own;</li>
+ *   <li>the cars on chargers, which are never more than the Station has chargers, in a heap of their departures;</li>
+ *   <li>the deadlines of the cars at the front of the waiting lines, about one for each charger class, in a heap;</li>
+ *   <li>the start of the next day, of which there is only ever one.</li>
+ * </ul>
+ * The heaps stay small however many cars arrive in a day. A rollback moves the cursor back over the sampled cars whose
+ * arrivals it undoes, so they arrive again from the array, and puts the cars from other Stations it undoes back into
+ * their heap. A sampled car is kept until the Global Minimum Time passes it, as until then a rollback may move the
+ * cursor back over it, and is let go of once the next day's cars are added.
+ * Events at the same time are handled in the same fixed order a single queue would give them.
+ */
+public class EventSources {
+    private static final Comparator<Event> ORDER =
+            Comparator.comparing(Event::getTimestamp).thenComparingInt(EventSources::rankOf).thenComparingLong(EventSources::carOf);
+    private ArrivalEvent[] sampled = new ArrivalEvent[64];
+    private int size;
+    private int cursor; //The first sampled car that has not arrived yet
+    private int kept; //The first sampled car a rollback may still undo; the ones before it are let go of by the next day
+    private final PriorityQueue<ArrivalEvent> incoming = new PriorityQueue<>(ORDER);
+    private final PriorityQueue<DepartureEvent> departures = new PriorityQueue<>(ORDER);
+    private final PriorityQueue<PatienceEvent> deadlines = new PriorityQueue<>(ORDER);
+    private GenEvent nextDay;
+
+    /**
+     * Adds a single event to the source for its kind. Arrivals added this way are cars from other Stations; a Station's
+     * own cars are added a day at a time by {@link #addDay}.
+     * @param e the event.
+     */
+    public void add(Event e){
+        if (e instanceof DepartureEvent)
+            departures.add((DepartureEvent) e);
+        else if (e instanceof PatienceEvent)
+            deadlines.add((PatienceEvent) e);
+        else if (e instanceof ArrivalEvent)
+            incoming.add((ArrivalEvent) e);
+        else if (e instanceof GenEvent)
+            nextDay = (GenEvent) e;
+    }
+
+    /**
+     * Adds the cars sampled for a day after the ones already sampled. Every car of a day arrives no earlier than the cars
+     * of the day before.
+     * @param cars the day's cars, in any order.
+     */
+    public void addDay(ArrivalEvent[] cars){
+        Arrays.sort(cars, ORDER);
+        if (size + cars.length > sampled.length) {
+            int live = size - kept;
+            ArrivalEvent[] grown = live + cars.length > sampled.length / 2
+                    ? new ArrivalEvent[Math.max(sampled.length * 2, live + cars.length)] : sampled; //Reused when letting go of the front makes room
+            System.arraycopy(sampled, kept, grown, 0, live);
+            Arrays.fill(grown, live, size, null);
+            sampled = grown;
+            size = live;
+            cursor -= kept;
+            kept = 0;
+        }
+        System.arraycopy(cars, 0, sampled, size, cars.length);
+        size += cars.length;
+    }
+
+    /**
+     * Lets go of the sampled cars that arrived before a time no rollback can reach back past. They are dropped the next
+     * time a day's cars are added.
+     * @param committed the time, such as the Global Minimum Time, that no rollback goes back before.
+     */
+    public void release(Instant committed){
+        while (kept < cursor && sampled[kept].getTimestamp().isBefore(committed))
+            kept++;
+    }
+
+    /**
+     * Moves the cursor back over every sampled car that arrived after a time, so that each arrives again. A rollback to
+     * the time has undone all of their arrivals.
+     * @param rewind the time being rolled back to.
+     */
+    public void rewind(Instant rewind){
+        while (cursor > kept && sampled[cursor - 1].getTimestamp().isAfter(rewind))
+            cursor--;
+    }
+
+    /**
+     * Puts back a car from another Station whose arrival a rollback has undone. A car sampled at the Station has not
+     * balked on its way there, and arrives again once {@link #rewind} has moved the cursor back over it, so is left out.
+     * @param a the Arrival Event of the car.
+     */
+    public void requeue(ArrivalEvent a){
+        if (a.getBalks() > 0)
+            incoming.add(a);
+    }
+
+    /**
+     * @return the event that is handled next, or null if there is none.
+     */
+    public Event peek(){
+        Event next = cursor < size ? sampled[cursor] : null;
+        next = earlier(next, incoming.peek());
+        next = earlier(next, departures.peek());
+        next = earlier(next, deadlines.peek());
+        return earlier(next, nextDay);
+    }
+
+    /**
+     * Takes the event that is handled next out of its source.
+     * @return the event.
+     * @throws NoSuchElementException if there is none.
+     */
+    public Event remove(){
+        Event next = peek();
+        if (next == null)
+            throw new NoSuchElementException();
+        if (next == nextDay)
+            nextDay = null;
+        else if (cursor < size && next == sampled[cursor])
+            cursor++;
+        else if (next instanceof DepartureEvent)
+            departures.remove();
+        else if (next instanceof PatienceEvent)
+            deadlines.remove();
+        else
+            incoming.remove();
+        return next;
+    }
+
+    public boolean isEmpty(){
+        return peek() == null;
+    }
+
+    /**
+     * @return the departures of the cars on chargers. Departures may be taken out through the iterator.
+     */
+    public Iterator<DepartureEvent> departures(){
+        return departures.iterator();
+    }
+
+    /**
+     * @return the deadlines of waiting cars.
+     */
+    public Collection<PatienceEvent> getDeadlines(){
+        return deadlines;
+    }
+
+    /**
+     * Throws away the deadline of every waiting car.
+     */
+    public void clearDeadlines(){
+        deadlines.clear();
+    }
+
+    /**
+     * Takes away the cars from other Stations that match a condition.
+     * @param filter the condition.
+     */
+    public void removeIncomingIf(Predicate<ArrivalEvent> filter){
+        incoming.removeIf(filter);
+    }
+
+    private static Event earlier(Event e1, Event e2){
+        if (e1 == null)
+            return e2;
+        return e2 == null || ORDER.compare(e1, e2) <= 0 ? e1 : e2;
+    }
+
+    /**
+     * Events at the same time are handled departures first, then deadlines for waiting cars, then arrivals, then the start
+     * of a new day, and events of the same kind in the order of their cars' ids. The order would otherwise depend on the
+     * order the events were added in, so two runs in the same state could go on to handle the same events differently.
+     * @param e an event.
+     * @return the rank of its kind.
+     */
+    private static int rankOf(Event e){
+        if (e instanceof DepartureEvent)
+            return 0;
+        if (e instanceof PatienceEvent)
+            return 1;
+        if (e instanceof ArrivalEvent)
+            return 2;
+        return 3;
+    }
+
+    /**
+     * @param e an event.
+     * @return the id of the car the event is about, or 0 for the start of a new day.
+     */
+    private static long carOf(Event e){
+        if (e instanceof DepartureEvent)
+            return ((DepartureEvent) e).getCarId();
+        if (e instanceof PatienceEvent)
+            return ((PatienceEvent) e).getCar().getId();
+        if (e instanceof ArrivalEvent)
+            return ((ArrivalEvent) e).getId();
+        return 0;
+    }
+}
@@ -0,0 +1,46 @@
+package execution.History;
+
+import objects.Event.Event;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.function.Predicate;
+
+/**
+ * A History Log kept on the heap, as a priority queue of the events themselves with the latest event at its head.
+ */
+public class HeapHistoryLog implements HistoryLog {
+    private final Queue<Event> events = new PriorityQueue<>(
+            (e1, e2) -> e2.getTimestamp().compareTo(e1.getTimestamp())
+    ); //It is REVERSED, so the latest event comes out first
+
+    public void add(Event e){
+        events.add(e);
+    }
+
+    public Event pollAfter(Instant rewind){
+        Event e = events.peek();
+        return e != null && e.getTimestamp().isAfter(rewind) ? events.remove() : null;
+    }
+
+    public List<Event> removeIf(Instant from, Predicate<Event> filter){
+        ArrayList<Event> removed = new ArrayList<>();
+        Iterator<Event> iter = events.iterator();
+        while (iter.hasNext()) {
+            Event e = iter.next();
+            if (!e.getTimestamp().isBefore(from) && filter.test(e)) {
+                iter.remove();
+                removed.add(e);
+            }
+        }
+        return removed;
+    }
+
+    public void prune(Instant before){
+        events.removeIf(e -> e.getTimestamp().isBefore(before));
+    }
+}
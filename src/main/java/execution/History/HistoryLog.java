@@ -0,0 +1,58 @@
+package execution.History;
+
+import objects.Event.Event;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * The events a Station has handled that a rollback may still have to undo: cars that arrived or went on a charger, cars
+ * that left and cars that balked. A rollback takes events back out starting with the latest, and events that happened
+ * before the Global Minimum Time can never be undone, so they are pruned from time to time.
+ * The log is either kept on the heap, as a priority queue of the events themselves, or off the heap, as a stream of
+ * fixed-width records the garbage collector never has to trace.
+ */
+public interface HistoryLog {
+    /**
+     * Adds an event the Station has just handled.
+     * @param e the event.
+     */
+    void add(Event e);
+
+    /**
+     * Takes the latest event out of the log, if it happened after a given time.
+     * @param rewind the time being rolled back to.
+     * @return the latest event, or null if the log is empty or the latest event happened at or before that time.
+     */
+    Event pollAfter(Instant rewind);
+
+    /**
+     * Takes every event that happened at or after a given time and matches a filter out of the log.
+     * @param from the earliest time of any event the filter can match.
+     * @param filter picks out the events to take.
+     * @return the events taken, in no particular order.
+     */
+    List<Event> removeIf(Instant from, Predicate<Event> filter);
+
+    /**
+     * Forgets every event that happened before a given time.
+     * @param before the Global Minimum Time, before which no event can be undone.
+     */
+    void prune(Instant before);
+
+    /**
+     * Lets go of the memory the log holds, once the Simulation has ended. Closing a log that is closed already does
+     * nothing.
+     */
+    default void close(){
+    }
+
+    /**
+     * @param store the name of a kind of log, "heap" or "offHeap".
+     * @return an empty log of that kind, on the heap if the name is not known.
+     */
+    static HistoryLog create(String store){
+        return store.equals("offHeap") ? new OffHeapHistoryLog() : new HeapHistoryLog();
+    }
+}
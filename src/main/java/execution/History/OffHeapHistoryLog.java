@@ -0,0 +1,238 @@
+package execution.History;
+
+import objects.Event.*;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * A History Log kept off the heap, as a stream of fixed-width records in the order the events happened. Adding an event
+ * appends a record, a rollback reads records back off the end, and pruning moves the start of the stream forward, so
+ * the log is never reordered and holds no objects for the garbage collector to trace. Every record is
+ * {@link #RECORD_SIZE} bytes long:
+ * <pre>
+ *   long  time          epoch second the event happened at
+ *   long  car           the id of the car
+ *   long  arrival       epoch second the car arrived
+ *   long  third         epoch second the car went on a charger for a departure, otherwise the bits of the energy the
+ *                       car wants, as a double
+ *   int   timeNanos     nanoseconds of the event's time
+ *   int   arrivalNanos  nanoseconds of the car's arrival
+ *   int   fourth        nanoseconds of the time the car went on a charger for a departure, otherwise how many times
+ *                       the car has balked
+ *   byte  kind          ARRIVAL, DEPARTURE, SERVICE or BALK
+ *   byte  chargeClass   the id of the car's charger class
+ *   byte  status        the departure status, or 0
+ *   byte  reserved
+ * </pre>
+ * Records are kept in chunks, each allocated from an arena of its own, so once every event in a chunk is older than the
+ * Global Minimum Time the whole chunk is freed at once. One emptied chunk is kept back to be reused, since a Station
+ * that prunes as it goes needs a new chunk about as often as it frees one. The arenas are shared, as a Station may be
+ * run on different threads over the course of the Simulation.
+ * An event handled after a rollback is never earlier than the events left in the log, so records are always appended
+ * in order; an event that is earlier all the same is put into its place behind the events after it.
+ */
+public class OffHeapHistoryLog implements HistoryLog {
+    public static final int RECORD_SIZE = 48;
+    static final int CHUNK_RECORDS = 4096;
+    private static final long TIME = 0, CAR = 8, ARRIVAL_TIME = 16, THIRD = 24, TIME_NANOS = 32, ARRIVAL_NANOS = 36,
+            FOURTH = 40, KIND = 44, CHARGE_CLASS = 45, STATUS = 46;
+    private static final byte ARRIVAL = 1, DEPARTURE = 2, SERVICE = 3, BALK = 4;
+
+    private final ArrayDeque<Chunk> chunks = new ArrayDeque<>(); //No chunk in the deque is ever empty
+    private Chunk spare;
+
+    /**
+     * A run of records allocated together, holding the records from start up to, but not including, end.
+     */
+    private static final class Chunk {
+        private final Arena arena = Arena.ofShared();
+        private final MemorySegment records = arena.allocate((long) CHUNK_RECORDS * RECORD_SIZE, 8);
+        private int start;
+        private int end;
+    }
+
+    public void add(Event e){
+        Chunk last = chunks.peekLast();
+        if (last != null && compare(last.records, offset(last.end - 1), e.getTimestamp()) > 0) {
+            ArrayList<Event> later = new ArrayList<>();
+            for (Event l = pollAfter(e.getTimestamp()); l != null; l = pollAfter(e.getTimestamp()))
+                later.add(l);
+            append(e);
+            for (int i = later.size() - 1; i >= 0; i--)
+                append(later.get(i));
+            return;
+        }
+        append(e);
+    }
+
+    public Event pollAfter(Instant rewind){
+        Chunk last = chunks.peekLast();
+        if (last == null || compare(last.records, offset(last.end - 1), rewind) <= 0)
+            return null;
+        Event e = read(last.records, offset(--last.end));
+        if (last.end == last.start)
+            release(chunks.removeLast());
+        return e;
+    }
+
+    /**
+     * Reads every event at or after the given time back off the end of the log, then appends again the ones the filter
+     * does not match. Only a rollback recalls a car, and by then the log holds nothing after the time being rolled back
+     * to, so very few events are read.
+     */
+    public List<Event> removeIf(Instant from, Predicate<Event> filter){
+        Instant justBefore = from.minusNanos(1);
+        ArrayList<Event> taken = new ArrayList<>();
+        for (Event e = pollAfter(justBefore); e != null; e = pollAfter(justBefore))
+            taken.add(e);
+        ArrayList<Event> removed = new ArrayList<>();
+        for (int i = taken.size() - 1; i >= 0; i--) {
+            if (filter.test(taken.get(i)))
+                removed.add(taken.get(i));
+            else
+                append(taken.get(i));
+        }
+        return removed;
+    }
+
+    /**
+     * Frees every chunk whose last event is before the given time, then moves the start of the first chunk left past
+     * its events before that time, found by binary search since the records are in order.
+     */
+    public void prune(Instant before){
+        while (!chunks.isEmpty()) {
+            Chunk first = chunks.peekFirst();
+            if (compare(first.records, offset(first.end - 1), before) < 0) {
+                release(chunks.removeFirst());
+                continue;
+            }
+            int low = first.start;
+            int high = first.end - 1;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (compare(first.records, offset(middle), before) < 0)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            first.start = low;
+            return;
+        }
+    }
+
+    public void close(){
+        for (Chunk c : chunks)
+            c.arena.close();
+        chunks.clear();
+        if (spare != null)
+            spare.arena.close();
+        spare = null;
+    }
+
+    /**
+     * Writes an event to the end of the log, starting a new chunk if the last one is full.
+     * @param e the event.
+     */
+    private void append(Event e){
+        Chunk last = chunks.peekLast();
+        if (last == null || last.end == CHUNK_RECORDS) {
+            last = spare != null ? spare : new Chunk();
+            spare = null;
+            last.start = 0;
+            last.end = 0;
+            chunks.addLast(last);
+        }
+        write(last.records, offset(last.end++), e);
+    }
+
+    /**
+     * Keeps an emptied chunk back to be reused, or frees it if one is kept back already.
+     * @param c the chunk.
+     */
+    private void release(Chunk c){
+        if (spare == null)
+            spare = c;
+        else
+            c.arena.close();
+    }
+
+    private static long offset(int record){
+        return (long) record * RECORD_SIZE;
+    }
+
+    /**
+     * @param records the records of a chunk.
+     * @param at the offset of a record.
+     * @param time a time.
+     * @return less than, equal to or greater than zero as the record's event happened before, at or after the time.
+     */
+    private static int compare(MemorySegment records, long at, Instant time){
+        int bySecond = Long.compare(records.get(ValueLayout.JAVA_LONG, at + TIME), time.getEpochSecond());
+        return bySecond != 0 ? bySecond : Integer.compare(records.get(ValueLayout.JAVA_INT, at + TIME_NANOS), time.getNano());
+    }
+
+    private static void write(MemorySegment records, long at, Event e){
+        records.set(ValueLayout.JAVA_LONG, at + TIME, e.getTimestamp().getEpochSecond());
+        records.set(ValueLayout.JAVA_INT, at + TIME_NANOS, e.getTimestamp().getNano());
+        if (e instanceof DepartureEvent) {
+            DepartureEvent d = (DepartureEvent) e;
+            records.set(ValueLayout.JAVA_LONG, at + CAR, d.getCarId());
+            records.set(ValueLayout.JAVA_LONG, at + ARRIVAL_TIME, d.getArrivalTime().getEpochSecond());
+            records.set(ValueLayout.JAVA_INT, at + ARRIVAL_NANOS, d.getArrivalTime().getNano());
+            records.set(ValueLayout.JAVA_LONG, at + THIRD, d.getServiceTime().getEpochSecond());
+            records.set(ValueLayout.JAVA_INT, at + FOURTH, d.getServiceTime().getNano());
+            records.set(ValueLayout.JAVA_BYTE, at + KIND, DEPARTURE);
+            records.set(ValueLayout.JAVA_BYTE, at + CHARGE_CLASS, (byte) d.getChargeClass());
+            records.set(ValueLayout.JAVA_BYTE, at + STATUS, (byte) d.getStatus());
+            return;
+        }
+        ArrivalEvent car;
+        byte kind;
+        if (e instanceof ArrivalEvent) {
+            car = (ArrivalEvent) e;
+            kind = ARRIVAL;
+        } else if (e instanceof ServiceEvent) {
+            car = ((ServiceEvent) e).getCar();
+            kind = SERVICE;
+        } else if (e instanceof BalkEvent) {
+            car = ((BalkEvent) e).getEventToLeave();
+            kind = BALK;
+        } else {
+            throw new IllegalArgumentException("A history log cannot hold a " + e.getClass().getSimpleName());
+        }
+        records.set(ValueLayout.JAVA_LONG, at + CAR, car.getId());
+        records.set(ValueLayout.JAVA_LONG, at + ARRIVAL_TIME, car.getTimestamp().getEpochSecond());
+        records.set(ValueLayout.JAVA_INT, at + ARRIVAL_NANOS, car.getTimestamp().getNano());
+        records.set(ValueLayout.JAVA_LONG, at + THIRD, Double.doubleToRawLongBits(car.getChargeDesired()));
+        records.set(ValueLayout.JAVA_INT, at + FOURTH, car.getBalks());
+        records.set(ValueLayout.JAVA_BYTE, at + KIND, kind);
+        records.set(ValueLayout.JAVA_BYTE, at + CHARGE_CLASS, (byte) car.getChargeClass());
+        records.set(ValueLayout.JAVA_BYTE, at + STATUS, (byte) 0);
+    }
+
+    private static Event read(MemorySegment records, long at){
+        Instant time = Instant.ofEpochSecond(records.get(ValueLayout.JAVA_LONG, at + TIME), records.get(ValueLayout.JAVA_INT, at + TIME_NANOS));
+        long carId = records.get(ValueLayout.JAVA_LONG, at + CAR);
+        Instant arrival = Instant.ofEpochSecond(records.get(ValueLayout.JAVA_LONG, at + ARRIVAL_TIME),
+                records.get(ValueLayout.JAVA_INT, at + ARRIVAL_NANOS));
+        int chargeClass = records.get(ValueLayout.JAVA_BYTE, at + CHARGE_CLASS);
+        byte kind = records.get(ValueLayout.JAVA_BYTE, at + KIND);
+        if (kind == DEPARTURE)
+            return new DepartureEvent(time, carId, arrival, Instant.ofEpochSecond(records.get(ValueLayout.JAVA_LONG, at + THIRD),
+                    records.get(ValueLayout.JAVA_INT, at + FOURTH)), chargeClass, records.get(ValueLayout.JAVA_BYTE, at + STATUS));
+        ArrivalEvent car = new ArrivalEvent(carId, arrival, chargeClass,
+                Double.longBitsToDouble(records.get(ValueLayout.JAVA_LONG, at + THIRD)), records.get(ValueLayout.JAVA_INT, at + FOURTH));
+        if (kind == SERVICE)
+            return new ServiceEvent(time, car);
+        if (kind == BALK)
+            return new BalkEvent(time, car);
+        return car;
+    }
+}
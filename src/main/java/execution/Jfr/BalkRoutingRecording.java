@@ -0,0 +1,64 @@
+package execution.Jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded by the Monitor for every Balk Message it routes, lasting from the moment the Monitor took the message out of
+ * its Mailbox until it was handed to the destination's Mailbox. The Monitor routes a batch of messages before it delivers
+ * any of them, so the event takes in the rest of the batch being routed. A message that could not be sent anywhere ends
+ * its event as soon as it has been routed.
+ */
+@Name("evsim.BalkRouting")
+@Label("Balk Routing")
+@Category("EV Simulator")
+@Description("The Monitor passing a balking or recalled car on to another Station")
+public class BalkRoutingRecording extends jdk.jfr.Event {
+    @Label("From")
+    String sender;
+
+    @Label("To")
+    @Description("The Station the car was sent to, or empty if it could not be sent anywhere")
+    String destination;
+
+    @Label("Retread")
+    boolean retread;
+
+    @Label("Monitor Backlog")
+    @Description("True if more messages were waiting for the Monitor once this one was routed")
+    boolean backlog;
+
+    /**
+     * @return a new event that has started timing.
+     */
+    public static BalkRoutingRecording start(){
+        BalkRoutingRecording r = new BalkRoutingRecording();
+        r.begin();
+        return r;
+    }
+
+    /**
+     * Notes where the message was routed, to be written once the event ends.
+     * @param sender the Station the message came from.
+     * @param destination the Station the message was sent to, or null.
+     * @param retread true if the message recalls a car.
+     * @param backlog true if more messages are waiting for the Monitor.
+     */
+    public void routed(String sender, String destination, boolean retread, boolean backlog){
+        this.sender = sender;
+        this.destination = destination;
+        this.retread = retread;
+        this.backlog = backlog;
+    }
+
+    /**
+     * Ends the event and writes it to the recording.
+     */
+    public void finish(){
+        end();
+        if (shouldCommit())
+            commit();
+    }
+}
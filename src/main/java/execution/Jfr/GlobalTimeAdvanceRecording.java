@@ -0,0 +1,47 @@
+package execution.Jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+import jdk.jfr.Timestamp;
+
+/**
+ * Recorded by the Monitor each time the Global Minimum Time moves.
+ */
+@Name("evsim.GlobalTimeAdvance")
+@Label("Global Minimum Time Advance")
+@Category("EV Simulator")
+@Description("The Monitor moving the Global Minimum Time forward")
+public class GlobalTimeAdvanceRecording extends jdk.jfr.Event {
+    @Label("Simulated Time")
+    @Description("The new Global Minimum Time")
+    @Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+    long simulatedTime;
+
+    @Label("Advance")
+    @Description("How far the Global Minimum Time moved, in simulated time")
+    @Timespan(Timespan.SECONDS)
+    long advanceSeconds;
+
+    @Label("Slowest Station")
+    @Description("The Station whose report moved the Global Minimum Time")
+    String station;
+
+    /**
+     * Writes an event to the recording, if the event is enabled in it.
+     * @param simulatedEpochSecond the new Global Minimum Time, in epoch seconds.
+     * @param advanceSeconds how far it moved, in simulated seconds.
+     * @param station the Station whose Timing Message moved it.
+     */
+    public static void record(long simulatedEpochSecond, long advanceSeconds, String station){
+        GlobalTimeAdvanceRecording r = new GlobalTimeAdvanceRecording();
+        if (r.shouldCommit()) {
+            r.simulatedTime = simulatedEpochSecond * 1000;
+            r.advanceSeconds = advanceSeconds;
+            r.station = station;
+            r.commit();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package execution.Jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded each time a Station, group of Stations, or the Monitor blocks waiting for something to do, lasting as long as
+ * it was blocked.
+ */
+@Name("evsim.MailboxStall")
+@Label("Mailbox Stall")
+@Category("EV Simulator")
+@Description("A part of the Simulation blocked until a message arrives or the Global Minimum Time catches up")
+public class MailboxStallRecording extends jdk.jfr.Event {
+    /** The process had no events left and waited for a message. */
+    public static final String IDLE = "idle";
+    /** The process was held by its Optimism Window. */
+    public static final String HELD = "held";
+    /** The Monitor waited for a message from the Stations. */
+    public static final String MONITOR = "monitor";
+
+    @Label("Owner")
+    String owner;
+
+    @Label("Reason")
+    String reason;
+
+    /**
+     * @return a new event that has started timing.
+     */
+    public static MailboxStallRecording start(){
+        MailboxStallRecording r = new MailboxStallRecording();
+        r.begin();
+        return r;
+    }
+
+    /**
+     * Ends the event and writes it to the recording.
+     * @param owner the name of the process that was blocked.
+     * @param reason why it was blocked, one of IDLE, HELD or MONITOR.
+     */
+    public void finish(String owner, String reason){
+        end();
+        if (shouldCommit()) {
+            this.owner = owner;
+            this.reason = reason;
+            commit();
+        }
+    }
+}
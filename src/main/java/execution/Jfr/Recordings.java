@@ -0,0 +1,29 @@
+package execution.Jfr;
+
+/**
+ * Switches the Simulation's Java Flight Recorder events on or off. When they are off, which is the default, the
+ * Simulation never creates them, so the only cost is a check of a static field at each place an event could be recorded.
+ * When they are on, the events are still only written to a recording that has them enabled, such as one started with the
+ * bundled jfr/evsim.jfc settings.
+ */
+public final class Recordings {
+    private static boolean enabled;
+
+    private Recordings(){
+    }
+
+    /**
+     * Turns the Simulation's events on or off. Must be called before any Station or the Monitor is started.
+     * @param on true to create events.
+     */
+    public static void enable(boolean on){
+        enabled = on;
+    }
+
+    /**
+     * @return true if the Simulation's events are on.
+     */
+    public static boolean enabled(){
+        return enabled;
+    }
+}
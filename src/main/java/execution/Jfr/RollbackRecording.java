@@ -0,0 +1,58 @@
+package execution.Jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Recorded each time a Station rolls back because of a Balk Message, lasting as long as the rollback took.
+ */
+@Name("evsim.Rollback")
+@Label("Rollback")
+@Category("EV Simulator")
+@Description("A Station undoing events because a car balked to it or was recalled from it")
+public class RollbackRecording extends jdk.jfr.Event {
+    @Label("Station")
+    String station;
+
+    @Label("Rewind Depth")
+    @Description("How far back, in simulated time, the Station rolled back from the last event it handled")
+    @Timespan(Timespan.SECONDS)
+    long rewindSeconds;
+
+    @Label("Events Undone")
+    int eventsUndone;
+
+    @Label("Retread")
+    @Description("True if the rollback recalls a car the Station was given, rather than taking in a new one")
+    boolean retread;
+
+    /**
+     * @return a new event that has started timing.
+     */
+    public static RollbackRecording start(){
+        RollbackRecording r = new RollbackRecording();
+        r.begin();
+        return r;
+    }
+
+    /**
+     * Ends the event and writes it to the recording.
+     * @param station the name of the Station.
+     * @param rewindSeconds how far back the Station rolled, in simulated seconds.
+     * @param eventsUndone the number of events that were undone.
+     * @param retread true if the rollback recalls a car.
+     */
+    public void finish(String station, long rewindSeconds, int eventsUndone, boolean retread){
+        end();
+        if (shouldCommit()) {
+            this.station = station;
+            this.rewindSeconds = rewindSeconds;
+            this.eventsUndone = eventsUndone;
+            this.retread = retread;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,432 @@
+package execution;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import execution.Jfr.MailboxStallRecording;
+import execution.Jfr.Recordings;
+import execution.Transport.LocalMailbox;
+import execution.Transport.Inbox;
+import execution.Transport.Mailbox;
+import execution.Transport.Outbox;
+import objects.Event.ArrivalEvent;
+import objects.GlobalTime;
+import objects.Message.BalkMessage;
+import objects.Message.EndMessage;
+import objects.Message.Message;
+import objects.Message.TimingMessage;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A Logical Process runs a group of Station Simulators on a single thread, interleaving their events in timestamp order.
+ * To the Monitor the whole group looks like one Station: it has a single Mailbox, and it reports a single time, the time
+ * of the last event handled by any Station in the group, and only when that time changes. The time is sent in a Timing
+ * Message, or posted on the Time Board when the group has a slot on one.
+ * When a car balks from a Station in the group, the Logical Process chooses where it goes as though it were picking any
+ * other Station in the Simulation at random. If the chosen Station is in the same group, the car is handed over directly
+ * without passing through the Monitor; otherwise it is sent to the Monitor, which picks one of the other groups. A
+ * recalled car follows the leg of its journey being undone: a leg handed between two members is recalled within the
+ * group, and every other recall goes up to the Monitor, which knows where the car was sent. When
+ * the Monitor routes by how busy the Stations are, the group posts the chargers and waiting cars of all its members
+ * added together, as though it were one large Station.
+ */
+public class LogicalProcess implements SteppedProcess {
+    private final String groupName;
+    private final GlobalTime gT;
+    private final StationSimulator[] members;
+    private final Mailbox[] memberQueues;
+    private final ArrayList<Message> inbox = new ArrayList<>(); //Messages drained from a member's Mailbox together
+    private final ArrayList<BalkMessage> balks = new ArrayList<>();
+    private final HashMap<String, Integer> memberIndices = new HashMap<>();
+    private final RoutingTable arrivals = new RoutingTable(); //The member each car that balked into the group from outside was given to
+    private final RoutingTable handoffs = new RoutingTable(); //The member each car that balked from one member to another was handed to
+    private Instant lastEvicted;
+    private final Outbox stationToMonitorQueue;
+    private final Inbox monitorToGroupQueue;
+    private final int totalStations;
+    private OptimismWindow window;
+    private Instant lastReported;
+    private long received; //Messages read from the Monitor, which the Monitor uses to tell when the Simulation is over
+    private long lastReportedReceived = -1;
+    private long sent; //Balk Messages sent to the Monitor
+    private long lastReportedSent = -1;
+    private TimeBoard board; //Null when the group sends its time to the Monitor in Timing Messages
+    private int slot;
+    private OccupancyBoard occupancy; //Null unless the Monitor routes balking cars by how busy the groups are
+    private int occupancySlot;
+    private boolean ended = false;
+    private static final long HOLD_NANOS = 1_000_000;
+
+    /**
+     * Constructor to create a Logical Process and every Station in its group.
+     * @param groupName the name the group is known by to the Monitor.
+     * @param configs the full config of every Station in the group.
+     * @param gT the Global Time object.
+     * @param smQ the Mailbox which goes from all Stations to the Monitor.
+     * @param mgQ the Mailbox which goes from the Monitor to this group.
+     * @param totalStations the number of Stations in the whole Simulation.
+     */
+    public LogicalProcess(String groupName, List<? extends JsonNode> configs, GlobalTime gT, Outbox smQ, Inbox mgQ, int totalStations){
+        this(groupName, configs, gT, smQ, mgQ, totalStations, null);
+    }
+
+    /**
+     * Constructor to create a Logical Process that posts the group's time on a Time Board rather than sending it to the
+     * Monitor.
+     * @param groupName the name the group is known by to the Monitor.
+     * @param configs the full config of every Station in the group.
+     * @param gT the Global Time object.
+     * @param smQ the Mailbox which goes from all Stations to the Monitor.
+     * @param mgQ the Mailbox which goes from the Monitor to this group.
+     * @param totalStations the number of Stations in the whole Simulation.
+     * @param board the board the group posts its time on, which must hold a slot under the group's name, or null to send
+     *              Timing Messages.
+     */
+    public LogicalProcess(String groupName, List<? extends JsonNode> configs, GlobalTime gT, Outbox smQ, Inbox mgQ, int totalStations,
+                          TimeBoard board){
+        this(groupName, configs, gT, smQ, mgQ, totalStations, board, null);
+    }
+
+    /**
+     * Constructor to create a Logical Process that also posts how busy its group is on an Occupancy Board after every
+     * event, for the Monitor to route balking cars by.
+     * @param groupName the name the group is known by to the Monitor.
+     * @param configs the full config of every Station in the group.
+     * @param gT the Global Time object.
+     * @param smQ the Mailbox which goes from all Stations to the Monitor.
+     * @param mgQ the Mailbox which goes from the Monitor to this group.
+     * @param totalStations the number of Stations in the whole Simulation.
+     * @param board the board the group posts its time on, which must hold a slot under the group's name, or null to send
+     *              Timing Messages.
+     * @param occupancy the board the group posts how busy it is on, which must hold a slot under the group's name, or null
+     *                  to post nothing.
+     */
+    public LogicalProcess(String groupName, List<? extends JsonNode> configs, GlobalTime gT, Outbox smQ, Inbox mgQ, int totalStations,
+                          TimeBoard board, OccupancyBoard occupancy){
+        this.groupName = groupName;
+        this.board = board;
+        if (board != null)
+            slot = board.indexOf(groupName);
+        this.occupancy = occupancy;
+        if (occupancy != null)
+            occupancySlot = occupancy.indexOf(groupName);
+        this.gT = gT;
+        this.stationToMonitorQueue = smQ;
+        this.monitorToGroupQueue = mgQ;
+        this.totalStations = totalStations;
+        this.members = new StationSimulator[configs.size()];
+        this.memberQueues = new Mailbox[configs.size()];
+        Outbox uplink = new GroupUplink();
+        for (int i = 0; i < members.length; i++) {
+            memberQueues[i] = new LocalMailbox();
+            members[i] = new StationSimulator(configs.get(i), gT, uplink, memberQueues[i]);
+            memberIndices.put(members[i].getStationName(), i);
+        }
+        if (configs.get(0).has("optimismWindow"))
+            window = new OptimismWindow(configs.get(0).get("optimismWindow"));
+    }
+
+    /**
+     * Runs every Station in the group until the Monitor ends the Simulation, then prints each Station's statistics.
+     */
+    @Override
+    public void run(){
+        try {
+            while (true) {
+                Slice slice = runSlice(Integer.MAX_VALUE);
+                if (slice == Slice.DONE)
+                    break;
+                if (slice == Slice.HELD)
+                    awaitWindow();
+                else if (slice == Slice.IDLE) {
+                    MailboxStallRecording recording = Recordings.enabled() ? MailboxStallRecording.start() : null;
+                    deliver(monitorToGroupQueue.take()); //Nothing can happen in the group until a message arrives
+                    if (recording != null)
+                        recording.finish(groupName, MailboxStallRecording.IDLE);
+                }
+            }
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        finish();
+    }
+
+    /**
+     * Runs the group for at most a given number of events. Each pass hands out any messages that have arrived, then
+     * handles the earliest pending event of any Station in the group. When no Station has an event left, the group tells
+     * the Monitor it is done.
+     * @param maxEvents the most events to handle before returning.
+     * @return how the slice ended.
+     * @throws InterruptedException if the thread is interrupted while taking a message.
+     */
+    @Override
+    public Slice runSlice(int maxEvents) throws InterruptedException {
+        for (int n = 0; n < maxEvents; n++) {
+            if (gT.isCancelled())
+                return Slice.DONE;
+            deliverMessages();
+            int next = nextMember();
+            if (next < 0) {
+                if (ended)
+                    return Slice.DONE;
+                if (!monitorToGroupQueue.isEmpty())
+                    continue;
+                if (report(gT.getEndInstant()))
+                    nudge();
+                return Slice.IDLE;
+            }
+            Instant nextTime = members[next].getNextEventTime();
+            if (window != null && !ended && !window.allows(nextTime, gT.getGlobalMinimumTime())) {
+                if (!monitorToGroupQueue.isEmpty())
+                    continue;
+                window.held();
+                if (report(nextTime))
+                    nudge();
+                return Slice.HELD;
+            }
+            members[next].processNextEvent();
+            if (window != null)
+                window.eventProcessed();
+            report(members[next].getStationTime());
+            postOccupancy();
+        }
+        return Slice.RAN;
+    }
+
+    /**
+     * @return the time the group last reported to the Monitor, or the start of the Simulation if it has not reported yet.
+     */
+    @Override
+    public Instant getLocalTime(){
+        return lastReported == null ? gT.getStartInstant() : lastReported;
+    }
+
+    /**
+     * @return the number of events handled by every Station in the group, added up.
+     */
+    @Override
+    public long getEventsProcessed(){
+        long processed = 0;
+        for (StationSimulator member : members)
+            processed += member.getEventsProcessed();
+        return processed;
+    }
+
+    /**
+     * @return true if a message from the Monitor is waiting in the group's Mailbox.
+     */
+    @Override
+    public boolean hasMessages(){
+        return !monitorToGroupQueue.isEmpty();
+    }
+
+    /**
+     * Registers an action to run whenever a message from the Monitor arrives for the group.
+     * @param wakeup the action to run, on the thread that delivers the message.
+     */
+    @Override
+    public void setWakeup(Runnable wakeup){
+        monitorToGroupQueue.setListener(wakeup);
+    }
+
+    /**
+     * @return the name the group is known by to the Monitor.
+     */
+    @Override
+    public String getName(){
+        return groupName;
+    }
+
+    /**
+     * @return the Stations run by this Logical Process.
+     */
+    public List<StationSimulator> getMembers(){
+        return List.of(members);
+    }
+
+    /**
+     * Finishes every Station in the group, which writes each one's statistics.
+     */
+    @Override
+    public void finish(){
+        for (StationSimulator member : members)
+            member.finish();
+    }
+
+    /**
+     * @return the position of the Station holding the earliest pending event in the group, or -1 if no Station has
+     * an event left.
+     */
+    private int nextMember(){
+        int next = -1;
+        Instant earliest = null;
+        for (int i = 0; i < members.length; i++) {
+            Instant t = members[i].getNextEventTime();
+            if (t != null && (earliest == null || t.isBefore(earliest))) {
+                earliest = t;
+                next = i;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Hands every message waiting in the group's Mailbox to the Station it is meant for, then lets each Station act on
+     * the messages waiting for it, which includes cars handed over from other Stations in the group. Each Station takes
+     * all of its messages at once and is rolled back at most once for them.
+     * @throws InterruptedException if the thread is interrupted while taking a message.
+     */
+    private void deliverMessages() throws InterruptedException {
+        while (!monitorToGroupQueue.isEmpty())
+            deliver(monitorToGroupQueue.take());
+        for (int i = 0; i < members.length; i++) {
+            if (memberQueues[i].drainTo(inbox) == 0)
+                continue;
+            for (Message msg : inbox)
+                if (msg instanceof BalkMessage)
+                    balks.add((BalkMessage) msg);
+            inbox.clear();
+            long before = members[i].getStats().getNumEventsRolledBack();
+            members[i].backtrack(balks);
+            balks.clear();
+            if (window != null)
+                window.rolledBack((int) (members[i].getStats().getNumEventsRolledBack() - before));
+        }
+    }
+
+    /**
+     * Hands a single message from the Monitor to a Station in the group. A car balking from another group goes to a
+     * random member, and a recalled car goes back to the member it was given to when it came into the group.
+     * @param msg the message from the Monitor.
+     */
+    private void deliver(Message msg){
+        received++;
+        if (msg instanceof EndMessage) {
+            ended = true;
+        } else if (msg instanceof BalkMessage) {
+            BalkMessage b = (BalkMessage) msg;
+            ArrivalEvent car = b.getEventToLeave();
+            if (b.getRetread()) {
+                int member = arrivals.get(car.getId(), car.getTimestamp());
+                if (member >= 0) //A leg that is no longer in the table began before the Global Minimum Time, and so cannot really be recalled
+                    memberQueues[member].put(msg);
+                return;
+            }
+            int member = ThreadLocalRandom.current().nextInt(members.length);
+            arrivals.put(car.getId(), member, car.getTimestamp());
+            memberQueues[member].put(msg);
+        }
+    }
+
+    /**
+     * Tells the Monitor the group's time and the number of messages the group has read and sent, if any of them has
+     * changed since it was last told. A recall held back by a rollback at any Station in the group may still be sent
+     * for a time before the group's, so the group reports the earliest of those times.
+     * @param time the group's current time.
+     * @return true if anything was reported.
+     */
+    private boolean report(Instant time){
+        for (StationSimulator member : members) {
+            Instant held = member.getHeldRetreadTime();
+            if (held != null && held.isBefore(time))
+                time = held;
+        }
+        if (time.equals(lastReported) && received == lastReportedReceived && sent == lastReportedSent)
+            return false;
+        if (board != null)
+            board.post(slot, time, sent, received);
+        else
+            stationToMonitorQueue.put(new TimingMessage(time, groupName, received));
+        lastReported = time;
+        lastReportedReceived = received;
+        lastReportedSent = sent;
+        Instant globalMinimumTime = gT.getGlobalMinimumTime();
+        if (!globalMinimumTime.equals(lastEvicted)) {
+            arrivals.evictBefore(globalMinimumTime);
+            handoffs.evictBefore(globalMinimumTime);
+            lastEvicted = globalMinimumTime;
+        }
+        return true;
+    }
+
+    /**
+     * Posts the chargers of each class, the free ones and the cars waiting for one, added up over every Station in the
+     * group, on the Occupancy Board, if there is one.
+     */
+    private void postOccupancy(){
+        if (occupancy == null)
+            return;
+        for (int c = 0; c < occupancy.getNumClasses(); c++) {
+            int chargers = 0, free = 0, waiting = 0;
+            for (StationSimulator member : members) {
+                chargers += member.getChargers(c);
+                free += member.getFreeChargers(c);
+                waiting += member.getWaitingCars(c);
+            }
+            occupancy.post(occupancySlot, c, chargers, free, waiting);
+        }
+    }
+
+    /**
+     * Asks the Monitor to read the Time Board now, once the group has run out of work or is being held by its Optimism
+     * Window, so that the Global Minimum Time moves on promptly.
+     */
+    private void nudge(){
+        if (board != null)
+            stationToMonitorQueue.put(new TimingMessage(lastReported, groupName, received));
+    }
+
+    /**
+     * Blocks a group that is being held by its Optimism Window until the Global Minimum Time catches up or a message
+     * arrives from the Monitor.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    private void awaitWindow() throws InterruptedException {
+        int next = nextMember();
+        if (next < 0)
+            return;
+        MailboxStallRecording recording = Recordings.enabled() ? MailboxStallRecording.start() : null;
+        Instant catchUp = members[next].getNextEventTime().minusSeconds(window.getWindowSeconds());
+        while (monitorToGroupQueue.isEmpty() && !gT.awaitGlobalMinimumTime(catchUp, HOLD_NANOS));
+        if (recording != null)
+            recording.finish(groupName, MailboxStallRecording.HELD);
+    }
+
+    /**
+     * The Mailbox every Station in the group uses to talk to the Monitor. It keeps Timing Messages to itself, since the
+     * group reports its own time, and settles balks between members of the group without involving the Monitor.
+     */
+    private class GroupUplink implements Outbox {
+        public void put(Message msg) {
+            if (msg instanceof TimingMessage)
+                return;
+            if (msg instanceof BalkMessage) {
+                BalkMessage b = (BalkMessage) msg;
+                Integer sender = memberIndices.get(b.getSender());
+                if (b.getRetread()) { //Only a leg handed to another member is recalled here; the Monitor knows where the rest went
+                    int member = handoffs.get(b.getEventToLeave().getId(), b.getEventToLeave().getTimestamp());
+                    if (member >= 0) {
+                        memberQueues[member].put(b);
+                        return;
+                    }
+                } else if (members.length > 1 && sender != null
+                        && ThreadLocalRandom.current().nextInt(totalStations - 1) < members.length - 1) {
+                    int member = ThreadLocalRandom.current().nextInt(members.length - 1);
+                    if (member >= sender)
+                        member++; //Skip over the Station the car is leaving
+                    handoffs.put(b.getEventToLeave().getId(), member, b.getEventToLeave().getTimestamp());
+                    memberQueues[member].put(b);
+                    return;
+                }
+                //The Monitor only knows the group, so the car has to appear to come from the group
+                sent++;
+                stationToMonitorQueue.put(new BalkMessage(b.getTimestamp(), groupName, b.getEventToLeave(), b.getRetread()));
+                return;
+            }
+            stationToMonitorQueue.put(msg);
+        }
+    }
+}
@@ -2,15 +2,30 @@ package execution;
 
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import execution.Jfr.Recordings;
+import execution.Transport.LocalMailbox;
+import execution.Transport.Outbox;
+import execution.Transport.RemoteOutbox;
+import execution.Transport.SocketLink;
 import objects.GlobalTime;
-import objects.Message.Message;
+import objects.Message.EndMessage;
+import objects.Message.MessageCodec;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.JsonNode;
 import java.io.InputStream;
 import java.io.IOException;
 import java.io.FileWriter;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.*;
 
 //TIP To <b>Run</b> code, press <shortcut actionId="Run"/> or
@@ -25,7 +40,13 @@ public class Main {
      * from which particular data about the Stations to be simulated can be found. The main uses an Executor Service to
      * spawn off the Monitor process, the Monitor's message queues that go between the Monitor and Stations, and each Station
      * as its own spawned process. After spawning off all necessary processes, the main waits on all processes to finish.
-     * The main also times the execution and records that value in a file after execution.
+     * The main also times the execution and records that value in a file after execution, and adds up the load curve
+     * of every Station into the load curve of the whole city.
+     * When the config file sets "transport" to "socket", the Stations are instead run in "workerProcesses" separate
+     * worker processes, and only the Monitor runs in this process. Otherwise, when it sets "timeParallelSegments" above 1,
+     * the Simulation is cut into that many segments of simulated time that are run at once by a Time Parallel Runner.
+     * When the config file enables the "resultCache", a run that has been simulated before is not simulated again, and
+     * its stored results are copied into "out" instead.
      * @param args the arguments from command line. Not currently relevant.
      */
     public static void main(String[] args) {
@@ -40,60 +61,244 @@ public class Main {
             ObjectMapper mapper = new ObjectMapper();
             JsonNode rootNode = mapper.readTree(inputStream);
             String configFilesList = rootNode.get("configFile").asText();
+            Recordings.enable(rootNode.path("flightRecorderEvents").asBoolean(false));
             GlobalTime gT = new GlobalTime(rootNode.get("startTimeHr").asInt(), rootNode.get("startTimeMin").asInt(), rootNode.get("startTimeSec").asInt(), rootNode.get("runtime").asInt());
 
-            //Parallel Version
-            ConcurrentHashMap<String, BlockingQueue<Message>> monitorToStationQueues = new ConcurrentHashMap<>();
-            BlockingQueue<Message> stationToMonitorQueue = new LinkedBlockingQueue<>();
-            long startTime = System.nanoTime();
-            executor.submit(() -> {
-                Thread.currentThread().setName("Monitor");
-                new Monitor(gT, stationToMonitorQueue, monitorToStationQueues);
-            });
             inputStream = Main.class.getClassLoader().getResourceAsStream("config/"+configFilesList);
             if(inputStream == null){
                 throw new IOException("Station config file not found in resources");
             }
-            rootNode = mapper.readTree(inputStream);
-            JsonNode defaultConig = rootNode.get("defaultConfig");
-            ArrayNode stations = (ArrayNode) rootNode.get("stations");
-            ArrayList<ObjectNode> fullConfigs = new ArrayList<>();
-            for (JsonNode override: stations){
-                ObjectNode merged = defaultConig.deepCopy();
-                override.fields().forEachRemaining(field -> merged.set(field.getKey(),field.getValue()));
-                fullConfigs.add(merged);
-            }
-            for (ObjectNode fullConfig : fullConfigs){
-                BlockingQueue<Message> monitorToStationQueue = new LinkedBlockingQueue<>();
-                String stationName = fullConfig.get("name").asText();
-                monitorToStationQueues.put(stationName,monitorToStationQueue);
-                executor.submit(() -> {
-                    Thread.currentThread().setName(stationName);
-                    new StationSimulator(fullConfig, gT, stationToMonitorQueue, monitorToStationQueue);
-                });
-            }
-            executor.shutdown(); // Stop accepting new tasks
-            boolean terminate = true;
-            try {
-                terminate = executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS); // Wait for all tasks to complete
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-            if(terminate) {
-                long endTime = System.nanoTime();
-                long pDuration = endTime - startTime;
-                FileWriter writer = new FileWriter("out/simulatorReport.txt");
-                float secTime = (float) pDuration / 1000000000;
-                writer.write("The Simulation took " + pDuration + " nanoseconds or " + secTime + " seconds");
-                writer.close();
-            }
+            run(rootNode, gT, readStationConfigs(mapper.readTree(inputStream)), Path.of("out"), executor);
 
             //System.out.println(time);
         }catch (IOException e){
             System.out.println("The config file cannot be found");
         }catch (NullPointerException e){
             System.out.println("A parameter could not be found: " + e);
+        }catch (IllegalArgumentException e){
+            System.out.println("The station config is not valid: " + e.getMessage());
+        }
+
+    }
+
+    /**
+     * Runs a Simulation the way the config file describes it and writes its results, or copies them from the result cache
+     * if it is enabled and holds them. Along with every Station's statistics and load curve, the time the run took is
+     * written to "simulatorReport.txt", and the load curves are added up into "cityLoad.csv".
+     * @param rootNode the root of the master config file.
+     * @param gT the Global Time object of the Simulation.
+     * @param fullConfigs the full config of each Station. Their "outputDirectory" is set to the output directory.
+     * @param output the directory the results are written to, which is made if it does not exist.
+     * @param executor the Executor Service that the Monitor and Stations are spawned on, which is shut down once they
+     *                 are done.
+     * @return true if the run finished, or its results were found in the result cache.
+     * @throws IOException if the output directory or the timing report cannot be written.
+     */
+    public static boolean run(JsonNode rootNode, GlobalTime gT, ArrayList<ObjectNode> fullConfigs, Path output, ExecutorService executor) throws IOException {
+        Files.createDirectories(output);
+        ArrayList<String> stationNames = new ArrayList<>();
+        for (ObjectNode fullConfig : fullConfigs) {
+            stationNames.add(fullConfig.get("name").asText());
+            fullConfig.put("outputDirectory", output.toString());
+        }
+        ResultCache cache = ResultCache.fromConfig(rootNode);
+        String cacheKey = cache == null ? null : ResultCache.keyOf(rootNode, fullConfigs);
+        boolean cached = cacheKey != null && !rootNode.path("resultCache").path("refresh").asBoolean(false)
+                && cache.restore(cacheKey, stationNames, gT.getStartInstant(), output);
+        long startTime = System.nanoTime();
+        boolean terminate;
+        if(cached) {
+            executor.shutdown();
+            System.out.println("The results of this configuration were found in the result cache under " + cacheKey);
+            terminate = true;
+        }
+        else if(rootNode.path("transport").asText("local").equals("socket"))
+            terminate = runDistributed(rootNode, gT, fullConfigs, executor);
+        else if(rootNode.path("timeParallelSegments").asInt(0) > 1) {
+            executor.shutdown();
+            terminate = new TimeParallelRunner(rootNode, gT, fullConfigs).run();
+        }
+        else
+            terminate = new Simulation(rootNode, gT, fullConfigs).run(executor);
+        if(terminate && !cached) { //A cached run's timing report is the one written when it was simulated
+            long endTime = System.nanoTime();
+            long pDuration = endTime - startTime;
+            FileWriter writer = new FileWriter(output.resolve("simulatorReport.txt").toFile());
+            float secTime = (float) pDuration / 1000000000;
+            writer.write("The Simulation took " + pDuration + " nanoseconds or " + secTime + " seconds");
+            writer.close();
+            if (cacheKey != null)
+                cache.store(cacheKey, stationNames, gT.getStartInstant(), output);
+        }
+        if(terminate) {
+            ArrayList<Path> loadCurves = new ArrayList<>();
+            for (String name : stationNames)
+                loadCurves.add(output.resolve("load").resolve(name + ".csv"));
+            PowerGrid.writeCityLoad(loadCurves, output.resolve("cityLoad.csv"));
+        }
+        return terminate;
+    }
+
+    /**
+     * Merges every Station's overrides on top of the default config found in the station config file.
+     * @param rootNode the root of the station config file.
+     * @return the full config of each Station, in the order the Stations are listed.
+     * @throws IllegalArgumentException if a Station overrides its charger classes in a way that cannot be merged.
+     */
+    public static ArrayList<ObjectNode> readStationConfigs(JsonNode rootNode){
+        JsonNode defaultConig = rootNode.get("defaultConfig");
+        ArrayNode stations = (ArrayNode) rootNode.get("stations");
+        ArrayList<ObjectNode> fullConfigs = new ArrayList<>();
+        ChargerClass[] chargerClasses = ChargerClass.read(defaultConig);
+        for (JsonNode override: stations){
+            ObjectNode merged = defaultConig.deepCopy();
+            override.fields().forEachRemaining(field -> merged.set(field.getKey(),field.getValue()));
+            if (defaultConig.has("chargerClasses") || override.has("chargerClasses"))
+                merged.set("chargerClasses", ChargerClass.merge(defaultConig, override));
+            merged.put("stationIndex", fullConfigs.size()); //Used to give every car in the Simulation a unique id
+            ArrayNode classNames = merged.putArray("chargerClassNames"); //Charger classes are known by their position in the default config's list
+            for (ChargerClass c : chargerClasses)
+                classNames.add(c.getName());
+            fullConfigs.add(merged);
+        }
+        return fullConfigs;
+    }
+
+    /**
+     * Runs the Monitor inside this process and spreads the Stations across a number of worker processes on the same
+     * machine. Stations are dealt out to workers in turn, so worker i runs every Station whose position in the station
+     * config is i modulo the number of workers. The workers are launched with the same Java runtime, class path and JVM
+     * options as this process, are handed this run's configs through a file, and connect back to it over a loopback
+     * socket. A worker that exits before it connects, or that has not connected after "workerStartSeconds" seconds (30
+     * if left out), fails the run, as does a worker that fails while the Simulation runs, which cuts the run short.
+     * @param rootNode the root of the master config file.
+     * @param gT the Global Time object used by the Monitor.
+     * @param fullConfigs the full config of each Station.
+     * @param executor the Executor Service that the Monitor is spawned on.
+     * @return true if the Monitor and every worker process finished.
+     * @throws IOException if the workers could not be launched or connected to.
+     */
+    private static boolean runDistributed(JsonNode rootNode, GlobalTime gT, ArrayList<ObjectNode> fullConfigs, ExecutorService executor) throws IOException {
+        int workers = Math.max(1, Math.min(rootNode.path("workerProcesses").asInt(2), fullConfigs.size()));
+        ArrayList<String> stationNames = new ArrayList<>();
+        for (ObjectNode fullConfig : fullConfigs)
+            stationNames.add(fullConfig.get("name").asText());
+        MessageCodec codec = new MessageCodec(stationNames);
+        ConcurrentHashMap<String, Outbox> monitorToStationQueues = new ConcurrentHashMap<>();
+        LocalMailbox stationToMonitorQueue = new LocalMailbox();
+        ArrayList<SocketLink> links = new ArrayList<>();
+        ArrayList<Process> processes = new ArrayList<>();
+        Path configs = Files.createTempFile("workers", ".json");
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            ObjectMapper mapper = new ObjectMapper();
+            ObjectNode handedOver = mapper.createObjectNode();
+            handedOver.set("config", rootNode);
+            handedOver.putArray("stations").addAll(fullConfigs);
+            mapper.writeValue(configs.toFile(), handedOver);
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), rootNode.path("port").asInt(0)));
+            server.configureBlocking(false); //Accepting is polled, so that a worker that never connects is noticed
+            int port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+            for (int i = 0; i < workers; i++)
+                processes.add(new ProcessBuilder(workerCommand(port, i, workers, gT, configs)).inheritIO().start());
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(rootNode.path("workerStartSeconds").asLong(30));
+            for (int i = 0; i < workers; i++) {
+                SocketChannel channel = acceptWorker(server, processes, deadline);
+                if (channel == null) {
+                    for (Process p : processes)
+                        p.destroyForcibly();
+                    executor.shutdown();
+                    return false;
+                }
+                ByteBuffer hello = ByteBuffer.allocate(4);
+                while (hello.hasRemaining() && channel.read(hello) >= 0);
+                int worker = hello.flip().getInt();
+                SocketLink link = new SocketLink(channel, codec, gT, (destination, msg) -> stationToMonitorQueue.put(msg), "Worker " + worker);
+                for (short s = 0; s < stationNames.size(); s++)
+                    if (s % workers == worker)
+                        monitorToStationQueues.put(stationNames.get(s), new RemoteOutbox(link, s));
+                links.add(link);
+                link.start();
+            }
+        } finally {
+            Files.deleteIfExists(configs); //Every worker that connected has read it
         }
+        for (int i = 0; i < processes.size(); i++) {
+            int worker = i;
+            processes.get(i).onExit().thenAccept(p -> {
+                if (p.exitValue() != 0 && !gT.isCancelled()) { //The worker's Stations will never finish, so neither would the Monitor
+                    System.out.println("Worker " + worker + " failed with exit code " + p.exitValue() + ", so the Simulation is stopped");
+                    gT.cancel();
+                    stationToMonitorQueue.put(new EndMessage(gT.getEndInstant(), "Simulation"));
+                }
+            });
+        }
+        executor.submit(() -> {
+            Thread.currentThread().setName("Monitor");
+            new Monitor(gT, stationToMonitorQueue, monitorToStationQueues);
+        });
+        boolean terminate = Simulation.awaitExecutor(executor) && !gT.isCancelled();
+        for (SocketLink link : links)
+            link.close();
+        try {
+            for (Process p : processes)
+                terminate &= p.waitFor() == 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return terminate;
+    }
+
+    /**
+     * @param port the port the coordinating process listens on.
+     * @param worker the index of the worker.
+     * @param workers the number of workers.
+     * @param gT the Global Time object of the Simulation.
+     * @param configs the file the run's configs were written to.
+     * @return the command that launches a worker with the same Java runtime, JVM options and class path as this process.
+     * A debugger agent is left out, since every worker would try to listen on its port.
+     */
+    private static List<String> workerCommand(int port, int worker, int workers, GlobalTime gT, Path configs){
+        ArrayList<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments())
+            if (!option.startsWith("-agentlib:jdwp"))
+                command.add(option);
+        command.addAll(List.of("-cp", System.getProperty("java.class.path"), Worker.class.getName(),
+                String.valueOf(port), String.valueOf(worker), String.valueOf(workers),
+                String.valueOf(gT.getStartInstant().getEpochSecond()), configs.toString()));
+        return command;
+    }
 
+    /**
+     * Waits for the next worker to connect.
+     * @param server the listening channel, which must not block.
+     * @param processes every worker process.
+     * @param deadline the System.nanoTime by which the worker must have connected.
+     * @return the worker's connection, which blocks, or null if a worker exited or the deadline passed first.
+     * @throws IOException if the connection could not be accepted.
+     */
+    private static SocketChannel acceptWorker(ServerSocketChannel server, List<Process> processes, long deadline) throws IOException {
+        while (true) {
+            SocketChannel channel = server.accept();
+            if (channel != null)
+                return channel;
+            for (int i = 0; i < processes.size(); i++) {
+                if (!processes.get(i).isAlive() && processes.get(i).exitValue() != 0) {
+                    System.out.println("Worker " + i + " exited with code " + processes.get(i).exitValue() + " before it connected");
+                    return null;
+                }
+            }
+            if (System.nanoTime() - deadline > 0) {
+                System.out.println("Not every worker connected within the time allowed for them to start");
+                return null;
+            }
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,11 @@
 package execution;
 
+import execution.Jfr.BalkRoutingRecording;
+import execution.Jfr.GlobalTimeAdvanceRecording;
+import execution.Jfr.MailboxStallRecording;
+import execution.Jfr.Recordings;
+import execution.Transport.Inbox;
+import execution.Transport.Outbox;
 import objects.*;
 import objects.Event.ArrivalEvent;
 import objects.Message.BalkMessage;
@@ -8,8 +14,9 @@ import objects.Message.Message;
 import objects.Message.TimingMessage;
 
 import java.time.Instant;
-import java.util.ArrayList;
 import java.util.concurrent.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Collections;
 
@@ -18,27 +25,100 @@ import java.util.Collections;
  * Minimum Time, which is the lowest time that all Stations have reached, and is in charge of ending the simulation when all
  * Stations report that they reach the Global End Time. The Monitor also handles moving Arrival Events between stations when
  * one balks.
+ * To tell when the Simulation is over, the Monitor counts the messages it sends to each Station, and each Station counts
+ * the messages it reads and reports that count with its time. A Station that has reached the Global End Time and has read
+ * every message sent to it can only be woken up by a new message, and new messages only come from Stations that still
+ * have work, so once every Station is in that state at the same time the Simulation is finished.
+ * When every Station runs in the same process as the Monitor, the Stations post their time on a Time Board instead of
+ * sending it, and the Monitor reads the board every few hundred microseconds, or sooner when a Station that has run out
+ * of work or is held by its Optimism Window asks it to. Along with its time, each Station posts the number of messages it
+ * has sent the Monitor and the number it has read. A balk the Monitor has passed on but its destination has not read yet
+ * may still roll that Station back, so the Global Minimum Time is the lowest of every Station's time and the time of
+ * every such message. A Station that has sent a message the Monitor has not taken yet may have posted a time after that
+ * message's, so the board is only used once the Monitor has taken every message the Stations say they have sent.
+ * The Monitor takes every message waiting for it at once, and hands each Station the messages routed to it from that
+ * batch together, so that a Station receiving a burst of cars is woken, and rolled back, once for all of them.
+ * Where a balking car goes is up to the Monitor's {@link RoutingPolicy}: any other Station at random, or the one that
+ * looks least busy on the Occupancy Board the Stations post to.
  */
 public class Monitor {
     private final GlobalTime gT;
-    private final BlockingQueue<Message> stationToMonitorQueue;
-    private final ConcurrentHashMap<String, BlockingQueue<Message>> monitorToStationQueues;
+    private final Inbox stationToMonitorQueue;
+    private final ConcurrentHashMap<String, ? extends Outbox> monitorToStationQueues;
     private final HashMap<String, Instant> stationTimesheet;
-    private final HashMap<ArrivalEvent, String> eventMapping; //This hashmap tracks where *arrival events* specifically are sent when a balk message is received.
-    private static final ThreadLocalRandom random = ThreadLocalRandom.current();
+    private final RoutingTable eventMapping = new RoutingTable(); //This table tracks where *arrival events* specifically are sent when a balk message is received.
+    private final String[] stationNames;
+    private final HashMap<String, Integer> stationIndices = new HashMap<>();
+    private final HashMap<String, Long> sent = new HashMap<>(); //Messages sent to each Station
+    private final HashMap<String, Long> read = new HashMap<>(); //Messages each Station last reported having read
+    private final TimeBoard board; //Null when the Stations send their time in Timing Messages
+    private final long reduceNanos;
+    private int[] slots; //The board slot of each Station
+    private long[] taken; //Balk Messages taken from each Station
+    private InTransit[] inTransit; //Messages sent to each Station that it has not read yet
+    private long lastReduced;
+    private final ArrayList<ArrayList<Message>> outbox = new ArrayList<>(); //Messages routed to each Station that have yet to be delivered
+    private final ArrayList<Integer> addressed = new ArrayList<>(); //The Stations with messages in the outbox
+    private final ArrayList<BalkRoutingRecording> undelivered = new ArrayList<>(); //Recordings of the Balk Messages in the outbox
+    private static final int MAX_BATCH = 256; //The most messages routed before they are delivered, so the board is still read under a flood of messages
+    private final RoutingPolicy routing;
 
     /**
      * Constructor function to create a Monitor object.
      * @param gT the Global Time object which tracks the beginning and end time of the simulation.
-     * @param s the Blocking Queue used by all Stations to communicate with the Monitor
-     * @param m a hashmap of message queues associating the names of stations to the queue that they use to listen to messages from the Monitor.
+     * @param s the Mailbox used by all Stations to communicate with the Monitor
+     * @param m a hashmap of Mailboxes associating the names of stations to the Mailbox that they use to listen to messages from the Monitor.
+     */
+    public Monitor (GlobalTime gT, Inbox s, ConcurrentHashMap<String, ? extends Outbox> m){
+        this(gT, s, m, null, 0);
+    }
+
+    /**
+     * Constructor to create a Monitor object that reads the Stations' times from a Time Board.
+     * @param gT the Global Time object which tracks the beginning and end time of the simulation.
+     * @param s the Mailbox used by all Stations to communicate with the Monitor
+     * @param m a hashmap of Mailboxes associating the names of stations to the Mailbox that they use to listen to messages from the Monitor.
+     * @param board the board the Stations post their times on, or null if they send them in Timing Messages.
+     * @param reduceNanos the longest time, in real nanoseconds, between two readings of the board.
      */
-    public Monitor (GlobalTime gT, BlockingQueue<Message> s, ConcurrentHashMap<String, BlockingQueue<Message>> m){
+    public Monitor (GlobalTime gT, Inbox s, ConcurrentHashMap<String, ? extends Outbox> m, TimeBoard board, long reduceNanos){
+        this(gT, s, m, board, reduceNanos, "random", null);
+    }
+
+    /**
+     * Constructor to create a Monitor object that reads the Stations' times from a Time Board and routes balking cars by
+     * a Routing Policy.
+     * @param gT the Global Time object which tracks the beginning and end time of the simulation.
+     * @param s the Mailbox used by all Stations to communicate with the Monitor
+     * @param m a hashmap of Mailboxes associating the names of stations to the Mailbox that they use to listen to messages from the Monitor.
+     * @param board the board the Stations post their times on, or null if they send them in Timing Messages.
+     * @param reduceNanos the longest time, in real nanoseconds, between two readings of the board.
+     * @param routing the name of the Routing Policy, "random" or "leastLoaded".
+     * @param occupancy the board the Stations post how busy they are on, or null if they do not.
+     */
+    public Monitor (GlobalTime gT, Inbox s, ConcurrentHashMap<String, ? extends Outbox> m, TimeBoard board, long reduceNanos,
+                    String routing, OccupancyBoard occupancy){
         this.gT = gT;
+        this.board = board;
+        this.reduceNanos = reduceNanos;
         this.stationToMonitorQueue = s;
         this.monitorToStationQueues = m;
         this.stationTimesheet = new HashMap<>();
-        this.eventMapping = new HashMap<>();
+        this.stationNames = m.keySet().toArray(new String[0]);
+        this.routing = RoutingPolicy.create(routing, stationNames, occupancy);
+        for (int i = 0; i < stationNames.length; i++) {
+            stationIndices.put(stationNames[i], i);
+            outbox.add(new ArrayList<>());
+        }
+        if (board != null) {
+            slots = new int[stationNames.length];
+            taken = new long[stationNames.length];
+            inTransit = new InTransit[stationNames.length];
+            for (int i = 0; i < stationNames.length; i++) {
+                slots[i] = board.indexOf(stationNames[i]);
+                inTransit[i] = new InTransit();
+            }
+        }
         monitorLoop();
     }
 
@@ -46,42 +126,34 @@ public class Monitor {
      * The main loop that keeps the Monitor running. This loop checks for messages from the shared Station to Monitor Queue, then
      * handles those messages based on their type.
      * For timing messages, the Monitor updates its record of the Station sending that timing message's time. It then recalculates
-     * the Minimum Global Time, and if that time changed, modifies it in the Global Time object.
+     * the Minimum Global Time, and if that time changed, modifies it in the Global Time object. When the Stations post
+     * their times on a Time Board, the Monitor instead works out the Minimum Global Time from the board whenever a Timing
+     * Message asks it to, and at least every so often.
      * For Balking Messages, the Monitor first determines the type of Balking message, then handles accordingly. In both cases
-     * it sends a message to a Station informing that Station of where to back up to.
+     * it sends a message to a Station informing that Station of where to back up to. Every message waiting is routed
+     * before any is delivered, so each Station gets the messages of a batch together.
      * The Monitor also decides when the simulation is finished, and sends a special message out to all Stations to tell
-     * them the stop.
+     * them the stop. It does the same as soon as it sees the Simulation has been cut short.
      */
     public void monitorLoop(){
         try {
-            while(gT.getGlobalMinimumTime().isBefore(gT.getEndInstant()) || checkMessages()){
-                Message msg = stationToMonitorQueue.take();
-                if(msg instanceof TimingMessage) {
-                    stationTimesheet.put(msg.getSender(), msg.getTimestamp()); //This ensures that a station essentially adds itself, as the first action a station takes in its event loop is to send a message to the monitor
-                    Instant nextMinGlobalTime = Collections.min(stationTimesheet.values());
-                    if (nextMinGlobalTime != null && !gT.getGlobalMinimumTime().equals(nextMinGlobalTime)) {
-                        gT.setGlobalMinimumTime(nextMinGlobalTime);
-                        //System.out.println("From the Monitor: global timesheet is as follows:\n" + stationTimesheet.keySet() + "\n" + stationTimesheet.values() + " " + minGlobalTime);
-                    }
-                }else if (msg instanceof BalkMessage){
-                    if(((BalkMessage) msg).getRetread()) { //This handles messages needing to be re-done if a station backtracks
-                        String stationToBacktrack = eventMapping.get(((BalkMessage) msg).getEventToLeave());
-                        monitorToStationQueues.get(stationToBacktrack).add(msg);
-                    }else {
-                        ArrayList<String> keys = new ArrayList<>(monitorToStationQueues.keySet());
-                        keys.remove(msg.getSender());
-                        if(!keys.isEmpty()) {
-                            String nextStation = keys.get(random.nextInt(keys.size()));
-                            monitorToStationQueues.get(nextStation).add(msg);
-                            eventMapping.put(((BalkMessage) msg).getEventToLeave(), nextStation);
-                        }
-                        //If there is only one station, the car simply leaves and does not get charged.
-                    }
+            boolean finished = false;
+            while(!finished && !gT.isCancelled()){
+                Message first = takeMessage();
+                boolean timing = false;
+                Message msg = first;
+                for (int n = 1; msg != null; n++) {
+                    timing |= msg instanceof TimingMessage;
+                    finished = route(msg);
+                    msg = !finished && n < MAX_BATCH && !stationToMonitorQueue.isEmpty() ? stationToMonitorQueue.take() : null;
                 }
+                deliver();
+                if (board != null && (first == null || timing || System.nanoTime() - lastReduced >= reduceNanos))
+                    finished = reduce();
             }
             //System.out.println("All stations have reached end of time\n" + gT.getEndInstant() + "\n" + stationTimesheet.values() + "\n" + monitorToStationQueues.keySet());
-            for(BlockingQueue<Message> q : monitorToStationQueues.values())
-                q.add(new EndMessage(this.gT.getEndInstant(), "Monitor")); //The monitor will only send an End Message when it ends. It uses a special kind of Message so that the Simulators know to continue running even after they get a minTime that is at/after the global end time
+            for(Outbox q : monitorToStationQueues.values())
+                q.put(new EndMessage(this.gT.getEndInstant(), "Monitor")); //The monitor will only send an End Message when it ends. It uses a special kind of Message so that the Simulators know to continue running even after they get a minTime that is at/after the global end time
         }catch (InterruptedException e){
             Thread.currentThread().interrupt();
         }catch (Exception e){
@@ -90,16 +162,194 @@ public class Monitor {
     }
 
     /**
-     * This function checks the queue between the Monitor and every Station to determine if any Station has a message it has
-     * not yet handled.
-     * @return false if there are no outstanding messages to any Station, and true if there are.
+     * Acts on a single message from the Stations. A Timing Message updates the sender's time and the Global Minimum Time,
+     * and a Balk Message is routed to the Station the car goes to, or the Station a recalled car was sent to. Routed
+     * messages are only placed in the outbox, to be delivered once the batch they came in has been routed.
+     * @param msg the message.
+     * @return true if the message shows the Simulation is over.
      */
-    public boolean checkMessages(){//ensures that there are no outstanding messages in each station's queue
-        if(monitorToStationQueues.isEmpty())
-            return true;
-        for (BlockingQueue<Message> q : monitorToStationQueues.values())
-            if(!q.isEmpty())
-                return true;
+    private boolean route(Message msg){
+        if(msg instanceof TimingMessage && board == null) {
+            stationTimesheet.put(msg.getSender(), msg.getTimestamp()); //This ensures that a station essentially adds itself, as the first action a station takes in its event loop is to send a message to the monitor
+            read.put(msg.getSender(), ((TimingMessage) msg).getReceived());
+            advance(Collections.min(stationTimesheet.values()), msg.getSender());
+            return allStationsFinished(); //Only a Timing Message can bring a Station to the end, so there is no need to check after other messages
+        }else if (msg instanceof BalkMessage){
+            BalkRoutingRecording recording = Recordings.enabled() ? BalkRoutingRecording.start() : null;
+            if (board != null)
+                taken[stationIndices.get(msg.getSender())]++;
+            String destination = null;
+            if(((BalkMessage) msg).getRetread()) { //This handles messages needing to be re-done if a station backtracks
+                ArrivalEvent car = ((BalkMessage) msg).getEventToLeave(); //Arriving at the time it balked, which picks out the leg being undone
+                int stationToBacktrack = eventMapping.get(car.getId(), car.getTimestamp());
+                if (stationToBacktrack >= 0) { //A leg that is no longer in the table began before the Global Minimum Time, and so cannot really be recalled
+                    destination = stationNames[stationToBacktrack];
+                    send(destination, msg);
+                }
+            }else {
+                int sender = stationIndices.get(msg.getSender());
+                if(stationNames.length > 1) {
+                    int nextStation = routing.choose(sender, ((BalkMessage) msg).getEventToLeave().getChargeClass());
+                    destination = stationNames[nextStation];
+                    send(destination, msg);
+                    eventMapping.put(((BalkMessage) msg).getEventToLeave().getId(), nextStation, ((BalkMessage) msg).getEventToLeave().getTimestamp());
+                }
+                //If there is only one station, the car simply leaves and does not get charged.
+            }
+            if (recording != null) {
+                recording.routed(msg.getSender(), destination, ((BalkMessage) msg).getRetread(), !stationToMonitorQueue.isEmpty());
+                if (destination == null)
+                    recording.finish();
+                else
+                    undelivered.add(recording); //Ends once the message is delivered
+            }
+        }
         return false;
     }
+
+    /**
+     * Sets a new Global Minimum Time, if it has changed, and forgets where the cars that balked before it went.
+     * @param nextMinGlobalTime the lowest time any Station can still be rolled back to.
+     * @param sender the Station whose time or message the new Global Minimum Time comes from.
+     */
+    private void advance(Instant nextMinGlobalTime, String sender){
+        if (nextMinGlobalTime != null && !gT.getGlobalMinimumTime().equals(nextMinGlobalTime)) {
+            if (Recordings.enabled())
+                GlobalTimeAdvanceRecording.record(nextMinGlobalTime.getEpochSecond(),
+                        nextMinGlobalTime.getEpochSecond() - gT.getGlobalMinimumTime().getEpochSecond(), sender);
+            gT.setGlobalMinimumTime(nextMinGlobalTime);
+            eventMapping.evictBefore(nextMinGlobalTime); //No Station can roll back far enough to recall these cars any more
+            //System.out.println("From the Monitor: global timesheet is as follows:\n" + stationTimesheet.keySet() + "\n" + stationTimesheet.values() + " " + minGlobalTime);
+        }
+    }
+
+    /**
+     * Works out the Global Minimum Time from the Time Board, unless a Station has sent a message the Monitor has not
+     * taken yet, and tells whether the Simulation is over: every Station has reached the Global End Time and read
+     * every message the Monitor sent it.
+     * @return true if no Station can do any more work.
+     */
+    private boolean reduce(){
+        lastReduced = System.nanoTime();
+        Instant nextMinGlobalTime = null;
+        String slowest = null;
+        boolean allRead = true;
+        for (int i = 0; i < stationNames.length; i++) {
+            TimeBoard.Posting posting = board.read(slots[i]);
+            if (posting.getSent() > taken[i])
+                return false; //The Station may have posted a time after that of a message still on its way here
+            Instant time = posting.getTime();
+            Instant unread = inTransit[i].earliest(posting.getReceived());
+            if (unread != null) {
+                allRead = false;
+                if (unread.isBefore(time))
+                    time = unread; //A message the Station has not read yet can still roll it back to this time
+            }
+            if (nextMinGlobalTime == null || time.isBefore(nextMinGlobalTime)) {
+                nextMinGlobalTime = time;
+                slowest = stationNames[i];
+            }
+        }
+        advance(nextMinGlobalTime, slowest);
+        return allRead && !gT.getGlobalMinimumTime().isBefore(gT.getEndInstant()) && stationToMonitorQueue.isEmpty();
+    }
+
+    /**
+     * Takes the next message from the Stations, waiting for one if none has arrived. When the Stations post their times
+     * on a Time Board, the wait is cut short so that the board is still read when no messages come.
+     * @return the message, or null if the wait was cut short.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    private Message takeMessage() throws InterruptedException {
+        if (!Recordings.enabled() || !stationToMonitorQueue.isEmpty())
+            return board == null ? stationToMonitorQueue.take() : stationToMonitorQueue.poll(reduceNanos);
+        MailboxStallRecording recording = MailboxStallRecording.start();
+        Message msg = board == null ? stationToMonitorQueue.take() : stationToMonitorQueue.poll(reduceNanos);
+        recording.finish("Monitor", MailboxStallRecording.MONITOR);
+        return msg;
+    }
+
+    /**
+     * Counts a message to a Station and places it in the outbox. The message counts as sent from now on, so neither the
+     * end of the Simulation nor a Global Minimum Time past the message's can be decided before it is delivered.
+     * @param station the name of the Station.
+     * @param msg the message being sent.
+     */
+    private void send(String station, Message msg){
+        sent.merge(station, 1L, Long::sum);
+        int index = stationIndices.get(station);
+        if (board != null)
+            inTransit[index].sent(msg.getTimestamp());
+        if (outbox.get(index).isEmpty())
+            addressed.add(index);
+        outbox.get(index).add(msg);
+    }
+
+    /**
+     * Delivers every message in the outbox, each Station's together and in the order they were routed, and ends the
+     * recordings of the Balk Messages among them.
+     */
+    private void deliver(){
+        for (int index : addressed) {
+            monitorToStationQueues.get(stationNames[index]).putAll(outbox.get(index));
+            outbox.get(index).clear();
+        }
+        addressed.clear();
+        for (BalkRoutingRecording recording : undelivered)
+            recording.finish();
+        undelivered.clear();
+    }
+
+    /**
+     * Determines if the Simulation is over: every Station has reported reaching the Global End Time, and every Station
+     * has read every message the Monitor sent it. Messages from a Station are read in the order they were sent, so a Balk
+     * Message sent by a Station before it finished has always been routed, and counted, by the time its last Timing
+     * Message is read.
+     * @return true if no Station can do any more work.
+     */
+    private boolean allStationsFinished(){
+        if (gT.getGlobalMinimumTime().isBefore(gT.getEndInstant()) || stationTimesheet.size() < monitorToStationQueues.size())
+            return false;
+        for (String station : monitorToStationQueues.keySet())
+            if (!sent.getOrDefault(station, 0L).equals(read.getOrDefault(station, 0L)))
+                return false;
+        return true;
+    }
+
+    /**
+     * The messages the Monitor has sent a Station that the Station has not read yet, kept only as far as is needed to
+     * know the earliest time among them. A Station reads its messages in the order they were sent, so once it has read
+     * a number of them the messages up to that number can be forgotten, and a message sent after another with a time no
+     * later than the other's makes the other irrelevant. The earliest time is therefore always at the front.
+     */
+    private static final class InTransit {
+        private final ArrayDeque<Long> numbers = new ArrayDeque<>();
+        private final ArrayDeque<Instant> times = new ArrayDeque<>();
+        private long sent;
+
+        /**
+         * Records a message sent to the Station.
+         * @param time the time of the message.
+         */
+        private void sent(Instant time){
+            while (!times.isEmpty() && !times.peekLast().isBefore(time)) {
+                times.removeLast();
+                numbers.removeLast();
+            }
+            times.addLast(time);
+            numbers.addLast(sent++);
+        }
+
+        /**
+         * @param read the number of messages the Station has read.
+         * @return the earliest time of a message the Station has not read, or null if it has read them all.
+         */
+        private Instant earliest(long read){
+            while (!numbers.isEmpty() && numbers.peekFirst() < read) {
+                numbers.removeFirst();
+                times.removeFirst();
+            }
+            return times.peekFirst();
+        }
+    }
 }
@@ -0,0 +1,123 @@
+package execution;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A board the Stations of a single process post how busy they are on, so that the Monitor can send a balking car to a
+ * Station that has room for it. Each Station, or group of Stations, owns a slot it alone writes to, holding for every
+ * charger class the number of chargers, the number of them that are free and the number of cars waiting for one, along
+ * with a count of the times the slot was posted to.
+ * Nothing a Station posts has to agree with anything else it posts, as the board only steers where cars go and never
+ * changes what happens to them, so the numbers are written and read one at a time without any locking. Slots are spread
+ * at least a cache line apart, so Stations posting at once on different cores never contend for the same line.
+ */
+public class OccupancyBoard {
+    private static final int PADDING = 16; //Ints left between two slots, 64 bytes, a cache line
+    private static final int CHARGERS = 0, FREE = 1, WAITING = 2, FIELDS = 3; //Each class's numbers follow the count of posts at the start of a slot
+
+    private final AtomicIntegerArray slots;
+    private final int classes;
+    private final int stride;
+    private final HashMap<String, Integer> indices = new HashMap<>();
+    private int registered;
+
+    /**
+     * Constructor to create an Occupancy Board on which every slot shows no chargers.
+     * @param processes the number of Stations, or groups of Stations, that post on the board.
+     * @param classes the number of charger classes in the Simulation.
+     */
+    public OccupancyBoard(int processes, int classes){
+        this.classes = classes;
+        this.stride = 1 + classes * FIELDS + PADDING;
+        this.slots = new AtomicIntegerArray((processes + 1) * stride + PADDING); //Padded at each end, away from the array's header and whatever follows it
+    }
+
+    /**
+     * Gives a Station, or group of Stations, a slot of its own. Every slot must be handed out before the Simulation starts.
+     * @param name the name the Monitor knows the Station or group by.
+     * @return the slot.
+     */
+    public int register(String name){
+        indices.put(name, registered);
+        return registered++;
+    }
+
+    /**
+     * @param name the name of a Station or group of Stations.
+     * @return its slot, or -1 if it has none.
+     */
+    public int indexOf(String name){
+        return indices.getOrDefault(name, -1);
+    }
+
+    /**
+     * @return the number of charger classes in the Simulation.
+     */
+    public int getNumClasses(){
+        return classes;
+    }
+
+    /**
+     * Posts how busy a Station's chargers of one class are. Numbers that have not changed since they were last posted are
+     * not written again, so a Station that posts after every event only touches the board when something changed. Only
+     * the slot's owner may post to it.
+     * @param slot the owner's slot.
+     * @param chargeClass the id of the charger class.
+     * @param chargers the number of chargers of the class.
+     * @param free the number of them that are free.
+     * @param waiting the number of cars waiting for one.
+     */
+    public void post(int slot, int chargeClass, int chargers, int free, int waiting){
+        int at = at(slot, chargeClass);
+        boolean changed = set(at + CHARGERS, chargers);
+        changed |= set(at + FREE, free);
+        changed |= set(at + WAITING, waiting);
+        if (changed)
+            slots.setRelease(base(slot), slots.getPlain(base(slot)) + 1);
+    }
+
+    /**
+     * @param slot a slot.
+     * @return the number of times the slot's owner has posted something new, which tells a reader whether the slot has
+     * changed since it last looked.
+     */
+    public int getPosts(int slot){
+        return slots.getAcquire(base(slot));
+    }
+
+    /**
+     * @param slot a slot.
+     * @param chargeClass the id of a charger class.
+     * @return the number of chargers of the class the slot's owner has, 0 if it has not posted yet.
+     */
+    public int getChargers(int slot, int chargeClass){
+        return slots.getAcquire(at(slot, chargeClass) + CHARGERS);
+    }
+
+    /**
+     * @param slot a slot.
+     * @param chargeClass the id of a charger class.
+     * @return the number of cars waiting for a charger of the class, less the number of those chargers that are free, at
+     * the slot's owner, as last posted. The lower it is, the sooner a car that arrives there gets onto a charger.
+     */
+    public int getLoad(int slot, int chargeClass){
+        int at = at(slot, chargeClass);
+        return slots.getAcquire(at + WAITING) - slots.getAcquire(at + FREE);
+    }
+
+    private boolean set(int index, int value){
+        if (slots.getPlain(index) == value)
+            return false;
+        slots.setRelease(index, value);
+        return true;
+    }
+
+    private int at(int slot, int chargeClass){
+        return base(slot) + 1 + chargeClass * FIELDS;
+    }
+
+    private int base(int slot){
+        return PADDING + slot * stride;
+    }
+}
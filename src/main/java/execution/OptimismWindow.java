@@ -0,0 +1,101 @@
+package execution;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.time.Instant;
+
+/**
+ * Bounds how far ahead of the Global Minimum Time a Station may run. A Station whose next event lies more than the window
+ * ahead of the Global Minimum Time holds until slower Stations catch up, rather than doing work that a late Balk Message
+ * is likely to throw away.
+ * The window tunes itself. Every few thousand events it measures how many events per second the Station committed, that
+ * is, processed and did not later roll back. It keeps moving the window in the same direction while that rate improves,
+ * and turns around when it falls. A Station that is rolling back most of its work always shrinks its window, and a
+ * Station that is holding without ever rolling back always widens it.
+ */
+public class OptimismWindow {
+    private static final int ADAPT_EVENTS = 4096;
+    private static final double STEP = 1.25;
+    private static final double MAX_ROLLBACK_RATIO = 0.5;
+
+    private final long minSeconds;
+    private final long maxSeconds;
+    private long windowSeconds;
+    private int direction = 1;
+    private double lastCommitRate = -1;
+    private long periodStart = System.nanoTime();
+    private int processed;
+    private int rolledBack;
+    private int holds;
+
+    /**
+     * Constructor to create an Optimism Window from the "optimismWindow" entry of a Station's config.
+     * @param config the config entry, holding the "initial", "min" and "max" size of the window in simulated seconds.
+     */
+    public OptimismWindow(JsonNode config){
+        this.minSeconds = config.path("min").asLong(3600);
+        this.maxSeconds = config.path("max").asLong(Long.MAX_VALUE / 2);
+        this.windowSeconds = Math.max(minSeconds, Math.min(maxSeconds, config.path("initial").asLong(86400)));
+    }
+
+    /**
+     * @param next the timestamp of the event the Station wants to process next.
+     * @param globalMinimumTime the current Global Minimum Time.
+     * @return true if the event lies within the window and may be processed.
+     */
+    public boolean allows(Instant next, Instant globalMinimumTime){
+        return next.getEpochSecond() - globalMinimumTime.getEpochSecond() <= windowSeconds;
+    }
+
+    /**
+     * @return the current size of the window, in simulated seconds.
+     */
+    public long getWindowSeconds(){
+        return windowSeconds;
+    }
+
+    /**
+     * Records that the Station processed an event.
+     */
+    public void eventProcessed(){
+        if (++processed >= ADAPT_EVENTS)
+            adapt();
+    }
+
+    /**
+     * Records that the Station had to hold because its next event was outside the window.
+     */
+    public void held(){
+        holds++;
+    }
+
+    /**
+     * Records that the Station rolled back.
+     * @param events the number of previously processed events that were undone.
+     */
+    public void rolledBack(int events){
+        rolledBack += events;
+    }
+
+    /**
+     * Resizes the window at the end of a measuring period, then starts the next period.
+     */
+    private void adapt(){
+        long now = System.nanoTime();
+        double commitRate = Math.max(0, processed - rolledBack) / ((now - periodStart) / 1e9);
+        double rollbackRatio = (double) rolledBack / processed;
+        if (rollbackRatio > MAX_ROLLBACK_RATIO)
+            direction = -1;
+        else if (rolledBack == 0 && holds > 0)
+            direction = 1;
+        else if (commitRate < lastCommitRate)
+            direction = -direction;
+        windowSeconds = (long) (direction > 0 ? windowSeconds * STEP : windowSeconds / STEP);
+        windowSeconds = Math.max(minSeconds, Math.min(maxSeconds, windowSeconds));
+        lastCommitRate = commitRate;
+        periodStart = now;
+        processed = 0;
+        rolledBack = 0;
+        holds = 0;
+    }
+}
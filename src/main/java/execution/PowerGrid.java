@@ -0,0 +1,216 @@
+package execution;
+
+import objects.GlobalTime;
+import objects.LoadTimeline;
+
+import java.io.BufferedReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Shares a Station's grid connection between the cars charging there. A Station may have a site power cap, the most power
+ * it can draw at once; a car starting to charge is given its charger's full rate if the load already booked for the time
+ * it will spend on the charger leaves room for it, whatever room is left if not, and nothing if the site is already at
+ * its cap. Every charging session is booked into the Station's Load Timeline under the id of its car, so a session that
+ * is undone by a rollback can be taken back out.
+ * Power is booked first come, first served rather than shared out among the cars charging: a session keeps the power it
+ * was given when it started until it ends, and is never scaled up or down as other sessions start or end. A car that
+ * starts while the cap is taken up in full gets nothing and leaves at once, uncharged, even if a session ends a minute
+ * later. This keeps undoing a session down to taking it out of the timeline; sharing the cap out again at every start
+ * and departure would move the departure of every car charging at the time, and a rollback would have to undo each move.
+ * At the end of the Simulation each Station writes its load curve to a file, and the curves of every Station are added
+ * up into the load curve of the whole city.
+ */
+public class PowerGrid {
+    private final double cap;
+    private final long start;
+    private final long resolution;
+    private final LoadTimeline timeline;
+    private final HashMap<Long, Session> sessions = new HashMap<>();
+
+    /**
+     * A charging session booked into the Load Timeline.
+     */
+    private static final class Session {
+        private final long start;
+        private final int from;
+        private final int to;
+        private final double watts;
+        private final double energy;
+
+        private Session(long start, int from, int to, double watts, double energy){
+            this.start = start;
+            this.from = from;
+            this.to = to;
+            this.watts = watts;
+            this.energy = energy;
+        }
+    }
+
+    /**
+     * Constructor to create the Power Grid of a Station.
+     * @param cap the site power cap in watts, or 0 if the Station can draw as much power as its chargers need.
+     * @param gT the Global Time object, giving the span of simulated time the Load Timeline must cover. A Station that runs
+     *           a segment of the Simulation still covers all of it, so that its buckets line up with every other
+     *           segment's and sessions running on past the end of its segment are kept whole.
+     * @param resolutionSeconds the length of each bucket of the Load Timeline, in simulated seconds.
+     */
+    public PowerGrid(double cap, GlobalTime gT, long resolutionSeconds){
+        this.cap = cap > 0 ? cap : Double.POSITIVE_INFINITY;
+        this.start = gT.getOriginInstant().getEpochSecond();
+        this.resolution = Math.max(1, resolutionSeconds);
+        long span = gT.getClosingInstant().getEpochSecond() - start;
+        this.timeline = new LoadTimeline((int) ((span + resolution - 1) / resolution));
+    }
+
+    /**
+     * Books a charging session, giving it as much power as the site cap allows, up to the charger's rate.
+     * @param carId the id of the car.
+     * @param from the time the car goes on the charger.
+     * @param to the time the car leaves the charger.
+     * @param rate the rate of the charger, in watts.
+     * @return the power given to the car, in watts.
+     */
+    public double allocate(long carId, Instant from, Instant to, double rate){
+        int first = bucketOf(from.getEpochSecond());
+        int last = bucketOf(to.getEpochSecond() - 1);
+        double watts = Math.max(0, Math.min(rate, cap - timeline.max(first, last)));
+        double energy = watts * (to.getEpochSecond() - from.getEpochSecond()) / 3600.0;
+        release(carId);
+        if (watts > 0) {
+            timeline.add(first, last, watts);
+            sessions.put(carId, new Session(from.getEpochSecond(), first, last, watts, energy));
+        }
+        return watts;
+    }
+
+    /**
+     * Takes a charging session back out of the Load Timeline, if the car has one.
+     * @param carId the id of the car.
+     * @return the energy the session delivered, in watt-hours, or 0 if the car had no session.
+     */
+    public double release(long carId){
+        Session s = sessions.remove(carId);
+        if (s == null)
+            return 0;
+        timeline.add(s.from, s.to, -s.watts);
+        return s.energy;
+    }
+
+    /**
+     * @param carId the id of a car.
+     * @return the power given to the car's charging session, in watts, or 0 if it has none.
+     */
+    public double getWatts(long carId){
+        Session s = sessions.get(carId);
+        return s == null ? 0 : s.watts;
+    }
+
+    /**
+     * @param from the earliest time a session may start.
+     * @param until the time by which a session must have started.
+     * @return the energy delivered by every session that started in that span, in watt-hours.
+     */
+    public double getEnergyStartedBetween(Instant from, Instant until){
+        double energy = 0;
+        for (Session s : sessions.values())
+            if (s.start >= from.getEpochSecond() && (until == Instant.MAX || s.start < until.getEpochSecond()))
+                energy += s.energy;
+        return energy;
+    }
+
+    /**
+     * Adds the load in every bucket that starts in a span of simulated time to a load curve.
+     * @param curve the load curve, in watts by the epoch second each bucket starts at.
+     * @param from the earliest time a bucket may start.
+     * @param until the time by which a bucket must have started.
+     */
+    public void addLoadTo(TreeMap<Long, Double> curve, Instant from, Instant until){
+        double[] load = timeline.toArray();
+        for (int i = 0; i < load.length; i++) {
+            long bucket = start + i * resolution;
+            if (bucket >= from.getEpochSecond() && (until == Instant.MAX || bucket < until.getEpochSecond()))
+                curve.merge(bucket, load[i], Double::sum);
+        }
+    }
+
+    /**
+     * @return the highest load the Station drew in any bucket, in watts.
+     */
+    public double getPeakLoad(){
+        return Math.max(0, timeline.max(0, timeline.getBuckets() - 1));
+    }
+
+    /**
+     * Writes the Station's load curve as CSV, one line per bucket holding the epoch second the bucket starts at and the
+     * load in watts.
+     * @param file the file to write.
+     */
+    public void writeLoad(Path file){
+        double[] load = timeline.toArray();
+        try {
+            if (file.getParent() != null)
+                Files.createDirectories(file.getParent());
+            try (PrintWriter out = new PrintWriter(new FileWriter(file.toFile()))) {
+                out.println("time,watts");
+                for (int i = 0; i < load.length; i++)
+                    out.println((start + i * resolution) + "," + load[i]);
+            }
+        } catch (IOException e){
+            System.out.println("Could not write load curve " + file + ": " + e);
+        }
+    }
+
+    /**
+     * Adds up the load curves written by every Station into the load curve of the whole city.
+     * @param files the load curve of each Station.
+     * @param out the file to write the city's load curve to.
+     */
+    public static void writeCityLoad(List<Path> files, Path out){
+        TreeMap<Long, Double> city = new TreeMap<>();
+        for (Path file : files) {
+            try (BufferedReader in = Files.newBufferedReader(file)) {
+                String line = in.readLine(); //Skip the header
+                while ((line = in.readLine()) != null) {
+                    int comma = line.indexOf(',');
+                    city.merge(Long.parseLong(line.substring(0, comma)), Double.parseDouble(line.substring(comma + 1)), Double::sum);
+                }
+            } catch (IOException e){
+                System.out.println("Could not read load curve " + file + ": " + e);
+            }
+        }
+        writeCurve(city, out);
+    }
+
+    /**
+     * Writes a load curve as CSV, in the same form as a Station's.
+     * @param curve the load in watts, by the epoch second each bucket starts at.
+     * @param out the file to write.
+     */
+    public static void writeCurve(TreeMap<Long, Double> curve, Path out){
+        try {
+            if (out.getParent() != null)
+                Files.createDirectories(out.getParent());
+            try (PrintWriter writer = new PrintWriter(new FileWriter(out.toFile()))) {
+                writer.println("time,watts");
+                for (Map.Entry<Long, Double> bucket : curve.entrySet())
+                    writer.println(bucket.getKey() + "," + bucket.getValue());
+            }
+        } catch (IOException e){
+            System.out.println("Could not write load curve " + out + ": " + e);
+        }
+    }
+
+    private int bucketOf(long epochSecond){
+        int bucket = (int) ((epochSecond - start) / resolution);
+        return Math.max(0, Math.min(timeline.getBuckets() - 1, bucket));
+    }
+}
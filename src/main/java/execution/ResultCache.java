@@ -0,0 +1,297 @@
+package execution;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * An on-disk store of the results of past runs, so that a run with exactly the same configuration as one before it is
+ * answered at once instead of being simulated again. A run is known by the SHA-256 hash of its master config, the full
+ * config of every Station, the {@link #ENGINE_VERSION} and the size and age of any arrival files it replays, so a change
+ * to any of them is a different run. Only runs whose Stations are all seeded, or replay arrival files, are stored, as
+ * any other run generates different cars every time.
+ * Each entry is a directory named by its key, holding the statistics of every Station, the load curve of every Station
+ * and the timing report. The load curves are stored with their times counted from the start of the run, so that a run
+ * started on a later day gets back curves on its own days. The entries last used longest ago are evicted once the store
+ * is larger than its limit. Entries are never checked against the Simulator's code, so a change to how the Simulator
+ * behaves must come with a new engine version, or the store must be cleared by hand.
+ * Run this class to manage the store: "list" prints every entry, "remove" followed by keys removes those entries, and
+ * "clear" removes every entry. The directory is given by "--directory=", "cache" if left out.
+ */
+public class ResultCache {
+    public static final int ENGINE_VERSION = 3; //Raise whenever a change to the Simulator changes the results of a run
+    private static final String REPORT = "simulatorReport.txt";
+    private final Path directory;
+    private final long maxBytes;
+
+    /**
+     * Constructor to create a Result Cache.
+     * @param directory the directory the entries are kept in, which is made if it does not exist.
+     * @param maxBytes the most bytes the entries may take up together.
+     */
+    public ResultCache(Path directory, long maxBytes){
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param rootNode the root of the master config file.
+     * @return the Result Cache its "resultCache" block describes, or null if it is not enabled.
+     */
+    public static ResultCache fromConfig(JsonNode rootNode){
+        JsonNode config = rootNode.path("resultCache");
+        if (!config.path("enabled").asBoolean(false))
+            return null;
+        return new ResultCache(Path.of(config.path("directory").asText("cache")), config.path("maxMegabytes").asLong(512) << 20);
+    }
+
+    /**
+     * Works out the key a run is stored under.
+     * @param rootNode the root of the master config file.
+     * @param fullConfigs the full config of each Station.
+     * @return the key, or null if a Station generates different cars on every run, so the run cannot be stored.
+     */
+    public static String keyOf(JsonNode rootNode, List<ObjectNode> fullConfigs){
+        ObjectMapper mapper = new ObjectMapper().configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+        ObjectNode described = mapper.createObjectNode();
+        described.put("engineVersion", ENGINE_VERSION);
+        ObjectNode master = rootNode.deepCopy();
+        master.remove("resultCache"); //Where and whether results are stored does not change them
+        described.set("master", master);
+        ArrayNode stations = described.putArray("stations");
+        for (ObjectNode config : fullConfigs)
+            stations.add(config.deepCopy().without(List.of("outputDirectory", "arrivalSpill"))); //Where the results are written, and where arrivals are spilled, does not change them
+        ObjectNode traces = described.putObject("arrivalFiles");
+        for (ObjectNode config : fullConfigs) {
+            String name = config.get("name").asText();
+            if (config.has("arrivalTrace")) {
+                Path file = Path.of(config.get("arrivalTrace").asText(), name + ".arrivals");
+                try {
+                    traces.put(name, Files.size(file) + "@" + Files.getLastModifiedTime(file).toMillis());
+                } catch (IOException e) {
+                    return null; //The Station will sample its cars instead, at random unless it is seeded
+                }
+            } else if (!config.has("seed"))
+                return null;
+        }
+        try {
+            //Sorting the keys of every object gives the same bytes however the configs were written
+            byte[] canonical = mapper.writeValueAsBytes(mapper.convertValue(described, Object.class));
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(canonical));
+        } catch (IOException | NoSuchAlgorithmException e) {
+            System.out.println("Could not work out the result cache key: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Copies the results of a stored run into an output directory, and marks the entry as just used.
+     * @param key the key of the run.
+     * @param stationNames the name of each Station.
+     * @param start the instant this run starts at, which the times of the load curves are counted from.
+     * @param output the directory the results are copied into, "out" for a run of the Main class.
+     * @return true if the run was stored and its results were copied.
+     */
+    public boolean restore(String key, List<String> stationNames, Instant start, Path output){
+        Path entry = directory.resolve(key);
+        if (!Files.isDirectory(entry))
+            return false;
+        try {
+            Files.createDirectories(output.resolve("load"));
+            for (String name : stationNames) {
+                Files.copy(entry.resolve(name + ".txt"), output.resolve(name + ".txt"), StandardCopyOption.REPLACE_EXISTING);
+                shiftCurve(entry.resolve("load").resolve(name + ".csv"), output.resolve("load").resolve(name + ".csv"), start.getEpochSecond());
+            }
+            Files.copy(entry.resolve(REPORT), output.resolve(REPORT), StandardCopyOption.REPLACE_EXISTING);
+            Files.setLastModifiedTime(entry, FileTime.from(Instant.now()));
+            return true;
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("Could not read cached results " + key + ", so the Simulation is run instead: " + e);
+            return false;
+        }
+    }
+
+    /**
+     * Stores the results a run has just written to an output directory, replacing any stored under the same key, then
+     * evicts the entries used longest ago until the store fits its limit.
+     * @param key the key of the run.
+     * @param stationNames the name of each Station.
+     * @param start the instant the run started at.
+     * @param output the directory the run wrote its results to.
+     */
+    public void store(String key, List<String> stationNames, Instant start, Path output){
+        Path entry = directory.resolve(key);
+        Path staging = directory.resolve(key + ".tmp-" + ProcessHandle.current().pid());
+        try {
+            Files.createDirectories(staging.resolve("load"));
+            for (String name : stationNames) {
+                Files.copy(output.resolve(name + ".txt"), staging.resolve(name + ".txt"), StandardCopyOption.REPLACE_EXISTING);
+                shiftCurve(output.resolve("load").resolve(name + ".csv"), staging.resolve("load").resolve(name + ".csv"), -start.getEpochSecond());
+            }
+            Files.copy(output.resolve(REPORT), staging.resolve(REPORT), StandardCopyOption.REPLACE_EXISTING);
+            delete(entry);
+            Files.move(staging, entry, StandardCopyOption.ATOMIC_MOVE); //Another process never sees a half written entry
+        } catch (FileAlreadyExistsException e) {
+            delete(staging); //Another process stored the same run first
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("Could not store results " + key + ": " + e);
+            delete(staging);
+            return;
+        }
+        evict();
+    }
+
+    /**
+     * Removes the entries used longest ago until the rest take up no more than the limit.
+     */
+    private void evict(){
+        ArrayList<Path> entries = entries();
+        long total = 0;
+        long[] sizes = new long[entries.size()];
+        for (int i = 0; i < sizes.length; i++)
+            total += sizes[i] = sizeOf(entries.get(i));
+        for (int i = 0; i < sizes.length && total > maxBytes; i++) {
+            delete(entries.get(i));
+            total -= sizes[i];
+        }
+    }
+
+    /**
+     * @return every complete entry, the one used longest ago first.
+     */
+    private ArrayList<Path> entries(){
+        ArrayList<Path> entries = new ArrayList<>();
+        if (!Files.isDirectory(directory))
+            return entries;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path entry : stream)
+                if (Files.isDirectory(entry) && !entry.getFileName().toString().contains(".tmp-"))
+                    entries.add(entry);
+        } catch (IOException e) {
+            System.out.println("Could not list the result cache: " + e);
+        }
+        entries.sort(Comparator.comparing(ResultCache::lastUsed));
+        return entries;
+    }
+
+    /**
+     * Removes a stored run.
+     * @param key the key of the run.
+     * @return true if it was stored.
+     */
+    public boolean remove(String key){
+        Path entry = directory.resolve(key);
+        boolean stored = Files.isDirectory(entry);
+        delete(entry);
+        return stored;
+    }
+
+    /**
+     * Removes every stored run.
+     * @return the number of runs removed.
+     */
+    public int clear(){
+        ArrayList<Path> entries = entries();
+        for (Path entry : entries)
+            delete(entry);
+        return entries.size();
+    }
+
+    /**
+     * Copies a load curve, moving each of its times by the same number of seconds.
+     * @param from the load curve, as written by the Power Grid.
+     * @param to where the copy is written.
+     * @param shift the seconds added to every time.
+     * @throws IOException if either file cannot be used.
+     */
+    private static void shiftCurve(Path from, Path to, long shift) throws IOException {
+        List<String> lines = Files.readAllLines(from);
+        for (int i = 1; i < lines.size(); i++) { //The first line names the columns
+            String line = lines.get(i);
+            int comma = line.indexOf(',');
+            lines.set(i, (Long.parseLong(line.substring(0, comma)) + shift) + line.substring(comma));
+        }
+        Files.write(to, lines);
+    }
+
+    private static FileTime lastUsed(Path entry){
+        try {
+            return Files.getLastModifiedTime(entry);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static long sizeOf(Path entry){
+        try (Stream<Path> files = Files.walk(entry)) {
+            return files.filter(Files::isRegularFile).mapToLong(f -> f.toFile().length()).sum();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void delete(Path entry){
+        if (!Files.exists(entry))
+            return;
+        try (Stream<Path> files = Files.walk(entry)) {
+            for (Path f : files.sorted(Comparator.reverseOrder()).toList()) //Files before the directories holding them
+                Files.deleteIfExists(f);
+        } catch (IOException e) {
+            System.out.println("Could not remove " + entry + ": " + e);
+        }
+    }
+
+    /**
+     * Lists, removes or clears the stored runs.
+     * @param args "list", "remove" followed by the keys to remove, or "clear", optionally preceded by
+     *             "--directory=<directory>".
+     */
+    public static void main(String[] args) {
+        Path directory = Path.of("cache");
+        int first = 0;
+        if (args.length > 0 && args[0].startsWith("--directory=")) {
+            directory = Path.of(args[0].substring("--directory=".length()));
+            first = 1;
+        }
+        if (args.length <= first) {
+            System.out.println("Usage: ResultCache [--directory=<directory>] list | remove <key>... | clear");
+            System.exit(1);
+        }
+        ResultCache cache = new ResultCache(directory, Long.MAX_VALUE);
+        switch (args[first]) {
+            case "list":
+                for (Path entry : cache.entries())
+                    System.out.println(entry.getFileName() + " " + sizeOf(entry) + " bytes, last used " + lastUsed(entry));
+                break;
+            case "remove":
+                for (int i = first + 1; i < args.length; i++)
+                    System.out.println(args[i] + (cache.remove(args[i]) ? " removed" : " is not stored"));
+                break;
+            case "clear":
+                System.out.println(cache.clear() + " stored runs removed");
+                break;
+            default:
+                System.out.println("Unknown command " + args[first]);
+                System.exit(1);
+        }
+    }
+}
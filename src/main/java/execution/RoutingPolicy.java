@@ -0,0 +1,102 @@
+package execution;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides which Station a car that balked is sent to. The Monitor asks its Routing Policy once for every car that balks,
+ * but not for recalled cars, which always go back to where they were sent.
+ * "random" picks any other Station with equal chance. "leastLoaded" reads how busy each Station is from an
+ * {@link OccupancyBoard} and picks the Station where the car's charger class has the fewest cars waiting for a charger
+ * less free chargers, among the Stations that have chargers of that class. A Station's numbers are as it last posted
+ * them, at whatever time it has reached, which may be ahead of or behind the time the car balked at, so the choice is
+ * a guess that only changes where cars go and never whether the Simulation is correct. Cars the policy has sent to a
+ * Station since that Station last posted count against it, so that a burst of balks is spread out rather than all sent
+ * to the one Station that looked emptiest.
+ */
+public interface RoutingPolicy {
+    /**
+     * @param sender the index of the Station the car balked from.
+     * @param chargeClass the id of the charger class the car wants.
+     * @return the index of the Station the car goes to, never the sender.
+     */
+    int choose(int sender, int chargeClass);
+
+    /**
+     * @param policy the name of a policy, "random" or "leastLoaded".
+     * @param stations the name of every Station the Monitor routes to, in the order of their indices.
+     * @param board the board the Stations post how busy they are on, or null if they do not, in which case cars are
+     *              routed at random.
+     * @return the policy, picking at random if the name is not known.
+     */
+    static RoutingPolicy create(String policy, String[] stations, OccupancyBoard board){
+        if (policy.equals("leastLoaded") && board != null)
+            return new LeastLoaded(stations, board);
+        return new AtRandom(stations.length);
+    }
+
+    /**
+     * Sends a car to any Station but the one it balked from, with equal chance.
+     */
+    final class AtRandom implements RoutingPolicy {
+        private final int stations;
+
+        private AtRandom(int stations){
+            this.stations = stations;
+        }
+
+        public int choose(int sender, int chargeClass){
+            int next = ThreadLocalRandom.current().nextInt(stations - 1);
+            return next >= sender ? next + 1 : next; //Skip over the Station the car is leaving
+        }
+    }
+
+    /**
+     * Sends a car to the Station that looks least busy for its charger class.
+     */
+    final class LeastLoaded implements RoutingPolicy {
+        private final OccupancyBoard board;
+        private final int[] slots; //The board slot of each Station
+        private final int[] postsSeen; //The count of posts of each Station when it was last read
+        private final int[][] routed; //Cars sent to each Station, by class, since it last posted
+        private final AtRandom fallback;
+
+        private LeastLoaded(String[] stations, OccupancyBoard board){
+            this.board = board;
+            this.slots = new int[stations.length];
+            this.postsSeen = new int[stations.length];
+            this.routed = new int[stations.length][board.getNumClasses()];
+            for (int i = 0; i < stations.length; i++)
+                slots[i] = board.indexOf(stations[i]);
+            fallback = new AtRandom(stations.length);
+        }
+
+        public int choose(int sender, int chargeClass){
+            int best = -1;
+            int bestLoad = Integer.MAX_VALUE;
+            int ties = 0;
+            for (int i = 0; i < slots.length; i++) {
+                if (i == sender || slots[i] < 0)
+                    continue;
+                int posts = board.getPosts(slots[i]);
+                if (posts != postsSeen[i]) { //What it has posted since is taken to count the cars sent there before
+                    postsSeen[i] = posts;
+                    Arrays.fill(routed[i], 0);
+                }
+                if (board.getChargers(slots[i], chargeClass) == 0)
+                    continue;
+                int load = board.getLoad(slots[i], chargeClass) + routed[i][chargeClass];
+                if (load < bestLoad) {
+                    best = i;
+                    bestLoad = load;
+                    ties = 1;
+                } else if (load == bestLoad && ThreadLocalRandom.current().nextInt(++ties) == 0)
+                    best = i; //Ties are broken at random, each Station as likely as the others
+            }
+            if (best < 0) //No other Station has chargers of the class, so it does not matter where the car goes
+                return fallback.choose(sender, chargeClass);
+            routed[best][chargeClass]++;
+            return best;
+        }
+    }
+}
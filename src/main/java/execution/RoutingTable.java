@@ -0,0 +1,174 @@
+package execution;
+
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Remembers where each balking car was sent, so that a retread Balk Message for the car can follow it there. A car that
+ * balks more than once makes a leg of its journey each time, and each leg is recalled on its own: a Station that rolls
+ * back recalls the car from the Station it sent it to, not from wherever the car went after that. Legs are looked up by
+ * the car's id and the time it balked, and mapped to the index of a Station, in a hash table of primitive arrays using
+ * open addressing.
+ * A car can only be recalled by a Station rolling back to before the time it balked, and no Station rolls back to before
+ * the Global Minimum Time, so a leg is dropped once the time the car balked at falls below the Global Minimum Time.
+ * Legs are kept in a ring in the order they were added, which is close to the order of their balk times, so dropping
+ * old legs only ever looks at the oldest few. The table therefore only holds the legs that began within the spread
+ * between the fastest and slowest Station, however long the Simulation runs.
+ */
+public class RoutingTable {
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private long[] keys; //The id of the car of each leg
+    private long[] times; //The epoch second the car balked at
+    private int[] values;
+    private int size;
+
+    private long[] ringKeys = new long[INITIAL_CAPACITY];
+    private long[] ringTimes = new long[INITIAL_CAPACITY];
+    private int ringHead;
+    private int ringSize;
+
+    /**
+     * Constructor to create an empty Routing Table.
+     */
+    public RoutingTable(){
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Records where a car was sent when it balked. The car's earlier legs are kept, so each can still be recalled.
+     * @param id the id of the car.
+     * @param station the index of the Station the car was sent to.
+     * @param balkTime the time the car balked.
+     */
+    public void put(long id, int station, Instant balkTime){
+        if ((size + 1) * 2 > keys.length)
+            rehash(keys.length * 2);
+        long time = balkTime.getEpochSecond();
+        int slot = slotOf(id, time);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = id;
+            times[slot] = time;
+            size++;
+        }
+        values[slot] = station;
+        if (ringSize == ringKeys.length)
+            growRing();
+        int tail = (ringHead + ringSize++) & (ringKeys.length - 1);
+        ringKeys[tail] = id;
+        ringTimes[tail] = time;
+    }
+
+    /**
+     * @param id the id of the car.
+     * @param balkTime the time the car balked, which starts the leg.
+     * @return the index of the Station the car was sent to when it balked at that time, or -1 if the leg is not in the
+     * table.
+     */
+    public int get(long id, Instant balkTime){
+        int slot = slotOf(id, balkTime.getEpochSecond());
+        return keys[slot] == EMPTY ? -1 : values[slot];
+    }
+
+    /**
+     * Drops every leg that began before a given time, in the order they were added, stopping at the first leg that
+     * began at or after it.
+     * @param globalMinimumTime the current Global Minimum Time.
+     */
+    public void evictBefore(Instant globalMinimumTime){
+        long cutoff = globalMinimumTime.getEpochSecond();
+        while (ringSize > 0 && ringTimes[ringHead] < cutoff) {
+            int slot = slotOf(ringKeys[ringHead], ringTimes[ringHead]);
+            if (keys[slot] != EMPTY) //A leg recorded twice is only in the table once
+                remove(slot);
+            ringHead = (ringHead + 1) & (ringKeys.length - 1);
+            ringSize--;
+        }
+    }
+
+    /**
+     * @return the number of legs in the table.
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * @param id the id of a car.
+     * @param time the epoch second the car balked at.
+     * @return the slot holding the leg, or the empty slot where it would go.
+     */
+    private int slotOf(long id, long time){
+        int mask = keys.length - 1;
+        int slot = mix(id, time) & mask;
+        while (keys[slot] != EMPTY && (keys[slot] != id || times[slot] != time))
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    /**
+     * Empties a slot, then moves back any entries further along the probe sequence that could no longer be found with a
+     * gap in front of them.
+     * @param slot the slot to empty.
+     */
+    private void remove(int slot){
+        int mask = keys.length - 1;
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = mix(keys[next], times[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                times[gap] = times[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = EMPTY;
+        size--;
+    }
+
+    private void rehash(int capacity){
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        long[] oldTimes = times;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slotOf(oldKeys[i], oldTimes[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                times[slot] = oldTimes[i];
+                size++;
+            }
+        }
+    }
+
+    private void allocate(int capacity){
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        values = new int[capacity];
+        times = new long[capacity];
+        size = 0;
+    }
+
+    private void growRing(){
+        long[] newKeys = new long[ringKeys.length * 2];
+        long[] newTimes = new long[ringKeys.length * 2];
+        for (int i = 0; i < ringSize; i++) {
+            int from = (ringHead + i) & (ringKeys.length - 1);
+            newKeys[i] = ringKeys[from];
+            newTimes[i] = ringTimes[from];
+        }
+        ringKeys = newKeys;
+        ringTimes = newTimes;
+        ringHead = 0;
+    }
+
+    private static int mix(long id, long time){
+        long h = (id * 31 + time) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,167 @@
+package execution;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import execution.Transport.LocalMailbox;
+import execution.Transport.Mailbox;
+import objects.GlobalTime;
+import objects.Message.EndMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single run of the Monitor and a set of Stations inside this process, connected by Local Mailboxes, over the span of
+ * simulated time given by its Global Time object. Main runs one Simulation over the whole of simulated time; the Time
+ * Parallel Runner runs several at once, each over a segment of it.
+ * If the config file sets "stationsPerGroup" above 1, consecutive Stations are gathered into groups of that size and each
+ * group is run by a single Logical Process; a value of 0 picks the group size so that there is one group for every spare
+ * core. Each Station or group normally holds a thread of the Executor Service for the whole run. If the config file sets
+ * "scheduler" to "workStealing", they instead share "schedulerThreads" threads of a Station Scheduler, which moves them
+ * between threads as their workloads change.
+ * Unless the config file sets "globalTimeReporting" to "messages", the Stations post their times on a Time Board that
+ * the Monitor reads every "boardIntervalMicros" microseconds, rather than sending the Monitor a Timing Message after
+ * every event.
+ * If the config file sets "balkRouting" to "leastLoaded", the Stations, or groups, also post how busy their chargers are
+ * on an Occupancy Board, and the Monitor sends each balking car to the one that looks least busy for its charger class.
+ */
+public class Simulation {
+    private final JsonNode rootNode;
+    private final GlobalTime gT;
+    private final ConcurrentHashMap<String, Mailbox> monitorToStationQueues = new ConcurrentHashMap<>();
+    private final Mailbox stationToMonitorQueue = new LocalMailbox();
+    private final ArrayList<SteppedProcess> processes = new ArrayList<>();
+    private final ArrayList<StationSimulator> stations = new ArrayList<>();
+    private final TimeBoard board;
+    private final OccupancyBoard occupancy; //Null when balking cars are routed at random
+
+    /**
+     * Constructor to create a Simulation, which creates every Station, ready to be run.
+     * @param rootNode the root of the master config file.
+     * @param gT the Global Time object shared by the Monitor and the Stations.
+     * @param fullConfigs the full config of each Station.
+     */
+    public Simulation(JsonNode rootNode, GlobalTime gT, List<ObjectNode> fullConfigs){
+        this.rootNode = rootNode;
+        this.gT = gT;
+        int perGroup = groupSize(rootNode.path("stationsPerGroup").asInt(1), fullConfigs.size());
+        board = rootNode.path("globalTimeReporting").asText("board").equals("messages") ? null
+                : new TimeBoard((fullConfigs.size() + perGroup - 1) / perGroup, gT.getStartInstant());
+        occupancy = !rootNode.path("balkRouting").asText("random").equals("leastLoaded") ? null
+                : new OccupancyBoard((fullConfigs.size() + perGroup - 1) / perGroup, ChargerClass.forStation(fullConfigs.get(0)).length);
+        for (int g = 0; g * perGroup < fullConfigs.size(); g++) {
+            List<ObjectNode> group = fullConfigs.subList(g * perGroup, Math.min(fullConfigs.size(), (g + 1) * perGroup));
+            Mailbox monitorToStationQueue = new LocalMailbox();
+            if (perGroup > 1) {
+                String groupName = "Group " + g;
+                monitorToStationQueues.put(groupName, monitorToStationQueue);
+                if (board != null)
+                    board.register(groupName);
+                if (occupancy != null)
+                    occupancy.register(groupName);
+                LogicalProcess process = new LogicalProcess(groupName, group, gT, stationToMonitorQueue, monitorToStationQueue, fullConfigs.size(), board, occupancy);
+                processes.add(process);
+                stations.addAll(process.getMembers());
+            } else {
+                String name = group.get(0).get("name").asText();
+                monitorToStationQueues.put(name, monitorToStationQueue);
+                if (board != null)
+                    board.register(name);
+                if (occupancy != null)
+                    occupancy.register(name);
+                StationSimulator station = new StationSimulator(group.get(0), gT, stationToMonitorQueue, monitorToStationQueue, board, occupancy);
+                processes.add(station);
+                stations.add(station);
+            }
+        }
+    }
+
+    /**
+     * Runs the Monitor and every Station until the Monitor ends the run, then shuts the Executor Service down.
+     * @param executor the Executor Service that the Monitor and Stations are spawned on. With the dedicated scheduler it
+     *                 must be able to run every Station, or group, and the Monitor at once.
+     * @return true if every process finished.
+     */
+    public boolean run(ExecutorService executor){
+        long reduceNanos = rootNode.path("boardIntervalMicros").asLong(200) * 1000;
+        executor.submit(() -> { //The Monitor learns the Stations from its Mailboxes, so it is only started once they all exist
+            Thread.currentThread().setName("Monitor");
+            new Monitor(gT, stationToMonitorQueue, monitorToStationQueues, board, reduceNanos,
+                    rootNode.path("balkRouting").asText("random"), occupancy);
+        });
+        if (rootNode.path("scheduler").asText("dedicated").equals("workStealing")) {
+            int threads = rootNode.path("schedulerThreads").asInt(0);
+            StationScheduler scheduler = new StationScheduler(gT, threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+            for (SteppedProcess process : processes)
+                scheduler.submit(process);
+            try {
+                scheduler.run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            return awaitExecutor(executor);
+        }
+        for (SteppedProcess process : processes){
+            executor.submit(() -> {
+                Thread.currentThread().setName(process.getName());
+                process.run();
+            });
+        }
+        return awaitExecutor(executor);
+    }
+
+    /**
+     * Cuts the run short. The Monitor is woken, in case it is waiting for a message, so that it sends every Station an
+     * End Message, which wakes any Station waiting for a message in turn.
+     */
+    public void cancel(){
+        gT.cancel();
+        stationToMonitorQueue.put(new EndMessage(gT.getEndInstant(), "Simulation"));
+    }
+
+    /**
+     * @return every Station in the run, in the order of the station config.
+     */
+    public List<StationSimulator> getStations(){
+        return stations;
+    }
+
+    /**
+     * @return the number of Stations, or groups, that each hold a thread with the dedicated scheduler.
+     */
+    public int getProcessCount(){
+        return processes.size();
+    }
+
+    /**
+     * @param configured the "stationsPerGroup" value from the config file.
+     * @param stations the number of Stations in the Simulation.
+     * @return the number of Stations each Logical Process should run.
+     */
+    private static int groupSize(int configured, int stations){
+        if (configured > 0)
+            return configured;
+        int groups = Math.max(1, Math.min(stations, Runtime.getRuntime().availableProcessors() - 1)); //One core is left for the Monitor
+        return (stations + groups - 1) / groups;
+    }
+
+    /**
+     * Stops an Executor Service from taking new tasks and waits for the tasks it has to finish.
+     * @param executor the Executor Service.
+     * @return true if every task finished.
+     */
+    static boolean awaitExecutor(ExecutorService executor){
+        executor.shutdown(); // Stop accepting new tasks
+        boolean terminate = true;
+        try {
+            terminate = executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS); // Wait for all tasks to complete
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return terminate;
+    }
+}
@@ -0,0 +1,343 @@
+package execution;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import execution.Jfr.Recordings;
+import objects.GlobalTime;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Stays running and runs Simulations as they are handed to it, so that a batch of short runs is simulated by a Java
+ * runtime that has already compiled the Simulator, loaded its classes and built its quantile tables, rather than each
+ * run paying for all of that again in a fresh launch.
+ * A job is a JSON object: "config" holds settings laid over those of the master config file, and "stationConfig", if
+ * given, is a whole station config used in place of the one the master config names. A job is handed over either as a
+ * file "&lt;job id&gt;.json" placed in the "jobDirectory" of the "daemon" block of the config file, or as a single line
+ * sent to the daemon's loopback socket on "port" (0 for any free port, which is written to "daemon.port" in the job
+ * directory). A job file should be written under another name and then renamed, so that it is never read half written.
+ * Files are moved to "accepted" once read, or "rejected" if they cannot be. A socket job may name itself with "id"; the
+ * daemon answers with "queued &lt;job id&gt;", then "done &lt;job id&gt; &lt;output directory&gt;" or
+ * "failed &lt;job id&gt; &lt;reason&gt;" once the job has run, and the line "stop" stops the daemon once its jobs
+ * are done.
+ * Jobs run "concurrentJobs" at a time, in the order they came in, each exactly as the Main class would run it, except
+ * that every Station runs in this process. Each writes its results to "out/&lt;job id&gt;". The Monitors and Stations
+ * of every job run on a single pool of threads that lives as long as the daemon. Whether Flight Recorder events are
+ * made is set once, by the master config file, for every job; a job cannot change it.
+ */
+public class SimulationDaemon {
+    private static final String[] ID_FORBIDDEN = {"/", "\\", ".."};
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final JsonNode rootNode;
+    private final JsonNode stationRoot;
+    private final Path jobDirectory;
+    private final ExecutorService jobs;
+    private final ExecutorService pool = Executors.newCachedThreadPool(); //Shared by every job, so threads outlive the jobs they ran
+    private final HashSet<String> ids = new HashSet<>(); //Every job id handed out, so no two jobs write to the same directory
+    private volatile boolean stopping;
+    private ServerSocket server;
+    private WatchService watcher;
+
+    /**
+     * The threads of the shared pool as a single job sees them. Shutting the view down, as a Simulation does once it has
+     * started everything it runs, only stops it from taking more tasks, and it counts as terminated once its own tasks
+     * are done, while the pool carries on for other jobs.
+     */
+    private static final class PoolView extends AbstractExecutorService {
+        private final ExecutorService pool;
+        private int running;
+        private boolean shutdown;
+
+        private PoolView(ExecutorService pool){
+            this.pool = pool;
+        }
+
+        public synchronized void execute(Runnable task){
+            if (shutdown)
+                throw new RejectedExecutionException("The job's tasks have all been started");
+            running++;
+            pool.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    finished();
+                }
+            });
+        }
+
+        private synchronized void finished(){
+            if (--running == 0)
+                notifyAll();
+        }
+
+        public synchronized void shutdown(){
+            shutdown = true;
+        }
+
+        public synchronized List<Runnable> shutdownNow(){
+            shutdown = true;
+            return List.of();
+        }
+
+        public synchronized boolean isShutdown(){
+            return shutdown;
+        }
+
+        public synchronized boolean isTerminated(){
+            return shutdown && running == 0;
+        }
+
+        public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long remaining = unit.toNanos(timeout);
+            while (!isTerminated()) {
+                if (remaining <= 0)
+                    return false;
+                long start = System.nanoTime();
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                remaining -= System.nanoTime() - start;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Reads the same config files as the Main class, then takes jobs until it is stopped.
+     * @param args the arguments from command line. Not currently relevant.
+     */
+    public static void main(String[] args) {
+        try {
+            ObjectMapper mapper = new ObjectMapper();
+            InputStream inputStream = SimulationDaemon.class.getClassLoader().getResourceAsStream("config/config.json");
+            if(inputStream == null){
+                throw new IOException("Config file not found in resources");
+            }
+            JsonNode rootNode = mapper.readTree(inputStream);
+            inputStream = SimulationDaemon.class.getClassLoader().getResourceAsStream("config/" + rootNode.get("configFile").asText());
+            if(inputStream == null){
+                throw new IOException("Station config file not found in resources");
+            }
+            new SimulationDaemon(rootNode, mapper.readTree(inputStream)).serve();
+        }catch (IOException e){
+            System.out.println("The config file cannot be found");
+        }catch (NullPointerException e){
+            System.out.println("A parameter could not be found: " + e);
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Constructor to create a Simulation Daemon.
+     * @param rootNode the root of the master config file, holding the "daemon" block, which every job's settings are laid
+     *                 over.
+     * @param stationRoot the root of the station config file used by jobs that do not give their own.
+     */
+    public SimulationDaemon(JsonNode rootNode, JsonNode stationRoot){
+        JsonNode config = rootNode.path("daemon");
+        this.rootNode = rootNode;
+        this.stationRoot = stationRoot;
+        this.jobDirectory = Path.of(config.path("jobDirectory").asText("jobs"));
+        this.jobs = Executors.newFixedThreadPool(Math.max(1, config.path("concurrentJobs").asInt(1)));
+        Recordings.enable(rootNode.path("flightRecorderEvents").asBoolean(false)); //Once for the daemon, before any job runs, as every job shares the switch
+    }
+
+    /**
+     * Takes jobs from the socket and the job directory until the daemon is stopped, then waits for the jobs already taken
+     * to finish.
+     * @throws IOException if the job directory cannot be watched or the socket cannot be opened.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public void serve() throws IOException, InterruptedException {
+        Files.createDirectories(jobDirectory.resolve("accepted"));
+        Files.createDirectories(jobDirectory.resolve("rejected"));
+        server = new ServerSocket(rootNode.path("daemon").path("port").asInt(0), 50, InetAddress.getLoopbackAddress());
+        Files.writeString(jobDirectory.resolve("daemon.port"), String.valueOf(server.getLocalPort()));
+        System.out.println("Taking jobs from " + jobDirectory.toAbsolutePath() + " and port " + server.getLocalPort());
+        watcher = jobDirectory.getFileSystem().newWatchService(); //Before the socket is listened to, since a stop request closes it
+        jobDirectory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE); //A file renamed into the directory is created there too
+        Thread listener = new Thread(this::listen, "Daemon socket");
+        listener.start();
+        takeFiles(); //Jobs left in the directory while the daemon was not running
+        try {
+            while (!stopping) {
+                WatchKey key = watcher.take();
+                key.pollEvents();
+                takeFiles();
+                key.reset();
+            }
+        } catch (ClosedWatchServiceException e) {
+            //Closed by a stop request
+        }
+        listener.join();
+        server.close();
+        jobs.shutdown();
+        jobs.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        pool.shutdown();
+    }
+
+    /**
+     * Takes every job file waiting in the job directory, in the order of their names.
+     */
+    private void takeFiles(){
+        ArrayList<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(jobDirectory, "*.json")) {
+            for (Path file : stream)
+                files.add(file);
+        } catch (IOException e) {
+            System.out.println("Could not list the job directory: " + e);
+            return;
+        }
+        files.sort(null);
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            String id = name.substring(0, name.length() - ".json".length());
+            try {
+                JsonNode job = mapper.readTree(file.toFile());
+                Files.move(file, jobDirectory.resolve("accepted").resolve(name), StandardCopyOption.REPLACE_EXISTING);
+                submit(id, job, result -> System.out.println(result));
+            } catch (IOException e) {
+                System.out.println("Job file " + name + " cannot be read: " + e);
+                try {
+                    Files.move(file, jobDirectory.resolve("rejected").resolve(name), StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException ignored) {
+                    //Left where it is, and tried again when the directory next changes
+                }
+            }
+        }
+    }
+
+    /**
+     * Accepts connections to the socket until the daemon is stopped, answering each on a thread of its own, since a
+     * connection stays open until its job has run.
+     */
+    private void listen(){
+        while (!stopping) {
+            try {
+                Socket client = server.accept();
+                Thread handler = new Thread(() -> answer(client), "Daemon client");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                if (!stopping)
+                    System.out.println("A connection to the daemon failed: " + e);
+            }
+        }
+    }
+
+    /**
+     * Reads a single line from a connection to the socket, which is a job or "stop", and answers it.
+     * @param client the connection.
+     */
+    private void answer(Socket client){
+        try (client;
+             BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(client.getOutputStream(), true, StandardCharsets.UTF_8)) {
+            String line = in.readLine();
+            if (line == null)
+                return;
+            if (line.trim().equals("stop")) {
+                stop();
+                out.println("stopping");
+                return;
+            }
+            JsonNode job;
+            try {
+                job = mapper.readTree(line);
+            } catch (IOException e) {
+                out.println("failed - the job is not JSON: " + e.getMessage());
+                return;
+            }
+            CompletableFuture<String> result = new CompletableFuture<>();
+            out.println("queued " + submit(job.path("id").asText("job"), job, result::complete));
+            out.println(result.join()); //The client hears back once its job has run, so a script can wait on the answer
+        } catch (IOException e) {
+            System.out.println("A job could not be taken from the socket: " + e);
+        }
+    }
+
+    /**
+     * Stops the daemon from taking more jobs. The jobs already taken still run.
+     */
+    private void stop(){
+        stopping = true;
+        try {
+            watcher.close();
+            server.close();
+        } catch (IOException e) {
+            System.out.println("Could not stop watching the job directory: " + e);
+        }
+    }
+
+    /**
+     * Queues a job to be run.
+     * @param id the id the job was given, which is made safe to name a directory with, and unique among the jobs the
+     *           daemon has run and the directories in "out" by adding a number.
+     * @param job the job.
+     * @param onResult told "done &lt;job id&gt; &lt;output directory&gt;" or "failed &lt;job id&gt; &lt;reason&gt;"
+     *                 once the job has run.
+     * @return the id the job is known by.
+     */
+    private synchronized String submit(String id, JsonNode job, Consumer<String> onResult){
+        for (String forbidden : ID_FORBIDDEN)
+            id = id.replace(forbidden, "_");
+        String jobId = id.isBlank() ? "job" : id;
+        for (int n = 2; !ids.add(jobId) || Files.exists(Path.of("out", jobId)); n++)
+            jobId = id + "-" + n;
+        String finalId = jobId;
+        jobs.submit(() -> {
+            try {
+                Path output = Path.of("out", finalId);
+                onResult.accept(runJob(job, output) ? "done " + finalId + " " + output : "failed " + finalId + " the Simulation did not finish");
+            } catch (IOException | RuntimeException e) {
+                onResult.accept("failed " + finalId + " " + e);
+            }
+        });
+        return jobId;
+    }
+
+    /**
+     * Runs a single job the way the Main class runs a Simulation, on the shared pool of threads.
+     * @param job the job.
+     * @param output the directory the job's results are written to.
+     * @return true if the Simulation finished.
+     * @throws IOException if the results cannot be written.
+     */
+    private boolean runJob(JsonNode job, Path output) throws IOException {
+        ObjectNode root = rootNode.deepCopy();
+        job.path("config").fields().forEachRemaining(field -> root.set(field.getKey(), field.getValue()));
+        root.put("transport", "local"); //Worker processes would be fresh launches, which is what the daemon is there to avoid
+        GlobalTime gT = new GlobalTime(root.get("startTimeHr").asInt(), root.get("startTimeMin").asInt(), root.get("startTimeSec").asInt(), root.get("runtime").asInt());
+        JsonNode stations = job.has("stationConfig") ? job.get("stationConfig") : stationRoot;
+        long startTime = System.nanoTime();
+        boolean finished = Main.run(root, gT, Main.readStationConfigs(stations), output, new PoolView(pool));
+        System.out.println("Job " + output.getFileName() + " took " + (float) (System.nanoTime() - startTime) / 1000000000 + " seconds");
+        return finished;
+    }
+}
@@ -0,0 +1,230 @@
+package execution;
+
+import objects.GlobalTime;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs many Stations, or groups of Stations, on a fixed number of threads. Each thread owns a queue of Stations and runs
+ * them a slice at a time; a thread that runs out of work steals a Station from the busiest other thread, and the Station
+ * moves to the thread that stole it.
+ * A process that is idle is taken out of the queues altogether, and put back on its thread's queue by the Mailbox as soon
+ * as a message arrives for it.
+ * Every time the Global Minimum Time advances, and at most once every few milliseconds, the scheduler measures how much
+ * thread time each Station used since the last measurement and how far it is ahead of the Global Minimum Time. The
+ * Station that is holding back the Global Minimum Time is given a thread of its own and longer slices, and the rest are
+ * spread over the remaining threads so that each thread carries about the same load. Stations move to their new thread
+ * the next time they finish a slice.
+ */
+public class StationScheduler {
+    private static final int BASE_QUANTUM = 256;
+    private static final int LAGGING_QUANTUM = BASE_QUANTUM * 8;
+    private static final long REBALANCE_INTERVAL_NANOS = 10_000_000;
+    private static final long IDLE_NANOS = 100_000;
+
+    private final GlobalTime gT;
+    private final ArrayList<Slot> slots = new ArrayList<>();
+    private final ConcurrentLinkedDeque<Slot>[] queues;
+    private final AtomicInteger remaining = new AtomicInteger();
+    private final AtomicReference<Instant> lastBalancedTime = new AtomicReference<>();
+    private volatile long lastBalance = System.nanoTime();
+    private final AtomicInteger migrations = new AtomicInteger();
+
+    /**
+     * A Station, or group of Stations, along with what the scheduler has measured about it.
+     */
+    private static final class Slot {
+        private final SteppedProcess process;
+        private final AtomicBoolean parked = new AtomicBoolean();
+        private volatile int home;
+        private volatile int quantum = BASE_QUANTUM;
+        private volatile long busyNanos;
+        private long measuredNanos;
+        private long readyAt;
+
+        private Slot(SteppedProcess process, int home){
+            this.process = process;
+            this.home = home;
+        }
+    }
+
+    /**
+     * Constructor to create a Station Scheduler.
+     * @param gT the Global Time object.
+     * @param threads the number of threads the Stations share.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"}) //Arrays of a generic type can only be made raw
+    public StationScheduler(GlobalTime gT, int threads){
+        this.gT = gT;
+        this.queues = new ConcurrentLinkedDeque[Math.max(1, threads)];
+        for (int i = 0; i < queues.length; i++)
+            queues[i] = new ConcurrentLinkedDeque<>();
+    }
+
+    /**
+     * Adds a process to the scheduler. Processes are dealt out to the threads in turn until the first rebalance.
+     * Must be called before run.
+     * @param process the Station, or group of Stations, to be run.
+     */
+    public void submit(SteppedProcess process){
+        Slot slot = new Slot(process, slots.size() % queues.length);
+        slots.add(slot);
+        queues[slot.home].add(slot);
+        process.setWakeup(() -> unpark(slot));
+        remaining.incrementAndGet();
+    }
+
+    /**
+     * Runs every submitted process until the Monitor ends the Simulation, printing each one's statistics as it finishes.
+     * @return the number of times a process moved from one thread to another.
+     * @throws InterruptedException if the calling thread is interrupted while waiting for the threads to finish.
+     */
+    public int run() throws InterruptedException {
+        Thread[] threads = new Thread[queues.length];
+        for (int i = 0; i < threads.length; i++) {
+            int self = i;
+            threads[i] = new Thread(() -> runThread(self), "Scheduler " + i);
+            threads[i].start();
+        }
+        for (Thread t : threads)
+            t.join();
+        return migrations.get();
+    }
+
+    /**
+     * The loop run by each of the scheduler's threads. Slices from processes that are idle or held by their Optimism
+     * Window are spaced out so they do not crowd out processes with work to do.
+     * @param self the index of the thread.
+     */
+    private void runThread(int self){
+        int notReady = 0;
+        try {
+            while (remaining.get() > 0) {
+                Slot slot = queues[self].pollFirst();
+                if (slot == null)
+                    slot = steal(self);
+                if (slot == null) {
+                    LockSupport.parkNanos(IDLE_NANOS);
+                    continue;
+                }
+                long start = System.nanoTime();
+                if (slot.readyAt > start) {
+                    queues[self].addLast(slot);
+                    if (++notReady > queues[self].size()) {
+                        LockSupport.parkNanos(IDLE_NANOS);
+                        notReady = 0;
+                    }
+                    continue;
+                }
+                notReady = 0;
+                SteppedProcess.Slice slice = slot.process.runSlice(slot.quantum);
+                long end = System.nanoTime();
+                slot.busyNanos += end - start;
+                if (slice == SteppedProcess.Slice.DONE) {
+                    slot.process.finish();
+                    remaining.decrementAndGet();
+                    continue;
+                }
+                slot.readyAt = slice == SteppedProcess.Slice.RAN ? 0 : end + IDLE_NANOS;
+                rebalanceIfAdvanced(end);
+                if (slice == SteppedProcess.Slice.IDLE) {
+                    slot.parked.set(true);
+                    if (slot.process.hasMessages()) //A message may have arrived before the process was parked
+                        unpark(slot);
+                } else
+                    queues[slot.home].addLast(slot);
+            }
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Puts a parked process back on its thread's queue. Safe to call from any thread, and more than once; only the first
+     * call after the process was parked has any effect.
+     * @param slot the process to put back.
+     */
+    private void unpark(Slot slot){
+        if (slot.parked.compareAndSet(true, false))
+            queues[slot.home].addLast(slot);
+    }
+
+    /**
+     * Takes a process off the end of the longest queue belonging to another thread.
+     * @param self the index of the thread that is stealing.
+     * @return the stolen process, or null if there was nothing to steal.
+     */
+    private Slot steal(int self){
+        int victim = -1;
+        int most = 0;
+        for (int i = 0; i < queues.length; i++) {
+            int size = queues[i].size();
+            if (i != self && size > most) {
+                most = size;
+                victim = i;
+            }
+        }
+        if (victim < 0)
+            return null;
+        Slot slot = queues[victim].pollLast();
+        if (slot != null) {
+            slot.home = self;
+            migrations.incrementAndGet();
+        }
+        return slot;
+    }
+
+    /**
+     * Reassigns every process to a thread if the Global Minimum Time has moved since the last reassignment and enough
+     * real time has passed. Only one thread performs any given reassignment.
+     * @param now the current value of System.nanoTime.
+     */
+    private void rebalanceIfAdvanced(long now){
+        if (now - lastBalance < REBALANCE_INTERVAL_NANOS)
+            return;
+        Instant gvt = gT.getGlobalMinimumTime();
+        Instant last = lastBalancedTime.get();
+        if (gvt.equals(last) || !lastBalancedTime.compareAndSet(last, gvt))
+            return;
+        lastBalance = now;
+        synchronized (slots) {
+            Slot lagging = null;
+            for (Slot slot : slots) {
+                long busy = slot.busyNanos;
+                slot.measuredNanos = busy - slot.measuredNanos;
+                boolean working = slot.readyAt == 0; //Idle and held processes are not the ones holding back the Global Minimum Time
+                if (working && (lagging == null || slot.process.getLocalTime().isBefore(lagging.process.getLocalTime())))
+                    lagging = slot;
+            }
+            ArrayList<Slot> byLoad = new ArrayList<>(slots);
+            byLoad.sort(Comparator.comparingLong((Slot s) -> s.measuredNanos).reversed());
+            long[] load = new long[queues.length];
+            boolean exclusive = queues.length > 1 && slots.size() > queues.length;
+            for (Slot slot : byLoad) {
+                int target;
+                if (exclusive && slot == lagging) {
+                    target = 0;
+                    load[0] = Long.MAX_VALUE; //The lagging process keeps thread 0 to itself
+                } else {
+                    target = exclusive ? 1 : 0;
+                    for (int i = target; i < load.length; i++)
+                        if (load[i] < load[target])
+                            target = i;
+                    load[target] += slot.measuredNanos;
+                }
+                if (slot.home != target)
+                    migrations.incrementAndGet();
+                slot.home = target;
+                slot.quantum = slot == lagging ? LAGGING_QUANTUM : BASE_QUANTUM;
+                slot.measuredNanos = slot.busyNanos;
+            }
+        }
+    }
+}
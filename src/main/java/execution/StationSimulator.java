@@ -1,13 +1,27 @@
 package execution;
 import com.fasterxml.jackson.databind.JsonNode;
-import org.apache.commons.math3.distribution.BetaDistribution;
+import execution.History.HistoryLog;
+import execution.Jfr.MailboxStallRecording;
+import execution.Jfr.Recordings;
+import execution.Jfr.RollbackRecording;
+import execution.Trace.ArrivalTrace;
+import execution.Trace.TraceRecorder;
+import execution.Transport.Mailbox;
+import execution.Transport.Outbox;
 import objects.*;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.PriorityQueue;
 import java.util.Queue;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ThreadLocalRandom;
 
 import objects.Event.*;
@@ -15,7 +29,6 @@ import objects.Message.BalkMessage;
 import objects.Message.EndMessage;
 import objects.Message.Message;
 import objects.Message.TimingMessage;
-import org.apache.commons.math3.distribution.GammaDistribution;
 
 /**
  * The Station Simulator class does the most work out of all the classes. It represents a single Charging Station within the
@@ -24,35 +37,53 @@ import org.apache.commons.math3.distribution.GammaDistribution;
  * loop to handle a number of events. It also keeps track of certain statistics about the running of these events. The Station
  * Simulator maintains communication with the Monitor to send Arrival Events which have balked to other Stations.
  */
-public class StationSimulator {
-    private final Queue<Event> eventQueue = new PriorityQueue<>(
-            (e1, e2) -> e1.getTimestamp().compareTo(e2.getTimestamp())
-    ); //This is a priority queue for any kind of event
-    private final Queue<Event> historyQueue = new PriorityQueue<>(
-            (e1, e2) -> e2.getTimestamp().compareTo(e1.getTimestamp())
-    ); //This is a priority queue that tracks the arrival and balk events that have occurred over the course of the simulation. it is REVERSED
+public class StationSimulator implements SteppedProcess {
+    private final EventSources eventQueue = new EventSources(); //The events the Station has yet to handle, each kind kept in a source of its own
+    private HistoryLog historyQueue; //This tracks the arrival, departure and balk events that have occurred over the course of the simulation, latest first
     //private ChargingStation station;
     private String stationName;
-    private int fastChargers;
-    private int fastInUse;
-    private int slowChargers;
-    private int slowInUse;
-    private double fastChargingRate;
-    private double slowChargingRate;
-    private final Queue<ArrivalEvent> fastQueue = new PriorityQueue<>(
-            (e1, e2) -> e1.getTimestamp().compareTo(e2.getTimestamp())
-    );
-    private final Queue<ArrivalEvent> slowQueue = new PriorityQueue<>(
+    private ChargerClass[] chargerClasses; //Everything about the Station's chargers is kept in arrays indexed by class id
+    private double[] classShares; //The running total of the classes' shares of generated cars, to pick a class for each car
+    private int[] inUse;
+    private WaitingLine[] waitingLines;
+    private final HashMap<Long, BalkEvent> heldRetreads = new HashMap<>(); //Balks undone by a rollback whose cars have not been recalled yet, by car id
+    private final Queue<BalkEvent> heldRetreadTimes = new PriorityQueue<>(
             (e1, e2) -> e1.getTimestamp().compareTo(e2.getTimestamp())
     );
-    private BlockingQueue<Message> stationToMonitorQueue;
-    private BlockingQueue<Message> monitortoStationQueue;
+    private Outbox stationToMonitorQueue;
+    private Mailbox monitortoStationQueue;
+    private final ArrayList<Message> inbox = new ArrayList<>(); //Messages drained from the Mailbox together
+    private final ArrayList<BalkMessage> balks = new ArrayList<>();
     private final GlobalTime gT;
     private Instant stationTime;
-    private static final ThreadLocalRandom random = ThreadLocalRandom.current();
-    private final StationStats sS = new StationStats();
-    private GammaDistribution energyDistribution;
-    private BetaDistribution timeOfDayDistribution;
+    private StationStats sS;
+    private ArrivalSource arrivals;
+    private int maxBalks; //How many times a car balks to another Station before it gives up and leaves uncharged
+    private OptimismWindow window;
+    private TraceRecorder trace;
+    private PowerGrid grid;
+    private long received; //Messages read from the Monitor, which the Monitor uses to tell when the Simulation is over
+    private long sent; //Balk Messages sent to the Monitor
+    private TimeBoard board; //Null when the Station sends its time to the Monitor in Timing Messages
+    private int slot;
+    private OccupancyBoard occupancy; //Null unless the Monitor routes balking cars by how busy the Stations are
+    private int occupancySlot;
+    private Instant lastReported;
+    private Instant lastPruned; //The Global Minimum Time the history queue was last pruned to
+    private long lastReportedReceived = -1;
+    private long lastReportedSent = -1;
+    private Instant countFrom; //Only what happens from countFrom until countUntil is counted in the statistics, when the Station runs a segment of the Simulation
+    private Instant countUntil;
+    private boolean countsAll;
+    private boolean writeResults; //Whether the Station writes its statistics and load curve when it finishes
+    private Path output; //The directory the Station writes its results and trace to
+    private Instant[] snapshotTimes = new Instant[0];
+    private long[][] snapshots = new long[0][];
+    private int snapshotsTaken;
+    private ArrayDeque<Checkpoint> checkpoints; //Copies of the statistics taken at the start of each day, null unless "checkpointStats" is set
+    private volatile Checkpoint committed;
+    private static final long HOLD_NANOS = 1_000_000;
+    private static final int CAR_ID_BITS = 40; //The low bits of a car's id count the cars made at a Station, and the high bits give the Station
 
     /**
      * Constructor to create a Station Simulator. Reads data from the config file in order to set up a ChargingStation object,
@@ -60,100 +91,156 @@ public class StationSimulator {
      * such as the arrival rate, whether to use limited energy mechanics, and the unique name of the Station.
      * @param config the JsonNode which contains all config data from the config file
      * @param gT the Global Time object.
-     * @param smQ the message queue which goes from all Stations to the Monitor.
-     * @param msQ the message queue which goes from the Monitor to this Station.
+     * @param smQ the Mailbox which goes from all Stations to the Monitor.
+     * @param msQ the Mailbox which goes from the Monitor to this Station.
+     */
+    public StationSimulator(JsonNode config, GlobalTime gT, Outbox smQ, Mailbox msQ){
+        this(config, gT, smQ, msQ, null);
+    }
+
+    /**
+     * Constructor to create a Station Simulator that posts its time on a Time Board rather than sending it to the Monitor.
+     * @param config the JsonNode which contains all config data from the config file
+     * @param gT the Global Time object.
+     * @param smQ the Mailbox which goes from all Stations to the Monitor.
+     * @param msQ the Mailbox which goes from the Monitor to this Station.
+     * @param board the board the Station posts its time on, which must hold a slot under the Station's name, or null to
+     *              send Timing Messages.
      */
-    public StationSimulator(JsonNode config, GlobalTime gT, BlockingQueue<Message> smQ, BlockingQueue<Message> msQ){
+    public StationSimulator(JsonNode config, GlobalTime gT, Outbox smQ, Mailbox msQ, TimeBoard board){
+        this(config, gT, smQ, msQ, board, null);
+    }
+
+    /**
+     * Constructor to create a Station Simulator that also posts how busy its chargers are on an Occupancy Board after
+     * every event, for the Monitor to route balking cars by.
+     * @param config the JsonNode which contains all config data from the config file
+     * @param gT the Global Time object.
+     * @param smQ the Mailbox which goes from all Stations to the Monitor.
+     * @param msQ the Mailbox which goes from the Monitor to this Station.
+     * @param board the board the Station posts its time on, which must hold a slot under the Station's name, or null to
+     *              send Timing Messages.
+     * @param occupancy the board the Station posts how busy it is on, which must hold a slot under the Station's name, or
+     *                  null to post nothing.
+     */
+    public StationSimulator(JsonNode config, GlobalTime gT, Outbox smQ, Mailbox msQ, TimeBoard board, OccupancyBoard occupancy){
         this.gT = gT;
         stationTime = gT.getStartInstant();
         try {
             stationName = config.get("name").asText();
+            this.board = board;
+            if (board != null)
+                slot = board.indexOf(stationName);
+            this.occupancy = occupancy;
+            if (occupancy != null)
+                occupancySlot = occupancy.indexOf(stationName);
+            chargerClasses = ChargerClass.forStation(config);
+            maxBalks = config.path("maxBalks").asInt(Integer.MAX_VALUE);
+            historyQueue = HistoryLog.create(config.path("historyStore").asText("heap"));
+            inUse = new int[chargerClasses.length];
+            waitingLines = new WaitingLine[chargerClasses.length];
+            classShares = new double[chargerClasses.length];
+            String[] classNames = new String[chargerClasses.length];
+            double shares = 0;
+            for (int c = 0; c < chargerClasses.length; c++) {
+                waitingLines[c] = new WaitingLine();
+                shares += chargerClasses[c].getShare();
+                classShares[c] = shares;
+                classNames[c] = chargerClasses[c].getName();
+            }
+            sS = new StationStats(classNames);
             sS.setStationName(stationName);
-            fastChargers = config.get("fastChargers").asInt();
-            slowChargers = config.get("slowChargers").asInt();
-            fastChargingRate = config.get("fastChargingRate").asDouble();
-            slowChargingRate = config.get("slowChargingRate").asDouble();
+            countFrom = config.has("countFrom") ? Instant.ofEpochSecond(config.get("countFrom").asLong()) : Instant.MIN;
+            countUntil = config.has("countUntil") ? Instant.ofEpochSecond(config.get("countUntil").asLong()) : Instant.MAX;
+            countsAll = !config.has("countFrom") && !config.has("countUntil");
+            writeResults = config.path("writeResults").asBoolean(true);
+            output = Path.of(config.path("outputDirectory").asText("out"));
+            if (config.path("checkpointStats").asBoolean(false))
+                checkpoints = new ArrayDeque<>();
+            if (config.has("snapshotAt")) {
+                snapshotTimes = new Instant[config.get("snapshotAt").size()];
+                for (int i = 0; i < snapshotTimes.length; i++)
+                    snapshotTimes[i] = Instant.ofEpochSecond(config.get("snapshotAt").get(i).asLong());
+                snapshots = new long[snapshotTimes.length][];
+            }
+            if (config.has("optimismWindow"))
+                window = new OptimismWindow(config.get("optimismWindow"));
+            grid = new PowerGrid(config.path("sitePowerCap").asDouble(0), gT, config.path("loadResolutionSeconds").asLong(900));
+            if (config.path("trace").asBoolean(false)) {
+                try {
+                    trace = new TraceRecorder(output.resolve("trace").resolve(stationName + ".trace"), gT);
+                } catch (IOException e){
+                    System.out.println(stationName + " could not open its trace file: " + e);
+                }
+            }
 
             stationToMonitorQueue = smQ;
             monitortoStationQueue = msQ;
 
             GenEvent c = new GenEvent(gT.getStartInstant(), config.get("arrivalRate").asInt()); //Arrival rate is cars per hour
 
-            energyDistribution = new GammaDistribution(2.3127598129490075, 3.870663519530382);
-            timeOfDayDistribution = new BetaDistribution(4.614972052581306, 3.805085312822052); //
+            long firstCarId = config.path("stationIndex").asLong(0) << CAR_ID_BITS;
+            if (config.has("arrivalTrace")) {
+                try {
+                    arrivals = new ArrivalTrace(Path.of(config.get("arrivalTrace").asText(), stationName + ".arrivals"),
+                            firstCarId, chargerClasses.length, gT);
+                } catch (IOException e){
+                    System.out.println(stationName + " could not open its arrival trace, so will sample its cars instead: " + e);
+                }
+            }
+            if (arrivals == null) {
+                JsonNode spillConfig = config.path("arrivalSpill");
+                ArrivalSpill spill = null;
+                if (spillConfig.path("enabled").asBoolean(false)) {
+                    try {
+                        spill = new ArrivalSpill(Path.of(spillConfig.path("directory").asText("spill")), stationName);
+                    } catch (IOException e){
+                        System.out.println(stationName + " could not make a directory to spill its arrivals to, so will keep them in memory: " + e);
+                    }
+                }
+                arrivals = new ArrivalProducer(config.has("seed") ? config.get("seed").asLong() : ThreadLocalRandom.current().nextLong(),
+                        firstCarId, config.get("arrivalRate").asInt(), classShares, gT,
+                        config.path("generationDays").asInt(2), !config.path("sampler").asText("table").equals("exact"),
+                        spill, spillConfig.path("windowDays").asInt(2));
+            }
 
             eventQueue.add(c);
-            eventLoop();
-            //System.out.println(stationName + " has finished\n" + eventQueue + "\n" + monitortoStationQueue + "\nFast in use: " + fastInUse + "\nSlow in use: " + slowInUse);
-            sS.printStats();
-
         } catch(Error e){
             System.out.println("The requested station file does not exist");
         }
     }
 
+    /**
+     * Runs the Station until the Monitor ends the Simulation, then prints the Station's statistics. The history is let
+     * go of even if the Station fails, since an off-heap log is not freed by the garbage collector.
+     */
+    @Override
+    public void run(){
+        try {
+            eventLoop();
+            //System.out.println(stationName + " has finished\n" + eventQueue + "\n" + monitortoStationQueue + "\nIn use: " + Arrays.toString(inUse));
+            finish();
+        } finally {
+            historyQueue.close(); //Closing the log again after finish() does nothing
+        }
+    }
+
     /**
      * Primary event loop of the Simulator. Iterates through a queue of events, handling each event according to its type.
      * At the end of each iteration, checks for messages from the Monitor, and acts on those messages. When the event queue
-     * is empty, the event loop will hold for messages from the Monitor. When an End Message is reached, the loop is broken.
+     * is empty, the event loop will park until a message arrives from the Monitor. When an End Message is reached, the
+     * loop is broken.
      */
     public void eventLoop(){
         try {
             while(true) {
-                while (!eventQueue.isEmpty()) {
-                    Event e = eventQueue.remove();
-                    if (e instanceof GenEvent & this.stationTime.isBefore(this.gT.getEndInstant())) { //"isBefore" can be used to check if time is semantically before
-                        this.stationTime = e.getTimestamp();
-                        genEvents(((GenEvent) e).getArrivalRate());
-                    } else if (e instanceof ArrivalEvent) {
-                        handleArrivalEvent((ArrivalEvent) e);
-                    } else if (e instanceof DepartureEvent) {
-                        handleDepartureEvent((DepartureEvent) e);
-                        switch (((DepartureEvent) e).getStatus()) {
-                            case "Uncharged":
-                                if (((DepartureEvent) e).getChargeType().equals("fast"))
-                                    sS.setNumNoFastCharges(sS.getNumNoFastCharges() + 1);
-                                else if (((DepartureEvent) e).getChargeType().equals("slow"))
-                                    sS.setNumNoSlowCharges(sS.getNumNoSlowCharges() + 1);
-                                break;
-                            case "Partially Charged":
-                                if (((DepartureEvent) e).getChargeType().equals("fast"))
-                                    sS.setNumPartialFastCharges(sS.getNumPartialFastCharges() + 1);
-                                else if (((DepartureEvent) e).getChargeType().equals("slow"))
-                                    sS.setNumPartialSlowCharges(sS.getNumPartialSlowCharges() + 1);
-                                break;
-                            case "Fully Charged":
-                                if (((DepartureEvent) e).getChargeType().equals("fast"))
-                                    sS.setNumFullFastCharges(sS.getNumFullFastCharges() + 1);
-                                else if (((DepartureEvent) e).getChargeType().equals("slow"))
-                                    sS.setNumFullSlowCharges(sS.getNumFullSlowCharges() + 1);
-                                break;
-                        }
-                    }
-                    //Here we check for messages from the Monitor
-                    if (!monitortoStationQueue.isEmpty()){
-                        Message msg = monitortoStationQueue.take();
-                        if (msg instanceof BalkMessage){
-                            backtrack(((BalkMessage) msg));
-                            //eventQueue.add(((BalkMessage) msg).getBalkEvent());
-                        } else if (msg instanceof EndMessage){
-                            monitortoStationQueue.add(msg); //Have to make sure the end message does not get lost
-                            //System.out.println(stationName + " got a premature EndMessage");
-                        }
-                    }
-                    stationToMonitorQueue.add(new TimingMessage(this.stationTime, this.stationName));
-                    //System.out.println(this.stationName + " is operating in the eventloop\n" + eventQueue + "\nFast in use: " + fastInUse + "\nSlow in use: " + slowInUse);
-                }
-                //System.out.println(stationName + " has exited the eventloop\n"+monitortoStationQueue + "\n" + stationTime + "\n" + minGlobalTime + "\n" + gT.getEndInstant());
-                if(monitortoStationQueue.isEmpty()) //Ensure the simulator is only "done" if its event queue AND its message queue are empty
-                    stationToMonitorQueue.add(new TimingMessage(gT.getEndInstant(),this.stationName)); //Ensure the monitor knows we're done
-                else {
-                    Message msg = monitortoStationQueue.take();
-                    if (msg instanceof BalkMessage) {
-                        backtrack(((BalkMessage) msg));
-                    } else if (msg instanceof EndMessage)
-                        return;
-                }
+                Slice slice = runSlice(Integer.MAX_VALUE);
+                if (slice == Slice.DONE)
+                    return;
+                if (slice == Slice.HELD)
+                    awaitWindow();
+                else if (slice == Slice.IDLE && handleMessages(awaitMessage()) != null)
+                    return; //Nothing can happen at an idle Station until a message arrives, so it waits without using the CPU
             }
         } catch (InterruptedException e){
             Thread.currentThread().interrupt();
@@ -161,242 +248,876 @@ public class StationSimulator {
     }
 
     /**
-     * This function handles the creation of events. It takes an arrival rate, then calculates an average enter-arrival time,
-     * which is used to decide, with a degree of randomness, when each event will be placed in the Event Queue. The properties
-     * of every Arrival Event are described here as well, detailing their battery life, the amount of energy they want, and
-     * what kind of charge they want.
+     * Runs the event loop for at most a given number of events, then returns so that the thread can be given to another
+     * Station. Each event is followed by a check for messages from the Monitor and a Timing Message to the Monitor.
+     * Every waiting message is taken at once, so that a burst of balks rolls the Station back only once. When the event
+     * queue is empty, the waiting messages are handled, or the Monitor is told the Station is done.
+     * Timing Messages are only sent when the Station's time or its count of messages read has changed. A Simulation
+     * that is cut short ends the slice as done.
+     * @param maxEvents the most events to handle before returning.
+     * @return how the slice ended.
+     * @throws InterruptedException if the thread is interrupted while taking a message.
+     */
+    @Override
+    public Slice runSlice(int maxEvents) throws InterruptedException {
+        for (int n = 0; n < maxEvents && !eventQueue.isEmpty(); n++) {
+            if (gT.isCancelled())
+                return Slice.DONE;
+            if (window != null && !window.allows(eventQueue.peek().getTimestamp(), gT.getGlobalMinimumTime())) {
+                if (monitortoStationQueue.isEmpty()) {
+                    //Nothing can happen at this Station before its next event unless a message arrives, so reporting
+                    //that time lets the Global Minimum Time advance even when this Station is the slowest one
+                    window.held();
+                    if (report(eventQueue.peek().getTimestamp()))
+                        nudge();
+                    return Slice.HELD;
+                }
+                Message end = handleMessages(null);
+                if (end != null) {
+                    monitortoStationQueue.put(end); //An End Message means every other Station is done, so there is nothing left to hold for
+                    window = null;
+                }
+                continue;
+            }
+            processNextEvent();
+            //Here we check for messages from the Monitor
+            if (!monitortoStationQueue.isEmpty()){
+                Message end = handleMessages(null);
+                if (end != null){
+                    monitortoStationQueue.put(end); //Have to make sure the end message does not get lost
+                    //System.out.println(stationName + " got a premature EndMessage");
+                }
+            }
+            report(this.stationTime);
+            postOccupancy();
+            //System.out.println(this.stationName + " is operating in the eventloop\n" + eventQueue + "\nIn use: " + Arrays.toString(inUse));
+        }
+        if (!eventQueue.isEmpty())
+            return Slice.RAN;
+        //System.out.println(stationName + " has exited the eventloop\n"+monitortoStationQueue + "\n" + stationTime + "\n" + minGlobalTime + "\n" + gT.getEndInstant());
+        if(monitortoStationQueue.isEmpty()) { //Ensure the simulator is only "done" if its event queue AND its message queue are empty
+            if (report(gT.getEndInstant())) //Ensure the monitor knows we're done
+                nudge();
+            return Slice.IDLE;
+        }
+        return handleMessages(takeMessage()) != null ? Slice.DONE : Slice.RAN;
+    }
+
+    /**
+     * Takes every message waiting in the Station's Mailbox, counting them, and acts on the Balk Messages among them
+     * together with a single rollback.
+     * @param first a message already taken from the Mailbox, which came before the waiting ones, or null.
+     * @return the End Message, if it was among the messages, or null.
+     * @throws InterruptedException if the thread is interrupted while taking a message.
+     */
+    private Message handleMessages(Message first) throws InterruptedException {
+        if (first != null)
+            inbox.add(first);
+        received += monitortoStationQueue.drainTo(inbox);
+        Message end = null;
+        for (Message msg : inbox) {
+            if (msg instanceof BalkMessage)
+                balks.add((BalkMessage) msg);
+            else if (msg instanceof EndMessage)
+                end = msg;
+        }
+        inbox.clear();
+        if (!balks.isEmpty()) {
+            backtrack(balks);
+            balks.clear();
+        }
+        return end;
+    }
+
+    /**
+     * Takes the next message out of the Station's Mailbox, counting it.
+     * @return the message.
+     * @throws InterruptedException if the thread is interrupted while waiting for a message.
+     */
+    private Message takeMessage() throws InterruptedException {
+        Message msg = monitortoStationQueue.take();
+        received++;
+        return msg;
+    }
+
+    /**
+     * Sends the Station's time to the Monitor, or posts it on the Time Board, along with the number of messages it has
+     * read and sent, unless none of them has changed since it was last reported. A recall held back by a rollback may
+     * still be sent for a time before the Station's, so the Station reports the earlier of the two times.
+     * @param time the Station's time.
+     * @return true if anything was reported.
+     */
+    private boolean report(Instant time){
+        Instant held = getHeldRetreadTime();
+        if (held != null && held.isBefore(time))
+            time = held;
+        if (time.equals(lastReported) && received == lastReportedReceived && sent == lastReportedSent)
+            return false;
+        if (board != null)
+            board.post(slot, time, sent, received);
+        else
+            stationToMonitorQueue.put(new TimingMessage(time, this.stationName, received));
+        lastReported = time;
+        lastReportedReceived = received;
+        lastReportedSent = sent;
+        return true;
+    }
+
+    /**
+     * Posts how many chargers of each class are free and how many cars wait for one on the Occupancy Board, if there is one.
+     */
+    private void postOccupancy(){
+        if (occupancy != null)
+            for (int c = 0; c < chargerClasses.length; c++)
+                occupancy.post(occupancySlot, c, getChargers(c), getFreeChargers(c), getWaitingCars(c));
+    }
+
+    /**
+     * Asks the Monitor to read the Time Board now rather than when it next gets round to it, so that the Global Minimum
+     * Time moves on promptly once a Station has run out of work or is being held by its Optimism Window.
+     */
+    private void nudge(){
+        if (board != null)
+            stationToMonitorQueue.put(new TimingMessage(lastReported, this.stationName, received));
+    }
+
+    /**
+     * Sends a Balk Message to the Monitor and counts it.
+     * @param msg the message.
+     */
+    private void send(BalkMessage msg){
+        sent++;
+        sS.setNumMessagesSent(sS.getNumMessagesSent() + 1);
+        stationToMonitorQueue.put(msg);
+    }
+
+    /**
+     * Blocks a Station that is being held by its Optimism Window until the Global Minimum Time catches up or a message
+     * arrives from the Monitor.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    private void awaitWindow() throws InterruptedException {
+        MailboxStallRecording recording = Recordings.enabled() ? MailboxStallRecording.start() : null;
+        Instant catchUp = eventQueue.peek().getTimestamp().minusSeconds(window.getWindowSeconds());
+        while (monitortoStationQueue.isEmpty() && !gT.awaitGlobalMinimumTime(catchUp, HOLD_NANOS));
+        if (recording != null)
+            recording.finish(stationName, MailboxStallRecording.HELD);
+    }
+
+    /**
+     * Blocks an idle Station until a message arrives from the Monitor.
+     * @return the message.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    private Message awaitMessage() throws InterruptedException {
+        MailboxStallRecording recording = Recordings.enabled() ? MailboxStallRecording.start() : null;
+        Message msg = takeMessage();
+        if (recording != null)
+            recording.finish(stationName, MailboxStallRecording.IDLE);
+        return msg;
+    }
+
+    /**
+     * Removes the earliest event from the Event Queue and handles it according to its type, recording the outcome of
+     * every Departure Event in the Station's statistics. Afterwards, any recall held back by a rollback whose balk can
+     * no longer happen again is sent. A snapshot due before the event is taken first.
+     */
+    public void processNextEvent(){
+        while (snapshotsTaken < snapshotTimes.length && !eventQueue.peek().getTimestamp().isBefore(snapshotTimes[snapshotsTaken]))
+            snapshots[snapshotsTaken++] = snapshot();
+        Event e = eventQueue.remove();
+        sS.setNumEventsProcessed(sS.getNumEventsProcessed() + 1);
+        if (window != null)
+            window.eventProcessed();
+        if (trace != null && !(e instanceof PatienceEvent)) //A car that runs out of patience is traced by its Balk Event
+            trace.record(e);
+        if (e instanceof GenEvent & this.stationTime.isBefore(this.gT.getEndInstant())) { //"isBefore" can be used to check if time is semantically before
+            this.stationTime = e.getTimestamp();
+            if (checkpoints != null) {
+                checkpoints.addLast(new Checkpoint(stationTime, sS.copy()));
+                commitCheckpoints();
+            }
+            genEvents(((GenEvent) e).getArrivalRate());
+        } else if (e instanceof ArrivalEvent) {
+            handleArrivalEvent((ArrivalEvent) e);
+        } else if (e instanceof PatienceEvent) {
+            this.stationTime = e.getTimestamp();
+            WaitingLine line = lineOf(((PatienceEvent) e).getCar());
+            balkExpired(line);
+            if (!line.isEmpty())
+                armPatience(line.peek());
+        } else if (e instanceof DepartureEvent) {
+            handleDepartureEvent((DepartureEvent) e);
+            countDeparture((DepartureEvent) e, 1);
+        }
+        sendHeldRetreads();
+    }
+
+    /**
+     * @return the timestamp of the earliest event in the Event Queue, or null if the queue is empty.
+     */
+    public Instant getNextEventTime(){
+        Event e = eventQueue.peek();
+        return e == null ? null : e.getTimestamp();
+    }
+
+    /**
+     * @return the earliest time a recall held back by a rollback could be sent for, or null if none is held back.
+     */
+    public Instant getHeldRetreadTime(){
+        return heldRetreadTimes.isEmpty() ? null : heldRetreadTimes.peek().getTimestamp();
+    }
+
+    /**
+     * @return the time of the last event the Station handled.
+     */
+    public Instant getStationTime(){
+        return stationTime;
+    }
+
+    /**
+     * @param chargeClass the id of a charger class.
+     * @return the number of chargers of the class the Station has.
+     */
+    public int getChargers(int chargeClass){
+        return chargerClasses[chargeClass].getChargers();
+    }
+
+    /**
+     * @param chargeClass the id of a charger class.
+     * @return the number of chargers of the class that no car is on, as of the last event the Station handled.
+     */
+    public int getFreeChargers(int chargeClass){
+        return chargerClasses[chargeClass].getChargers() - inUse[chargeClass];
+    }
+
+    /**
+     * @param chargeClass the id of a charger class.
+     * @return the number of cars waiting for a charger of the class, as of the last event the Station handled.
+     */
+    public int getWaitingCars(int chargeClass){
+        return waitingLines[chargeClass].size();
+    }
+
+    /**
+     * @return the time of the last event the Station handled, or the time it rolled back to.
+     */
+    @Override
+    public Instant getLocalTime(){
+        return stationTime;
+    }
+
+    /**
+     * @return the unique name of the Station.
+     */
+    public String getStationName(){
+        return stationName;
+    }
+
+    /**
+     * @return the unique name of the Station, which is also its name as a process.
+     */
+    @Override
+    public String getName(){
+        return stationName;
+    }
+
+    /**
+     * @return the number of events the Station has handled, counting those that rollbacks undid.
+     */
+    @Override
+    public long getEventsProcessed(){
+        return sS.getNumEventsProcessed();
+    }
+
+    /**
+     * @return true if a message from the Monitor is waiting in the Station's Mailbox.
+     */
+    @Override
+    public boolean hasMessages(){
+        return !monitortoStationQueue.isEmpty();
+    }
+
+    /**
+     * Registers an action to run whenever a message arrives in the Station's Mailbox.
+     * @param wakeup the action to run, on the thread that delivers the message.
+     */
+    @Override
+    public void setWakeup(Runnable wakeup){
+        monitortoStationQueue.setListener(wakeup);
+    }
+
+    /**
+     * Closes the Station's trace, arrival source and history once the Simulation has ended, settles the statistics that
+     * are only final then, and writes its statistics and load curve unless told not to.
+     */
+    @Override
+    public void finish(){
+        if (trace != null)
+            trace.close();
+        arrivals.close();
+        historyQueue.close();
+        while (snapshotsTaken < snapshotTimes.length) //Nothing is left to happen after these times
+            snapshots[snapshotsTaken++] = snapshot();
+        if (!countsAll) //Energy is counted when a car starts charging, and a rollback may take it back out, so it is only counted once the Station is done
+            sS.setEnergyGiven(grid.getEnergyStartedBetween(countFrom, countUntil));
+        sS.setPeakLoad(grid.getPeakLoad());
+        if (checkpoints != null && !gT.isCancelled()) //A run cut short keeps the last copy no rollback could change
+            committed = new Checkpoint(gT.getEndInstant(), sS.copy());
+        if (writeResults) {
+            grid.writeLoad(output.resolve("load").resolve(stationName + ".csv"));
+            sS.printStats(output);
+        }
+    }
+
+    /**
+     * @return the Station's Power Grid, holding the charging sessions it booked.
+     */
+    public PowerGrid getGrid(){
+        return grid;
+    }
+
+    /**
+     * @return the latest copy of the Station's statistics that no rollback can change any more, or null if there is none
+     * yet. Copies are only taken if the config sets "checkpointStats". This may be read from any thread while the
+     * Station runs.
+     */
+    public Checkpoint getCommittedStats(){
+        return committed;
+    }
+
+    /**
+     * Publishes the latest copy of the statistics taken no later than the Global Minimum Time, since every event it
+     * counts is before any time a Station can be rolled back to, and forgets the copies before it.
+     */
+    private void commitCheckpoints(){
+        Instant globalMinimumTime = gT.getGlobalMinimumTime();
+        Checkpoint latest = null;
+        while (!checkpoints.isEmpty() && !checkpoints.peekFirst().getTime().isAfter(globalMinimumTime))
+            latest = checkpoints.removeFirst();
+        if (latest != null)
+            committed = latest;
+    }
+
+    /**
+     * @param i the position of a time in the Station's "snapshotAt" list.
+     * @return the state of the Station at that time, as taken by {@link #snapshot()}, or null if it was never taken.
+     */
+    public long[] getSnapshot(int i){
+        return snapshots[i];
+    }
+
+    /**
+     * Takes down the state of the Station just before its next event: every car on a charger, with the time it leaves
+     * and the power it was given, every car waiting in line, and every deadline set for a waiting car to run out of
+     * patience. Two runs that agree on this state at some time go on to handle the same events from then on, given the
+     * same cars arrive.
+     * @return three longs per entry, sorted: the id of the car, then the epoch second it leaves and the bits of the power
+     * it was given, as a double, for a car on a charger; -1 and the number of times it has balked for a waiting car; or
+     * -2 and the epoch second of its deadline for a car that will run out of patience.
+     */
+    private long[] snapshot(){
+        ArrayList<long[]> cars = new ArrayList<>();
+        for (Iterator<DepartureEvent> iter = eventQueue.departures(); iter.hasNext();) {
+            DepartureEvent d = iter.next();
+            cars.add(new long[]{d.getCarId(), d.getTimestamp().getEpochSecond(), Double.doubleToLongBits(grid.getWatts(d.getCarId()))});
+        }
+        for (PatienceEvent p : eventQueue.getDeadlines()) //A deadline outlives its car leaving the line, and still wakes the line when it comes
+            cars.add(new long[]{p.getCar().getId(), -2, p.getTimestamp().getEpochSecond()});
+        for (WaitingLine line : waitingLines)
+            for (ArrivalEvent a : line)
+                cars.add(new long[]{a.getId(), -1, a.getBalks()});
+        cars.sort((c1, c2) -> c1[0] != c2[0] ? Long.compare(c1[0], c2[0]) : Long.compare(c1[1], c2[1]));
+        long[] state = new long[cars.size() * 3];
+        for (int i = 0; i < cars.size(); i++)
+            System.arraycopy(cars.get(i), 0, state, i * 3, 3);
+        return state;
+    }
+
+    /**
+     * @return the statistics recorded by the Station.
+     */
+    public StationStats getStats(){
+        return sS;
+    }
+
+    /**
+     * This function handles the creation of events. The cars that arrive at the Station during the day that is starting
+     * have already been sampled by the Station's Arrival Producer, and are placed in the Event Queue together, followed
+     * by the Generator Event for the next day.
      * @param arrivalRate the arrival rate of the current Station. This value is best described as the number of cars
      *                    that arrive per day.
      */
     public void genEvents(double arrivalRate){
         long dayInSeconds = 86400;
-        for (int i = 0; i< arrivalRate; i++){
-            double arrivalTime = -0.042 + timeOfDayDistribution.sample() * 1.110;
-            arrivalTime = Math.max(0.0, Math.min(1.0, arrivalTime));
-            long secondsIntoDay = (long) (arrivalTime * dayInSeconds);
-
-            Instant currentTime = this.stationTime.plusSeconds(secondsIntoDay);
-            double remaining = energyDistribution.sample() * 1000.0;
-            eventQueue.add(new ArrivalEvent(currentTime, random.nextDouble() < 0.67 ? "fast" : "slow",remaining));
-        }
+        eventQueue.release(gT.getGlobalMinimumTime()); //No rollback reaches back past it, so the cars before it can go
+        eventQueue.addDay(arrivals.takeDay());
         GenEvent e = new GenEvent(this.stationTime.plusSeconds(dayInSeconds), arrivalRate);
         eventQueue.add(e);
     }
 
     /**
-     * Handles a given Arrival Event when it reaches the front of the Event Queue. Determines the type of charge desired,
-     * then if the event will have to wait for a charger. If all charging slots are filled, then it is placed on a waiting queue.
-     * If not, it is placed onto a charging slot, its presence is backed up into the history queue, and the number of relevant
-     * charging slots in use is incremented.
+     * Handles a given Arrival Event when it reaches the front of the Event Queue. Determines the class of charger desired,
+     * then if the event will have to wait for a charger. If all charging slots are filled, then it is placed on a waiting queue,
+     * and if it is the only car waiting, a Patience Event is scheduled for the time it will balk if it is still waiting. If not, it is placed onto a charging slot, its presence is backed up into the history queue, and the number of relevant
+     * charging slots in use is incremented. A car that arrives at a Station with no chargers of its class leaves at once
+     * without a charge.
      * @param a the Arrival Event that is being handled.
      */
     public void handleArrivalEvent(ArrivalEvent a){
         this.stationTime = a.getTimestamp();
-        if(a.getChargeType().equals("fast")){
-            if(fastInUse >= fastChargers) {
-                fastQueue.add(a);
-            }
-            else {
-                if(a.getTimestamp().plusSeconds(600).isBefore(gT.getEndInstant())) { //also check the event will finish before the simulation closes
-                    fastInUse++;
-                    historyQueue.add(a); //Since this is going on the charger, add it to the history queue
-                    startCharge(a);
-                }
-            }
+        int c = a.getChargeClass();
+        if(chargerClasses[c].getChargers() == 0) { //Waiting would only send the car straight back to where it came from
+            inUse[c]++;
+            historyQueue.add(a);
+            eventQueue.add(new DepartureEvent(this.stationTime, a.getId(), a.getTimestamp(), this.stationTime, c, DepartureEvent.UNCHARGED));
         }
-        else if(a.getChargeType().equals("slow")){
-            if(slowInUse >= slowChargers) {
-                slowQueue.add(a);
-            }
-            else {
-                if(a.getTimestamp().plusSeconds(1800).isBefore(gT.getEndInstant())) { //also check the event will finish before the simulation closes
-                    slowInUse++;
-                    historyQueue.add(a); //Since this is going on the charger, add it to the history queue
-                    startCharge(a);
-                }
+        else if(inUse[c] >= chargerClasses[c].getChargers()) {
+            waitingLines[c].add(a);
+            if(waitingLines[c].size() == 1) //Cars further back are woken by the car in front of them
+                armPatience(a);
+        }
+        else {
+            if(a.getTimestamp().plusSeconds(chargerClasses[c].getClosingCutoff()).isBefore(gT.getClosingInstant())) { //also check the event will finish before the simulation closes
+                inUse[c]++;
+                historyQueue.add(a); //Since this is going on the charger, add it to the history queue
+                startCharge(a);
             }
         }
     }
 
     /**
-     * Handles a given Departure Event when it reaches the front of the Event Queue. This function is responsible for
-     * maintaining the state of the fast and slow queues, as well as the statistics being recorded for the Station.
-     * When a car leaves the Station, the function will first check if there is a car on the relevant queue (fast/slow) that is
-     * waiting for a slot; it will then check to see if an arbitrary amount of time has passed according to the Station's
-     * time compared to the time the car arrived; if the car has "waited" too long, it will Balk and leave the station.
-     * Otherwise, the waiting car will be given a charger and placed on the history queue. If there are no cars waiting or
-     * all have balked, then the number of relevant charging slots in use is decremented.
-     * This function also handles the majority of stats-taking, recording the number and state of each charge type.
+     * Handles a given Departure Event when it reaches the front of the Event Queue. The charger the car leaves is given to
+     * the car at the front of the waiting line for its class, once any cars at the front whose patience ran out at
+     * this very moment have balked. If there are no cars waiting, then the number of relevant charging slots in use is
+     * decremented. The departure is placed on the history queue.
      * @param d the Departure Event that is being handled.
      */
     public void handleDepartureEvent(DepartureEvent d){
         this.stationTime = d.getTimestamp();
-        if(d.getChargeType().equals("fast")){
-            // Take an event off the fast queue and put it on the charger
-            if(!fastQueue.isEmpty()) {
-                //This if statement is an "impatience" function that balks at 10 minutes
-                ArrivalEvent a = fastQueue.peek();
-                while(!fastQueue.isEmpty() && !a.getTimestamp().plusSeconds(600).isAfter(this.stationTime)) {
-                    stationToMonitorQueue.add(new BalkMessage(this.stationTime,this.stationName,fastQueue.remove(),false));
-                    historyQueue.add(new BalkEvent(this.stationTime, a)); //Add this event to the history queue as an event that left the station
-                    sS.setNumFaskBalks(sS.getNumFaskBalks() + 1);
-                    if(!fastQueue.isEmpty()){
-                        a = fastQueue.peek();
-                    }
-                }
-                if(!fastQueue.isEmpty()){
-                    a = fastQueue.remove();
-                    if(a.getTimestamp().plusSeconds(600).isBefore(gT.getEndInstant())) { //also check the event will finish before the simulation closes
-                        historyQueue.add(a); //Since this is going on the charger, add it to the history queue
-                        startCharge(a);         // Start charging
-                    }
-                    else {
-                        fastInUse--;
-                    }
-                }
-                else {
-                    fastInUse--;
-                }
-            }
-            else {
-                fastInUse--;
-            }
-        }
-        if(d.getChargeType().equals("slow")){
-            if (!slowQueue.isEmpty()){
-                // Take an event off the slow queue and put it on the charger
-                ArrivalEvent a = slowQueue.peek(); // Peek to check the head without removing it
-                while (!slowQueue.isEmpty() && !a.getTimestamp().plusSeconds(1800).isAfter(this.stationTime)) {
-                    stationToMonitorQueue.add(new BalkMessage(this.stationTime,this.stationName,slowQueue.remove(), false));
-                    historyQueue.add(new BalkEvent(this.stationTime, a)); //Add this event to the history queue as an event that left the station
-                    sS.setNumSlowBalks(sS.getNumSlowBalks()+1);
-                    if (!slowQueue.isEmpty()) {
-                        a = slowQueue.peek(); // Update 'a' with the next event
-                    }
-                }
-                if (!slowQueue.isEmpty()) { // Check again if the queue has a valid event
-                    a = slowQueue.remove(); // Remove the valid event
-                    if (a.getTimestamp().plusSeconds(1800).isBefore(gT.getEndInstant())){ //also check the event will finish before the simulation closes
-                        historyQueue.add(a); //Since this is going on the charger, add it to the history queue
-                        startCharge(a);         // Start charging
-                    }
-                    else{
-                        slowInUse--;
-                    }
-                }
-                else {
-                    slowInUse--;
-                }
-            }
-            else {
-                slowInUse--;
-            }
+        historyQueue.add(d); //A rollback to before the car left puts it back on its charger
+        if(!serveNext(d.getChargeClass()))
+            inUse[d.getChargeClass()]--;
+    }
+
+    /**
+     * Records the outcome of a Departure Event in the Station's statistics, or takes it back out when the departure is
+     * undone. Only departures inside the span the Station counts are recorded.
+     * @param d the Departure Event.
+     * @param n the number to add.
+     */
+    private void countDeparture(DepartureEvent d, int n){
+        if (!counts(d.getTimestamp()))
+            return;
+        sS.addCharges(d.getChargeClass(), d.getStatus(), n);
+        sS.addChargerSeconds(d.getChargeClass(), n * Duration.between(d.getServiceTime(), d.getTimestamp()).getSeconds());
+    }
+
+    /**
+     * Gives a charger that has just been freed to the car at the front of the waiting line for its class. The car is placed
+     * on the history queue as a Service Event, so that a rollback to before this moment puts it back in the line. A car
+     * that arrived too late to be charged before the Simulation closes leaves the line without a charge, and is placed
+     * on the history queue all the same.
+     * @param c the id of the charger class.
+     * @return true if a car was placed on the charger.
+     */
+    private boolean serveNext(int c){
+        WaitingLine line = waitingLines[c];
+        balkExpired(line);
+        if(line.isEmpty())
+            return false;
+        ArrivalEvent a = line.remove();
+        historyQueue.add(new ServiceEvent(this.stationTime, a));
+        if(!a.getTimestamp().plusSeconds(chargerClasses[c].getClosingCutoff()).isBefore(gT.getClosingInstant())) //also check the event will finish before the simulation closes
+            return false;
+        startCharge(a);
+        return true;
+    }
+
+    /**
+     * Schedules the moment a car at the front of a waiting line runs out of patience. Every car of a class has the same
+     * patience, so the car at the front is always the next to run out, and only it needs a Patience Event; when the
+     * event comes, the car now at the front is given one in turn. A car that would still be waiting when the Simulation
+     * closes has nowhere better to go, so it is given no deadline, and neither are the cars behind it.
+     * @param a the Arrival Event of the waiting car.
+     */
+    private void armPatience(ArrivalEvent a){
+        Instant deadline = a.getTimestamp().plusSeconds(patienceOf(a));
+        if(deadline.isBefore(gT.getClosingInstant()))
+            eventQueue.add(new PatienceEvent(deadline, a));
+    }
+
+    /**
+     * Makes every car at the front of a waiting line that has run out of patience balk. The line is in the order the cars
+     * arrived and every car of a class has the same patience, so the cars that have run out are always at the front.
+     * Each one is sent to the Monitor to try another Station, arriving there at the time it balked, unless the same balk
+     * was undone by a rollback and its car never recalled. A car that has already balked as many times as the Station
+     * allows gives up instead, and leaves uncharged.
+     * @param line the waiting line.
+     */
+    private void balkExpired(WaitingLine line){
+        while(!line.isEmpty() && !line.peek().getTimestamp().plusSeconds(patienceOf(line.peek())).isAfter(this.stationTime)) {
+            ArrivalEvent a = line.remove();
+            BalkEvent b = new BalkEvent(this.stationTime, a);
+            if (a.getBalks() < maxBalks && !reclaimRetread(b)) //A balk that was undone and has happened again in the same way is already at the Station it was sent to
+                send(new BalkMessage(this.stationTime, this.stationName, a.arrivingAt(this.stationTime), false));
+            recordBalk(b); //Add this event to the history queue as an event that left the station
+            countBalk(b, 1);
         }
     }
 
+    /**
+     * @param a the Arrival Event of a car.
+     * @return the waiting line for the class of charger the car wants.
+     */
+    private WaitingLine lineOf(ArrivalEvent a){
+        return waitingLines[a.getChargeClass()];
+    }
+
+    /**
+     * @param a the Arrival Event of a car.
+     * @return how long, in seconds, the car waits for a charger before it balks.
+     */
+    private long patienceOf(ArrivalEvent a){
+        return chargerClasses[a.getChargeClass()].getPatience();
+    }
+
+    /**
+     * Adds to the number of cars that have balked from the Station, or takes away from it when a balk is undone. Only
+     * balks inside the span the Station counts are recorded.
+     * @param b the Balk Event.
+     * @param n the number to add.
+     */
+    private void countBalk(BalkEvent b, int n){
+        if (counts(b.getTimestamp()))
+            sS.addBalks(b.getEventToLeave().getChargeClass(), n);
+    }
+
+    /**
+     * @param time the time of an event.
+     * @return true if the event falls inside the span of simulated time the Station counts in its statistics.
+     */
+    private boolean counts(Instant time){
+        return !time.isBefore(countFrom) && time.isBefore(countUntil);
+    }
+
+    /**
+     * Adds a Balk Event to the history queue, and to the trace if the Station is keeping one.
+     * @param b the Balk Event.
+     */
+    private void recordBalk(BalkEvent b){
+        historyQueue.add(b);
+        if (trace != null)
+            trace.record(b);
+    }
+
+    /**
+     * Throws an event undone by a rollback out of the trace, if the Station is keeping one.
+     * @param e the event that was undone.
+     */
+    private void undo(Event e){
+        if (trace != null)
+            trace.undo(e);
+    }
+
     /**
      * Simulates the actual charging of a car based on the information provided by an Arrival Event. Calculates the
-     * amount of simulated time is necessary to charge the requested car.
+     * amount of simulated time is necessary to charge the requested car at the full rate of its charger; the car stays
+     * on the charger that long. The Station's Power Grid decides how much power the car really gets: with less than the
+     * full rate the car leaves partially charged, and with no power at all it leaves at once, uncharged.
      * After charging the car, a Departure Event is placed on the Event Queue to depict the car leaving the Station.
      * @param a the Arrival Event which is getting its charge.
      */
     public void startCharge(ArrivalEvent a){
-        Instant departureTime = this.stationTime.plusSeconds(((long) (a.getChargeDesired() * 3600.0 / (a.getChargeType().equals("fast") ? fastChargingRate : slowChargingRate))));
-        DepartureEvent b = new DepartureEvent(departureTime, a.getTimestamp(), this.stationTime, a.getChargeType(), "Fully Charged");
-        sS.addEnergyGiven(a.getChargeDesired());
+        double rate = chargerClasses[a.getChargeClass()].getRate();
+        Instant departureTime = this.stationTime.plusSeconds(((long) (a.getChargeDesired() * 3600.0 / rate)));
+        double watts = grid.allocate(a.getId(), this.stationTime, departureTime, rate);
+        int status = DepartureEvent.FULLY_CHARGED;
+        if (watts <= 0) {
+            status = DepartureEvent.UNCHARGED;
+            departureTime = this.stationTime;
+        } else if (watts < rate)
+            status = DepartureEvent.PARTIALLY_CHARGED;
+        DepartureEvent b = new DepartureEvent(departureTime, a.getId(), a.getTimestamp(), this.stationTime, a.getChargeClass(), status);
+        sS.addEnergyGiven(watts * Duration.between(this.stationTime, departureTime).getSeconds() / 3600.0);
         eventQueue.add(b);
     }
 
     /**
      * Backtracking function. Resets station to the state that it was in at a given time or event. Reads events out of
-     * the history queue and back into the event queue. Will also handle clearing out the history queue of events that
-     * happened before the global minimum time.
+     * the history queue and back into the event queue, and puts cars that had left a waiting line since then back into
+     * it. Will also handle clearing out the history queue of events that happened before the global minimum time.
+     * A car that arrives no earlier than the Station's time has nothing to undo, and is simply put on the event queue.
      * @param balker the message that contains the Arrival Event which is being backtracked to.
      */
     public void backtrack(BalkMessage balker){
+        backtrack(List.of(balker));
+    }
+
+    /**
+     * Acts on several Balk Messages at once. The Station is rolled back a single time, to the earliest time any of them
+     * needs, and then every car they bring is put on the event queue and every car they recall is taken away, in the
+     * order the messages came. Rolling back to the earliest time undoes everything a rollback to any later time would,
+     * so this leaves the Station as it would be after acting on the messages one by one, without rescanning its queues
+     * for each.
+     * @param balkers the messages, in the order they were sent.
+     */
+    public void backtrack(List<BalkMessage> balkers){
+        RollbackRecording recording = Recordings.enabled() ? RollbackRecording.start() : null;
+        Instant before = this.stationTime;
         try {
-            Instant rewind = balker.getEventToLeave().getTimestamp();
-            //We will have to go through the fastQueue, the slowQueue, and the history queue to add events back to the eventQueue.
-            //Do fast and slow queues first, they are shorter by design
-            PriorityQueue<ArrivalEvent> temporary = new PriorityQueue<>(
-                    (e1, e2) -> e1.getTimestamp().compareTo(e2.getTimestamp())
-            ); //Holds temporary events just in case there are any that happen before the cutoff time for the fast and slow queus
-            Event a;
-            while (!fastQueue.isEmpty()) {
-                a = fastQueue.remove();
-                if (a.getTimestamp().isAfter(rewind))
-                    eventQueue.add(a);
-                else
-                    temporary.add((ArrivalEvent) a);
+            Instant rewind = null; //A car arrives at the time it balked, so this is also the time of the earliest message that undoes anything
+            boolean retread = false;
+            for (BalkMessage balker : balkers) {
+                Instant time = balker.getEventToLeave().getTimestamp();
+                if ((balker.getRetread() || time.isBefore(this.stationTime)) && (rewind == null || time.isBefore(rewind)))
+                    rewind = time;
+                retread |= balker.getRetread();
             }
-            if (!temporary.isEmpty()) {
-                fastQueue.addAll(temporary);
-                temporary.clear();
-            }
-            while (!slowQueue.isEmpty()) {
-                a = slowQueue.remove();
-                if (a.getTimestamp().isAfter(rewind))
-                    eventQueue.add(a);
-                else
-                    temporary.add((ArrivalEvent) a);
+            if (rewind == null) { //Cars arriving now or later undo nothing
+                for (BalkMessage balker : balkers)
+                    eventQueue.add(balker.getEventToLeave());
+                if (recording != null)
+                    recording.finish(stationName, 0, 0, false);
+                return;
             }
-            if (!temporary.isEmpty()) {
-                slowQueue.addAll(temporary);
-            }
-            a = historyQueue.peek();
-            // If statement ensures that there is some history to go back to. Otherwise throws exceptions :/
-            // Break instruction ensures that loop is broken when the history queue is empty.
-            if(a!=null) {
-                while (a.getTimestamp().isAfter(balker.getTimestamp())) {
-                    a = historyQueue.remove();
-                    if (a instanceof ArrivalEvent) {
-                        eventQueue.add(a);
-                        sS.subtractEnergyGiven(((ArrivalEvent) a).getChargeDesired());
-                    } else if (a instanceof BalkEvent) {
-                        monitortoStationQueue.add(new BalkMessage(a.getTimestamp(),this.stationName,((BalkEvent) a).getEventToLeave(),true));
-                        //if(this.stationName.equals("Station B"))
-                            //System.out.println("B\n" + "Balking Event: " + ((BalkEvent) a) + "\nArrival Event: " + ((BalkEvent) a).getEventToLeave());
-                    }
-                    if (!historyQueue.isEmpty())
-                        a = historyQueue.peek();
-                    else
-                        break;
+            //The Station's own cars that arrived after the rewind time arrive again, once each of their visits is undone below
+            eventQueue.rewind(rewind);
+            //Cars that joined a waiting line after the rewind time are at the back of it, and go back on the eventQueue
+            int undone = 0;
+            for (WaitingLine line : waitingLines)
+                undone += unqueueAfter(line, rewind);
+            Event a = historyQueue.pollAfter(rewind);
+            while (a != null) {
+                if (a instanceof ArrivalEvent) {
+                    undo(a);
+                    eventQueue.requeue((ArrivalEvent) a);
+                    undone++;
+                    sS.subtractEnergyGiven(grid.release(((ArrivalEvent) a).getId()));
+                } else if (a instanceof DepartureEvent) {
+                    DepartureEvent d = (DepartureEvent) a;
+                    undo(a);
+                    undone++;
+                    countDeparture(d, -1);
+                    if (!d.getServiceTime().isAfter(rewind))
+                        eventQueue.add(d); //The car was still charging at the rewind time, so it has yet to leave
+                } else if (a instanceof ServiceEvent) {
+                    ArrivalEvent served = ((ServiceEvent) a).getCar();
+                    sS.subtractEnergyGiven(grid.release(served.getId()));
+                    undone += restore(served, rewind);
+                } else if (a instanceof BalkEvent) {
+                    ArrivalEvent balked = ((BalkEvent) a).getEventToLeave();
+                    undo(a);
+                    countBalk((BalkEvent) a, -1);
+                    if (balked.getBalks() < maxBalks) //A car that gave up was never sent anywhere
+                        holdRetread((BalkEvent) a);
+                    undone += restore(balked, rewind);
                 }
+                a = historyQueue.pollAfter(rewind);
             }
             sS.setNumBacktracks(sS.getNumBacktracks() + 1);
-            //If this balkMessage is backtracking to an event because that event is being re-done in another station, then remove it from the queue.
+            sS.setNumEventsRolledBack(sS.getNumEventsRolledBack() + undone);
+            if (window != null)
+                window.rolledBack(undone);
+            //If a balkMessage is backtracking to an event because that event is being re-done in another station, then remove it from the queue.
             //Else, add the event to the queue, as it is an event
-            if(balker.getRetread()) {
-                eventQueue.remove(balker.getEventToLeave());
-                historyQueue.remove(balker.getEventToLeave());
-            }
-            else {
-                eventQueue.add(balker.getEventToLeave()); //Make sure the traveling message is put on the queue
+            for (BalkMessage balker : balkers) {
+                if (balker.getRetread())
+                    recall(balker.getEventToLeave());
+                else
+                    eventQueue.add(balker.getEventToLeave()); //Make sure the traveling message is put on the queue
             }
-            //Now we have to make sure the number of slots in use is consistent for the time we are backtracking to
-            //The idea is that any Departure events that exist in the eventQueue before the incoming time
-            fastInUse = 0;
-            slowInUse = 0;
-            //eventQueue.removeIf(Event -> Event instanceof DepartureEvent); //Remove all departure events
-            Event firstEvent = eventQueue.peek(); //Get the head of the queue to know what new start time is; a new event could come in before or after the station's current time
-            Iterator<Event> iter = eventQueue.iterator();//https://stackoverflow.com/questions/18448671/how-to-avoid-concurrentmodificationexception-while-removing-elements-from-arr
+            //Now we have to make sure the number of slots in use is consistent for the time we are backtracking to.
+            //Cars put on a charger after that time, and recalled cars, no longer depart; the rest still hold their chargers.
+            //Patience Events are all thrown away and scheduled again for the cars now at the front of each line.
+            Arrays.fill(inUse, 0);
+            eventQueue.clearDeadlines();
+            Iterator<DepartureEvent> iter = eventQueue.departures();//https://stackoverflow.com/questions/18448671/how-to-avoid-concurrentmodificationexception-while-removing-elements-from-arr
             while(iter.hasNext()) {
-                Event event = iter.next();
-                if (event instanceof DepartureEvent) {
-                    if (((DepartureEvent) event).getServiceTime().isAfter(firstEvent.getTimestamp())) //Get only departure events that depict cars that were serviced before the current station time, getting rid of any that are serviced after the new start time.
-                        iter.remove();
-                    else {
-                        if (((DepartureEvent) event).getChargeType().equals("slow"))
-                            slowInUse++;
-                        else if (((DepartureEvent) event).getChargeType().equals("fast"))
-                            fastInUse++;
-                    }
+                DepartureEvent d = iter.next();
+                if (d.getServiceTime().isAfter(rewind) || retread && isRecalled(d, balkers)) {
+                    iter.remove();
+                    sS.subtractEnergyGiven(grid.release(d.getCarId())); //The charging session never happened, so its power is freed up
                 }
+                else
+                    inUse[d.getChargeClass()]++;
+            }
+            for (WaitingLine line : waitingLines)
+                if (!line.isEmpty())
+                    armPatience(line.peek());
+            while (snapshotsTaken > 0 && rewind.isBefore(snapshotTimes[snapshotsTaken - 1]))
+                snapshots[--snapshotsTaken] = null; //The state the snapshot was taken of has been undone
+            if (rewind.isBefore(this.stationTime))
+                this.stationTime = rewind; //The Station now stands where it stood at the rewind time, so more cars arriving then undo nothing
+            sendHeldRetreads();
+            if (checkpoints != null)
+                while (!checkpoints.isEmpty() && checkpoints.peekLast().getTime().isAfter(rewind))
+                    checkpoints.removeLast(); //The statistics they were taken of have been undone
+            Instant globalMinimumTime = gT.getGlobalMinimumTime();
+            if (!globalMinimumTime.equals(lastPruned)) { //Nothing new can be pruned until the Global Minimum Time moves
+                historyQueue.prune(globalMinimumTime); //remove previous events before global min time
+                lastPruned = globalMinimumTime;
             }
-            historyQueue.removeIf(ArrivalEvent -> ArrivalEvent.getTimestamp().isBefore(gT.getGlobalMinimumTime())); //remove previous events before global min time
+            if (recording != null)
+                recording.finish(stationName, Math.max(0, before.getEpochSecond() - rewind.getEpochSecond()), undone, retread);
         }catch(Exception e){
             System.out.println(stationName + " " + e);
             e.printStackTrace();
         }
     }
+
+    /**
+     * Takes away every trace of a recalled car's visit, once the Station has been rolled back to the time it arrived or
+     * earlier. A car that left the moment it arrived has its departure at the time it arrived, which a rollback to that
+     * time keeps, so that departure is undone here.
+     * @param car the Arrival Event of the recalled car.
+     */
+    private void recall(ArrivalEvent car){
+        Instant arrived = car.getTimestamp();
+        eventQueue.removeIncomingIf(e -> isVisit(e, car)); //A car waiting to arrive again has been put back with the cars from other Stations
+        lineOf(car).remove(car);
+        for (Event e : historyQueue.removeIf(arrived, e -> isVisit(e, car) || e instanceof ServiceEvent && isVisit(((ServiceEvent) e).getCar(), car)
+                || e instanceof DepartureEvent && ((DepartureEvent) e).getCarId() == car.getId() && ((DepartureEvent) e).getArrivalTime().equals(arrived))) {
+            if (e instanceof DepartureEvent) {
+                undo(e);
+                countDeparture((DepartureEvent) e, -1);
+            }
+        }
+        sS.subtractEnergyGiven(grid.release(car.getId()));
+        undo(car);
+    }
+
+    /**
+     * @param d a Departure Event on the event queue.
+     * @param balkers the messages being acted on.
+     * @return true if one of the messages recalls the departing car's visit.
+     */
+    private static boolean isRecalled(DepartureEvent d, List<BalkMessage> balkers){
+        for (BalkMessage balker : balkers) {
+            ArrivalEvent car = balker.getEventToLeave();
+            if (balker.getRetread() && d.getCarId() == car.getId() && d.getArrivalTime().equals(car.getTimestamp()))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Holds back the recall of a car whose balk has been undone. Handling the Station's events again after a rollback
+     * usually makes the same car balk at the same time, and then the Station it was sent to can keep it; recalling it
+     * and sending it again would only roll that Station back twice for nothing. A car that had already balked again
+     * since is recalled at once.
+     * @param b the Balk Event that was undone.
+     */
+    private void holdRetread(BalkEvent b){
+        BalkEvent earlier = heldRetreads.put(b.getEventToLeave().getId(), b);
+        if (earlier != null)
+            sendRetread(earlier);
+        heldRetreadTimes.add(b);
+    }
+
+    /**
+     * @param b a Balk Event that has just happened.
+     * @return true if the same balk was undone by a rollback and its car has not been recalled, so that nothing needs
+     * to be sent.
+     */
+    private boolean reclaimRetread(BalkEvent b){
+        BalkEvent held = heldRetreads.get(b.getEventToLeave().getId());
+        if (held == null || !held.getTimestamp().equals(b.getTimestamp())
+                || !held.getEventToLeave().getTimestamp().equals(b.getEventToLeave().getTimestamp()))
+            return false;
+        heldRetreads.remove(b.getEventToLeave().getId());
+        return true;
+    }
+
+    /**
+     * Recalls every car whose undone balk can no longer happen again, because it was due before the Station's next
+     * event. Once the Station has no events left, every held recall is sent.
+     */
+    private void sendHeldRetreads(){
+        Instant next = getNextEventTime();
+        while (!heldRetreadTimes.isEmpty() && (next == null || heldRetreadTimes.peek().getTimestamp().isBefore(next))) {
+            BalkEvent b = heldRetreadTimes.remove();
+            if (heldRetreads.remove(b.getEventToLeave().getId(), b)) //Balks that happened again were taken out of the map
+                sendRetread(b);
+        }
+    }
+
+    /**
+     * Asks the Monitor to recall a car from the Station it balked to.
+     * @param b the Balk Event that was undone.
+     */
+    private void sendRetread(BalkEvent b){
+        ArrivalEvent a = b.getEventToLeave();
+        send(new BalkMessage(b.getTimestamp(), this.stationName, a.arrivingAt(b.getTimestamp()), true));
+    }
+
+    /**
+     * A car that balks may come back to a Station it left, so a recalled car is matched by the time it arrived as well as
+     * its id, leaving its earlier visit alone.
+     * @param e an event.
+     * @param car the Arrival Event of the recalled car.
+     * @return true if the event is the recalled car's arrival.
+     */
+    private static boolean isVisit(Event e, ArrivalEvent car){
+        return car.equals(e) && e.getTimestamp().equals(car.getTimestamp());
+    }
+
+    /**
+     * Takes every car that joined a waiting line after a given time out of the line and puts it back on the Event Queue.
+     * @param line the waiting line.
+     * @param rewind the time being rolled back to.
+     * @return the number of cars taken out of the line.
+     */
+    private int unqueueAfter(WaitingLine line, Instant rewind){
+        int undone = 0;
+        while (!line.isEmpty() && line.peekLast().getTimestamp().isAfter(rewind)) {
+            ArrivalEvent a = line.removeLast();
+            eventQueue.requeue(a);
+            undo(a);
+            undone++;
+        }
+        return undone;
+    }
+
+    /**
+     * Returns a car that left a waiting line after the time being rolled back to. If the car arrived after that time too,
+     * its arrival is undone and it goes back on the Event Queue; otherwise it was still waiting then, and goes back into
+     * its place in the line.
+     * @param a the Arrival Event of the car.
+     * @param rewind the time being rolled back to.
+     * @return 1 if the car's arrival was undone, otherwise 0.
+     */
+    private int restore(ArrivalEvent a, Instant rewind){
+        if (a.getTimestamp().isAfter(rewind)) {
+            undo(a);
+            eventQueue.requeue(a);
+            return 1;
+        }
+        lineOf(a).insert(a);
+        return 0;
+    }
+
+    /**
+     * A copy of the Station's statistics, as they stood at a point in simulated time.
+     */
+    public static final class Checkpoint {
+        private final Instant time;
+        private final StationStats stats;
+
+        private Checkpoint(Instant time, StationStats stats){
+            this.time = time;
+            this.stats = stats;
+        }
+
+        /**
+         * @return the time the copy was taken at. Every event before it is counted.
+         */
+        public Instant getTime(){
+            return time;
+        }
+
+        public StationStats getStats(){
+            return stats;
+        }
+    }
 }
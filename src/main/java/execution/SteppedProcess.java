@@ -0,0 +1,68 @@
+package execution;
+
+import java.time.Instant;
+
+/**
+ * Depicts a part of the Simulation that can be run a slice at a time, so that a small number of threads can share many
+ * Stations. Implemented by the Station Simulator and by the Logical Process, which runs a group of Stations.
+ */
+public interface SteppedProcess {
+    /**
+     * Describes how a slice of a process ended.
+     */
+    enum Slice {
+        /** The process handled events and has more to handle. */
+        RAN,
+        /** The process is being held by its Optimism Window until the rest of the Simulation catches up. */
+        HELD,
+        /** The process has no events left and is waiting for a message. It need not be run again until one arrives. */
+        IDLE,
+        /** The Monitor has ended the Simulation and the process has finished. */
+        DONE
+    }
+
+    /**
+     * Runs the process on the calling thread until the Monitor ends the Simulation, then prints its statistics.
+     */
+    void run();
+
+    /**
+     * Runs the process for at most a given number of events.
+     * @param maxEvents the most events to handle before returning.
+     * @return how the slice ended.
+     * @throws InterruptedException if the thread is interrupted while taking a message.
+     */
+    Slice runSlice(int maxEvents) throws InterruptedException;
+
+    /**
+     * @return the simulated time the process has reached.
+     */
+    Instant getLocalTime();
+
+    /**
+     * @return the number of events the process has handled so far.
+     */
+    long getEventsProcessed();
+
+    /**
+     * @return true if a message is waiting for the process.
+     */
+    boolean hasMessages();
+
+    /**
+     * Registers an action to run whenever a message arrives for the process, so that a scheduler can stop running an idle
+     * process until it has something to do.
+     * @param wakeup the action to run, on the thread that delivers the message.
+     */
+    void setWakeup(Runnable wakeup);
+
+    /**
+     * @return the name of the process.
+     */
+    String getName();
+
+    /**
+     * Prints the statistics of the process once the Simulation has ended.
+     */
+    void finish();
+}
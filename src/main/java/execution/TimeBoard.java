@@ -0,0 +1,152 @@
+package execution;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A board the Stations of a single process post their time on, in place of sending the Monitor a Timing Message after
+ * every event. Each Station, or group of Stations, owns a slot it alone writes to, holding its time, the number of
+ * messages it has sent the Monitor and the number it has read from the Monitor. The Monitor reads every slot from time
+ * to time to work out the Global Minimum Time, so its work grows with the number of Stations but not with the number of
+ * events they handle.
+ * Slots are spread a cache line apart, so Stations posting at once on different cores never contend for the same line.
+ * A slot's fields are written between two bumps of a version number, and a reader that sees the version change, or
+ * sees it odd, while reading a slot reads it again, so the three fields are always read as the Station posted them.
+ */
+public class TimeBoard {
+    private static final int STRIDE = 16; //Longs between the starts of two slots, 128 bytes, more than a cache line
+    private static final int VERSION = 0, TIME = 1, SENT = 2, RECEIVED = 3;
+
+    private final AtomicLongArray slots;
+    private final String[] names;
+    private final HashMap<String, Integer> indices = new HashMap<>();
+    private int registered;
+
+    /**
+     * A copy of a slot, as it was last posted.
+     */
+    public static final class Posting {
+        private final Instant time;
+        private final long sent;
+        private final long received;
+
+        private Posting(Instant time, long sent, long received){
+            this.time = time;
+            this.sent = sent;
+            this.received = received;
+        }
+
+        /**
+         * @return the time of the slot's owner.
+         */
+        public Instant getTime(){
+            return time;
+        }
+
+        /**
+         * @return the number of messages the owner has sent the Monitor.
+         */
+        public long getSent(){
+            return sent;
+        }
+
+        /**
+         * @return the number of messages the owner has read from the Monitor.
+         */
+        public long getReceived(){
+            return received;
+        }
+    }
+
+    /**
+     * Constructor to create a Time Board on which every slot holds the start of the Simulation.
+     * @param processes the number of Stations, or groups of Stations, that post on the board.
+     * @param start the instant the Simulation starts at.
+     */
+    public TimeBoard(int processes, Instant start){
+        this.slots = new AtomicLongArray((processes + 2) * STRIDE); //A slot is left empty at each end, away from the array's header and whatever follows it
+        this.names = new String[processes];
+        for (int i = 0; i < processes; i++)
+            slots.set(base(i) + TIME, toNanos(start));
+    }
+
+    /**
+     * Gives a Station, or group of Stations, a slot of its own. Every slot must be handed out before the Simulation starts.
+     * @param name the name the Monitor knows the Station or group by.
+     * @return the slot.
+     */
+    public int register(String name){
+        names[registered] = name;
+        indices.put(name, registered);
+        return registered++;
+    }
+
+    /**
+     * @param name the name of a Station or group of Stations.
+     * @return its slot, or -1 if it has none.
+     */
+    public int indexOf(String name){
+        return indices.getOrDefault(name, -1);
+    }
+
+    /**
+     * @param slot a slot.
+     * @return the name of the Station or group that owns the slot.
+     */
+    public String nameOf(int slot){
+        return names[slot];
+    }
+
+    /**
+     * @return the number of slots on the board.
+     */
+    public int size(){
+        return names.length;
+    }
+
+    /**
+     * Posts a Station's time and message counts to its slot. Only the slot's owner may post to it.
+     * @param slot the owner's slot.
+     * @param time the owner's time.
+     * @param sent the number of messages the owner has sent the Monitor.
+     * @param received the number of messages the owner has read from the Monitor.
+     */
+    public void post(int slot, Instant time, long sent, long received){
+        int at = base(slot);
+        long version = slots.get(at + VERSION);
+        slots.set(at + VERSION, version + 1);
+        slots.set(at + TIME, toNanos(time));
+        slots.set(at + SENT, sent);
+        slots.set(at + RECEIVED, received);
+        slots.set(at + VERSION, version + 2);
+    }
+
+    /**
+     * @param slot a slot.
+     * @return what the slot's owner last posted.
+     */
+    public Posting read(int slot){
+        int at = base(slot);
+        while (true) {
+            long version = slots.get(at + VERSION);
+            if ((version & 1) != 0) {
+                Thread.onSpinWait(); //The owner is in the middle of posting
+                continue;
+            }
+            long time = slots.get(at + TIME);
+            long sent = slots.get(at + SENT);
+            long received = slots.get(at + RECEIVED);
+            if (slots.get(at + VERSION) == version)
+                return new Posting(Instant.ofEpochSecond(0, time), sent, received);
+        }
+    }
+
+    private static int base(int slot){
+        return (slot + 1) * STRIDE;
+    }
+
+    private static long toNanos(Instant time){
+        return time.getEpochSecond() * 1_000_000_000L + time.getNano();
+    }
+}
@@ -0,0 +1,265 @@
+package execution;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import objects.GlobalTime;
+import objects.StationStats;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Runs the Simulation a segment of simulated time at a time, with every segment running at once, so that a Simulation of
+ * a single Station, or of a few, can use more cores than it has Stations. The Simulation is cut into "timeParallelSegments"
+ * segments of whole days. Each segment but the first cannot know the state the Stations are in when it begins, so it
+ * starts "warmUpDays" days early with empty chargers and waiting lines, and only counts what happens from its own first
+ * day onwards. The chargers and waiting lines fill up during the warm-up much as they would have from the start.
+ * Each Station takes a snapshot of its chargers and waiting lines at the boundaries of its segment. Once every segment
+ * has run, a segment whose snapshot at its start matches the snapshot the segment before it took at its end began in
+ * the right state, and so handled exactly the events a run over the whole Simulation would have. The others are run
+ * again with twice the warm-up, until they match, until their statistics change by less than "fixUpTolerance" of
+ * themselves from one run to the next, or until their warm-up reaches back to the start of the Simulation. A tolerance
+ * of 0 only settles segments by their snapshots.
+ * A segment is only settled once the segment before it is, since its snapshot is only checked against a settled one.
+ * Stations without a seed are given one, shared by every segment, so that each day's cars are the same in every run
+ * that covers it. A Station that balks cars to others routes them at random, so a Simulation of several Stations only
+ * settles by its statistics, while the segments of a single seeded Station reproduce a run over the whole Simulation.
+ * The statistics of every segment are added up into one file per Station, and their load curves joined into one.
+ */
+public class TimeParallelRunner {
+    private static final long DAY_SECONDS = 86400;
+    private final JsonNode rootNode;
+    private final GlobalTime gT;
+    private final List<ObjectNode> fullConfigs;
+    private final int warmUpDays;
+    private final double tolerance;
+    private final Instant[] boundaries; //Segment k covers boundaries[k] until boundaries[k + 1]
+
+    /**
+     * A run over one segment of the Simulation.
+     */
+    private static final class Segment {
+        private final int index;
+        private final int warmUpDays;
+        private List<StationSimulator> stations;
+
+        private Segment(int index, int warmUpDays){
+            this.index = index;
+            this.warmUpDays = warmUpDays;
+        }
+    }
+
+    /**
+     * Constructor to create a Time Parallel Runner.
+     * @param rootNode the root of the master config file.
+     * @param gT the Global Time object of the whole Simulation.
+     * @param fullConfigs the full config of each Station.
+     */
+    public TimeParallelRunner(JsonNode rootNode, GlobalTime gT, List<ObjectNode> fullConfigs){
+        this.rootNode = rootNode;
+        this.gT = gT;
+        this.fullConfigs = fullConfigs;
+        this.warmUpDays = Math.max(1, rootNode.path("warmUpDays").asInt(1));
+        this.tolerance = rootNode.path("fixUpTolerance").asDouble(0.01);
+        long start = gT.getStartInstant().getEpochSecond();
+        long days = Math.max(1, (gT.getEndInstant().getEpochSecond() - start + DAY_SECONDS - 1) / DAY_SECONDS);
+        int requested = Math.max(1, rootNode.path("timeParallelSegments").asInt(1));
+        long segmentDays = (days + requested - 1) / requested;
+        int segments = (int) ((days + segmentDays - 1) / segmentDays);
+        boundaries = new Instant[segments + 1];
+        for (int k = 0; k < segments; k++)
+            boundaries[k] = gT.getStartInstant().plusSeconds(k * segmentDays * DAY_SECONDS);
+        boundaries[segments] = gT.getEndInstant();
+        for (ObjectNode config : fullConfigs)
+            if (!config.has("seed"))
+                config.put("seed", ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Runs every segment, runs again the segments that began in the wrong state until they are settled, then writes
+     * each Station's statistics to "<station>.txt" and its load curve to "load/<station>.csv" in the Stations' output
+     * directory, "out" unless their configs give "outputDirectory".
+     * @return true if every run finished.
+     */
+    public boolean run(){
+        int segments = boundaries.length - 1;
+        Segment[] current = new Segment[segments];
+        StationStats[][] previous = new StationStats[segments][];
+        boolean[] settled = new boolean[segments];
+        ArrayList<Segment> pending = new ArrayList<>();
+        for (int k = 0; k < segments; k++)
+            pending.add(new Segment(k, k == 0 ? 0 : warmUpDays));
+        int rounds = 0;
+        ExecutorService runs = Executors.newCachedThreadPool();
+        try {
+            while (!pending.isEmpty()) {
+                rounds++;
+                ArrayList<Future<Boolean>> finished = new ArrayList<>();
+                for (Segment segment : pending)
+                    finished.add(runs.submit(() -> runSegment(segment)));
+                for (Future<Boolean> f : finished)
+                    if (!f.get())
+                        return false;
+                for (Segment segment : pending) {
+                    if (current[segment.index] != null)
+                        previous[segment.index] = statsOf(current[segment.index]);
+                    current[segment.index] = segment;
+                }
+                settled[0] = true;
+                pending.clear();
+                for (int k = 1; k < segments; k++) {
+                    if (settled[k])
+                        continue;
+                    Segment segment = current[k];
+                    boolean matched = matches(current[k - 1], segment);
+                    if (settled[k - 1] && (matched || startsAtOrigin(segment) || isSteady(previous[k], statsOf(segment))))
+                        settled[k] = true;
+                    else if (!matched && !startsAtOrigin(segment)) //A segment that matches one not settled yet waits for it
+                        pending.add(new Segment(k, segment.warmUpDays * 2));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            System.out.println("A segment of the Simulation failed: " + e.getCause());
+            return false;
+        } finally {
+            runs.shutdown();
+        }
+        System.out.println("The " + segments + " segments of the Simulation settled after " + rounds + " rounds");
+        writeResults(current);
+        return true;
+    }
+
+    /**
+     * Runs the Monitor and every Station over one segment of the Simulation, on threads of its own.
+     * @param segment the segment.
+     * @return true if every process finished.
+     */
+    private boolean runSegment(Segment segment){
+        int k = segment.index;
+        Instant from = boundaries[k].minusSeconds(segment.warmUpDays * DAY_SECONDS);
+        if (from.isBefore(gT.getStartInstant()))
+            from = gT.getStartInstant();
+        ArrayList<ObjectNode> configs = new ArrayList<>();
+        for (ObjectNode fullConfig : fullConfigs) {
+            ObjectNode config = fullConfig.deepCopy();
+            config.put("countFrom", boundaries[k].getEpochSecond());
+            if (k + 1 < boundaries.length - 1)
+                config.put("countUntil", boundaries[k + 1].getEpochSecond());
+            ArrayNode snapshotAt = config.putArray("snapshotAt");
+            if (k > 0)
+                snapshotAt.add(boundaries[k].getEpochSecond());
+            snapshotAt.add(boundaries[k + 1].getEpochSecond());
+            config.put("writeResults", false);
+            config.put("trace", false);
+            configs.add(config);
+        }
+        Simulation simulation = new Simulation(rootNode, gT.segment(from, boundaries[k + 1]), configs);
+        segment.stations = simulation.getStations();
+        return simulation.run(Executors.newCachedThreadPool());
+    }
+
+    /**
+     * @param segment a segment that has run.
+     * @return true if its warm-up began at the start of the Simulation, so that nothing had to be guessed.
+     */
+    private boolean startsAtOrigin(Segment segment){
+        return !boundaries[segment.index].minusSeconds(segment.warmUpDays * DAY_SECONDS).isAfter(gT.getStartInstant());
+    }
+
+    /**
+     * @param before a segment that has run.
+     * @param after the segment that follows it.
+     * @return true if every Station was in the same state at the end of the first as at the start of the second.
+     */
+    private static boolean matches(Segment before, Segment after){
+        int end = before.index == 0 ? 0 : 1; //The first segment only takes a snapshot at its end
+        for (int i = 0; i < before.stations.size(); i++)
+            if (!Arrays.equals(before.stations.get(i).getSnapshot(end), after.stations.get(i).getSnapshot(0)))
+                return false;
+        return true;
+    }
+
+    /**
+     * @param previous the statistics of each Station in the last run of a segment, or null if it has only run once.
+     * @param latest the statistics of each Station in the latest run of the segment.
+     * @return true if no count or total changed by more than the tolerance, as a share of its latest value. Always false
+     * with a tolerance of 0, as two runs that began in the same wrong state can agree with each other exactly.
+     */
+    private boolean isSteady(StationStats[] previous, StationStats[] latest){
+        if (previous == null || tolerance <= 0)
+            return false;
+        double[] before = totals(previous);
+        double[] after = totals(latest);
+        for (int i = 0; i < after.length; i++)
+            if (Math.abs(after[i] - before[i]) > tolerance * Math.max(1, Math.abs(after[i])))
+                return false;
+        return true;
+    }
+
+    /**
+     * @param stats the statistics of each Station in a run of a segment.
+     * @return the charges with each outcome, the balks and the energy given, over every Station and charger class.
+     */
+    private static double[] totals(StationStats[] stats){
+        double[] totals = new double[5];
+        for (StationStats s : stats) {
+            for (int c = 0; c < s.getNumClasses(); c++) {
+                for (int status = 0; status < 3; status++)
+                    totals[status] += s.getNumCharges(c, status);
+                totals[3] += s.getNumBalks(c);
+            }
+            totals[4] += s.getEnergyGiven();
+        }
+        return totals;
+    }
+
+    /**
+     * @param segment a segment that has run.
+     * @return the statistics of each of its Stations.
+     */
+    private static StationStats[] statsOf(Segment segment){
+        StationStats[] stats = new StationStats[segment.stations.size()];
+        for (int i = 0; i < stats.length; i++)
+            stats[i] = segment.stations.get(i).getStats();
+        return stats;
+    }
+
+    /**
+     * Adds up the statistics of every segment into those of the first, and joins the parts of each Station's load curve
+     * that fall inside every segment, then writes them.
+     * @param segments the settled run of every segment.
+     */
+    private void writeResults(Segment[] segments){
+        Path output = Path.of(fullConfigs.get(0).path("outputDirectory").asText("out"));
+        for (int i = 0; i < fullConfigs.size(); i++) {
+            StationStats merged = segments[0].stations.get(i).getStats();
+            TreeMap<Long, Double> load = new TreeMap<>();
+            for (Segment segment : segments) {
+                StationSimulator station = segment.stations.get(i);
+                if (segment.index > 0)
+                    merged.add(station.getStats());
+                station.getGrid().addLoadTo(load, boundaries[segment.index],
+                        segment.index + 1 < boundaries.length - 1 ? boundaries[segment.index + 1] : Instant.MAX);
+            }
+            double peak = 0;
+            for (double watts : load.values())
+                peak = Math.max(peak, watts);
+            merged.setPeakLoad(peak);
+            PowerGrid.writeCurve(load, output.resolve("load").resolve(segments[0].stations.get(i).getStationName() + ".csv"));
+            merged.printStats(output);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package execution.Trace;
+
+import execution.ArrivalSource;
+import objects.Event.ArrivalEvent;
+import objects.GlobalTime;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+
+/**
+ * Replays the arrivals of a log of real charging sessions at one Station, from a file written by the
+ * {@link SessionConverter}. The file holds one fixed-width record per session, sorted by arrival time:
+ * <pre>
+ *   long  arrival       epoch second the car arrived
+ *   float energy        energy the car wanted, in watt-hours
+ *   byte  chargeClass   the id of the charger class the car wanted
+ *   byte[3] reserved
+ * </pre>
+ * after a {@link #HEADER_SIZE} byte header holding {@link #MAGIC}, the format version, the record size, the number of
+ * records and the epoch day of the earliest session in the whole log.
+ * The file is memory mapped, so a day of arrivals is read straight out of the page cache with no parsing, and the day's
+ * first and last records are found by binary search since the records are sorted.
+ * Logs are replayed on the Simulation's own calendar: every session is moved by the same whole number of days, so that
+ * the first day of the log, across every Station, falls on the day the Simulation starts. Sessions keep their time of
+ * day, and those that fall before the Simulation starts are left out, as are those before the start of a run that covers
+ * only a segment of the Simulation.
+ */
+public class ArrivalTrace implements ArrivalSource {
+    public static final int MAGIC = 0x45564152; //"EVAR"
+    public static final short VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+    public static final int RECORD_SIZE = 16;
+    private static final long MAX_REGION = (Integer.MAX_VALUE / RECORD_SIZE) * (long) RECORD_SIZE;
+    private static final long DAY_SECONDS = 86400;
+
+    private final FileChannel channel;
+    private final long count;
+    private final long shift; //Seconds added to every arrival to move the log onto the Simulation's calendar
+    private final long firstCarId;
+    private final int classes;
+    private MappedByteBuffer region;
+    private long regionStart; //The index of the first record in the mapped region
+    private long next; //The index of the first record not taken yet
+    private long dayEnd; //The epoch second, in the log's calendar, at which the day last taken ends
+
+    /**
+     * Constructor to create an Arrival Trace.
+     * @param file the Station's arrival file.
+     * @param firstCarId the id of the first car in the file. The rest are numbered in the order of the file.
+     * @param classes the number of charger classes in the Simulation. Sessions that want any other class are left out.
+     * @param gT the Global Time object, which gives the day the Simulation starts on and the start of this run.
+     * @throws IOException if the file cannot be opened, or is not an arrival file.
+     */
+    public ArrivalTrace(Path file, long firstCarId, int classes, GlobalTime gT) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+        if (header.getInt() != MAGIC || header.getShort() != VERSION || header.getShort() != RECORD_SIZE) {
+            channel.close();
+            throw new IOException(file + " is not a version " + VERSION + " arrival file");
+        }
+        count = header.getLong();
+        long firstDay = header.getLong();
+        long start = gT.getStartInstant().getEpochSecond();
+        this.shift = (Math.floorDiv(gT.getOriginInstant().getEpochSecond(), DAY_SECONDS) - firstDay) * DAY_SECONDS;
+        this.firstCarId = firstCarId;
+        this.classes = classes;
+        this.dayEnd = start - shift;
+        this.next = firstAtOrAfter(dayEnd);
+    }
+
+    /**
+     * @return the number of sessions in the file.
+     */
+    public long getCount(){
+        return count;
+    }
+
+    public ArrivalEvent[] takeDay(){
+        dayEnd += DAY_SECONDS;
+        long end = firstAtOrAfter(dayEnd);
+        ArrivalEvent[] cars = new ArrivalEvent[(int) (end - next)];
+        int taken = 0;
+        for (; next < end; next++) {
+            int at = locate(next);
+            int chargeClass = region.get(at + 12);
+            if (chargeClass < 0 || chargeClass >= classes)
+                continue;
+            cars[taken++] = new ArrivalEvent(firstCarId + next, Instant.ofEpochSecond(region.getLong(at) + shift),
+                    chargeClass, region.getFloat(at + 8));
+        }
+        if (taken < cars.length) {
+            ArrivalEvent[] kept = new ArrivalEvent[taken];
+            System.arraycopy(cars, 0, kept, 0, taken);
+            return kept;
+        }
+        return cars;
+    }
+
+    public void close(){
+        try {
+            channel.close();
+        } catch (IOException e){
+            System.out.println("Could not close arrival file: " + e);
+        }
+    }
+
+    /**
+     * @param second an epoch second, in the log's calendar.
+     * @return the index of the first record that arrives at or after that second, or the number of records if none does.
+     */
+    private long firstAtOrAfter(long second){
+        long low = next;
+        long high = count;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            int at = locate(middle);
+            if (region.getLong(at) < second)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Finds a record, first mapping the region of the file that holds it if it is not mapped already. Files of up to
+     * about 2 GB are mapped whole.
+     * @param record the index of the record.
+     * @return the position of the record within the mapped region.
+     */
+    private int locate(long record){
+        if (region == null || record < regionStart || (record - regionStart) * RECORD_SIZE >= region.capacity()) {
+            long from = count * RECORD_SIZE <= MAX_REGION ? 0 : record; //Larger files are mapped from the record onwards
+            try {
+                region = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + from * RECORD_SIZE,
+                        Math.min(MAX_REGION, (count - from) * RECORD_SIZE));
+                regionStart = from;
+            } catch (IOException e){
+                throw new IllegalStateException("Could not map arrival file", e);
+            }
+        }
+        return (int) ((record - regionStart) * RECORD_SIZE);
+    }
+}
@@ -0,0 +1,296 @@
+package execution.Trace;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import execution.ChargerClass;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.TreeMap;
+
+/**
+ * Converts logs of real charging sessions from CSV into the arrival files an {@link ArrivalTrace} replays, one file per
+ * Station, named after the Station, with its sessions sorted by arrival time. Conversion reads every row once; the
+ * Simulation then reads the binary files directly and never parses a row.
+ * Each CSV file must start with a header row. Four columns are used, and any others are ignored: the name of the
+ * Station, the time the car arrived, the energy it took in kilowatt-hours, and the name of the charger class it used,
+ * which must be one of the classes in the station config's default config. Arrival times may be epoch seconds, ISO-8601
+ * instants or offset date-times, or ISO-8601 local date-times, which are taken to be in UTC. Rows that cannot be read
+ * are counted and skipped.
+ * Run as {@code java -cp <classpath> execution.Trace.SessionConverter [--station=<column>] [--arrival=<column>]
+ * [--energy=<column>] [--class=<column>] <output directory> <session log.csv>...}; the columns default to "station",
+ * "arrival", "energy_kwh" and "charger_class".
+ */
+public class SessionConverter {
+    private static final int WRITE_RECORDS = 1 << 16;
+
+    private final HashMap<String, Integer> classIds = new HashMap<>();
+    private final TreeMap<String, Sessions> stations = new TreeMap<>();
+    private long earliest = Long.MAX_VALUE;
+    private long skipped;
+
+    /**
+     * The sessions of a single Station, kept in arrays that grow as rows are read.
+     */
+    private static final class Sessions {
+        private long[] arrivals = new long[1024];
+        private float[] energies = new float[1024];
+        private byte[] classes = new byte[1024];
+        private int size;
+
+        private void add(long arrival, float energy, byte chargeClass){
+            if (size == arrivals.length) {
+                arrivals = Arrays.copyOf(arrivals, size * 2);
+                energies = Arrays.copyOf(energies, size * 2);
+                classes = Arrays.copyOf(classes, size * 2);
+            }
+            arrivals[size] = arrival;
+            energies[size] = energy;
+            classes[size++] = chargeClass;
+        }
+    }
+
+    /**
+     * Constructor to create a Session Converter.
+     * @param classNames the names of the Simulation's charger classes, in the order of the default config.
+     */
+    public SessionConverter(String[] classNames){
+        for (int i = 0; i < classNames.length; i++)
+            classIds.put(classNames[i], i);
+    }
+
+    /**
+     * Reads every session in a CSV file.
+     * @param file the CSV file.
+     * @param stationColumn the name of the column holding the Station's name.
+     * @param arrivalColumn the name of the column holding the arrival time.
+     * @param energyColumn the name of the column holding the energy taken, in kilowatt-hours.
+     * @param classColumn the name of the column holding the charger class.
+     * @throws IOException if the file cannot be read, or lacks one of the columns.
+     */
+    public void read(Path file, String stationColumn, String arrivalColumn, String energyColumn, String classColumn) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (line == null)
+                return;
+            String[] header = split(line);
+            int station = column(header, stationColumn, file);
+            int arrival = column(header, arrivalColumn, file);
+            int energy = column(header, energyColumn, file);
+            int chargeClass = column(header, classColumn, file);
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank())
+                    continue;
+                String[] fields = split(line);
+                try {
+                    Integer classId = classIds.get(fields[chargeClass].trim());
+                    if (classId == null) {
+                        skipped++;
+                        continue;
+                    }
+                    long second = parseTime(fields[arrival].trim());
+                    float wattHours = (float) (Double.parseDouble(fields[energy].trim()) * 1000.0);
+                    stations.computeIfAbsent(fields[station].trim(), s -> new Sessions()).add(second, wattHours, classId.byteValue());
+                    earliest = Math.min(earliest, second);
+                } catch (ArrayIndexOutOfBoundsException | NumberFormatException | DateTimeParseException e){
+                    skipped++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the arrival file of every Station read so far.
+     * @param directory the directory to write the files to.
+     * @throws IOException if a file cannot be written.
+     */
+    public void write(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        long firstDay = earliest == Long.MAX_VALUE ? 0 : Math.floorDiv(earliest, 86400L);
+        for (String station : stations.keySet())
+            write(stations.get(station), directory.resolve(station + ".arrivals"), firstDay);
+    }
+
+    /**
+     * @return the number of Stations read so far.
+     */
+    public int getStations(){
+        return stations.size();
+    }
+
+    /**
+     * @return the number of sessions read so far.
+     */
+    public long getSessions(){
+        long sessions = 0;
+        for (Sessions s : stations.values())
+            sessions += s.size;
+        return sessions;
+    }
+
+    /**
+     * @return the number of rows skipped because they could not be read or named an unknown charger class.
+     */
+    public long getSkipped(){
+        return skipped;
+    }
+
+    /**
+     * Sorts a Station's sessions by arrival time and writes them out. Each session is sorted as a single long holding
+     * its arrival time, relative to the Station's earliest, above its position in the arrays, so that sorting needs no
+     * comparator and keeps sessions that arrive at the same second in the order they were read.
+     * @param sessions the Station's sessions.
+     * @param file the file to write.
+     * @param firstDay the epoch day of the earliest session at any Station.
+     * @throws IOException if the file cannot be written.
+     */
+    private static void write(Sessions sessions, Path file, long firstDay) throws IOException {
+        long base = Long.MAX_VALUE;
+        for (int i = 0; i < sessions.size; i++)
+            base = Math.min(base, sessions.arrivals[i]);
+        long[] order = new long[sessions.size];
+        for (int i = 0; i < sessions.size; i++)
+            order[i] = (sessions.arrivals[i] - base) << 32 | i;
+        Arrays.parallelSort(order);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_RECORDS * ArrivalTrace.RECORD_SIZE);
+            buffer.putInt(ArrivalTrace.MAGIC).putShort(ArrivalTrace.VERSION).putShort((short) ArrivalTrace.RECORD_SIZE)
+                    .putLong(sessions.size).putLong(firstDay).putLong(0);
+            for (long key : order) {
+                int i = (int) key;
+                if (buffer.remaining() < ArrivalTrace.RECORD_SIZE)
+                    drain(buffer, channel);
+                buffer.putLong(sessions.arrivals[i]).putFloat(sessions.energies[i]).put(sessions.classes[i])
+                        .put((byte) 0).put((byte) 0).put((byte) 0);
+            }
+            drain(buffer, channel);
+        }
+    }
+
+    private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * @param text an arrival time.
+     * @return the epoch second of the arrival time.
+     */
+    private static long parseTime(String text){
+        boolean digits = !text.isEmpty();
+        for (int i = 0; i < text.length() && digits; i++)
+            digits = Character.isDigit(text.charAt(i));
+        if (digits)
+            return Long.parseLong(text);
+        String iso = text.replace(' ', 'T');
+        try {
+            return OffsetDateTime.parse(iso).toEpochSecond();
+        } catch (DateTimeParseException e){
+            return LocalDateTime.parse(iso).toEpochSecond(ZoneOffset.UTC);
+        }
+    }
+
+    private static int column(String[] header, String name, Path file) throws IOException {
+        for (int i = 0; i < header.length; i++)
+            if (header[i].trim().equalsIgnoreCase(name))
+                return i;
+        throw new IOException(file + " has no column named " + name);
+    }
+
+    /**
+     * Splits a CSV row into its fields. Fields may be quoted, and a quoted field may hold commas and doubled quotes.
+     * @param line the row.
+     * @return the fields.
+     */
+    private static String[] split(String line){
+        ArrayList<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"')
+                    field.append(line.charAt(++i));
+                else if (c == '"')
+                    quoted = false;
+                else
+                    field.append(c);
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields.toArray(new String[0]);
+    }
+
+    /**
+     * Converts session logs into arrival files, using the charger classes of the station config named by the config
+     * file on the class path.
+     * @param args the options, the output directory, then the CSV files.
+     */
+    public static void main(String[] args) {
+        String stationColumn = "station", arrivalColumn = "arrival", energyColumn = "energy_kwh", classColumn = "charger_class";
+        ArrayList<String> paths = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--station="))
+                stationColumn = arg.substring("--station=".length());
+            else if (arg.startsWith("--arrival="))
+                arrivalColumn = arg.substring("--arrival=".length());
+            else if (arg.startsWith("--energy="))
+                energyColumn = arg.substring("--energy=".length());
+            else if (arg.startsWith("--class="))
+                classColumn = arg.substring("--class=".length());
+            else
+                paths.add(arg);
+        }
+        if (paths.size() < 2) {
+            System.out.println("Usage: SessionConverter [--station=<column>] [--arrival=<column>] [--energy=<column>] "
+                    + "[--class=<column>] <output directory> <session log.csv>...");
+            return;
+        }
+        try {
+            ObjectMapper mapper = new ObjectMapper();
+            InputStream inputStream = SessionConverter.class.getClassLoader().getResourceAsStream("config/config.json");
+            if (inputStream == null)
+                throw new IOException("Config file not found in resources");
+            JsonNode rootNode = mapper.readTree(inputStream);
+            inputStream = SessionConverter.class.getClassLoader().getResourceAsStream("config/" + rootNode.get("configFile").asText());
+            if (inputStream == null)
+                throw new IOException("Station config file not found in resources");
+            ChargerClass[] classes = ChargerClass.read(mapper.readTree(inputStream).get("defaultConfig"));
+            String[] classNames = new String[classes.length];
+            for (int i = 0; i < classes.length; i++)
+                classNames[i] = classes[i].getName();
+            SessionConverter converter = new SessionConverter(classNames);
+            for (String path : paths.subList(1, paths.size()))
+                converter.read(Path.of(path), stationColumn, arrivalColumn, energyColumn, classColumn);
+            converter.write(Path.of(paths.get(0)));
+            System.out.println("Wrote " + converter.getSessions() + " sessions at " + converter.getStations()
+                    + " stations, skipping " + converter.getSkipped() + " rows");
+        } catch (IOException e){
+            System.out.println("Could not convert session logs: " + e);
+        }
+    }
+}
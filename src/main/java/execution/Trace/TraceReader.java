@@ -0,0 +1,85 @@
+package execution.Trace;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Streams the records of a trace file written by the {@link TraceRecorder}, in the order the Station committed them.
+ * The file is memory mapped, so records are read straight out of the page cache.
+ * Run on its own, the reader prints the records of every trace file it is given as CSV, for use in other tools.
+ */
+public class TraceReader implements Iterator<TraceRecord>, AutoCloseable {
+    private static final long MAX_REGION = (Integer.MAX_VALUE / TraceRecord.SIZE) * (long) TraceRecord.SIZE;
+
+    private final FileChannel channel;
+    private final long count;
+    private MappedByteBuffer region;
+    private long read;
+
+    /**
+     * Constructor to create a Trace Reader.
+     * @param file the trace file to read.
+     * @throws IOException if the file cannot be opened, or is not a trace file.
+     */
+    public TraceReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, TraceRecorder.HEADER_SIZE);
+        if (header.getInt() != TraceRecorder.MAGIC || header.getShort() != TraceRecorder.VERSION
+                || header.getShort() != TraceRecord.SIZE) {
+            channel.close();
+            throw new IOException(file + " is not a version " + TraceRecorder.VERSION + " trace file");
+        }
+        count = header.getLong();
+    }
+
+    /**
+     * @return the number of records in the file.
+     */
+    public long getCount(){
+        return count;
+    }
+
+    public boolean hasNext(){
+        return read < count;
+    }
+
+    public TraceRecord next(){
+        if (!hasNext())
+            throw new NoSuchElementException();
+        try {
+            if (region == null || !region.hasRemaining()) {
+                long size = Math.min(MAX_REGION, (count - read) * TraceRecord.SIZE);
+                region = channel.map(FileChannel.MapMode.READ_ONLY, TraceRecorder.HEADER_SIZE + read * TraceRecord.SIZE, size);
+            }
+        } catch (IOException e){
+            throw new IllegalStateException("Could not map trace file", e);
+        }
+        read++;
+        return new TraceRecord(region);
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Prints every record of the given trace files as CSV, one file after another.
+     * @param args the paths of the trace files.
+     */
+    public static void main(String[] args) {
+        System.out.println("kind,timestamp,arrivalTime,serviceTime,carId,chargeClass,status,value");
+        for (String arg : args) {
+            try (TraceReader reader = new TraceReader(Path.of(arg))) {
+                while (reader.hasNext())
+                    System.out.println(reader.next());
+            } catch (IOException e){
+                System.out.println("Could not read " + arg + ": " + e);
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package execution.Trace;
+
+import objects.Event.*;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+
+/**
+ * A single committed event, as it is laid out in a Station's trace file. Every record is {@link #SIZE} bytes long, so a
+ * trace can be read from any point without parsing the records before it:
+ * <pre>
+ *   long  timestamp     epoch second the event happened at
+ *   long  arrivalTime   epoch second the car arrived, or 0
+ *   long  serviceTime   epoch second the car went on a charger for a departure, the id of the car for an arrival or a
+ *                       balk, otherwise 0
+ *   float value         arrival rate of a Generator Event, energy wanted by an arriving or balking car, otherwise 0
+ *   byte  kind          GENERATE, ARRIVAL, DEPARTURE or BALK
+ *   byte  chargeClass   the id of the car's charger class, or NONE
+ *   byte  status        the departure status, or NONE
+ *   byte  reserved
+ * </pre>
+ */
+public class TraceRecord {
+    public static final int SIZE = 32;
+
+    public static final byte GENERATE = 1;
+    public static final byte ARRIVAL = 2;
+    public static final byte DEPARTURE = 3;
+    public static final byte BALK = 4;
+
+    public static final byte NONE = -1;
+
+    private final long timestamp;
+    private final long arrivalTime;
+    private final long serviceTime;
+    private final float value;
+    private final byte kind;
+    private final byte chargeClass;
+    private final byte status;
+
+    /**
+     * Constructor to create a Trace Record by reading it from a buffer.
+     * @param buffer the buffer, positioned at the start of the record. Its position is moved past the record.
+     */
+    public TraceRecord(ByteBuffer buffer){
+        this.timestamp = buffer.getLong();
+        this.arrivalTime = buffer.getLong();
+        this.serviceTime = buffer.getLong();
+        this.value = buffer.getFloat();
+        this.kind = buffer.get();
+        this.chargeClass = buffer.get();
+        this.status = buffer.get();
+        buffer.get();
+    }
+
+    /**
+     * Writes an event to a buffer in the layout of a Trace Record, without creating a record.
+     * @param e the event to write.
+     * @param buffer the buffer to write to, with at least {@link #SIZE} bytes remaining.
+     */
+    public static void write(Event e, ByteBuffer buffer){
+        long arrival = 0;
+        long service = 0;
+        double value = 0;
+        byte kind;
+        byte chargeClass = NONE;
+        byte status = NONE;
+        if (e instanceof GenEvent) {
+            kind = GENERATE;
+            value = ((GenEvent) e).getArrivalRate();
+        } else if (e instanceof ArrivalEvent) {
+            ArrivalEvent a = (ArrivalEvent) e;
+            kind = ARRIVAL;
+            arrival = a.getTimestamp().getEpochSecond();
+            service = a.getId();
+            chargeClass = (byte) a.getChargeClass();
+            value = a.getChargeDesired();
+        } else if (e instanceof DepartureEvent) {
+            DepartureEvent d = (DepartureEvent) e;
+            kind = DEPARTURE;
+            arrival = d.getArrivalTime().getEpochSecond();
+            service = d.getServiceTime().getEpochSecond();
+            chargeClass = (byte) d.getChargeClass();
+            status = (byte) d.getStatus();
+        } else {
+            ArrivalEvent a = ((BalkEvent) e).getEventToLeave();
+            kind = BALK;
+            arrival = a.getTimestamp().getEpochSecond();
+            service = a.getId();
+            chargeClass = (byte) a.getChargeClass();
+            value = a.getChargeDesired();
+        }
+        buffer.putLong(e.getTimestamp().getEpochSecond());
+        buffer.putLong(arrival);
+        buffer.putLong(service);
+        buffer.putFloat((float) value);
+        buffer.put(kind);
+        buffer.put(chargeClass);
+        buffer.put(status);
+        buffer.put((byte) 0);
+    }
+
+    /**
+     * Rebuilds the event this record was written from, so that a trace can be fed back into a Station. Timestamps are
+     * only kept to the second, the energy a car wanted only to the precision of a float, and Departure Events do not
+     * keep the id of their car.
+     * @return the event.
+     */
+    public Event toEvent(){
+        Instant stamp = Instant.ofEpochSecond(timestamp);
+        switch (kind) {
+            case GENERATE:
+                return new GenEvent(stamp, value);
+            case ARRIVAL:
+                return new ArrivalEvent(serviceTime, stamp, chargeClass, value);
+            case DEPARTURE:
+                return new DepartureEvent(stamp, 0, Instant.ofEpochSecond(arrivalTime), Instant.ofEpochSecond(serviceTime),
+                        chargeClass, status);
+            case BALK:
+                return new BalkEvent(stamp, new ArrivalEvent(serviceTime, Instant.ofEpochSecond(arrivalTime), chargeClass, value));
+            default:
+                throw new IllegalStateException("Unknown trace record kind " + kind);
+        }
+    }
+
+    /**
+     * @return the epoch second the event happened at.
+     */
+    public long getTimestamp(){ return timestamp; }
+
+    /**
+     * @return the epoch second the car arrived at the Station, or 0 for a Generator Event.
+     */
+    public long getArrivalTime(){ return arrivalTime; }
+
+    /**
+     * @return the epoch second the car was placed onto a charger, or 0 if the event is not a Departure Event.
+     */
+    public long getServiceTime(){ return kind == DEPARTURE ? serviceTime : 0; }
+
+    /**
+     * @return the id of the car, or 0 if the event is not an Arrival Event or a Balk Event.
+     */
+    public long getCarId(){ return kind == ARRIVAL || kind == BALK ? serviceTime : 0; }
+
+    /**
+     * @return the arrival rate of a Generator Event, the energy wanted by an arriving or balking car, or 0.
+     */
+    public float getValue(){ return value; }
+
+    /**
+     * @return the kind of event, one of GENERATE, ARRIVAL, DEPARTURE or BALK.
+     */
+    public byte getKind(){ return kind; }
+
+    /**
+     * @return the id of the charger class the car wanted, or NONE for a Generator Event.
+     */
+    public byte getChargeClass(){ return chargeClass; }
+
+    /**
+     * @return the status of a departing car, one of the statuses of a Departure Event, or NONE if the event is not a
+     * Departure Event.
+     */
+    public byte getStatus(){ return status; }
+
+    @Override
+    public String toString(){
+        String[] kinds = {"", "Generate", "Arrival", "Departure", "Balk"};
+        return kinds[kind] + "," + timestamp + "," + arrivalTime + "," + getServiceTime() + "," + getCarId() + ","
+                + (chargeClass == NONE ? "" : chargeClass) + ","
+                + (status == NONE ? "" : DepartureEvent.statusName(status)) + "," + value;
+    }
+}
@@ -0,0 +1,145 @@
+package execution.Trace;
+
+import objects.Event.Event;
+import objects.GlobalTime;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records every event a Station commits to a binary trace file, one {@link TraceRecord} per event.
+ * Events are first written to a staging buffer on the heap, since an event the Station handles may still be undone by a
+ * rollback, in which case its record is marked and later skipped. Every so often the recorder moves the events that lie
+ * before the Global Minimum Time, which can no longer be undone, from the staging buffer into the trace file. The file is memory mapped a large region at a time, so writing a
+ * record is a plain memory copy and the Station's thread never waits on the disk.
+ * The file starts with a {@link #HEADER_SIZE} byte header holding {@link #MAGIC}, the format version, the record size and
+ * the number of records committed so far. Space is mapped ahead of the records, so the file may be longer than its
+ * records; readers must go by the count in the header.
+ */
+public class TraceRecorder {
+    public static final int MAGIC = 0x45565452; //"EVTR"
+    public static final short VERSION = 3;
+    public static final int HEADER_SIZE = 16;
+    private static final int COMMIT_EVERY = 1024;
+    private static final int REGION_RECORDS = 1 << 16;
+    private static final int KIND_OFFSET = 28;
+    private static final byte UNDONE = 0;
+
+    private final GlobalTime gT;
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private MappedByteBuffer region;
+    private ByteBuffer staging = ByteBuffer.allocate(COMMIT_EVERY * 4 * TraceRecord.SIZE);
+    private final ByteBuffer scratch = ByteBuffer.allocate(TraceRecord.SIZE);
+    private long committed;
+    private int sinceCommit;
+
+    /**
+     * Constructor to create a Trace Recorder, replacing any trace the Station left behind in an earlier run.
+     * @param file the trace file to write.
+     * @param gT the Global Time object, used to tell which events can no longer be undone.
+     * @throws IOException if the file cannot be created or mapped.
+     */
+    public TraceRecorder(Path file, GlobalTime gT) throws IOException {
+        this.gT = gT;
+        if (file.getParent() != null)
+            Files.createDirectories(file.getParent());
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        header.putInt(MAGIC).putShort(VERSION).putShort((short) TraceRecord.SIZE).putLong(0);
+        region = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE, (long) REGION_RECORDS * TraceRecord.SIZE);
+    }
+
+    /**
+     * Stages an event the Station has just handled. Every so often, events that can no longer be undone are committed
+     * to the file.
+     * @param e the event.
+     */
+    public void record(Event e){
+        if (staging.remaining() < TraceRecord.SIZE) {
+            ByteBuffer larger = ByteBuffer.allocate(staging.capacity() * 2);
+            staging.flip();
+            staging = larger.put(staging);
+        }
+        TraceRecord.write(e, staging);
+        if (++sinceCommit >= COMMIT_EVERY) {
+            sinceCommit = 0;
+            commit(gT.getGlobalMinimumTime().getEpochSecond());
+        }
+    }
+
+    /**
+     * Throws away the staged record of an event undone by a rollback. Records are staged in the order the events were
+     * handled, and undone events are nearly always recent ones, so the search starts from the end of the staging buffer.
+     * Events that have already been committed to the file are left as they are.
+     * @param e the event that was undone.
+     */
+    public void undo(Event e){
+        scratch.clear();
+        TraceRecord.write(e, scratch);
+        for (int at = staging.position() - TraceRecord.SIZE; at >= 0; at -= TraceRecord.SIZE) {
+            if (staging.getLong(at) == scratch.getLong(0) && staging.getLong(at + 8) == scratch.getLong(8)
+                    && staging.getLong(at + 16) == scratch.getLong(16) && staging.getLong(at + 24) == scratch.getLong(24)) {
+                staging.put(at + KIND_OFFSET, UNDONE);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Commits every staged event, since the Simulation has ended and nothing can be undone, then closes the file.
+     */
+    public void close(){
+        try {
+            commit(Long.MAX_VALUE);
+            region.force();
+            header.force();
+            channel.close();
+        } catch (IOException e){
+            System.out.println("Could not close trace file: " + e);
+        }
+    }
+
+    /**
+     * @return the number of records committed to the file so far.
+     */
+    public long getCommitted(){
+        return committed;
+    }
+
+    /**
+     * Moves the staged events that happened before a given time to the file, then updates the count in the header.
+     * @param before the epoch second before which events can no longer be undone.
+     */
+    private void commit(long before){
+        int end = 0;
+        int limit = staging.position();
+        while (end < limit && staging.getLong(end) < before)
+            end += TraceRecord.SIZE;
+        if (end == 0)
+            return;
+        try {
+            for (int at = 0; at < end; at += TraceRecord.SIZE) {
+                if (staging.get(at + KIND_OFFSET) == UNDONE)
+                    continue;
+                if (!region.hasRemaining())
+                    region = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + committed * TraceRecord.SIZE,
+                            (long) REGION_RECORDS * TraceRecord.SIZE);
+                region.put(region.position(), staging, at, TraceRecord.SIZE);
+                region.position(region.position() + TraceRecord.SIZE);
+                committed++;
+            }
+        } catch (IOException e){
+            System.out.println("Could not extend trace file: " + e);
+        }
+        header.putLong(8, committed);
+        staging.limit(limit).position(end);
+        staging.compact();
+    }
+}
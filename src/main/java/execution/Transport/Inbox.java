@@ -0,0 +1,45 @@
+package execution.Transport;
+
+import objects.Message.Message;
+
+import java.util.List;
+
+/**
+ * The reading end of the path Messages take to reach either a Station or the Monitor. Only the owner of the messages
+ * holds its Inbox.
+ */
+public interface Inbox {
+    /**
+     * Removes the next message from the Inbox, waiting until one arrives if it is empty.
+     * @return the next message in the Inbox.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    Message take() throws InterruptedException;
+
+    /**
+     * Removes the next message from the Inbox, waiting a limited time for one to arrive if it is empty.
+     * @param timeoutNanos the longest time, in real nanoseconds, to wait for.
+     * @return the next message in the Inbox, or null if none arrived in time.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    Message poll(long timeoutNanos) throws InterruptedException;
+
+    /**
+     * Removes every message waiting in the Inbox, without waiting for any more to arrive.
+     * @param into the list the messages are added to, in the order they arrived.
+     * @return the number of messages removed.
+     */
+    int drainTo(List<Message> into);
+
+    /**
+     * @return true if the Inbox holds no messages that have yet to be read.
+     */
+    boolean isEmpty();
+
+    /**
+     * Registers an action to run every time a message is put into the Inbox, so that an owner which is not waiting in
+     * take can be woken up.
+     * @param listener the action to run, on the thread that puts the message.
+     */
+    void setListener(Runnable listener);
+}
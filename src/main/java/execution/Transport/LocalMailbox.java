@@ -0,0 +1,51 @@
+package execution.Transport;
+
+import objects.Message.Message;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Mailbox whose owner lives in the same process as its senders. Messages are handed over through a Blocking Queue
+ * without being copied or encoded.
+ */
+public class LocalMailbox implements Mailbox {
+    private final BlockingQueue<Message> queue = new LinkedBlockingQueue<>();
+    private volatile Runnable listener;
+
+    public void put(Message msg) {
+        queue.add(msg);
+        Runnable l = listener;
+        if (l != null)
+            l.run();
+    }
+
+    public void putAll(List<Message> msgs) {
+        queue.addAll(msgs);
+        Runnable l = listener;
+        if (l != null)
+            l.run();
+    }
+
+    public Message take() throws InterruptedException {
+        return queue.take();
+    }
+
+    public Message poll(long timeoutNanos) throws InterruptedException {
+        return queue.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public int drainTo(List<Message> into) {
+        return queue.drainTo(into);
+    }
+
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    public void setListener(Runnable listener) {
+        this.listener = listener;
+    }
+}
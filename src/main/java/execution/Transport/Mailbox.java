@@ -0,0 +1,11 @@
+package execution.Transport;
+
+/**
+ * Depicts the path that Messages take to reach either a Station or the Monitor, with both its ends in this process. The
+ * Monitor and the Stations only ever talk to each other through Mailboxes, so the same simulation can run with every
+ * Station in one process or with Stations spread across several processes. Senders are handed the Mailbox as an
+ * {@link Outbox}, and its owner reads it as an {@link Inbox}; where the owner lives in another process, senders write to
+ * a {@link RemoteOutbox} instead.
+ */
+public interface Mailbox extends Inbox, Outbox {
+}
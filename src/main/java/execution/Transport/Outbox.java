@@ -0,0 +1,27 @@
+package execution.Transport;
+
+import objects.Message.Message;
+
+import java.util.List;
+
+/**
+ * The writing end of the path Messages take to reach either a Station or the Monitor. Senders only ever hold an Outbox,
+ * so a path whose other end lives in another process, or is read by someone else, cannot be read from by mistake.
+ */
+public interface Outbox {
+    /**
+     * Places a message in the Outbox to be read by the owner of the other end.
+     * @param msg the message being delivered.
+     */
+    void put(Message msg);
+
+    /**
+     * Places several messages in the Outbox at once, to be read in the order given. An owner waiting for a message is
+     * woken once for the lot rather than once for each.
+     * @param msgs the messages being delivered.
+     */
+    default void putAll(List<Message> msgs){
+        for (Message msg : msgs)
+            put(msg);
+    }
+}
@@ -0,0 +1,29 @@
+package execution.Transport;
+
+import objects.Message.Message;
+
+/**
+ * An Outbox whose reader lives in a different process. Messages put into a Remote Outbox are written to the Socket Link
+ * that leads to that process, addressed to a single Station or to the Monitor. Its owner reads the messages out of a
+ * Local Mailbox on the other end of the link. Messages are considered delivered once they have been handed to the
+ * link, which keeps them in the order they were sent, so any message sent to a Station is read before the End Message
+ * that follows it.
+ */
+public class RemoteOutbox implements Outbox {
+    private final SocketLink link;
+    private final short destination;
+
+    /**
+     * Constructor to create a Remote Outbox.
+     * @param link the link to the process that reads the messages.
+     * @param destination the codec index of the Station that reads the messages, or -1 for the Monitor.
+     */
+    public RemoteOutbox(SocketLink link, short destination){
+        this.link = link;
+        this.destination = destination;
+    }
+
+    public void put(Message msg) {
+        link.send(destination, msg);
+    }
+}
@@ -0,0 +1,215 @@
+package execution.Transport;
+
+import objects.GlobalTime;
+import objects.Message.Message;
+import objects.Message.MessageCodec;
+import objects.Message.TimingMessage;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A connection between the coordinating process, which runs the Monitor, and a worker process, which runs a partition of
+ * the Stations. Each link owns a writer thread, which batches outgoing messages into frames, and a reader thread, which
+ * decodes incoming frames and hands them to a Receiver.
+ * Every frame is laid out as the length of the rest of the frame, the codec index of the Station the message is addressed
+ * to (-1 for the Monitor), then the encoded message.
+ * Because Stations in a worker cannot see the coordinator's Global Time object, the coordinator's end of a link also
+ * publishes the Global Minimum Time to the worker whenever it changes, as a Timing Message sent by the Monitor.
+ */
+public class SocketLink {
+    /**
+     * Handles the messages read off of a link.
+     */
+    public interface Receiver {
+        /**
+         * @param destination the codec index of the Station the message is addressed to, or -1 for the Monitor.
+         * @param msg the message that was read.
+         */
+        void receive(short destination, Message msg);
+    }
+
+    private static final class Frame {
+        private final short destination;
+        private final Message msg;
+
+        private Frame(short destination, Message msg){
+            this.destination = destination;
+            this.msg = msg;
+        }
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int FRAME_HEADER = 4 + 2;
+    private static final long PUBLISH_INTERVAL_MS = 5;
+    private static final Frame CLOSE = new Frame(Short.MIN_VALUE, null);
+
+    private final SocketChannel channel;
+    private final MessageCodec codec;
+    private final GlobalTime publishedTime;
+    private final Receiver receiver;
+    private final BlockingQueue<Frame> outbound = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private final Thread reader;
+    private Instant lastPublished;
+    private volatile boolean closing = false;
+
+    /**
+     * Constructor to create a Socket Link over a connected channel. The link does not start reading or writing until
+     * start is called.
+     * @param channel the connected socket channel.
+     * @param codec the codec shared by both ends of the link.
+     * @param publishedTime the Global Time whose minimum is published over the link, or null if this end of the link
+     *                      does not publish it.
+     * @param receiver the handler for messages read off of the link.
+     * @param name the name used for the link's threads.
+     */
+    public SocketLink(SocketChannel channel, MessageCodec codec, GlobalTime publishedTime, Receiver receiver, String name){
+        this.channel = channel;
+        this.codec = codec;
+        this.publishedTime = publishedTime;
+        this.receiver = receiver;
+        this.writer = new Thread(this::writeLoop, name + " writer");
+        this.reader = new Thread(this::readLoop, name + " reader");
+        this.reader.setDaemon(true);
+        try {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        } catch (IOException e){
+            System.out.println("Could not disable Nagle's algorithm on " + name);
+        }
+    }
+
+    /**
+     * Starts the link's reader and writer threads.
+     */
+    public void start(){
+        writer.start();
+        reader.start();
+    }
+
+    /**
+     * Queues a message to be written to the other end of the link.
+     * @param destination the codec index of the Station the message is addressed to, or -1 for the Monitor.
+     * @param msg the message being sent.
+     */
+    public void send(short destination, Message msg){
+        outbound.add(new Frame(destination, msg));
+    }
+
+    /**
+     * Writes out every message that has already been sent, then closes this end of the connection for writing. The
+     * reader keeps running until the other end closes as well.
+     */
+    public void close(){
+        outbound.add(CLOSE);
+        try {
+            writer.join();
+            if (channel.isOpen())
+                channel.shutdownOutput();
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        } catch (ClosedChannelException ignored){
+            //The other end finished first and the reader has already closed the channel
+        } catch (IOException e){
+            System.out.println("Failed to close link " + e);
+        }
+    }
+
+    /**
+     * Takes every queued frame at once and writes them in as few socket writes as possible. A Timing Message that is
+     * immediately followed by a newer Timing Message from the same Station is dropped, since the Monitor only keeps the
+     * latest time of each Station anyway.
+     */
+    private void writeLoop(){
+        ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        ArrayList<Frame> batch = new ArrayList<>();
+        try {
+            boolean done = false;
+            while (!done) {
+                Frame first = outbound.poll(PUBLISH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    outbound.drainTo(batch);
+                }
+                if (publishedTime != null) {
+                    Instant minimum = publishedTime.getGlobalMinimumTime();
+                    if (!minimum.equals(lastPublished)) {
+                        batch.add(new Frame(MessageCodec.MONITOR, new TimingMessage(minimum, "Monitor")));
+                        lastPublished = minimum;
+                    }
+                }
+                for (int i = 0; i < batch.size(); i++) {
+                    Frame f = batch.get(i);
+                    if (f == CLOSE) {
+                        done = true;
+                        break;
+                    }
+                    if (i + 1 < batch.size() && supersedes(batch.get(i + 1), f))
+                        continue;
+                    if (buf.remaining() < FRAME_HEADER + MessageCodec.MAX_MESSAGE_SIZE)
+                        flush(buf);
+                    int start = buf.position();
+                    buf.putInt(0);
+                    buf.putShort(f.destination);
+                    codec.encode(f.msg, buf);
+                    buf.putInt(start, buf.position() - start - 4);
+                }
+                flush(buf);
+                batch.clear();
+            }
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        } catch (IOException e){
+            if (!closing)
+                System.out.println("Link failed while writing " + e);
+        }
+    }
+
+    /**
+     * Reads frames off of the socket until the other end closes the connection, decoding each one and passing it to
+     * the Receiver.
+     */
+    private void readLoop(){
+        ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        try {
+            while (channel.read(buf) >= 0) {
+                buf.flip();
+                while (buf.remaining() >= 4 && buf.remaining() >= 4 + buf.getInt(buf.position())) {
+                    buf.getInt();
+                    short destination = buf.getShort();
+                    receiver.receive(destination, codec.decode(buf));
+                }
+                buf.compact();
+            }
+        } catch (IOException e){
+            if (!closing)
+                System.out.println("Link failed while reading " + e);
+        } finally {
+            closing = true;
+            try {
+                channel.close();
+            } catch (IOException ignored){
+            }
+        }
+    }
+
+    private static boolean supersedes(Frame next, Frame f){
+        return f.msg instanceof TimingMessage && next.msg instanceof TimingMessage
+                && next.destination == f.destination && next.msg.getSender().equals(f.msg.getSender());
+    }
+
+    private void flush(ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining())
+            channel.write(buf);
+        buf.clear();
+    }
+}
@@ -0,0 +1,118 @@
+package execution;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import execution.Jfr.Recordings;
+import execution.Transport.LocalMailbox;
+import execution.Transport.Mailbox;
+import execution.Transport.Outbox;
+import execution.Transport.RemoteOutbox;
+import execution.Transport.SocketLink;
+import objects.GlobalTime;
+import objects.Message.MessageCodec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entry point of a worker process in the distributed mode of the Simulation. A worker runs one partition of the Stations
+ * and talks to the Monitor, which runs in the coordinating process, over a single loopback socket. Workers are launched
+ * by the Main class and should not normally be started by hand.
+ */
+public class Worker {
+    /**
+     * Reads the configs the coordinating process runs, connects back to it, and runs every Station in this worker's
+     * partition until the Monitor ends the Simulation.
+     * @param args the port of the coordinating process, the index of this worker, the number of workers, the epoch
+     *             second the Simulation starts at, and the file the coordinating process wrote the master config and
+     *             every Station's full config to. Without the file, the config files in resources are read instead.
+     */
+    public static void main(String[] args) {
+        int port = Integer.parseInt(args[0]);
+        int worker = Integer.parseInt(args[1]);
+        int workers = Integer.parseInt(args[2]);
+        Instant start = Instant.ofEpochSecond(Long.parseLong(args[3]));
+        try {
+            ObjectMapper mapper = new ObjectMapper();
+            JsonNode rootNode;
+            ArrayList<ObjectNode> fullConfigs = new ArrayList<>();
+            if (args.length > 4) {
+                JsonNode handedOver = mapper.readTree(Path.of(args[4]).toFile());
+                rootNode = handedOver.get("config");
+                for (JsonNode fullConfig : handedOver.get("stations"))
+                    fullConfigs.add((ObjectNode) fullConfig);
+            } else {
+                InputStream inputStream = Worker.class.getClassLoader().getResourceAsStream("config/config.json");
+                if(inputStream == null){
+                    throw new IOException("Config file not found in resources");
+                }
+                rootNode = mapper.readTree(inputStream);
+                inputStream = Worker.class.getClassLoader().getResourceAsStream("config/" + rootNode.get("configFile").asText());
+                if(inputStream == null){
+                    throw new IOException("Station config file not found in resources");
+                }
+                fullConfigs = Main.readStationConfigs(mapper.readTree(inputStream));
+            }
+            GlobalTime gT = new GlobalTime(start, rootNode.get("runtime").asInt());
+            Recordings.enable(rootNode.path("flightRecorderEvents").asBoolean(false));
+            ArrayList<String> stationNames = new ArrayList<>();
+            for (ObjectNode fullConfig : fullConfigs)
+                stationNames.add(fullConfig.get("name").asText());
+            MessageCodec codec = new MessageCodec(stationNames);
+
+            HashMap<Short, Mailbox> stationMailboxes = new HashMap<>();
+            for (short s = 0; s < stationNames.size(); s++)
+                if (s % workers == worker)
+                    stationMailboxes.put(s, new LocalMailbox());
+
+            SocketChannel channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            ByteBuffer hello = ByteBuffer.allocate(4).putInt(worker).flip();
+            while (hello.hasRemaining())
+                channel.write(hello);
+            SocketLink link = new SocketLink(channel, codec, null, (destination, msg) -> {
+                if (destination == MessageCodec.MONITOR)
+                    gT.setGlobalMinimumTime(msg.getTimestamp()); //The Monitor publishes the Global Minimum Time to every worker
+                else
+                    stationMailboxes.get(destination).put(msg);
+            }, "Worker " + worker);
+            link.start();
+            Outbox stationToMonitorQueue = new RemoteOutbox(link, MessageCodec.MONITOR);
+
+            //Every Station holds on to its thread until the Simulation ends, so each needs a thread of its own
+            ExecutorService executor = Executors.newFixedThreadPool(stationMailboxes.size());
+            for (short s : stationMailboxes.keySet()) {
+                ObjectNode fullConfig = fullConfigs.get(s);
+                Mailbox monitorToStationQueue = stationMailboxes.get(s);
+                executor.submit(() -> {
+                    Thread.currentThread().setName(fullConfig.get("name").asText());
+                    new StationSimulator(fullConfig, gT, stationToMonitorQueue, monitorToStationQueue).run();
+                });
+            }
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            link.close();
+        }catch (IOException e){
+            System.out.println("Worker " + worker + " could not start: " + e);
+            System.exit(1);
+        }catch (NullPointerException e){
+            System.out.println("A parameter could not be found: " + e);
+            System.exit(1);
+        }
+    }
+}
@@ -5,35 +5,88 @@ import java.time.Instant;
 /**
  * An implementation of an event which depicts a vehicle arriving at a charging station.
  * This comes with certain data, informing the Simulator how to handle the event.
+ * Every car is given an id when it is generated, which it keeps as it balks from Station to Station.
  */
 public class ArrivalEvent implements Event {
+    private final long id;
     private final Instant timestamp;
-    private final String chargeType;
+    private final int chargeClass;
     private final double chargeDesired;
+    private final int balks;
 
     /**
      * Constructor for creating an Arrival Event. Utilizes classes from EvLib to represent the car itself and the car's battery.
      * The classes from EvLib are mostly there to interact with the portions of EvLib we are testing, namely the charging. They serve
      * no function otherwise.
+     * @param id the id of the car, unique across the whole Simulation.
      * @param stamp the time that a car arrives at the station.
-     * @param chargeType the type of charge that a car desires, either "fast" or "slow".
+     * @param chargeClass the id of the class of charger that a car desires, its position in the Simulation's list of charger classes.
      * @param desireAmount the amount of energy the car wants from the Station it has arrived at, measured in watt-hours.
      */
-    public ArrivalEvent(Instant stamp, String chargeType, double desireAmount){
+    public ArrivalEvent(long id, Instant stamp, int chargeClass, double desireAmount){
+        this(id, stamp, chargeClass, desireAmount, 0);
+    }
+
+    /**
+     * Constructor for creating the Arrival Event of a car that has already balked from other Stations.
+     * @param id the id of the car, unique across the whole Simulation.
+     * @param stamp the time that a car arrives at the station.
+     * @param chargeClass the id of the class of charger that a car desires.
+     * @param desireAmount the amount of energy the car wants, measured in watt-hours.
+     * @param balks the number of Stations the car has balked from on its way here.
+     */
+    public ArrivalEvent(long id, Instant stamp, int chargeClass, double desireAmount, int balks){
+        this.id = id;
         this.timestamp = stamp;
-        this.chargeType = chargeType;
+        this.chargeClass = chargeClass;
         this.chargeDesired = desireAmount;
+        this.balks = balks;
     }
 
     public Instant getTimestamp(){
         return timestamp;
     }
     /**
-     * @return the type of charge that a car desires, either "fast" or "slow".
+     * @return the id of the car, unique across the whole Simulation.
      */
-    public String getChargeType() { return chargeType;}
+    public long getId() { return id; }
+    /**
+     * @return the id of the class of charger that a car desires.
+     */
+    public int getChargeClass() { return chargeClass;}
     /**
      * @return the amount of energy the car wants from the Station it has arrived at, measured in watt-hours.
      */
     public double getChargeDesired() { return this.chargeDesired; }
+    /**
+     * @return the number of Stations the car has balked from on its way here.
+     */
+    public int getBalks() { return balks; }
+
+    /**
+     * A car that balks arrives at the Station it is sent to at the time it balked, not the time it first arrived.
+     * @param stamp the time the car arrives.
+     * @return the same car arriving at another time, having balked once more.
+     */
+    public ArrivalEvent arrivingAt(Instant stamp) { return new ArrivalEvent(id, stamp, chargeClass, chargeDesired, balks + 1); }
+
+    /**
+     * Arrival Events are compared by the id of their car so that a copy decoded from another process still matches the
+     * original when it is looked up or removed from a queue.
+     * @param o the object being compared to this Arrival Event.
+     * @return true if both events depict the same car.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof ArrivalEvent))
+            return false;
+        return id == ((ArrivalEvent) o).id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(id);
+    }
 }
@@ -7,25 +7,33 @@ import java.time.Instant;
  * This comes with certain data which informs the Station how to track how many successful charges were made.
  */
 public class DepartureEvent implements Event {
+    public static final int UNCHARGED = 0;
+    public static final int PARTIALLY_CHARGED = 1;
+    public static final int FULLY_CHARGED = 2;
+    private static final String[] STATUS_NAMES = {"Uncharged", "Partially Charged", "Fully Charged"};
+
     private final Instant timestamp;
+    private final long carId;
     private final Instant arrivalTime;
     private final Instant serviceTime;
-    private final String chargeType;
-    private final String status; // Explains if the car was fully charged, thrown out due to impatience, etc. There are three statuses: Uncharged, Partially Charged and Fully Charged
+    private final int chargeClass;
+    private final int status; // Explains if the car was fully charged, thrown out due to impatience, etc. There are three statuses: UNCHARGED, PARTIALLY_CHARGED and FULLY_CHARGED
 
     /**
      * Constructor for creating a Departure Event.
      * @param stamp the time the car leaves the charging station.
+     * @param carId the id of the car that is leaving.
      * @param arrivalTime the time the car originally arrived at the station.
      * @param serviceTime the time the car was placed onto a charger and began receiving energy.
-     * @param chargeType the type of charge that a car desires, either "fast" or "slow".
-     * @param status the state of a car as it leaves the station; the status can be "Uncharged", "Partially Charged", or "Fully Charged" based on the calculations of the Simulator.
+     * @param chargeClass the id of the class of charger that the car used.
+     * @param status the state of a car as it leaves the station; the status can be UNCHARGED, PARTIALLY_CHARGED, or FULLY_CHARGED based on the calculations of the Simulator.
      */
-    public DepartureEvent(Instant stamp, Instant arrivalTime, Instant serviceTime, String chargeType, String status){
+    public DepartureEvent(Instant stamp, long carId, Instant arrivalTime, Instant serviceTime, int chargeClass, int status){
         this.timestamp = stamp;
+        this.carId = carId;
         this.arrivalTime = arrivalTime;
         this.serviceTime = serviceTime;
-        this.chargeType = chargeType;
+        this.chargeClass = chargeClass;
         this.status = status;
     }
 
@@ -33,6 +41,11 @@ public class DepartureEvent implements Event {
         return timestamp;
     }
 
+    /**
+     * @return the id of the car that is leaving.
+     */
+    public long getCarId() { return carId; }
+
     /**
      * @return the time the car originally arrived at the station.
      */
@@ -44,13 +57,19 @@ public class DepartureEvent implements Event {
     public Instant getServiceTime() { return serviceTime; }
 
     /**
-     * @return the type of charge that a car desires, either "fast" or "slow".
+     * @return the id of the class of charger that the car used.
      */
-    public String getChargeType() { return chargeType; }
+    public int getChargeClass() { return chargeClass; }
 
     /**
      * The Departure Event's status determines how it is recorded in the statistics taken by every Simulator.
-     * @return the state of a car as it leaves the station; the status can be "Uncharged", "Partially Charged", or "Fully Charged" based on the calculations of the Simulator.
+     * @return the state of a car as it leaves the station; the status can be UNCHARGED, PARTIALLY_CHARGED, or FULLY_CHARGED based on the calculations of the Simulator.
+     */
+    public int getStatus() { return status; }
+
+    /**
+     * @param status a departure status.
+     * @return the name of the status, "Uncharged", "Partially Charged" or "Fully Charged".
      */
-    public String getStatus() { return status; }
+    public static String statusName(int status) { return STATUS_NAMES[status]; }
 }
@@ -0,0 +1,36 @@
+package objects.Event;
+
+import java.time.Instant;
+
+/**
+ * An implementation of an event which depicts the moment a waiting car runs out of patience. One is placed in the event
+ * queue for the car at the front of each waiting line, at the time the car will balk if it is still waiting; when the
+ * event comes, the car then at the front is given one in turn.
+ * A car that gets a charger first does not take its Patience Event back out of the queue; the event simply finds the
+ * car gone from the front of the line when its time comes, so giving a car a charger costs nothing extra.
+ */
+public class PatienceEvent implements Event{
+    private final Instant timestamp;
+    private final ArrivalEvent car;
+
+    /**
+     * Constructor for creating a Patience Event.
+     * @param deadline the time the car balks if it is still waiting for a charger.
+     * @param car the Arrival Event of the waiting car.
+     */
+    public PatienceEvent(Instant deadline, ArrivalEvent car){
+        this.timestamp = deadline;
+        this.car = car;
+    }
+
+    public Instant getTimestamp(){
+        return timestamp;
+    }
+
+    /**
+     * @return the Arrival Event of the waiting car.
+     */
+    public ArrivalEvent getCar(){
+        return car;
+    }
+}
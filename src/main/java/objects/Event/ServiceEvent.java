@@ -0,0 +1,34 @@
+package objects.Event;
+
+import java.time.Instant;
+
+/**
+ * An implementation of an event which depicts a car that had been waiting in line being placed onto a charger. It is only
+ * kept in a Station's history, stamped with the time the car left the line, so that a rollback to before that time can
+ * put the car back into the line it left.
+ */
+public class ServiceEvent implements Event{
+    private final Instant timestamp;
+    private final ArrivalEvent car;
+
+    /**
+     * Constructor for creating a Service Event.
+     * @param stamp the time the car was placed onto a charger.
+     * @param car the Arrival Event of the car.
+     */
+    public ServiceEvent(Instant stamp, ArrivalEvent car){
+        this.timestamp = stamp;
+        this.car = car;
+    }
+
+    public Instant getTimestamp(){
+        return timestamp;
+    }
+
+    /**
+     * @return the Arrival Event of the car.
+     */
+    public ArrivalEvent getCar(){
+        return car;
+    }
+}
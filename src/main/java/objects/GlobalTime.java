@@ -3,18 +3,26 @@ package objects;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.LocalDateTime;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * A class that keeps track of the Global Simulated Time. This is necessary to inform the Stations and the Monitor of the
  * exact moment the Simulation is meant to start and to end, in terms of simulated time. The Global Time object also tracks
  * the Global Minimum time, as it is an object shared by all Stations and the Monitor.
+ * A run may also cover only a segment of the whole Simulation. Its Global Time then starts and ends with the segment,
+ * but still knows the origin, where the whole Simulation starts and from which its days are counted, and the closing
+ * instant, where the whole Simulation ends and by which cars must have charged.
  */
 public class GlobalTime {
     private final Instant startInstant;
     private final Instant endInstant;
+    private final Instant originInstant;
+    private final Instant closingInstant;
     private Instant globalMinimumTime;
+    private volatile boolean cancelled;
     private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Condition advanced = lock.writeLock().newCondition();
 
     /**
      * Constructor to create a Global Time object. The simulation time will start at the exact moment of real time the
@@ -24,6 +32,8 @@ public class GlobalTime {
     public GlobalTime(int runtime){
         this.startInstant = LocalDateTime.now().toInstant(ZoneOffset.UTC);
         this.endInstant = startInstant.plusSeconds(runtime);
+        this.originInstant = startInstant;
+        this.closingInstant = endInstant;
         this.globalMinimumTime = this.startInstant;
     }
 
@@ -47,9 +57,46 @@ public class GlobalTime {
         );
         this.startInstant = customTime.toInstant(ZoneOffset.UTC); // Convert to Instant
         this.endInstant = startInstant.plusSeconds(runtime);
+        this.originInstant = startInstant;
+        this.closingInstant = endInstant;
         this.globalMinimumTime = this.startInstant;
     }
 
+    /**
+     * Constructor to create a Global Time object from an exact starting instant. Used by worker processes, which must
+     * agree with the coordinating process on the start of the Simulation rather than re-reading the clock themselves.
+     * @param start the instant the simulation starts at.
+     * @param runtime the simulated time, in seconds, the simulator is to run for.
+     */
+    public GlobalTime(Instant start, int runtime){
+        this(start, start.plusSeconds(runtime), start, start.plusSeconds(runtime));
+    }
+
+    /**
+     * Constructor to create a Global Time object for a run over part of a Simulation.
+     * @param start the instant the run starts at.
+     * @param end the instant the run ends at.
+     * @param origin the instant the whole Simulation starts at.
+     * @param closing the instant the whole Simulation ends at.
+     */
+    private GlobalTime(Instant start, Instant end, Instant origin, Instant closing){
+        this.startInstant = start;
+        this.endInstant = end;
+        this.originInstant = origin;
+        this.closingInstant = closing;
+        this.globalMinimumTime = start;
+    }
+
+    /**
+     * Creates the Global Time of a run that covers only part of this Simulation.
+     * @param from the instant the run starts at.
+     * @param to the instant the run ends at.
+     * @return a new Global Time object with the same origin and closing instant as this one.
+     */
+    public GlobalTime segment(Instant from, Instant to){
+        return new GlobalTime(from, to, originInstant, closingInstant);
+    }
+
     /**
      * @return the instant the Simulation begins at.
      */
@@ -57,6 +104,20 @@ public class GlobalTime {
         return startInstant;
     }
 
+    /**
+     * @return the instant the whole Simulation begins at, which is the start of this run unless it covers a segment.
+     */
+    public Instant getOriginInstant() {
+        return originInstant;
+    }
+
+    /**
+     * @return the instant the whole Simulation ends at, which is the end of this run unless it covers a segment.
+     */
+    public Instant getClosingInstant() {
+        return closingInstant;
+    }
+
     /**
      * @return the elapsed time, in seconds, the simulation has been running for.
      */
@@ -92,6 +153,48 @@ public class GlobalTime {
         lock.writeLock().lock();
         try{
             this.globalMinimumTime = time;
+            advanced.signalAll();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Cuts the Simulation short. Every Station and the Monitor stop at their next chance, without handling the events
+     * they have left, and any Station holding for the Global Minimum Time is woken.
+     */
+    public void cancel(){
+        lock.writeLock().lock();
+        try {
+            cancelled = true;
+            advanced.signalAll();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return true if the Simulation has been cut short.
+     */
+    public boolean isCancelled(){
+        return cancelled;
+    }
+
+    /**
+     * Function to wait for the Global Minimum Time to reach a given time. Used by Stations that have run too far ahead
+     * of the rest of the Simulation and must hold until the slower Stations catch up.
+     * @param time the Global Minimum Time being waited for.
+     * @param timeoutNanos the longest time, in real nanoseconds, to wait for.
+     * @return true if the Global Minimum Time has reached the given time.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public boolean awaitGlobalMinimumTime(Instant time, long timeoutNanos) throws InterruptedException {
+        lock.writeLock().lock();
+        try {
+            long remaining = timeoutNanos;
+            while (globalMinimumTime.isBefore(time) && remaining > 0 && !cancelled)
+                remaining = advanced.awaitNanos(remaining);
+            return !globalMinimumTime.isBefore(time);
         } finally {
             lock.writeLock().unlock();
         }
@@ -0,0 +1,102 @@
+package objects;
+
+/**
+ * Tracks the power drawn at a Station over the whole simulated time of the Simulation, split into buckets of equal
+ * length. Adding load over a span of buckets and finding the highest load over a span of buckets both take time
+ * proportional to the logarithm of the number of buckets, however long the span is, since the buckets are kept in a
+ * segment tree in which a node only records an addition that covers its whole range.
+ */
+public class LoadTimeline {
+    private final int buckets;
+    private final int leaves;
+    private final double[] max; //The highest load in a node's range, counting additions made at the node and below it
+    private final double[] added; //Load added to a node's whole range and not passed on to its children
+
+    /**
+     * Constructor to create a Load Timeline with no load in any bucket.
+     * @param buckets the number of buckets.
+     */
+    public LoadTimeline(int buckets){
+        this.buckets = Math.max(1, buckets);
+        int n = 1;
+        while (n < this.buckets)
+            n <<= 1;
+        this.leaves = n;
+        this.max = new double[2 * n];
+        this.added = new double[2 * n];
+    }
+
+    /**
+     * @return the number of buckets.
+     */
+    public int getBuckets(){
+        return buckets;
+    }
+
+    /**
+     * Adds load to every bucket in a span. Load is taken away by adding a negative amount.
+     * @param from the first bucket in the span.
+     * @param to the last bucket in the span.
+     * @param watts the load to add, in watts.
+     */
+    public void add(int from, int to, double watts){
+        if (from <= to)
+            add(1, 0, leaves - 1, from, to, watts);
+    }
+
+    /**
+     * @param from the first bucket in the span.
+     * @param to the last bucket in the span.
+     * @return the highest load in any bucket of the span, in watts, or 0 if the span is empty.
+     */
+    public double max(int from, int to){
+        return from <= to ? max(1, 0, leaves - 1, from, to) : 0;
+    }
+
+    /**
+     * @return the load in every bucket, in watts.
+     */
+    public double[] toArray(){
+        double[] load = new double[buckets];
+        collect(1, 0, leaves - 1, 0, load);
+        return load;
+    }
+
+    private void add(int node, int lo, int hi, int from, int to, double watts){
+        if (to < lo || hi < from)
+            return;
+        if (from <= lo && hi <= to) {
+            added[node] += watts;
+            max[node] += watts;
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        add(2 * node, lo, mid, from, to, watts);
+        add(2 * node + 1, mid + 1, hi, from, to, watts);
+        max[node] = added[node] + Math.max(max[2 * node], max[2 * node + 1]);
+    }
+
+    private double max(int node, int lo, int hi, int from, int to){
+        if (from <= lo && hi <= to)
+            return max[node];
+        int mid = (lo + hi) >>> 1;
+        double best = Double.NEGATIVE_INFINITY;
+        if (from <= mid)
+            best = max(2 * node, lo, mid, from, to);
+        if (to > mid)
+            best = Math.max(best, max(2 * node + 1, mid + 1, hi, from, to));
+        return added[node] + best;
+    }
+
+    private void collect(int node, int lo, int hi, double above, double[] load){
+        if (lo >= buckets)
+            return;
+        if (lo == hi) {
+            load[lo] = above + added[node];
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        collect(2 * node, lo, mid, above + added[node], load);
+        collect(2 * node + 1, mid + 1, hi, above + added[node], load);
+    }
+}
@@ -0,0 +1,127 @@
+package objects.Message;
+
+import objects.Event.ArrivalEvent;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Translates Messages to and from a compact binary form so they can travel between processes. Station names are not
+ * written out; instead every process builds the codec from the same ordered list of Stations and a name is sent as its
+ * position in that list. The Monitor is always written as -1.
+ * Every message starts with a single byte giving its type, followed by its timestamp and sender. Timing Messages then
+ * carry the sender's count of messages read, and Balk Messages their retread flag and the Arrival Event that is travelling,
+ * including the id of its car. A car's charger class, and the number of Stations it has balked from, are each written
+ * as a single byte.
+ */
+public class MessageCodec {
+    public static final byte TIMING = 1;
+    public static final byte BALK = 2;
+    public static final byte END = 3;
+    public static final short MONITOR = -1;
+    /** The largest number of bytes any single encoded message can take up. */
+    public static final int MAX_MESSAGE_SIZE = 1 + 12 + 2 + 1 + 8 + 12 + 1 + 8 + 1;
+
+    private final String[] stationNames;
+    private final HashMap<String, Short> stationIndices = new HashMap<>();
+
+    /**
+     * Constructor to create a Message Codec.
+     * @param stationNames the names of every Station in the simulation, in the order they appear in the station config.
+     */
+    public MessageCodec(List<String> stationNames){
+        this.stationNames = stationNames.toArray(new String[0]);
+        for (short i = 0; i < this.stationNames.length; i++)
+            stationIndices.put(this.stationNames[i], i);
+    }
+
+    /**
+     * @param name the name of a Station, or "Monitor".
+     * @return the position of the Station in the codec's list, or -1 for the Monitor.
+     */
+    public short indexOf(String name){
+        Short index = stationIndices.get(name);
+        if (index != null)
+            return index;
+        if (name.equals("Monitor"))
+            return MONITOR;
+        throw new IllegalArgumentException("Unknown station " + name);
+    }
+
+    /**
+     * @param index the position of a Station in the codec's list, or -1 for the Monitor.
+     * @return the name of the Station at that position.
+     */
+    public String nameOf(short index){
+        return index == MONITOR ? "Monitor" : stationNames[index];
+    }
+
+    /**
+     * Writes a message into a buffer at the buffer's current position.
+     * @param msg the message to be written.
+     * @param buf the buffer being written to, which must have at least MAX_MESSAGE_SIZE bytes remaining.
+     */
+    public void encode(Message msg, ByteBuffer buf){
+        if (msg instanceof TimingMessage)
+            buf.put(TIMING);
+        else if (msg instanceof BalkMessage)
+            buf.put(BALK);
+        else if (msg instanceof EndMessage)
+            buf.put(END);
+        else
+            throw new IllegalArgumentException("Cannot encode " + msg);
+        putInstant(buf, msg.getTimestamp());
+        buf.putShort(indexOf(msg.getSender()));
+        if (msg instanceof TimingMessage)
+            buf.putLong(((TimingMessage) msg).getReceived());
+        if (msg instanceof BalkMessage) {
+            BalkMessage b = (BalkMessage) msg;
+            ArrivalEvent a = b.getEventToLeave();
+            buf.put((byte) (b.getRetread() ? 1 : 0));
+            buf.putLong(a.getId());
+            putInstant(buf, a.getTimestamp());
+            buf.put((byte) a.getChargeClass());
+            buf.putDouble(a.getChargeDesired());
+            buf.put((byte) Math.min(a.getBalks(), Byte.MAX_VALUE));
+        }
+    }
+
+    /**
+     * Reads a single message out of a buffer, starting at the buffer's current position.
+     * @param buf the buffer being read from.
+     * @return the message that was read.
+     */
+    public Message decode(ByteBuffer buf){
+        byte type = buf.get();
+        Instant timestamp = getInstant(buf);
+        String sender = nameOf(buf.getShort());
+        switch (type) {
+            case TIMING:
+                return new TimingMessage(timestamp, sender, buf.getLong());
+            case END:
+                return new EndMessage(timestamp, sender);
+            case BALK:
+                boolean retread = buf.get() == 1;
+                long id = buf.getLong();
+                Instant arrival = getInstant(buf);
+                int chargeClass = buf.get();
+                double desired = buf.getDouble();
+                int balks = buf.get();
+                return new BalkMessage(timestamp, sender, new ArrivalEvent(id, arrival, chargeClass, desired, balks), retread);
+            default:
+                throw new IllegalArgumentException("Unknown message type " + type);
+        }
+    }
+
+    private static void putInstant(ByteBuffer buf, Instant i){
+        buf.putLong(i.getEpochSecond());
+        buf.putInt(i.getNano());
+    }
+
+    private static Instant getInstant(ByteBuffer buf){
+        long seconds = buf.getLong();
+        return Instant.ofEpochSecond(seconds, buf.getInt());
+    }
+}
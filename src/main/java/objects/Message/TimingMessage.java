@@ -6,10 +6,13 @@ import java.time.Instant;
  * An implementation of a message which contains information concerning the minimum time of either a specific Station or
  * of the Simulation globally. Used by Stations to inform the Stations to inform the Monitor of their current simulated time
  * and by the Monitor to keep a globally synchronized minimum time across all Stations.
+ * A Station's Timing Message also carries the number of messages from the Monitor that the Station has read so far, which
+ * the Monitor compares with the number it has sent to tell when every Station has truly finished.
  */
 public class TimingMessage implements Message{
     private final Instant timestamp;
     private final String sender;
+    private final long received;
 
     /**
      * Constructor for creating a Timing Message.
@@ -17,8 +20,19 @@ public class TimingMessage implements Message{
      * @param s the name of the sender of the message
      */
     public TimingMessage(Instant t, String s){
+        this(t, s, 0);
+    }
+
+    /**
+     * Constructor for creating a Timing Message from a Station.
+     * @param t the time the message was created at and the time the recipient is being informed of.
+     * @param s the name of the sender of the message
+     * @param received the number of messages from the Monitor the sender has read.
+     */
+    public TimingMessage(Instant t, String s, long received){
         this.timestamp = t;
         this.sender = s;
+        this.received = received;
     }
 
     public Instant getTimestamp() {
@@ -27,4 +41,11 @@ public class TimingMessage implements Message{
     public String getSender(){
         return this.sender;
     }
+
+    /**
+     * @return the number of messages from the Monitor the sender had read when it sent this message.
+     */
+    public long getReceived(){
+        return this.received;
+    }
 }
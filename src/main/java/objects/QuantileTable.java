@@ -0,0 +1,87 @@
+package objects;
+
+import org.apache.commons.math3.distribution.RealDistribution;
+import org.apache.commons.math3.random.RandomGenerator;
+
+/**
+ * Draws samples from a continuous distribution by inverting its cumulative distribution function, which is looked up
+ * in a table rather than solved for. The table holds the distribution's quantiles at evenly spaced probabilities, and a
+ * sample is a uniform draw mapped through the quantiles on either side of it, so drawing costs one random number and a
+ * few arithmetic operations whatever the shape of the distribution, and a whole buffer of samples is drawn in one loop.
+ * Segments of the table that end at an infinite quantile, such as the far tail of an unbounded distribution, are
+ * solved for exactly instead, which happens for no more than a segment's share of the draws.
+ * The table is checked against the distribution's own cumulative distribution function when it is built, at the middle
+ * of every segment, where interpolation is furthest from the quantiles it is built from. A table that strays further
+ * than the tolerance from the distribution anywhere is not used, and every draw is solved for exactly.
+ */
+public class QuantileTable {
+    private final RealDistribution distribution;
+    private final int segments;
+    private final double[] quantiles;
+    private final double maxError;
+    private final boolean exact;
+
+    /**
+     * Constructor to create a Quantile Table, which solves for every quantile in it, so is best built once and shared.
+     * The distribution is only asked for probabilities and quantiles, so may be shared by threads drawing at once.
+     * @param distribution the distribution to sample.
+     * @param segments the number of equal spans of probability the table is split into.
+     * @param tolerance the largest difference, in probability, allowed between the table and the distribution.
+     */
+    public QuantileTable(RealDistribution distribution, int segments, double tolerance){
+        this.distribution = distribution;
+        this.segments = Math.max(1, segments);
+        this.quantiles = new double[this.segments + 1];
+        for (int i = 0; i <= this.segments; i++)
+            quantiles[i] = distribution.inverseCumulativeProbability((double) i / this.segments);
+        double worst = 0;
+        for (int i = 0; i < this.segments; i++) {
+            if (!isFinite(i))
+                continue;
+            double p = (i + 0.5) / this.segments;
+            worst = Math.max(worst, Math.abs(distribution.cumulativeProbability((quantiles[i] + quantiles[i + 1]) / 2) - p));
+        }
+        this.maxError = worst;
+        this.exact = !(worst <= tolerance);
+    }
+
+    /**
+     * Fills a buffer with samples, each drawn from one uniform number of a random number generator, in order.
+     * @param out the buffer to fill.
+     * @param rng the random number generator.
+     */
+    public void fill(double[] out, RandomGenerator rng){
+        for (int i = 0; i < out.length; i++)
+            out[i] = quantile(rng.nextDouble());
+    }
+
+    /**
+     * @param p a probability, at least 0 and less than 1.
+     * @return the value the distribution falls below with that probability.
+     */
+    public double quantile(double p){
+        double position = p * segments;
+        int s = (int) position;
+        if (exact || s >= segments || !isFinite(s))
+            return distribution.inverseCumulativeProbability(p);
+        return quantiles[s] + (position - s) * (quantiles[s + 1] - quantiles[s]);
+    }
+
+    /**
+     * @return the largest difference, in probability, found between the table and the distribution.
+     */
+    public double getMaxError(){
+        return maxError;
+    }
+
+    /**
+     * @return true if the table strayed too far from the distribution, so every draw is solved for exactly.
+     */
+    public boolean isExact(){
+        return exact;
+    }
+
+    private boolean isFinite(int segment){
+        return Double.isFinite(quantiles[segment]) && Double.isFinite(quantiles[segment + 1]);
+    }
+}
@@ -1,107 +1,111 @@
 package objects;
+import objects.Event.DepartureEvent;
+
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Path;
 
 /**
  * A class to keep track of all the statistics a user may be interested in concerning a single Station.
- * Breaks up the number of charges by their type and if they were completed. Also tracks the number of times an event balked
+ * Breaks up the number of charges by their charger class and if they were completed. Also tracks the number of times an event balked
  * and how many times the station had to backtrack due to an event balking at a different station.
  */
 public class StationStats {
     private String stationName;
-    private int numFullFastCharges;
-    private int numFullSlowCharges;
-    private int numPartialFastCharges;
-    private int numPartialSlowCharges;
-    private int numNoFastCharges;
-    private int numNoSlowCharges;
-    private int numFaskBalks;
-    private int numSlowBalks;
+    private final String[] chargerClasses;
+    private final int[][] numCharges; //Indexed by charger class, then by the status the car left with
+    private final int[] numBalks;
+    private final double[] chargerSeconds; //Indexed by charger class
     private int numBacktracks;
+    private long numEventsProcessed;
+    private long numEventsRolledBack;
+    private long numMessagesSent;
+    private double peakLoad;
 
     private double energyGiven;
 
     /**
      * Constructor to create a Station Stats object. All stats are set to zero at the beginning of the simulation.
+     * @param chargerClasses the names of the Simulation's charger classes, in the order of their ids.
      */
-    public StationStats(){
-        this.numFullFastCharges = 0;
-        this.numFullSlowCharges = 0;
-        this.numPartialFastCharges = 0;
-        this.numPartialSlowCharges = 0;
-        this.numNoFastCharges = 0;
-        this.numNoSlowCharges = 0;
-        this.numFaskBalks = 0;
-        this.numSlowBalks = 0;
+    public StationStats(String[] chargerClasses){
+        this.chargerClasses = chargerClasses;
+        this.numCharges = new int[chargerClasses.length][3];
+        this.numBalks = new int[chargerClasses.length];
+        this.chargerSeconds = new double[chargerClasses.length];
         this.numBacktracks = 0;
+        this.numEventsProcessed = 0;
+        this.numEventsRolledBack = 0;
 
         this.energyGiven = 0;
     }
 
     /**
-     * @return the number of charges on a fast charger that received the full amount of desired energy.
+     * @return the number of charger classes in the simulation.
      */
-    public int getNumFullFastCharges() {
-        return numFullFastCharges;
+    public int getNumClasses(){
+        return chargerClasses.length;
     }
 
     /**
-     * @return the number of charges on a slow charger that received the full amount of desired energy.
+     * @param chargeClass the id of a charger class.
+     * @param status the status the cars left with, one of the statuses of a Departure Event.
+     * @return the number of charges on a charger of the class that left with the status.
      */
-    public int getNumFullSlowCharges(){
-        return numFullSlowCharges;
+    public int getNumCharges(int chargeClass, int status){
+        return numCharges[chargeClass][status];
     }
 
     /**
-     * @return the number of charges on a fast charger that received less than, but more than none of, the full amount
-     * of desired energy.
+     * @param chargeClass the id of a charger class.
+     * @return the number of events that desired a charger of the class but left before getting onto one.
      */
-    public int getNumPartialFastCharges() {
-        return numPartialFastCharges;
+    public int getNumBalks(int chargeClass){
+        return numBalks[chargeClass];
     }
 
     /**
-     * @return the number of charges on a slow charger that received less than, but more than none of, the full amount
-     * of desired energy.
+     * @param chargeClass the id of a charger class.
+     * @return the total time, in seconds, that cars which have left spent on chargers of the class.
      */
-    public int getNumPartialSlowCharges() {
-        return numPartialSlowCharges;
+    public double getChargerSeconds(int chargeClass){
+        return chargerSeconds[chargeClass];
     }
 
     /**
-     * @return the number of charges on a fast charger that received none of the desired energy.
+     * @return the number of times the station had to backtrack in order to accommodate an event which arrived from a
+     * different station.
      */
-    public int getNumNoFastCharges() {
-        return numNoFastCharges;
+    public int getNumBacktracks(){
+        return numBacktracks;
     }
 
     /**
-     * @return the number of charges on a slow charger that received none of the desired energy.
+     * @return the number of events the station processed, including events that were later undone by backtracking.
      */
-    public int getNumNoSlowCharges(){
-        return numNoSlowCharges;
+    public long getNumEventsProcessed(){
+        return numEventsProcessed;
     }
 
     /**
-     * @return the number of events that desired a fast charge but left before getting onto a charger.
+     * @return the number of processed events that were undone by backtracking and had to be processed again.
      */
-    public int getNumFaskBalks() {
-        return numFaskBalks;
+    public long getNumEventsRolledBack(){
+        return numEventsRolledBack;
     }
 
     /**
-     * @return the number of events that desired a slow charge but left before getting onto a charger.
+     * @return the number of messages the station sent to move balking cars to other stations or to recall them.
      */
-    public int getNumSlowBalks() {
-        return numSlowBalks;
+    public long getNumMessagesSent(){
+        return numMessagesSent;
     }
 
     /**
-     * @return the number of times the station had to backtrack in order to accommodate an event which arrived from a
-     * different station.
+     * @return the highest power, in watts, the station drew from the grid at any time during the simulation.
      */
-    public int getNumBacktracks(){
-        return numBacktracks;
+    public double getPeakLoad(){
+        return peakLoad;
     }
 
     /**
@@ -118,69 +122,109 @@ public class StationStats {
     }
 
     /**
-     * @param numFullFastCharges the number of charges on a fast charger that received the full amount of desired energy.
+     * Adds to the number of charges on a charger of a class that left with a status, or takes away from it when the
+     * number is negative.
+     * @param chargeClass the id of the charger class.
+     * @param status the status the cars left with, one of the statuses of a Departure Event.
+     * @param n the number of charges to add.
      */
-    public void setNumFullFastCharges(int numFullFastCharges){
-        this.numFullFastCharges = numFullFastCharges;
+    public void addCharges(int chargeClass, int status, int n){
+        numCharges[chargeClass][status] += n;
     }
 
     /**
-     * @param numFullSlowCharges the number of charges on a slow charger that received the full amount of desired energy.
+     * Adds to the number of events that desired a charger of a class but left before getting onto one, or takes away from
+     * it when the number is negative.
+     * @param chargeClass the id of the charger class.
+     * @param n the number of balks to add.
      */
-    public void setNumFullSlowCharges(int numFullSlowCharges) {
-        this.numFullSlowCharges = numFullSlowCharges;
+    public void addBalks(int chargeClass, int n){
+        numBalks[chargeClass] += n;
     }
 
     /**
-     * @param numPartialFastCharges the number of charges on a fast charger that received less than, but more than none of, the full amount
-     * of desired energy.
+     * Adds to the time cars spent on chargers of a class, or takes away from it when the time is negative.
+     * @param chargeClass the id of the charger class.
+     * @param seconds the time to add, in seconds.
      */
-    public void setNumPartialFastCharges(int numPartialFastCharges) {
-        this.numPartialFastCharges = numPartialFastCharges;
+    public void addChargerSeconds(int chargeClass, double seconds){
+        chargerSeconds[chargeClass] += seconds;
     }
 
     /**
-     * @param numPartialSlowCharges the number of charges on a slow charger that received less than, but more than none of, the full amount
-     * of desired energy.
+     * @param numBacktracks the number of times the station had to backtrack in order to accommodate an event which arrived from a
+     * different station.
      */
-    public void setNumPartialSlowCharges(int numPartialSlowCharges) {
-        this.numPartialSlowCharges = numPartialSlowCharges;
+    public void setNumBacktracks(int numBacktracks){
+        this.numBacktracks = numBacktracks;
     }
 
     /**
-     * @param numNoFastCharges the number of charges on a fast charger that received none of the desired energy.
+     * @param numEventsProcessed the number of events the station processed, including events that were later undone by
+     *                           backtracking.
      */
-    public void setNumNoFastCharges(int numNoFastCharges) {
-        this.numNoFastCharges = numNoFastCharges;
+    public void setNumEventsProcessed(long numEventsProcessed){
+        this.numEventsProcessed = numEventsProcessed;
     }
 
     /**
-     * @param numNoSlowCharges the number of charges on a slow charger that received none of the desired energy.
+     * @param numEventsRolledBack the number of processed events that were undone by backtracking and had to be processed
+     *                            again.
      */
-    public void setNumNoSlowCharges(int numNoSlowCharges) {
-        this.numNoSlowCharges = numNoSlowCharges;
+    public void setNumEventsRolledBack(long numEventsRolledBack){
+        this.numEventsRolledBack = numEventsRolledBack;
     }
 
     /**
-     * @param numFaskBalks the number of events that desired a fast charge but left before getting onto a charger.
+     * @param numMessagesSent the number of messages the station sent to move balking cars to other stations or to recall
+     *                        them.
      */
-    public void setNumFaskBalks(int numFaskBalks) {
-        this.numFaskBalks = numFaskBalks;
+    public void setNumMessagesSent(long numMessagesSent){
+        this.numMessagesSent = numMessagesSent;
     }
 
     /**
-     * @param numSlowBalks the number of events that desired a slow charge but left before getting onto a charger.
+     * @param peakLoad the highest power, in watts, the station drew from the grid at any time during the simulation.
      */
-    public void setNumSlowBalks(int numSlowBalks) {
-        this.numSlowBalks = numSlowBalks;
+    public void setPeakLoad(double peakLoad){
+        this.peakLoad = peakLoad;
     }
 
     /**
-     * @param numBacktracks the number of times the station had to backtrack in order to accommodate an event which arrived from a
-     * different station.
+     * @param energyGiven the total amount of energy the station has distributed.
      */
-    public void setNumBacktracks(int numBacktracks){
-        this.numBacktracks = numBacktracks;
+    public void setEnergyGiven(double energyGiven){
+        this.energyGiven = energyGiven;
+    }
+
+    /**
+     * Adds the statistics of another run of the same station to these, as when the station was run a segment of the
+     * simulation at a time. The peak load is the higher of the two.
+     * @param other the statistics of the other run, which must have the same charger classes.
+     */
+    public void add(StationStats other){
+        for (int c = 0; c < numCharges.length; c++) {
+            for (int status = 0; status < numCharges[c].length; status++)
+                numCharges[c][status] += other.numCharges[c][status];
+            numBalks[c] += other.numBalks[c];
+            chargerSeconds[c] += other.chargerSeconds[c];
+        }
+        numBacktracks += other.numBacktracks;
+        numEventsProcessed += other.numEventsProcessed;
+        numEventsRolledBack += other.numEventsRolledBack;
+        numMessagesSent += other.numMessagesSent;
+        peakLoad = Math.max(peakLoad, other.peakLoad);
+        energyGiven += other.energyGiven;
+    }
+
+    /**
+     * @return a copy of these statistics, which does not change as these do.
+     */
+    public StationStats copy(){
+        StationStats copy = new StationStats(chargerClasses);
+        copy.setStationName(stationName);
+        copy.add(this);
+        return copy;
     }
 
     /**
@@ -198,25 +242,38 @@ public class StationStats {
     }
 
     /**
-     * Prints the statistics captured during the runtime of a station to a file.
+     * Prints the statistics captured during the runtime of a station to a file in "out".
      */
     public void printStats(){
-        int numTotalCharges = this.numFullFastCharges + this.numFullSlowCharges + this.numPartialFastCharges + this.numPartialSlowCharges;
+        printStats(Path.of("out"));
+    }
+
+    /**
+     * Prints the statistics captured during the runtime of a station to a file named after the station.
+     * @param directory the directory the file is written to, which must exist.
+     */
+    public void printStats(Path directory){
+        int numTotalCharges = 0;
+        for (int[] charges : numCharges)
+            numTotalCharges += charges[DepartureEvent.FULLY_CHARGED] + charges[DepartureEvent.PARTIALLY_CHARGED];
         try {
-            FileWriter writer = new FileWriter("out/" + stationName + ".txt");
+            FileWriter writer = new FileWriter(directory.resolve(stationName + ".txt").toFile());
             writer.write("At this station, there were:\n");
-            writer.write(this.numFullFastCharges + " fast charges that received all desired energy\n");
-            writer.write(this.numFullSlowCharges + " slow charges that received all desired energy\n");
+            for (int c = 0; c < chargerClasses.length; c++)
+                writer.write(numCharges[c][DepartureEvent.FULLY_CHARGED] + " " + chargerClasses[c] + " charges that received all desired energy\n");
             writer.write((numTotalCharges + " total charging eventn"));
-            //writer.write(this.numPartialFastCharges + " fast charges that received some desired energy\n");
-            //writer.write(this.numPartialSlowCharges + " slow charges that received some desired energy\n");
-            //writer.write(this.numNoFastCharges + " fast charges that received no energy\n");
-            //writer.write(this.numNoSlowCharges + " slow charges that received no energy\n");
-            writer.write(this.numFaskBalks + " fast charges that got impatient\n");
-            writer.write(this.numSlowBalks + " slow charges that got impatient\n");
-            writer.write(this.numBacktracks + " times backtracked\n\n");
+            for (int c = 0; c < chargerClasses.length; c++)
+                writer.write(numCharges[c][DepartureEvent.PARTIALLY_CHARGED] + " " + chargerClasses[c] + " charges that received some desired energy\n");
+            for (int c = 0; c < chargerClasses.length; c++)
+                writer.write(numCharges[c][DepartureEvent.UNCHARGED] + " " + chargerClasses[c] + " charges that received no energy\n");
+            for (int c = 0; c < chargerClasses.length; c++)
+                writer.write(numBalks[c] + " " + chargerClasses[c] + " charges that got impatient\n");
+            writer.write(this.numBacktracks + " times backtracked\n");
+            writer.write(this.numEventsProcessed + " events processed, of which " + this.numEventsRolledBack + " were rolled back\n");
+            writer.write(this.numMessagesSent + " messages sent for balking and recalled cars\n\n");
             writer.write(this.energyGiven/1000 + " kWh distributed\n");
             writer.write((this.energyGiven/1000)/numTotalCharges + " average kWh distributed per car\n");
+            writer.write(this.peakLoad/1000 + " kW peak site load\n");
             writer.close();
         } catch (IOException e){
             System.out.println("Failed to write stats.");
@@ -0,0 +1,155 @@
+package objects;
+
+import objects.Event.ArrivalEvent;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The line of cars waiting for a charger of one kind at a Station. Cars join the line in the order they arrive and leave
+ * it from the front, either to go on a charger or to balk, so the line is kept in an array used as a ring buffer, and
+ * joining, leaving and looking at either end never allocate or search. The array doubles in size when the line fills it.
+ * Rollbacks are the only time a car leaves from anywhere else: cars that arrived after the time being rolled back to
+ * leave from the back, and cars that had left the line after that time are put back into their place in it.
+ */
+public class WaitingLine implements Iterable<ArrivalEvent> {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private ArrivalEvent[] cars = new ArrivalEvent[INITIAL_CAPACITY];
+    private int head;
+    private int size;
+
+    /**
+     * Adds a car to the back of the line.
+     * @param a the Arrival Event of the car.
+     */
+    public void add(ArrivalEvent a){
+        if (size == cars.length)
+            grow();
+        cars[(head + size++) & (cars.length - 1)] = a;
+    }
+
+    /**
+     * Puts a car back into its place in the line, behind every car that arrived before it. Rollbacks put back the cars
+     * that left the front of the line most recently first, so a car that arrived no later than the car at the front goes
+     * straight to the front without moving any other car.
+     * @param a the Arrival Event of the car.
+     */
+    public void insert(ArrivalEvent a){
+        if (size == cars.length)
+            grow();
+        int mask = cars.length - 1;
+        if (size == 0 || !a.getTimestamp().isAfter(cars[head].getTimestamp())) {
+            head = (head - 1) & mask;
+            cars[head] = a;
+            size++;
+            return;
+        }
+        int at = size;
+        while (at > 0 && cars[(head + at - 1) & mask].getTimestamp().isAfter(a.getTimestamp())) {
+            cars[(head + at) & mask] = cars[(head + at - 1) & mask];
+            at--;
+        }
+        cars[(head + at) & mask] = a;
+        size++;
+    }
+
+    /**
+     * @return the car at the front of the line, or null if the line is empty.
+     */
+    public ArrivalEvent peek(){
+        return size == 0 ? null : cars[head];
+    }
+
+    /**
+     * @return the car at the back of the line, or null if the line is empty.
+     */
+    public ArrivalEvent peekLast(){
+        return size == 0 ? null : cars[(head + size - 1) & (cars.length - 1)];
+    }
+
+    /**
+     * Takes the car at the front of the line out of it.
+     * @return the car.
+     */
+    public ArrivalEvent remove(){
+        if (size == 0)
+            throw new NoSuchElementException();
+        ArrivalEvent a = cars[head];
+        cars[head] = null;
+        head = (head + 1) & (cars.length - 1);
+        size--;
+        return a;
+    }
+
+    /**
+     * Takes the car at the back of the line out of it.
+     * @return the car.
+     */
+    public ArrivalEvent removeLast(){
+        if (size == 0)
+            throw new NoSuchElementException();
+        int tail = (head + --size) & (cars.length - 1);
+        ArrivalEvent a = cars[tail];
+        cars[tail] = null;
+        return a;
+    }
+
+    /**
+     * Takes a car out of the line wherever it stands, closing the gap behind it. A car that balks may come back to a
+     * Station it left, so the car is matched by the time it arrived as well as its id.
+     * @param a the Arrival Event of the car.
+     * @return true if the car was in the line.
+     */
+    public boolean remove(ArrivalEvent a){
+        int mask = cars.length - 1;
+        for (int i = 0; i < size; i++) {
+            ArrivalEvent waiting = cars[(head + i) & mask];
+            if (waiting.equals(a) && waiting.getTimestamp().equals(a.getTimestamp())) {
+                for (int j = i; j < size - 1; j++)
+                    cars[(head + j) & mask] = cars[(head + j + 1) & mask];
+                cars[(head + --size) & mask] = null;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of cars in the line.
+     */
+    public int size(){
+        return size;
+    }
+
+    public boolean isEmpty(){
+        return size == 0;
+    }
+
+    /**
+     * @return an iterator over the cars in the line, from the front to the back.
+     */
+    public Iterator<ArrivalEvent> iterator(){
+        return new Iterator<>() {
+            private int next = 0;
+
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            public ArrivalEvent next() {
+                if (next >= size)
+                    throw new NoSuchElementException();
+                return cars[(head + next++) & (cars.length - 1)];
+            }
+        };
+    }
+
+    private void grow(){
+        ArrivalEvent[] larger = new ArrivalEvent[cars.length * 2];
+        for (int i = 0; i < size; i++)
+            larger[i] = cars[(head + i) & (cars.length - 1)];
+        cars = larger;
+        head = 0;
+    }
+}
@@ -0,0 +1,159 @@
+package execution;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import execution.Transport.LocalMailbox;
+import objects.Event.ArrivalEvent;
+import objects.GlobalTime;
+import objects.StationStats;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that a day of cars written to an Arrival Spill reads back the same, and that an Arrival Producer, and a Station
+ * run over several days, see the same cars whether the days beyond the window are kept in memory or spilled to disk.
+ */
+class ArrivalSpillTest {
+    private static final Instant DAY_START = Instant.parse("2024-01-01T08:00:00Z");
+    private static final int DAYS = 6;
+    private static final String STATION = """
+            {
+              "name": "Spilling",
+              "arrivalRate": 1100,
+              "chargerClasses": [
+                {"name": "fast", "chargers": 4, "rate": 43000.0, "patience": 600, "share": 0.67},
+                {"name": "slow", "chargers": 8, "rate": 3000.0, "patience": 1800, "share": 0.33}
+              ],
+              "seed": 5,
+              "generationDays": 6,
+              "stationIndex": 0,
+              "writeResults": false
+            }""";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void aDayReadsBackSortedAndTheRunIsDeleted() throws IOException {
+        ArrivalSpill spill = new ArrivalSpill(dir, "Station A/1");
+        ArrivalEvent[] cars = {
+                new ArrivalEvent(5_000_000_003L, DAY_START.plusSeconds(86399), 1, 12345.678),
+                new ArrivalEvent(5_000_000_001L, DAY_START.plusSeconds(600), 0, 0.5),
+                new ArrivalEvent(5_000_000_000L, DAY_START.plusSeconds(600), 2, 80000.0),
+                new ArrivalEvent(5_000_000_002L, DAY_START, 1, Math.PI)
+        };
+        List<String> expected = describe(cars);
+        spill.write(3, DAY_START, cars.clone());
+        Path station = onlyDirectory();
+        assertTrue(Files.exists(station.resolve("3.run")));
+
+        ArrivalEvent[] read = spill.read(3);
+        assertEquals(expected, describe(read));
+        for (int i = 1; i < read.length; i++) //By arrival time, then by id
+            assertTrue(Comparator.comparing(ArrivalEvent::getTimestamp).thenComparingLong(ArrivalEvent::getId)
+                    .compare(read[i - 1], read[i]) < 0);
+        assertFalse(Files.exists(station.resolve("3.run")));
+
+        spill.write(4, DAY_START.plusSeconds(86400), cars.clone());
+        spill.close();
+        assertFalse(Files.exists(station));
+        spill.write(5, DAY_START.plusSeconds(2 * 86400), cars.clone()); //Once closed, days are no longer kept
+        assertFalse(Files.exists(station));
+    }
+
+    @Test
+    void spillingGivesTheSameDaysAsKeepingThemInMemory() throws IOException, InterruptedException {
+        GlobalTime gT = new GlobalTime(8, 0, 0, DAYS * 86400);
+        double[] shares = {0.67, 1.0};
+        ArrivalProducer inMemory = new ArrivalProducer(3, 1_000_000, 500, shares, gT, DAYS, true);
+        ArrivalProducer spilling = new ArrivalProducer(3, 1_000_000, 500, shares, gT, DAYS, true,
+                new ArrivalSpill(dir, "Spilling"), 1);
+        Path station = onlyDirectory();
+        for (int waited = 0; countRuns(station) < DAYS - 1; waited++) { //Every day but the first is beyond the window
+            assertTrue(waited < 600, "The days beyond the window were never spilled");
+            Thread.sleep(50);
+        }
+
+        for (int day = 0; day < DAYS; day++)
+            assertEquals(describe(inMemory.takeDay()), describe(spilling.takeDay()), "Day " + day);
+        assertEquals(0, countRuns(station));
+        spilling.close();
+        assertFalse(Files.exists(station));
+    }
+
+    @Test
+    void aStationRunsTheSameWithItsDaysSpilled() throws IOException {
+        StationStats inMemory = runStation(false);
+        StationStats spilled = runStation(true);
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(0, files.count()); //The Station cleared its spill once it was done
+        }
+        assertTrue(inMemory.getNumEventsProcessed() > DAYS * 1100);
+        assertEquals(inMemory.getNumEventsProcessed(), spilled.getNumEventsProcessed());
+        for (int c = 0; c < inMemory.getNumClasses(); c++) {
+            for (int status = 0; status < 3; status++)
+                assertEquals(inMemory.getNumCharges(c, status), spilled.getNumCharges(c, status), "Charges of class " + c + " with status " + status);
+            assertEquals(inMemory.getNumBalks(c), spilled.getNumBalks(c), "Balks of class " + c);
+        }
+        assertEquals(inMemory.getEnergyGiven(), spilled.getEnergyGiven(), 1e-6);
+    }
+
+    /**
+     * Runs a Station on its own over the Simulation's days.
+     * @param spill true to spill every day beyond the next to disk.
+     * @return the Station's statistics.
+     */
+    private StationStats runStation(boolean spill) throws IOException {
+        GlobalTime gT = new GlobalTime(8, 0, 0, DAYS * 86400);
+        ObjectNode config = (ObjectNode) new ObjectMapper().readTree(STATION);
+        ObjectNode spillConfig = config.putObject("arrivalSpill");
+        spillConfig.put("enabled", spill);
+        spillConfig.put("directory", dir.toString());
+        spillConfig.put("windowDays", 1);
+        StationSimulator station = new StationSimulator(config, gT, new LocalMailbox(), new LocalMailbox());
+        gT.setGlobalMinimumTime(gT.getEndInstant()); //No other Station can roll it back
+        while (station.getNextEventTime() != null && station.getNextEventTime().isBefore(gT.getEndInstant()))
+            station.processNextEvent();
+        station.finish();
+        return station.getStats();
+    }
+
+    /**
+     * @return the directory an Arrival Spill made for its Station.
+     */
+    private Path onlyDirectory() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> all = files.toList();
+            assertEquals(1, all.size());
+            return all.get(0);
+        }
+    }
+
+    private static long countRuns(Path station) throws IOException {
+        try (Stream<Path> files = Files.list(station)) {
+            return files.filter(f -> f.getFileName().toString().endsWith(".run")).count();
+        }
+    }
+
+    /**
+     * @return every field the spill keeps of each car, sorted, so that days handed out in any order can be compared.
+     */
+    private static List<String> describe(ArrivalEvent[] cars){
+        ArrayList<String> described = new ArrayList<>();
+        for (ArrivalEvent car : cars)
+            described.add(car.getTimestamp() + " " + car.getId() + " " + car.getChargeClass() + " " + car.getChargeDesired());
+        described.sort(null);
+        return described;
+    }
+}
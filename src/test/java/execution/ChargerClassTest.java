@@ -0,0 +1,95 @@
+package execution;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks how a Station's override of its charger classes is merged onto the default config's classes.
+ */
+class ChargerClassTest {
+    private static final String DEFAULTS = """
+            "defaultConfig": {
+              "arrivalRate": 300,
+              "chargerClasses": [
+                {"name": "fast", "chargers": 40, "rate": 43000.0, "patience": 600, "share": 0.67},
+                {"name": "slow", "chargers": 80, "rate": 3000.0, "patience": 1800, "share": 0.33}
+              ]
+            }""";
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void aPartialOverrideKeepsTheRestOfTheDefaultClass() throws IOException {
+        ChargerClass[] classes = station("{\"name\": \"A\", \"chargerClasses\": [{\"name\": \"fast\", \"chargers\": 10}]}");
+        assertEquals(10, classes[0].getChargers());
+        assertEquals(43000.0, classes[0].getRate());
+        assertEquals(600, classes[0].getPatience());
+        assertEquals(0.67, classes[0].getShare());
+        assertEquals(0, classes[1].getChargers(), "A class the Station leaves out has no chargers there");
+    }
+
+    @Test
+    void olderKeysOverrideTheDefaultClassesOfTheirName() throws IOException {
+        ChargerClass[] classes = station("{\"name\": \"A\", \"fastChargers\": 5, \"slowPatience\": 900}");
+        assertEquals(5, classes[0].getChargers());
+        assertEquals(43000.0, classes[0].getRate());
+        assertEquals(80, classes[1].getChargers());
+        assertEquals(900, classes[1].getPatience());
+    }
+
+    @Test
+    void aStationWithoutAnOverrideKeepsTheDefaultClasses() throws IOException {
+        ChargerClass[] classes = station("{\"name\": \"A\"}");
+        assertEquals(40, classes[0].getChargers());
+        assertEquals(80, classes[1].getChargers());
+    }
+
+    @Test
+    void olderKeysAlongWithChargerClassesAreRejected() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> station("{\"name\": \"A\", \"slowChargers\": 5, \"chargerClasses\": [{\"name\": \"fast\", \"chargers\": 10}]}"));
+        assertTrue(e.getMessage().contains("A") && e.getMessage().contains("slowChargers"), e.getMessage());
+    }
+
+    @Test
+    void olderKeysForAClassTheDefaultsLackAreRejected() {
+        String stations = "{\"defaultConfig\": {\"chargerClasses\": [{\"name\": \"DC50\", \"chargers\": 4, \"rate\": 50000.0}]},"
+                + " \"stations\": [{\"name\": \"A\", \"fastChargers\": 5}]}";
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> Main.readStationConfigs(mapper.readTree(stations)));
+        assertTrue(e.getMessage().contains("fastChargers") && e.getMessage().contains("\"fast\""), e.getMessage());
+    }
+
+    @Test
+    void aNewClassMissingAFieldIsRejected() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> station("{\"name\": \"A\", \"chargerClasses\": [{\"name\": \"DC350\", \"chargers\": 2}]}"));
+        assertTrue(e.getMessage().contains("DC350") && e.getMessage().contains("rate"), e.getMessage());
+    }
+
+    @Test
+    void olderConfigsAreStillRead() throws IOException {
+        JsonNode stations = mapper.readTree("""
+                {"defaultConfig": {"fastChargers": 4, "slowChargers": 8, "fastChargingRate": 43000.0, "slowChargingRate": 3000.0},
+                 "stations": [{"name": "A", "slowChargers": 2}]}""");
+        ChargerClass[] classes = ChargerClass.forStation(Main.readStationConfigs(stations).get(0));
+        assertEquals(4, classes[0].getChargers());
+        assertEquals(2, classes[1].getChargers());
+        assertEquals(1800, classes[1].getPatience());
+    }
+
+    /**
+     * @param override a Station's own config.
+     * @return the Station's charger classes once its override is merged with the default config.
+     */
+    private ChargerClass[] station(String override) throws IOException {
+        ArrayList<ObjectNode> configs = Main.readStationConfigs(mapper.readTree("{" + DEFAULTS + ", \"stations\": [" + override + "]}"));
+        return ChargerClass.forStation(configs.get(0));
+    }
+}
@@ -0,0 +1,81 @@
+package execution;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import objects.GlobalTime;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs a small Simulation with the socket transport, which launches real worker processes, and checks that it simulates
+ * the same Stations as the local transport, and that workers that do not start fail the run rather than hang it.
+ */
+class DistributedRunTest {
+    private static final String STATIONS = """
+            {
+              "defaultConfig": {
+                "arrivalRate": 300,
+                "chargerClasses": [
+                  {"name": "fast", "chargers": 60, "rate": 43000.0, "patience": 600, "share": 0.67},
+                  {"name": "slow", "chargers": 120, "rate": 3000.0, "patience": 1800, "share": 0.33}
+                ],
+                "seed": 7,
+                "generationDays": 1
+              },
+              "stations": [{"name": "North"}, {"name": "South"}, {"name": "East"}]
+            }""";
+
+    @TempDir
+    Path output;
+
+    /**
+     * Every Station has chargers to spare, so no car balks, and each Station's results depend on its seed alone.
+     */
+    @Test
+    void socketTransportMatchesLocalTransport() throws IOException {
+        assertTimeoutPreemptively(Duration.ofMinutes(2), () -> {
+            assertTrue(run("local", 30, output.resolve("local")));
+            assertTrue(run("socket", 30, output.resolve("socket")));
+        });
+        for (String station : List.of("North", "South", "East"))
+            assertEquals(charges(output.resolve("local").resolve(station + ".txt")),
+                    charges(output.resolve("socket").resolve(station + ".txt")), station);
+    }
+
+    @Test
+    void workersThatDoNotConnectInTimeFailTheRun() {
+        boolean finished = assertTimeoutPreemptively(Duration.ofSeconds(30), () -> run("socket", 0, output));
+        assertFalse(finished);
+    }
+
+    private static boolean run(String transport, int workerStartSeconds, Path directory) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode root = mapper.createObjectNode();
+        root.put("runtime", 2 * 86400);
+        root.put("transport", transport);
+        root.put("workerProcesses", 2);
+        root.put("workerStartSeconds", workerStartSeconds);
+        JsonNode stations = mapper.readTree(STATIONS);
+        ArrayList<ObjectNode> configs = Main.readStationConfigs(stations);
+        return Main.run(root, new GlobalTime(8, 0, 0, 2 * 86400), configs, directory, Executors.newCachedThreadPool());
+    }
+
+    /**
+     * @param stats a Station's statistics file.
+     * @return the lines counting its cars and the energy it gave, which leave out how many events it rolled back.
+     */
+    private static List<String> charges(Path stats) throws IOException {
+        return Files.readAllLines(stats).stream().filter(line -> line.contains("charges") || line.contains("kWh")).toList();
+    }
+}
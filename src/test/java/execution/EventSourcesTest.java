@@ -0,0 +1,93 @@
+package execution;
+
+import objects.Event.ArrivalEvent;
+import objects.Event.DepartureEvent;
+import objects.Event.Event;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that rewinding the cursor over the sampled cars, along with putting back the cars from other Stations, hands
+ * out the undone arrivals again in the order they were first handed out, across the days the cars were sampled in.
+ */
+class EventSourcesTest {
+    private static final Instant START = Instant.parse("2024-01-01T08:00:00Z");
+    private static final int CARS_PER_DAY = 100; //More than the sources first make room for, so adding a day moves the cars kept
+
+    @Test
+    void rewindingAcrossDaysHandsOutTheSameArrivalsAgain() {
+        EventSources sources = new EventSources();
+        sources.addDay(day(0));
+        List<Event> first = new ArrayList<>();
+        ArrivalEvent fromElsewhere = new ArrivalEvent(9000, START.plusSeconds(86400 - 300), 0, 1000.0).arrivingAt(START.plusSeconds(86400 - 300));
+        sources.add(fromElsewhere);
+        sources.add(new DepartureEvent(START.plusSeconds(86400 - 100), 1, START, START, 0, DepartureEvent.FULLY_CHARGED));
+        takeUntil(sources, START.plusSeconds(86400), first);
+        sources.addDay(day(1));
+        takeUntil(sources, START.plusSeconds(86400 + 43200), first);
+
+        Instant rewind = START.plusSeconds(86400 - 600); //Before the last cars of the first day and the car from elsewhere
+        sources.rewind(rewind);
+        List<Event> undone = new ArrayList<>();
+        for (Event e : first)
+            if (e instanceof ArrivalEvent && e.getTimestamp().isAfter(rewind)) {
+                undone.add(e);
+                sources.requeue((ArrivalEvent) e);
+            }
+        assertTrue(undone.contains(fromElsewhere));
+        assertTrue(undone.stream().anyMatch(e -> e.getTimestamp().isBefore(START.plusSeconds(86400))));
+        assertTrue(undone.stream().anyMatch(e -> !e.getTimestamp().isBefore(START.plusSeconds(86400))));
+
+        List<Event> again = new ArrayList<>();
+        takeUntil(sources, START.plusSeconds(86400 + 43200), again);
+        assertEquals(undone, again);
+    }
+
+    @Test
+    void carsAreKeptForRewindsUntilReleased() {
+        EventSources sources = new EventSources();
+        sources.addDay(day(0));
+        takeUntil(sources, START.plusSeconds(86400), new ArrayList<>());
+        Instant committed = START.plusSeconds(43200);
+        sources.release(committed);
+        sources.addDay(day(1)); //Lets go of the cars before the committed time
+        takeUntil(sources, START.plusSeconds(2 * 86400), new ArrayList<>());
+
+        sources.rewind(START); //No rollback reaches back past the committed time, so the cursor stops there
+        List<Event> again = new ArrayList<>();
+        takeUntil(sources, START.plusSeconds(2 * 86400), again);
+        assertFalse(again.isEmpty());
+        assertFalse(again.get(0).getTimestamp().isBefore(committed));
+        assertEquals(2 * CARS_PER_DAY, again.size() + countBefore(day(0), committed));
+    }
+
+    /**
+     * @return the cars of a day, one every fourteen minutes or so, in no particular order.
+     */
+    private static ArrivalEvent[] day(int day){
+        ArrivalEvent[] cars = new ArrivalEvent[CARS_PER_DAY];
+        for (int i = 0; i < CARS_PER_DAY; i++) {
+            int car = (i * 37) % CARS_PER_DAY;
+            cars[i] = new ArrivalEvent(day * CARS_PER_DAY + car, START.plusSeconds(day * 86400L + car * 864L), car % 2, 1000.0);
+        }
+        return cars;
+    }
+
+    private static int countBefore(ArrivalEvent[] cars, Instant time){
+        int count = 0;
+        for (ArrivalEvent car : cars)
+            if (car.getTimestamp().isBefore(time))
+                count++;
+        return count;
+    }
+
+    private static void takeUntil(EventSources sources, Instant time, List<Event> taken){
+        while (!sources.isEmpty() && sources.peek().getTimestamp().isBefore(time))
+            taken.add(sources.remove());
+    }
+}
@@ -0,0 +1,168 @@
+package execution.History;
+
+import objects.Event.*;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Puts the same events through a History Log on the heap and one off the heap, and checks that both give back the same
+ * events in the same order. The logs are run over several chunks of records, so that pruning frees whole chunks and
+ * events added out of order are put back behind events in an earlier chunk.
+ */
+class HistoryLogTest {
+    private static final Instant START = Instant.parse("2024-01-01T08:00:00Z");
+    private static final int CHUNK = OffHeapHistoryLog.CHUNK_RECORDS;
+
+    @Test
+    void bothLogsGiveBackTheSameEvents() {
+        HeapHistoryLog heap = new HeapHistoryLog();
+        OffHeapHistoryLog offHeap = new OffHeapHistoryLog();
+        try {
+            Random random = new Random(7);
+            ArrayList<Instant> times = new ArrayList<>();
+            int late = 0;
+            for (int i = 0; i < 5 * CHUNK; i++) {
+                Instant time = START.plusSeconds(10L * i);
+                if (i % 97 == 96) //Earlier than the last few events, and apart from every other time
+                    time = START.plusSeconds(10L * (i - 1 - random.nextInt(20))).plusNanos(++late);
+                Event e = event(i, time, random);
+                heap.add(e);
+                offHeap.add(e);
+                times.add(time);
+                if (i % 1000 == 999) { //Rolls back a little, then carries on from there
+                    Instant rewind = times.get(i - random.nextInt(50));
+                    assertEquals(drain(heap, rewind), drain(offHeap, rewind));
+                }
+                if (i % 1500 == 1499) {
+                    Instant before = START.plusSeconds(10L * (i - 3000));
+                    heap.prune(before);
+                    offHeap.prune(before);
+                }
+                if (i % 2500 == 2499) {
+                    Instant from = START.plusSeconds(10L * (i - 200));
+                    assertEquals(sorted(heap.removeIf(from, e2 -> carOf(e2) % 3 == 0)),
+                            sorted(offHeap.removeIf(from, e2 -> carOf(e2) % 3 == 0)));
+                }
+            }
+            List<String> left = drain(heap, Instant.MIN);
+            assertFalse(left.isEmpty());
+            assertEquals(left, drain(offHeap, Instant.MIN));
+        } finally {
+            offHeap.close();
+        }
+        offHeap.close(); //Closing it twice does nothing
+    }
+
+    @Test
+    void anEventAddedOutOfOrderGoesBehindTheLaterEventsInAnEarlierChunk() {
+        HeapHistoryLog heap = new HeapHistoryLog();
+        OffHeapHistoryLog offHeap = new OffHeapHistoryLog();
+        try {
+            Random random = new Random(8);
+            for (int i = 0; i < CHUNK + 10; i++) {
+                Event e = event(i, START.plusSeconds(10L * i), random);
+                heap.add(e);
+                offHeap.add(e);
+            }
+            Event early = event(-1, START.plusSeconds(10L * (CHUNK - 20) + 5), random); //Behind the last events of the first chunk
+            heap.add(early);
+            offHeap.add(early);
+            List<String> expected = drain(heap, START.plusSeconds(10L * (CHUNK - 30)));
+            assertEquals(expected, drain(offHeap, START.plusSeconds(10L * (CHUNK - 30))));
+            assertEquals(29, expected.indexOf(describe(early))); //Behind the 29 events after it, over two chunks
+        } finally {
+            offHeap.close();
+        }
+    }
+
+    @Test
+    void pruningAcrossChunksKeepsOnlyTheLaterEvents() {
+        OffHeapHistoryLog offHeap = new OffHeapHistoryLog();
+        try {
+            Random random = new Random(9);
+            int total = 3 * CHUNK + 10;
+            for (int i = 0; i < total; i++)
+                offHeap.add(event(i, START.plusSeconds(10L * i), random));
+            int kept = CHUNK + 5; //The first chunk is freed and the second is cut part way through
+            offHeap.prune(START.plusSeconds(10L * kept));
+            for (int i = total; i < total + CHUNK; i++) //Takes up the chunk that was freed
+                offHeap.add(event(i, START.plusSeconds(10L * i), random));
+            int count = 0;
+            Event last = null;
+            for (Event e = offHeap.pollAfter(Instant.MIN); e != null; e = offHeap.pollAfter(Instant.MIN)) {
+                last = e;
+                count++;
+            }
+            assertEquals(total + CHUNK - kept, count);
+            assertEquals(START.plusSeconds(10L * kept), last.getTimestamp());
+        } finally {
+            offHeap.close();
+        }
+    }
+
+    /**
+     * @return an arrival, departure, Service Event or Balk Event of a car, picked by its number.
+     */
+    private static Event event(long car, Instant time, Random random){
+        ArrivalEvent a = new ArrivalEvent(car, time.minusSeconds(random.nextInt(3600)), (int) (car & 1),
+                random.nextDouble() * 80000, random.nextInt(3));
+        switch (Math.floorMod(car, 4)) {
+            case 0:
+                return new ArrivalEvent(car, time, a.getChargeClass(), a.getChargeDesired(), a.getBalks());
+            case 1:
+                return new DepartureEvent(time, car, a.getTimestamp(), time.minusSeconds(random.nextInt(600)),
+                        a.getChargeClass(), random.nextInt(3));
+            case 2:
+                return new ServiceEvent(time, a);
+            default:
+                return new BalkEvent(time, a);
+        }
+    }
+
+    private static long carOf(Event e){
+        if (e instanceof DepartureEvent)
+            return ((DepartureEvent) e).getCarId();
+        if (e instanceof ServiceEvent)
+            return ((ServiceEvent) e).getCar().getId();
+        if (e instanceof BalkEvent)
+            return ((BalkEvent) e).getEventToLeave().getId();
+        return ((ArrivalEvent) e).getId();
+    }
+
+    /**
+     * @return every field either log keeps of the event, so that events read back off the heap can be compared.
+     */
+    private static String describe(Event e){
+        String kind = e.getClass().getSimpleName() + " " + e.getTimestamp() + " ";
+        if (e instanceof DepartureEvent) {
+            DepartureEvent d = (DepartureEvent) e;
+            return kind + d.getCarId() + " " + d.getArrivalTime() + " " + d.getServiceTime() + " " + d.getChargeClass()
+                    + " " + d.getStatus();
+        }
+        ArrivalEvent a = e instanceof ServiceEvent ? ((ServiceEvent) e).getCar()
+                : e instanceof BalkEvent ? ((BalkEvent) e).getEventToLeave() : (ArrivalEvent) e;
+        return kind + a.getId() + " " + a.getTimestamp() + " " + a.getChargeClass() + " " + a.getChargeDesired() + " "
+                + a.getBalks();
+    }
+
+    private static List<String> drain(HistoryLog log, Instant rewind){
+        ArrayList<String> taken = new ArrayList<>();
+        for (Event e = log.pollAfter(rewind); e != null; e = log.pollAfter(rewind))
+            taken.add(describe(e));
+        return taken;
+    }
+
+    private static List<String> sorted(List<Event> events){
+        ArrayList<String> described = new ArrayList<>();
+        for (Event e : events)
+            described.add(describe(e));
+        described.sort(null);
+        return described;
+    }
+}
@@ -0,0 +1,92 @@
+package execution;
+
+import execution.Transport.LocalMailbox;
+import execution.Transport.Mailbox;
+import objects.Event.ArrivalEvent;
+import objects.GlobalTime;
+import objects.Message.BalkMessage;
+import objects.Message.EndMessage;
+import objects.Message.Message;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Drives a Monitor through its Mailboxes, standing in for the Stations.
+ */
+class MonitorTest {
+    private static final List<String> STATIONS = List.of("A", "B", "C");
+    private final GlobalTime gT = new GlobalTime(8, 0, 0, 86400);
+    private final Mailbox toMonitor = new LocalMailbox();
+    private final ConcurrentHashMap<String, Mailbox> toStations = new ConcurrentHashMap<>();
+    private Thread monitor;
+
+    @BeforeEach
+    void startMonitor() {
+        for (String station : STATIONS)
+            toStations.put(station, new LocalMailbox());
+        monitor = new Thread(() -> new Monitor(gT, toMonitor, toStations), "Monitor");
+        monitor.start();
+    }
+
+    @AfterEach
+    void stopMonitor() throws InterruptedException {
+        gT.cancel();
+        toMonitor.put(new EndMessage(gT.getEndInstant(), "Test"));
+        monitor.join(10000);
+    }
+
+    /**
+     * A car balks from one Station, then from the Station it was sent to. When the first Station rolls back and recalls
+     * the car, the recall goes to the Station the first balk sent it to, not the one it went to after that.
+     */
+    @Test
+    void recallFollowsTheLegItUndoes() throws InterruptedException {
+        ArrivalEvent car = new ArrivalEvent(42, gT.getStartInstant(), 0, 20000.0);
+        Instant firstBalk = gT.getStartInstant().plusSeconds(600);
+        Instant secondBalk = firstBalk.plusSeconds(600);
+
+        toMonitor.put(new BalkMessage(firstBalk, "A", car.arrivingAt(firstBalk), false));
+        String second = receiver(firstBalk);
+        assertNotEquals("A", second);
+
+        toMonitor.put(new BalkMessage(secondBalk, second, car.arrivingAt(firstBalk).arrivingAt(secondBalk), false));
+        String third = receiver(secondBalk);
+        assertNotEquals(second, third);
+
+        toMonitor.put(new BalkMessage(firstBalk, "A", car.arrivingAt(firstBalk), true));
+        BalkMessage recall = (BalkMessage) toStations.get(second).poll(TimeUnit.SECONDS.toNanos(5));
+        assertNotNull(recall, "The recall did not reach the Station the first balk sent the car to");
+        assertTrue(recall.getRetread());
+        assertEquals(firstBalk, recall.getEventToLeave().getTimestamp());
+        for (String station : STATIONS)
+            assertTrue(toStations.get(station).isEmpty(), station + " was sent more than the recall");
+    }
+
+    /**
+     * @param balkTime the time the car balked.
+     * @return the Station the Monitor sent the balking car to.
+     */
+    private String receiver(Instant balkTime) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            for (String station : STATIONS) {
+                if (!toStations.get(station).isEmpty()) {
+                    Message msg = toStations.get(station).take();
+                    assertEquals(balkTime, ((BalkMessage) msg).getEventToLeave().getTimestamp());
+                    return station;
+                }
+            }
+            Thread.sleep(1);
+        }
+        fail("The Monitor did not route the balking car");
+        return null;
+    }
+}
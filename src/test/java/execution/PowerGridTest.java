@@ -0,0 +1,68 @@
+package execution;
+
+import objects.GlobalTime;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks how a Station's Power Grid books charging sessions under a site power cap, and that taking a session back out,
+ * as a rollback does, leaves the grid as if the session never happened.
+ */
+class PowerGridTest {
+    private static final double CAP = 100000;
+    private final GlobalTime gT = new GlobalTime(8, 0, 0, 86400);
+    private final Instant start = gT.getStartInstant();
+
+    @Test
+    void sessionsAreBookedFirstComeFirstServedUpToTheCap() {
+        PowerGrid grid = new PowerGrid(CAP, gT, 900);
+        assertEquals(43000, grid.allocate(1, start, start.plusSeconds(3600), 43000));
+        assertEquals(43000, grid.allocate(2, start.plusSeconds(600), start.plusSeconds(3600), 43000));
+        assertEquals(14000, grid.allocate(3, start.plusSeconds(900), start.plusSeconds(2700), 43000), "Only what is left of the cap");
+        assertEquals(0, grid.allocate(4, start.plusSeconds(1800), start.plusSeconds(2700), 43000), "Nothing is left of the cap");
+        assertEquals(43000, grid.allocate(5, start.plusSeconds(3600), start.plusSeconds(5400), 43000), "The first sessions have ended");
+        assertEquals(CAP, grid.getPeakLoad(), 1e-6);
+        assertEquals(43000.0 + 43000 * 3000 / 3600.0 + 14000.0 * 1800 / 3600 + 43000.0 * 1800 / 3600,
+                grid.getEnergyStartedBetween(start, Instant.MAX), 1e-6);
+    }
+
+    @Test
+    void releasingASessionFreesItsPowerForTheCarsAfterIt() {
+        PowerGrid grid = new PowerGrid(CAP, gT, 900);
+        grid.allocate(1, start, start.plusSeconds(3600), 43000);
+        grid.allocate(2, start.plusSeconds(600), start.plusSeconds(3600), 43000);
+        assertEquals(14000, grid.allocate(3, start.plusSeconds(900), start.plusSeconds(2700), 43000));
+
+        assertEquals(43000.0 * 3000 / 3600, grid.release(2), 1e-6, "The energy the undone session delivered");
+        assertEquals(0, grid.getWatts(2));
+        assertEquals(0, grid.release(2), "A session is only released once");
+        assertEquals(43000, grid.allocate(3, start.plusSeconds(900), start.plusSeconds(2700), 43000), "Booked again after the rollback");
+        assertEquals(86000, grid.getPeakLoad(), 1e-6);
+    }
+
+    @Test
+    void rollingBackEverySessionLeavesNoLoad() {
+        PowerGrid grid = new PowerGrid(CAP, gT, 900);
+        for (long car = 0; car < 20; car++)
+            grid.allocate(car, start.plusSeconds(car * 700), start.plusSeconds(car * 700 + 5400), 22000);
+        for (long car = 19; car >= 0; car--)
+            grid.release(car);
+        TreeMap<Long, Double> curve = new TreeMap<>();
+        grid.addLoadTo(curve, start, Instant.MAX);
+        for (double watts : curve.values())
+            assertEquals(0, watts, 1e-6);
+        assertEquals(0, grid.getPeakLoad(), 1e-6);
+        assertEquals(0, grid.getEnergyStartedBetween(start, Instant.MAX), 1e-6);
+    }
+
+    @Test
+    void withoutACapEveryCarGetsItsChargersRate() {
+        PowerGrid grid = new PowerGrid(0, gT, 900);
+        for (long car = 0; car < 10; car++)
+            assertEquals(350000, grid.allocate(car, start, start.plusSeconds(600), 350000));
+    }
+}
@@ -0,0 +1,89 @@
+package execution;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that a run is stored under the same key however its configs were written, and that the store evicts the
+ * entries used longest ago once it is over its limit.
+ */
+class ResultCacheTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String MASTER = """
+            {"runtime": 86400, "resultCache": {"enabled": true}, "defaultConfig": {"arrivalRate": 2520, "maxBalks": 3}}""";
+    private static final String STATION = """
+            {"name": "A", "seed": 1, "arrivalRate": 2520, "outputDirectory": "out",
+             "chargerClasses": [{"name": "fast", "chargers": 40, "rate": 43000.0}]}""";
+    private static final List<String> STATIONS = List.of("A");
+    private static final Instant START = Instant.parse("2024-01-01T08:00:00Z");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void reorderedKeysGiveTheSameKey() throws IOException {
+        String key = ResultCache.keyOf(MAPPER.readTree(MASTER), List.of(station(STATION)));
+        assertNotNull(key);
+        String reordered = ResultCache.keyOf(MAPPER.readTree("""
+                {"defaultConfig": {"maxBalks": 3, "arrivalRate": 2520}, "runtime": 86400}"""), List.of(station("""
+                {"chargerClasses": [{"rate": 43000.0, "chargers": 40, "name": "fast"}], "arrivalRate": 2520,
+                 "outputDirectory": "elsewhere", "seed": 1, "name": "A"}""")));
+        assertEquals(key, reordered); //Where the results go, and the cache's own settings, do not count either
+
+        ObjectNode changed = station(STATION);
+        changed.put("arrivalRate", 2521);
+        assertNotEquals(key, ResultCache.keyOf(MAPPER.readTree(MASTER), List.of(changed)));
+        ObjectNode unseeded = station(STATION);
+        unseeded.remove("seed");
+        assertNull(ResultCache.keyOf(MAPPER.readTree(MASTER), List.of(unseeded)));
+    }
+
+    @Test
+    void theEntryUsedLongestAgoIsEvicted() throws IOException {
+        Path store = dir.resolve("cache");
+        ResultCache cache = new ResultCache(store, 35_000); //Room for three entries of a little over 10,000 bytes
+        long now = System.currentTimeMillis();
+        String[] keys = {"a", "b", "c"};
+        for (int i = 0; i < keys.length; i++) {
+            cache.store(keys[i], STATIONS, START, output(keys[i]));
+            Files.setLastModifiedTime(store.resolve(keys[i]), FileTime.fromMillis(now - (3 - i) * 3_600_000L));
+        }
+        Path restored = dir.resolve("restored");
+        assertTrue(cache.restore("a", STATIONS, START.plusSeconds(86400), restored)); //Now "b" was used longest ago
+        assertEquals(List.of("time,load", (START.getEpochSecond() + 86400 + 900) + ",42"),
+                Files.readAllLines(restored.resolve("load").resolve("A.csv")));
+
+        cache.store("d", STATIONS, START, output("d"));
+        assertFalse(Files.exists(store.resolve("b")));
+        for (String key : List.of("a", "c", "d"))
+            assertTrue(Files.isDirectory(store.resolve(key)), key);
+        assertFalse(cache.restore("b", STATIONS, START, dir.resolve("missing")));
+    }
+
+    private static ObjectNode station(String json) throws IOException {
+        return (ObjectNode) MAPPER.readTree(json);
+    }
+
+    /**
+     * @return an output directory holding the results of a run with one Station, as the Simulation writes them.
+     */
+    private Path output(String run) throws IOException {
+        Path output = dir.resolve("out-" + run);
+        Files.createDirectories(output.resolve("load"));
+        Files.writeString(output.resolve("A.txt"), run.repeat(10_000));
+        Files.write(output.resolve("load").resolve("A.csv"), List.of("time,load", (START.getEpochSecond() + 900) + ",42"));
+        Files.writeString(output.resolve("simulatorReport.txt"), "Run " + run);
+        return output;
+    }
+}
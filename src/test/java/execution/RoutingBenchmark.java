@@ -0,0 +1,148 @@
+package execution;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import objects.GlobalTime;
+import objects.StationStats;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the ways the Monitor can route balking cars by running the Simulation of the config files with each
+ * {@link RoutingPolicy}. Each operation is one whole run, timed from a warm JVM. Alongside the time, it counts the
+ * events the Stations committed, which are the events they processed less the ones rollbacks undid, the rollbacks, the
+ * events rolled back, the messages sent for balking and recalled cars, and the visits to a Station and the balks among
+ * them, so the rollbacks, events rolled back and messages per committed event, and the share of visits that ended in a
+ * balk, can be worked out from the same runs.
+ * Every run generates the same cars: Stations without a seed are given the same one in every run. The Stations write no
+ * results of their own.
+ * Run it with {@code java -cp <test classpath> execution.RoutingBenchmark}, followed by any JMH options.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class RoutingBenchmark {
+    private static final long SEED = 1;
+
+    @Param({"random", "leastLoaded"})
+    private String policy;
+
+    private JsonNode rootNode;
+    private GlobalTime gT;
+    private List<ObjectNode> configs;
+
+    /**
+     * What the runs of an iteration did, reported by JMH next to their time.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counts {
+        public long committedEvents;
+        public long rollbacks;
+        public long eventsRolledBack;
+        public long messages;
+        public long visits; //Cars that charged or balked at a Station, once for every Station they went to
+        public long balks;
+
+        @Setup(Level.Iteration)
+        public void clear(){
+            committedEvents = 0;
+            rollbacks = 0;
+            eventsRolledBack = 0;
+            messages = 0;
+            visits = 0;
+            balks = 0;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder().parent(new CommandLineOptions(args)).include(RoutingBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    /**
+     * Reads the same config files as the Main class, and routes by the policy being measured.
+     * @throws IOException if a config file cannot be read.
+     */
+    @Setup
+    public void setup() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        InputStream inputStream = RoutingBenchmark.class.getClassLoader().getResourceAsStream("config/config.json");
+        if(inputStream == null){
+            throw new IOException("Config file not found in resources");
+        }
+        ObjectNode root = (ObjectNode) mapper.readTree(inputStream);
+        root.put("balkRouting", policy);
+        rootNode = root;
+        gT = new GlobalTime(rootNode.get("startTimeHr").asInt(), rootNode.get("startTimeMin").asInt(), rootNode.get("startTimeSec").asInt(), rootNode.get("runtime").asInt());
+        inputStream = RoutingBenchmark.class.getClassLoader().getResourceAsStream("config/" + rootNode.get("configFile").asText());
+        if(inputStream == null){
+            throw new IOException("Station config file not found in resources");
+        }
+        configs = new ArrayList<>();
+        for (ObjectNode fullConfig : Main.readStationConfigs(mapper.readTree(inputStream))) {
+            if (!fullConfig.has("seed"))
+                fullConfig.put("seed", SEED);
+            fullConfig.put("writeResults", false);
+            fullConfig.put("trace", false);
+            configs.add(fullConfig);
+        }
+    }
+
+    /**
+     * Runs the Simulation once, counting what its Stations did.
+     * @param counts the counts of the iteration.
+     * @return the number of events committed.
+     */
+    @Benchmark
+    public long run(Counts counts){
+        ArrayList<ObjectNode> copies = new ArrayList<>();
+        for (ObjectNode config : configs)
+            copies.add(config.deepCopy());
+        Simulation simulation = new Simulation(rootNode, gT.segment(gT.getStartInstant(), gT.getEndInstant()), copies);
+        if (!simulation.run(Executors.newCachedThreadPool()))
+            throw new IllegalStateException("A run did not finish");
+        long committed = 0;
+        for (StationSimulator station : simulation.getStations()) {
+            StationStats s = station.getStats();
+            committed += s.getNumEventsProcessed() - s.getNumEventsRolledBack();
+            counts.rollbacks += s.getNumBacktracks();
+            counts.eventsRolledBack += s.getNumEventsRolledBack();
+            counts.messages += s.getNumMessagesSent();
+            for (int c = 0; c < s.getNumClasses(); c++) {
+                counts.balks += s.getNumBalks(c);
+                counts.visits += s.getNumBalks(c);
+                for (int status = 0; status < 3; status++)
+                    counts.visits += s.getNumCharges(c, status);
+            }
+        }
+        counts.committedEvents += committed;
+        return committed;
+    }
+}
@@ -0,0 +1,56 @@
+package execution;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that each leg of a car's journey is remembered, and forgotten, on its own.
+ */
+class RoutingTableTest {
+    private static final Instant FIRST_BALK = Instant.parse("2024-01-01T08:10:00Z");
+    private static final Instant SECOND_BALK = Instant.parse("2024-01-01T08:20:00Z");
+
+    @Test
+    void everyLegOfACarThatBalkedTwiceCanBeRecalled() {
+        RoutingTable table = new RoutingTable();
+        table.put(42, 1, FIRST_BALK); //From Station 0 to Station 1
+        table.put(42, 2, SECOND_BALK); //Then from Station 1 to Station 2
+        assertEquals(1, table.get(42, FIRST_BALK));
+        assertEquals(2, table.get(42, SECOND_BALK));
+        assertEquals(-1, table.get(42, FIRST_BALK.plusSeconds(1)));
+        assertEquals(2, table.size());
+    }
+
+    @Test
+    void legsAreEvictedOnTheirOwn() {
+        RoutingTable table = new RoutingTable();
+        table.put(42, 1, FIRST_BALK);
+        table.put(42, 2, SECOND_BALK);
+        table.evictBefore(FIRST_BALK.plusSeconds(1));
+        assertEquals(-1, table.get(42, FIRST_BALK));
+        assertEquals(2, table.get(42, SECOND_BALK));
+        table.evictBefore(SECOND_BALK.plusSeconds(1));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    void legsSurviveTheTableGrowing() {
+        RoutingTable table = new RoutingTable();
+        Instant start = Instant.parse("2024-01-01T00:00:00Z");
+        for (int car = 0; car < 5000; car++) {
+            table.put(car, car % 7, start.plusSeconds(car));
+            table.put(car, car % 5, start.plusSeconds(car + 600));
+        }
+        table.evictBefore(start.plusSeconds(2500));
+        assertTrue(table.size() < 10000);
+        for (int car = 0; car < 5000; car++) { //Legs that can still be recalled are never evicted, though older ones may linger
+            if (car >= 2500)
+                assertEquals(car % 7, table.get(car, start.plusSeconds(car)));
+            if (car + 600 >= 2500)
+                assertEquals(car % 5, table.get(car, start.plusSeconds(car + 600)));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package execution;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import execution.Transport.LocalMailbox;
+import objects.Event.ArrivalEvent;
+import objects.GlobalTime;
+import objects.Message.BalkMessage;
+import objects.StationStats;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Sends a Station cars from another Station after it has gone past the time they arrive, and checks that rolling back
+ * for them leaves it with the same statistics as a Station that was sent them in time. The rollbacks reach back over
+ * the start of a day, and over cars of its own that queued, charged, balked and were turned away at closing.
+ */
+class StationRollbackTest {
+    private static final int RUNTIME = 2 * 86400 + 14 * 3600; //Closes as the lines are at their longest
+    private static final String STATION = """
+            {
+              "name": "Late",
+              "arrivalRate": 1100,
+              "chargerClasses": [
+                {"name": "fast", "chargers": 4, "rate": 43000.0, "patience": 600, "closingCutoff": 7200, "share": 0.67},
+                {"name": "slow", "chargers": 8, "rate": 3000.0, "patience": 1800, "share": 0.33}
+              ],
+              "seed": 11,
+              "generationDays": 1,
+              "writeResults": false
+            }""";
+
+    @ParameterizedTest
+    @ValueSource(strings = {"heap", "offHeap"})
+    void rollingBackForLateCarsMatchesGettingThemInTime(String historyStore) throws IOException {
+        GlobalTime gT = new GlobalTime(8, 0, 0, RUNTIME);
+        Instant start = gT.getStartInstant(), end = gT.getEndInstant();
+        BalkMessage[] late = {
+                message(start.plusSeconds(86400 + 5 * 3600), 0, 1), //The second day, while cars are queueing
+                message(start.plusSeconds(86400 + 5 * 3600), 1, 2),
+                message(start.plusSeconds(15 * 3600), 0, 3), //Back over the start of the second day
+                message(start.plusSeconds(2 * 86400 + 3600), 1, 4),
+                message(end.minusSeconds(2 * 3600 + 1800), 0, 5), //Back over cars turned away as the Simulation closes
+                message(end.minusSeconds(2 * 3600 - 300), 0, 6) //To while cars that are turned away later are waiting
+        };
+        Instant[] handleAt = {start.plusSeconds(86400 + 9 * 3600), start.plusSeconds(86400 + 12 * 3600),
+                start.plusSeconds(2 * 86400 + 2 * 3600), start.plusSeconds(2 * 86400 + 6 * 3600), end.minusSeconds(1200),
+                end.minusSeconds(600)};
+
+        StationSimulator inTime = station(historyStore, gT);
+        for (BalkMessage msg : late)
+            inTime.backtrack(msg); //Every car arrives after the Station's time, so nothing is undone
+        runToEnd(inTime, gT.getEndInstant());
+
+        StationSimulator rolledBack = station(historyStore, gT);
+        gT.setGlobalMinimumTime(start.plusSeconds(14 * 3600)); //Lets the Station drop the cars of the first morning
+        for (int i = 0; i < late.length; i++) {
+            while (rolledBack.getNextEventTime() != null && rolledBack.getNextEventTime().isBefore(handleAt[i]))
+                rolledBack.processNextEvent();
+            rolledBack.backtrack(late[i]);
+        }
+        runToEnd(rolledBack, gT.getEndInstant());
+
+        StationStats expected = inTime.getStats(), actual = rolledBack.getStats();
+        assertTrue(actual.getNumEventsRolledBack() > 0);
+        for (int c = 0; c < expected.getNumClasses(); c++) {
+            for (int status = 0; status < 3; status++)
+                assertEquals(expected.getNumCharges(c, status), actual.getNumCharges(c, status), "Charges of class " + c + " with status " + status);
+            assertEquals(expected.getNumBalks(c), actual.getNumBalks(c), "Balks of class " + c);
+            assertEquals(expected.getChargerSeconds(c), actual.getChargerSeconds(c), 1e-6, "Charger seconds of class " + c);
+        }
+        assertEquals(expected.getEnergyGiven(), actual.getEnergyGiven(), 1e-6);
+    }
+
+    private static StationSimulator station(String historyStore, GlobalTime gT) throws IOException {
+        ObjectNode config = (ObjectNode) new ObjectMapper().readTree(STATION);
+        config.put("historyStore", historyStore);
+        config.put("stationIndex", 0);
+        return new StationSimulator(config, gT, new LocalMailbox(), new LocalMailbox());
+    }
+
+    /**
+     * @return a car that balked from another Station at a time, and arrives at this one then.
+     */
+    private static BalkMessage message(Instant balkTime, int chargeClass, long car){
+        ArrivalEvent a = new ArrivalEvent(1_000_000_000L + car, balkTime.minusSeconds(600), chargeClass, 30000.0);
+        return new BalkMessage(balkTime, "Elsewhere", a.arrivingAt(balkTime), false);
+    }
+
+    private static void runToEnd(StationSimulator station, Instant end){
+        while (station.getNextEventTime() != null && station.getNextEventTime().isBefore(end))
+            station.processNextEvent();
+    }
+}
@@ -0,0 +1,167 @@
+package execution.Trace;
+
+import objects.Event.ArrivalEvent;
+import objects.GlobalTime;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Converts a small session log into arrival files and replays them, checking that the sessions come back on the
+ * Simulation's calendar with their time of day, energy and charger class, and that the rows and classes that cannot be
+ * used are left out.
+ */
+class SessionConverterTest {
+    private static final String[] CLASSES = {"fast", "slow"};
+    private static final Instant START = Instant.parse("2025-06-10T08:00:00Z");
+    private static final long SHIFT = Duration.between(Instant.parse("2024-03-04T00:00:00Z"), Instant.parse("2025-06-10T00:00:00Z")).getSeconds();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void sessionsComeBackOnTheSimulationsCalendar() throws IOException {
+        Path out = convert();
+        List<ArrivalEvent> a = replay(out.resolve("Station A.arrivals"), 1000, 2, new GlobalTime(START, 3 * 86400), 3);
+        //The car that arrived before the Simulation's start time on the first day is left out
+        assertEquals(List.of(1001L, 1002L, 1003L, 1004L, 1005L), ids(a));
+        assertEquals(at("2024-03-04T09:15:00Z"), a.get(0).getTimestamp());
+        assertEquals(12500.0, a.get(0).getChargeDesired(), 1e-3);
+        assertEquals(0, a.get(0).getChargeClass());
+        assertEquals(at("2024-03-04T14:00:00Z"), a.get(1).getTimestamp(), "Read from epoch seconds");
+        assertEquals(at("2024-03-04T14:00:00Z"), a.get(2).getTimestamp(), "A second session at the same time keeps its place");
+        assertEquals(1, a.get(2).getChargeClass());
+        assertEquals(at("2024-03-05T07:30:00Z"), a.get(3).getTimestamp(), "A local date-time is taken to be UTC");
+        assertEquals(30000.0, a.get(3).getChargeDesired(), 1e-3);
+        assertEquals(at("2024-03-05T12:00:00Z"), a.get(4).getTimestamp());
+
+        //Station B's log starts a day later than Station A's, and is moved by the same number of days
+        List<ArrivalEvent> b = replay(out.resolve("Station B.arrivals"), 0, 2, new GlobalTime(START, 3 * 86400), 3);
+        assertEquals(List.of(0L), ids(b));
+        assertEquals(at("2024-03-05T10:00:00Z"), b.get(0).getTimestamp());
+    }
+
+    @Test
+    void eachDayHoldsOnlyItsOwnSessions() throws IOException {
+        Path out = convert();
+        try (Replay trace = new Replay(out.resolve("Station A.arrivals"), 0, 2, new GlobalTime(START, 3 * 86400))) {
+            assertEquals(4, trace.arrivals.takeDay().length, "From the start time to the same time the next day");
+            assertEquals(1, trace.arrivals.takeDay().length);
+            assertEquals(0, trace.arrivals.takeDay().length);
+        }
+    }
+
+    @Test
+    void aSegmentStartsWithTheSessionsOfItsOwnDays() throws IOException {
+        Path out = convert();
+        GlobalTime whole = new GlobalTime(START, 3 * 86400);
+        GlobalTime second = whole.segment(START.plusSeconds(86400), whole.getEndInstant());
+        List<ArrivalEvent> a = replay(out.resolve("Station A.arrivals"), 0, 2, second, 2);
+        assertEquals(List.of(5L), ids(a), "Moved by the days from the origin, not from the start of the segment");
+        assertEquals(at("2024-03-05T12:00:00Z"), a.get(0).getTimestamp());
+    }
+
+    @Test
+    void classesTheSimulationLacksAreLeftOut() throws IOException {
+        Path out = convert();
+        List<ArrivalEvent> a = replay(out.resolve("Station A.arrivals"), 0, 1, new GlobalTime(START, 3 * 86400), 3);
+        assertEquals(List.of(1L, 2L, 5L), ids(a), "The ids of the cars left keep their place in the file");
+        for (ArrivalEvent car : a)
+            assertEquals(0, car.getChargeClass());
+    }
+
+    @Test
+    void rowsThatCannotBeReadAreCountedAndSkipped() throws IOException {
+        SessionConverter converter = converter();
+        assertEquals(2, converter.getStations());
+        assertEquals(7, converter.getSessions());
+        assertEquals(3, converter.getSkipped());
+    }
+
+    @Test
+    void aFileThatIsNotAnArrivalFileIsRejected() throws IOException {
+        Path file = Files.writeString(directory.resolve("bad.arrivals"), "station,arrival,energy_kwh,charger_class\n".repeat(4));
+        assertThrows(IOException.class, () -> new ArrivalTrace(file, 0, 2, new GlobalTime(START, 86400)));
+    }
+
+    /**
+     * @return a converter that has read the session log.
+     */
+    private SessionConverter converter() throws IOException {
+        long epoch = Instant.parse("2024-03-04T14:00:00Z").getEpochSecond();
+        Path log = Files.writeString(directory.resolve("sessions.csv"), String.join("\n",
+                "station,arrival,energy_kwh,charger_class,note",
+                "Station A,2024-03-05 07:30:00,30,slow,",
+                "Station A,2024-03-05T12:00:00Z,6,fast,",
+                "Station A,2024-03-04T09:15:00Z,12.5,fast,\"first, and early\"",
+                "Station A," + epoch + ",8,fast,",
+                "Station A,2024-03-04T15:00:00+01:00,20,slow,", //The same second as the row before
+                "Station A,2024-03-04T07:00:00+01:00,5,fast,", //Before the Simulation's start time
+                "Station A,2024-03-04T10:00:00Z,5,DC350,", //A class the Simulation lacks
+                "Station A,yesterday,5,fast,",
+                "Station B,2024-03-05T10:00:00Z,8,fast,",
+                "",
+                "Station B,2024-03-05T11:00:00Z,not a number,fast,"));
+        SessionConverter converter = new SessionConverter(CLASSES);
+        converter.read(log, "station", "arrival", "energy_kwh", "charger_class");
+        return converter;
+    }
+
+    private Path convert() throws IOException {
+        Path out = directory.resolve("arrivals");
+        converter().write(out);
+        return out;
+    }
+
+    /**
+     * @return every car replayed from an arrival file over a number of days.
+     */
+    private static List<ArrivalEvent> replay(Path file, long firstCarId, int classes, GlobalTime gT, int days) throws IOException {
+        ArrayList<ArrivalEvent> cars = new ArrayList<>();
+        try (Replay trace = new Replay(file, firstCarId, classes, gT)) {
+            for (int day = 0; day < days; day++)
+                cars.addAll(List.of(trace.arrivals.takeDay()));
+        }
+        for (int i = 1; i < cars.size(); i++)
+            assertFalse(cars.get(i).getTimestamp().isBefore(cars.get(i - 1).getTimestamp()), "Replayed in the order they arrived");
+        return cars;
+    }
+
+    private static List<Long> ids(List<ArrivalEvent> cars){
+        ArrayList<Long> ids = new ArrayList<>();
+        for (ArrivalEvent car : cars)
+            ids.add(car.getId());
+        return ids;
+    }
+
+    /**
+     * @return the time a session logged at a time arrives in the Simulation.
+     */
+    private static Instant at(String logged){
+        return Instant.parse(logged).plusSeconds(SHIFT);
+    }
+
+    /**
+     * An Arrival Trace that is closed once the test is done with it.
+     */
+    private static final class Replay implements AutoCloseable {
+        private final ArrivalTrace arrivals;
+
+        private Replay(Path file, long firstCarId, int classes, GlobalTime gT) throws IOException {
+            arrivals = new ArrivalTrace(file, firstCarId, classes, gT);
+        }
+
+        public void close(){
+            arrivals.close();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package execution;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import objects.GlobalTime;
+import objects.StationStats;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what keeping a trace costs by running the Simulation of the config files with every Station's trace off and
+ * on. Each operation is one whole run, timed from a warm JVM. Alongside the time, it counts the events the Stations
+ * committed and the bytes of trace they wrote, so the events committed per second and the bytes per committed event can
+ * be worked out from the same runs.
+ * Every run generates the same cars: Stations without a seed are given the same one in every run. The Stations write no
+ * results of their own, and the traces go to "out/trace" as they would in a run of the Main class.
+ * Run it with {@code java -cp <test classpath> execution.TraceBenchmark}, followed by any JMH options.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class TraceBenchmark {
+    private static final long SEED = 1;
+
+    @Param({"false", "true"})
+    private boolean trace;
+
+    private JsonNode rootNode;
+    private GlobalTime gT;
+    private List<ObjectNode> configs;
+
+    /**
+     * What the runs of an iteration did, reported by JMH next to their time.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counts {
+        public long committedEvents;
+        public long traceBytes;
+
+        @Setup(Level.Iteration)
+        public void clear(){
+            committedEvents = 0;
+            traceBytes = 0;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder().parent(new CommandLineOptions(args)).include(TraceBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    /**
+     * Reads the same config files as the Main class.
+     * @throws IOException if a config file cannot be read.
+     */
+    @Setup
+    public void setup() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        InputStream inputStream = TraceBenchmark.class.getClassLoader().getResourceAsStream("config/config.json");
+        if(inputStream == null){
+            throw new IOException("Config file not found in resources");
+        }
+        rootNode = mapper.readTree(inputStream);
+        gT = new GlobalTime(rootNode.get("startTimeHr").asInt(), rootNode.get("startTimeMin").asInt(), rootNode.get("startTimeSec").asInt(), rootNode.get("runtime").asInt());
+        inputStream = TraceBenchmark.class.getClassLoader().getResourceAsStream("config/" + rootNode.get("configFile").asText());
+        if(inputStream == null){
+            throw new IOException("Station config file not found in resources");
+        }
+        configs = new ArrayList<>();
+        for (ObjectNode fullConfig : Main.readStationConfigs(mapper.readTree(inputStream))) {
+            if (!fullConfig.has("seed"))
+                fullConfig.put("seed", SEED);
+            fullConfig.put("writeResults", false);
+            fullConfig.put("trace", trace);
+            configs.add(fullConfig);
+        }
+    }
+
+    /**
+     * Runs the Simulation once, counting the events it committed and the trace it wrote.
+     * @param counts the counts of the iteration.
+     * @return the number of events committed.
+     */
+    @Benchmark
+    public long run(Counts counts){
+        ArrayList<ObjectNode> copies = new ArrayList<>();
+        for (ObjectNode config : configs)
+            copies.add(config.deepCopy());
+        Simulation simulation = new Simulation(rootNode, gT.segment(gT.getStartInstant(), gT.getEndInstant()), copies);
+        if (!simulation.run(Executors.newCachedThreadPool()))
+            throw new IllegalStateException("A run did not finish");
+        long committed = 0;
+        for (StationSimulator station : simulation.getStations()) {
+            StationStats s = station.getStats();
+            committed += s.getNumEventsProcessed() - s.getNumEventsRolledBack();
+            if (trace)
+                counts.traceBytes += traceSize(station.getName());
+        }
+        counts.committedEvents += committed;
+        return committed;
+    }
+
+    /**
+     * @param station the name of a Station.
+     * @return the size of the trace the Station wrote, or 0 if it cannot be read.
+     */
+    private long traceSize(String station){
+        String directory = "out";
+        for (ObjectNode config : configs)
+            if (config.path("name").asText().equals(station))
+                directory = config.path("outputDirectory").asText("out");
+        try {
+            return Files.size(Path.of(directory, "trace", station + ".trace"));
+        } catch (IOException e){
+            return 0;
+        }
+    }
+}
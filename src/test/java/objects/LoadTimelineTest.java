@@ -0,0 +1,69 @@
+package objects;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the Load Timeline's segment tree against a plain array of buckets, each addition and query done bucket by bucket.
+ */
+class LoadTimelineTest {
+    private static final double DELTA = 1e-6;
+
+    @Test
+    void addingAndTakingAwayLoadMatchesAnArray() {
+        for (int buckets : new int[] {1, 2, 7, 96, 1000}) { //Powers of two and not, so the tree has leaves past the last bucket
+            Random random = new Random(buckets);
+            LoadTimeline timeline = new LoadTimeline(buckets);
+            double[] load = new double[buckets];
+            for (int step = 0; step < 2000; step++) {
+                int from = random.nextInt(buckets), to = random.nextInt(buckets);
+                if (random.nextInt(4) == 0) {
+                    assertEquals(max(load, from, to), timeline.max(from, to), DELTA, "Max of " + from + " to " + to);
+                    continue;
+                }
+                double watts = random.nextInt(3) == 0 ? -random.nextDouble() * 50000 : random.nextDouble() * 50000;
+                timeline.add(from, to, watts);
+                for (int i = from; i <= to; i++)
+                    load[i] += watts;
+            }
+            assertArrayEquals(load, timeline.toArray(), DELTA);
+            assertEquals(max(load, 0, buckets - 1), timeline.max(0, buckets - 1), DELTA);
+        }
+    }
+
+    @Test
+    void anEmptySpanChangesNothingAndHasNoLoad() {
+        LoadTimeline timeline = new LoadTimeline(10);
+        timeline.add(3, 5, 100);
+        timeline.add(6, 2, 500);
+        assertEquals(0, timeline.max(8, 4));
+        assertEquals(100, timeline.max(0, 9));
+        assertEquals(0, timeline.max(6, 9));
+    }
+
+    @Test
+    void takingEveryAdditionBackLeavesNoLoad() {
+        LoadTimeline timeline = new LoadTimeline(50);
+        timeline.add(0, 49, 7200);
+        timeline.add(10, 20, 43000);
+        timeline.add(10, 20, -43000);
+        timeline.add(0, 49, -7200);
+        assertArrayEquals(new double[50], timeline.toArray(), DELTA);
+        assertEquals(0, timeline.max(0, 49), DELTA);
+    }
+
+    /**
+     * @return the highest load in any bucket of a span, or 0 if the span is empty.
+     */
+    private static double max(double[] load, int from, int to){
+        if (from > to)
+            return 0;
+        double best = Double.NEGATIVE_INFINITY;
+        for (int i = from; i <= to; i++)
+            best = Math.max(best, load[i]);
+        return best;
+    }
+}
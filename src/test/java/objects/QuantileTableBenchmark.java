@@ -0,0 +1,78 @@
+package objects;
+
+import execution.ArrivalProducer;
+import org.apache.commons.math3.distribution.BetaDistribution;
+import org.apache.commons.math3.distribution.GammaDistribution;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well19937c;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long sampling a day's arrival times and energies takes from the quantile tables, as the Arrival Producer
+ * draws them with the "table" sampler, against drawing car by car from the commons-math distributions, as it does with
+ * the "exact" sampler. Each operation samples one day of cars of both distributions from a fresh random number generator.
+ * Run it with {@code java -cp <test classpath> objects.QuantileTableBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QuantileTableBenchmark {
+    @Param({"2520"})
+    private int carsPerDay;
+
+    private QuantileTable energyTable;
+    private QuantileTable timeOfDayTable;
+    private double[] energies;
+    private double[] timesOfDay;
+    private long seed;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(QuantileTableBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Setup
+    public void setup(){
+        energyTable = ArrivalProducer.table(ArrivalProducer.energyDistribution(new Well19937c()));
+        timeOfDayTable = ArrivalProducer.table(ArrivalProducer.timeOfDayDistribution(new Well19937c()));
+        energies = new double[carsPerDay];
+        timesOfDay = new double[carsPerDay];
+    }
+
+    @Benchmark
+    public double table(){
+        RandomGenerator rng = new Well19937c(seed++);
+        timeOfDayTable.fill(timesOfDay, rng);
+        energyTable.fill(energies, rng);
+        return timesOfDay[carsPerDay - 1] + energies[carsPerDay - 1];
+    }
+
+    @Benchmark
+    public double exact(){
+        RandomGenerator rng = new Well19937c(seed++);
+        BetaDistribution timeOfDayDistribution = ArrivalProducer.timeOfDayDistribution(rng);
+        GammaDistribution energyDistribution = ArrivalProducer.energyDistribution(rng);
+        for (int i = 0; i < carsPerDay; i++)
+            timesOfDay[i] = timeOfDayDistribution.sample();
+        for (int i = 0; i < carsPerDay; i++)
+            energies[i] = energyDistribution.sample();
+        return timesOfDay[carsPerDay - 1] + energies[carsPerDay - 1];
+    }
+}
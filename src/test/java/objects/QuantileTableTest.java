@@ -0,0 +1,126 @@
+package objects;
+
+import execution.ArrivalProducer;
+import org.apache.commons.math3.distribution.RealDistribution;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well19937c;
+import org.apache.commons.math3.stat.inference.ChiSquareTest;
+import org.apache.commons.math3.stat.inference.KolmogorovSmirnovTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that drawing from the quantile tables of the energy and time of day distributions gives the same distributions
+ * as drawing from commons-math, which the tables replace. The tables are built as the Arrival Producer builds them, and
+ * every draw is seeded, so the tests give the same result on every run.
+ */
+class QuantileTableTest {
+    private static final int SAMPLES = 200000;
+    private static final int BINS = 100;
+    private static final double SIGNIFICANCE = 0.01;
+
+    private static RealDistribution energy(){
+        return ArrivalProducer.energyDistribution(new Well19937c());
+    }
+
+    private static RealDistribution timeOfDay(){
+        return ArrivalProducer.timeOfDayDistribution(new Well19937c());
+    }
+
+    @Test
+    void tablesAreUsedRatherThanSolvedForExactly() {
+        for (RealDistribution distribution : new RealDistribution[] {energy(), timeOfDay()}) {
+            QuantileTable table = ArrivalProducer.table(distribution);
+            assertFalse(table.isExact());
+            assertTrue(table.getMaxError() <= ArrivalProducer.TABLE_TOLERANCE, "Off by " + table.getMaxError());
+        }
+    }
+
+    @Test
+    void energyTablePassesKolmogorovSmirnov() {
+        kolmogorovSmirnov(energy(), 1);
+    }
+
+    @Test
+    void timeOfDayTablePassesKolmogorovSmirnov() {
+        kolmogorovSmirnov(timeOfDay(), 2);
+    }
+
+    @Test
+    void energyTablePassesChiSquare() {
+        chiSquare(energy(), 3);
+    }
+
+    @Test
+    void timeOfDayTablePassesChiSquare() {
+        chiSquare(timeOfDay(), 4);
+    }
+
+    @Test
+    void energyTableMatchesCommonsMathSamples() {
+        twoSample(energy(), 5);
+    }
+
+    @Test
+    void timeOfDayTableMatchesCommonsMathSamples() {
+        twoSample(timeOfDay(), 6);
+    }
+
+    @Test
+    void aTableTooCoarseForTheToleranceSolvesEveryDrawExactly() {
+        RealDistribution distribution = energy();
+        QuantileTable table = new QuantileTable(distribution, 4, ArrivalProducer.TABLE_TOLERANCE);
+        assertTrue(table.isExact());
+        for (double p = 0.05; p < 1; p += 0.1)
+            assertEquals(distribution.inverseCumulativeProbability(p), table.quantile(p));
+    }
+
+    /**
+     * Tests the table's samples against the distribution's cumulative distribution function.
+     */
+    private static void kolmogorovSmirnov(RealDistribution distribution, long seed){
+        double[] samples = draw(distribution, seed);
+        double p = new KolmogorovSmirnovTest().kolmogorovSmirnovTest(distribution, samples);
+        assertTrue(p > SIGNIFICANCE, "Kolmogorov-Smirnov p-value " + p);
+    }
+
+    /**
+     * Counts the table's samples in bins the distribution fills equally, and tests the counts against the even split.
+     */
+    private static void chiSquare(RealDistribution distribution, long seed){
+        double[] edges = new double[BINS - 1];
+        for (int i = 0; i < edges.length; i++)
+            edges[i] = distribution.inverseCumulativeProbability((i + 1.0) / BINS);
+        long[] observed = new long[BINS];
+        for (double sample : draw(distribution, seed)) {
+            int bin = Arrays.binarySearch(edges, sample);
+            observed[bin >= 0 ? bin + 1 : -bin - 1]++;
+        }
+        double[] expected = new double[BINS];
+        Arrays.fill(expected, (double) SAMPLES / BINS);
+        double p = new ChiSquareTest().chiSquareTest(expected, observed);
+        assertTrue(p > SIGNIFICANCE, "Chi-square p-value " + p);
+    }
+
+    /**
+     * Tests the table's samples against the samples commons-math draws from the distribution itself.
+     */
+    private static void twoSample(RealDistribution distribution, long seed){
+        double[] tabled = draw(distribution, seed);
+        distribution.reseedRandomGenerator(seed + 100);
+        double[] exact = distribution.sample(SAMPLES);
+        double p = new KolmogorovSmirnovTest().kolmogorovSmirnovTest(tabled, exact);
+        assertTrue(p > SIGNIFICANCE, "Two-sample Kolmogorov-Smirnov p-value " + p);
+    }
+
+    private static double[] draw(RealDistribution distribution, long seed){
+        QuantileTable table = ArrivalProducer.table(distribution);
+        RandomGenerator rng = new Well19937c(seed);
+        double[] samples = new double[SAMPLES];
+        table.fill(samples, rng);
+        return samples;
+    }
+}
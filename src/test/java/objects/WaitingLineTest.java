@@ -0,0 +1,115 @@
+package objects;
+
+import objects.Event.ArrivalEvent;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the Waiting Line's ring buffer against a plain list, through the joins, departures and rollbacks a Station puts
+ * it through, as its front wraps around the end of the array and the array grows.
+ */
+class WaitingLineTest {
+    private static final Instant START = Instant.parse("2024-01-01T08:00:00Z");
+
+    @Test
+    void rollbacksMatchAListAcrossWrapAroundAndGrowth() {
+        Random random = new Random(35);
+        WaitingLine line = new WaitingLine();
+        ArrayList<ArrivalEvent> expected = new ArrayList<>();
+        ArrayDeque<ArrivalEvent> left = new ArrayDeque<>(); //Cars that left the front, most recent last
+        long next = 0;
+        for (int step = 0; step < 20000; step++) {
+            int op = random.nextInt(10);
+            if (op < 4 || expected.isEmpty()) { //Lines stay short for a while, then grow past the first array
+                int cars = step % 2000 < 1000 ? 1 : 1 + random.nextInt(3);
+                for (int i = 0; i < cars; i++) {
+                    ArrivalEvent a = car(next++);
+                    line.add(a);
+                    expected.add(a);
+                }
+            } else if (op < 7) {
+                ArrivalEvent a = line.remove();
+                assertSame(expected.remove(0), a);
+                left.addLast(a);
+            } else if (op == 7 && !left.isEmpty()) { //A rollback puts back the car that left most recently first
+                ArrivalEvent a = left.removeLast();
+                line.insert(a);
+                expected.add(indexFor(expected, a), a);
+            } else if (op == 8) {
+                assertSame(expected.remove(expected.size() - 1), line.removeLast());
+            } else {
+                ArrivalEvent a = expected.remove(random.nextInt(expected.size()));
+                assertTrue(line.remove(car(a.getId())));
+            }
+            assertLine(expected, line);
+        }
+    }
+
+    @Test
+    void aCarPutBackAfterTheFrontGoesInItsPlace() {
+        WaitingLine line = new WaitingLine();
+        for (long car = 0; car < 40; car += 2) //Wraps the front round once the first cars leave
+            line.add(car(car));
+        for (int i = 0; i < 10; i++)
+            line.remove();
+        for (long car = 40; car < 60; car += 2)
+            line.add(car(car));
+        line.insert(car(25));
+        line.insert(car(59));
+        line.insert(car(1));
+        List<Long> ids = new ArrayList<>();
+        for (ArrivalEvent a : line)
+            ids.add(a.getId());
+        assertEquals(1L, ids.get(0));
+        assertEquals(List.of(24L, 25L, 26L), ids.subList(3, 6));
+        assertEquals(58L, ids.get(ids.size() - 2));
+        assertEquals(59L, ids.get(ids.size() - 1));
+        assertEquals(23, line.size());
+    }
+
+    @Test
+    void aCarIsOnlyTakenOutAtTheTimeItArrived() {
+        WaitingLine line = new WaitingLine();
+        line.add(car(1));
+        ArrivalEvent returned = new ArrivalEvent(1, START.plusSeconds(5000), 0, 1000.0); //The same car, back from another Station
+        assertFalse(line.remove(returned));
+        line.add(returned);
+        assertTrue(line.remove(returned));
+        assertEquals(1, line.size());
+        assertEquals(START.plusSeconds(60), line.peek().getTimestamp());
+    }
+
+    /**
+     * @return a car that arrives a minute after the car before it.
+     */
+    private static ArrivalEvent car(long id){
+        return new ArrivalEvent(id, START.plusSeconds(60 * id), 0, 1000.0);
+    }
+
+    /**
+     * @return where a car put back into the line goes: behind every car that arrived before it.
+     */
+    private static int indexFor(List<ArrivalEvent> cars, ArrivalEvent a){
+        int at = cars.size();
+        while (at > 0 && cars.get(at - 1).getTimestamp().isAfter(a.getTimestamp()))
+            at--;
+        return at;
+    }
+
+    private static void assertLine(List<ArrivalEvent> expected, WaitingLine line){
+        assertEquals(expected.size(), line.size());
+        assertEquals(expected.isEmpty(), line.isEmpty());
+        assertSame(expected.isEmpty() ? null : expected.get(0), line.peek());
+        assertSame(expected.isEmpty() ? null : expected.get(expected.size() - 1), line.peekLast());
+        int i = 0;
+        for (ArrivalEvent a : line)
+            assertSame(expected.get(i++), a);
+    }
+}